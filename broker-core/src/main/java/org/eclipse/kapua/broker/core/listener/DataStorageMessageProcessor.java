@@ -12,6 +12,8 @@
  *******************************************************************************/
 package org.eclipse.kapua.broker.core.listener;
 
+import java.util.concurrent.ExecutionException;
+
 import org.apache.camel.spi.UriEndpoint;
 import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.broker.core.message.CamelKapuaMessage;
@@ -59,7 +61,9 @@ public class DataStorageMessageProcessor extends AbstractProcessor<CamelKapuaMes
     }
 
     /**
-     * Process a data message.
+     * Process a data message.<BR>
+     * The message is handed to the datastore bulk ingest stage, so messages processed by concurrent consumers are written together.
+     * The consumer thread waits for the outcome of its own message before returning.
      */
     @Override
     public void processMessage(CamelKapuaMessage<?> message)
@@ -73,13 +77,22 @@ public class DataStorageMessageProcessor extends AbstractProcessor<CamelKapuaMes
         try {
             Context metricStorageDataSaveTimeContext = metricStorageDataSaveTime.time();
             MessageCreator mc = datastoreObjectFactory.newMessageCreator();
-            messageStoreService.store(message.getMessage().getScopeId(), mc);
+            messageStoreService.storeAsync(message.getMessage().getScopeId(), mc).get();
             metricStorageDataSaveTimeContext.stop();
         }
         catch (KapuaException e) {
             metricStorageDataErrorMessage.inc();
             logger.error("An error occurred while storing message: {}", e.getCode().toString());
         }
+        catch (ExecutionException e) {
+            metricStorageDataErrorMessage.inc();
+            logger.error("An error occurred while storing message: {}", e.getCause().getMessage());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            metricStorageDataErrorMessage.inc();
+            logger.error("Interrupted while storing message");
+        }
     }
 
 }
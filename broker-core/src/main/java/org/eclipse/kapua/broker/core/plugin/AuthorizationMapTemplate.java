@@ -0,0 +1,250 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.broker.core.plugin;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.filter.DestinationMapEntry;
+import org.apache.activemq.security.AuthorizationEntry;
+import org.apache.activemq.security.DefaultAuthorizationMap;
+import org.eclipse.kapua.service.authentication.KapuaPrincipal;
+
+/**
+ * Precompiled set of ACL entries for a permission profile (admin or the combination of the device management and data permissions of a user).<br>
+ * The topic patterns are parsed once, so building the authorization map of a connection only needs the account name and the client id to be filled in.
+ * 
+ * @since 1.0
+ */
+class AuthorizationMapTemplate {
+
+    private static final int ACCOUNT_NAME = 0;
+    private static final int CLIENT_ID = 1;
+
+    // AclConstants.ACL_VT_DURABLE_PREFIX split around the full client id placeholder
+    private static final String DURABLE_PREFIX_AT_LEAST_ONCE = prefixOf(AclConstants.ACL_VT_DURABLE_PREFIX[0]);
+    private static final String DURABLE_SUFFIX_AT_LEAST_ONCE = suffixOf(AclConstants.ACL_VT_DURABLE_PREFIX[0]);
+    private static final String DURABLE_PREFIX_EXACTLY_ONCE = prefixOf(AclConstants.ACL_VT_DURABLE_PREFIX[1]);
+    private static final String DURABLE_SUFFIX_EXACTLY_ONCE = suffixOf(AclConstants.ACL_VT_DURABLE_PREFIX[1]);
+
+    private static final AuthorizationMapTemplate ADMIN = new AuthorizationMapTemplate()
+            .add(AclConstants.ACL_HASH, true, true, true)
+            .add(AclConstants.ACL_AMQ_ADVISORY, false, true, true);
+
+    // Indexed by the permission profile, see getUserTemplate
+    private static final AuthorizationMapTemplate[] USER = new AuthorizationMapTemplate[8];
+
+    static {
+        for (int i = 0; i < USER.length; i++) {
+            USER[i] = buildUserTemplate((i & 1) != 0, (i & 2) != 0, (i & 4) != 0);
+        }
+    }
+
+    private final List<EntryTemplate> entryTemplates = new ArrayList<>();
+
+    private AuthorizationMapTemplate() {
+    }
+
+    /**
+     * Return the template for the admin user
+     * 
+     * @return
+     */
+    static AuthorizationMapTemplate getAdminTemplate() {
+        return ADMIN;
+    }
+
+    /**
+     * Return the template for the permission profile of a user allowed to connect to the broker
+     * 
+     * @param deviceManage
+     *            device management write permission
+     * @param dataView
+     *            datastore read permission
+     * @param dataManage
+     *            datastore write permission
+     * @return
+     */
+    static AuthorizationMapTemplate getUserTemplate(boolean deviceManage, boolean dataView, boolean dataManage) {
+        return USER[(deviceManage ? 1 : 0) | (dataView ? 2 : 0) | (dataManage ? 4 : 0)];
+    }
+
+    private static AuthorizationMapTemplate buildUserTemplate(boolean deviceManage, boolean dataView, boolean dataManage) {
+        AuthorizationMapTemplate template = new AuthorizationMapTemplate();
+
+        template.add(AclConstants.ACL_AMQ_ADVISORY, false, true, true);
+
+        // The broker connect permission is checked before the template is used
+        if (deviceManage) {
+            template.add(AclConstants.ACL_CTRL_ACC, true, true, true);
+        } else {
+            template.add(AclConstants.ACL_CTRL_ACC_CLI, true, true, true);
+        }
+
+        if (dataManage) {
+            template.add(AclConstants.ACL_DATA_ACC, true, true, true);
+        } else if (dataView) {
+            template.add(AclConstants.ACL_DATA_ACC, true, false, true);
+            template.add(AclConstants.ACL_DATA_ACC_CLI, false, true, false);
+        } else {
+            template.add(AclConstants.ACL_DATA_ACC_CLI, true, true, true);
+        }
+
+        template.add(AclConstants.ACL_CTRL_ACC_REPLY, false, true, true);
+
+        // Write notify to any client Id and any application and operation
+        template.add(AclConstants.ACL_CTRL_ACC_NOTIFY, false, true, false);
+
+        return template;
+    }
+
+    private AuthorizationMapTemplate add(String topicPattern, boolean read, boolean write, boolean admin) {
+        entryTemplates.add(new EntryTemplate(topicPattern, read, write, admin));
+        return this;
+    }
+
+    /**
+     * Build the authorization map of the connection
+     * 
+     * @param authDestinations
+     *            if not null the granted destinations are added for logging purpose
+     * @param principal
+     * @param accountName
+     * @param clientId
+     * @param fullClientId
+     * @return
+     */
+    @SuppressWarnings("rawtypes")
+    DefaultAuthorizationMap buildAuthorizationMap(List<String> authDestinations, KapuaPrincipal principal, String accountName, String clientId, String fullClientId) {
+        return new DefaultAuthorizationMap(new ArrayList<DestinationMapEntry>(buildAuthorizationEntries(authDestinations, principal, accountName, clientId, fullClientId)));
+    }
+
+    /**
+     * Build the ACL entries of the connection, in the order they are added to the authorization map
+     * 
+     * @param authDestinations
+     *            if not null the granted destinations are added for logging purpose
+     * @param principal
+     * @param accountName
+     * @param clientId
+     * @param fullClientId
+     * @return
+     */
+    List<AuthorizationEntry> buildAuthorizationEntries(List<String> authDestinations, KapuaPrincipal principal, String accountName, String clientId, String fullClientId) {
+        String[] arguments = new String[] { accountName, clientId };
+
+        List<AuthorizationEntry> dme = new ArrayList<>(entryTemplates.size() * 3);
+        for (EntryTemplate entryTemplate : entryTemplates) {
+            String topic = entryTemplate.format(arguments);
+            dme.add(createTopicEntry(authDestinations, topic, principal, entryTemplate.read, entryTemplate.write, entryTemplate.admin));
+
+            // added to support the vt topic name space for durable subscriptions
+            if (entryTemplate.read) {
+                dme.add(createQueueEntry(authDestinations, new StringBuilder(DURABLE_PREFIX_AT_LEAST_ONCE).append(fullClientId).append(DURABLE_SUFFIX_AT_LEAST_ONCE).append(topic).toString(), principal));
+                dme.add(createQueueEntry(authDestinations, new StringBuilder(DURABLE_PREFIX_EXACTLY_ONCE).append(fullClientId).append(DURABLE_SUFFIX_EXACTLY_ONCE).append(topic).toString(), principal));
+            }
+        }
+        return dme;
+    }
+
+    private static String prefixOf(String durablePattern) {
+        return durablePattern.substring(0, durablePattern.indexOf("{0}"));
+    }
+
+    private static String suffixOf(String durablePattern) {
+        return durablePattern.substring(durablePattern.indexOf("{0}") + 3, durablePattern.indexOf("{1}"));
+    }
+
+    private static AuthorizationEntry createTopicEntry(List<String> authDestinations, String topic, KapuaPrincipal principal, boolean read, boolean write, boolean admin) {
+        AuthorizationEntry entry = new AuthorizationEntry();
+        entry.setDestination(ActiveMQDestination.createDestination(topic, ActiveMQDestination.TOPIC_TYPE));
+        entry.setReadACLs(aclOf(principal, read));
+        entry.setWriteACLs(aclOf(principal, write));
+        entry.setAdminACLs(aclOf(principal, admin));
+        if (authDestinations != null) {
+            authDestinations.add(new StringBuilder().append(read ? "r" : "_").append('/')
+                    .append(write ? "w" : "_").append('/')
+                    .append(admin ? "a" : "_").append(" - ")
+                    .append(topic).toString());
+        }
+        return entry;
+    }
+
+    private static AuthorizationEntry createQueueEntry(List<String> authDestinations, String queue, KapuaPrincipal principal) {
+        AuthorizationEntry entry = new AuthorizationEntry();
+        entry.setDestination(ActiveMQDestination.createDestination(queue, ActiveMQDestination.QUEUE_TYPE));
+        entry.setReadACLs(aclOf(principal, true));
+        entry.setWriteACLs(aclOf(principal, false));
+        entry.setAdminACLs(aclOf(principal, false));
+        if (authDestinations != null) {
+            authDestinations.add(new StringBuilder("r/_/_ - ").append(queue).toString());
+        }
+        return entry;
+    }
+
+    private static Set<Object> aclOf(KapuaPrincipal principal, boolean granted) {
+        Set<Object> acl = new HashSet<>();
+        if (granted) {
+            acl.add(principal);
+        }
+        return acl;
+    }
+
+    /**
+     * Topic pattern split around the account name ({0}) and client id ({1}) placeholders
+     */
+    private static class EntryTemplate {
+
+        private final List<Object> parts = new ArrayList<>();
+        private final boolean read;
+        private final boolean write;
+        private final boolean admin;
+
+        private EntryTemplate(String topicPattern, boolean read, boolean write, boolean admin) {
+            this.read = read;
+            this.write = write;
+            this.admin = admin;
+
+            int start = 0;
+            while (start < topicPattern.length()) {
+                int accountNameIdx = topicPattern.indexOf("{0}", start);
+                int clientIdIdx = topicPattern.indexOf("{1}", start);
+                int next = accountNameIdx < 0 ? clientIdIdx : (clientIdIdx < 0 ? accountNameIdx : Math.min(accountNameIdx, clientIdIdx));
+                if (next < 0) {
+                    parts.add(topicPattern.substring(start));
+                    break;
+                }
+                if (next > start) {
+                    parts.add(topicPattern.substring(start, next));
+                }
+                parts.add(next == accountNameIdx ? ACCOUNT_NAME : CLIENT_ID);
+                start = next + 3;
+            }
+        }
+
+        private String format(String[] arguments) {
+            StringBuilder sb = new StringBuilder();
+            for (Object part : parts) {
+                if (part instanceof Integer) {
+                    sb.append(arguments[(Integer) part]);
+                } else {
+                    sb.append((String) part);
+                }
+            }
+            return sb.toString();
+        }
+    }
+}
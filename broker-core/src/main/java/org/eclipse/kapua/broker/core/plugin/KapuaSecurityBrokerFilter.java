@@ -14,9 +14,9 @@ package org.eclipse.kapua.broker.core.plugin;
 
 import java.text.MessageFormat;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
@@ -35,8 +35,6 @@ import org.apache.activemq.command.ConnectionId;
 import org.apache.activemq.command.ConnectionInfo;
 import org.apache.activemq.command.ConsumerInfo;
 import org.apache.activemq.command.Message;
-import org.apache.activemq.filter.DestinationMapEntry;
-import org.apache.activemq.security.AuthorizationEntry;
 import org.apache.activemq.security.DefaultAuthorizationMap;
 import org.apache.activemq.security.SecurityContext;
 import org.apache.shiro.ShiroException;
@@ -356,7 +354,7 @@ public class KapuaSecurityBrokerFilter extends BrokerFilter {
             if (isAdminUser(username)) {
                 metricLoginKapuasysTokenAttempt.inc();
                 // 3-1) admin authMap
-                authMap = buildAdminAuthMap(authDestinations, principal, fullClientId);
+                authMap = AuthorizationMapTemplate.getAdminTemplate().buildAuthorizationMap(authDestinations, principal, accountName, clientId, fullClientId);
                 metricClientConnectedKapuasys.inc();
             } else {
                 Context loginNormalUserTimeContext = metricLoginNormalUserTime.time();
@@ -377,7 +375,10 @@ public class KapuaSecurityBrokerFilter extends BrokerFilter {
                 loginCheckAccessTimeContext.stop();
 
                 // 3-4) build authMap
-                authMap = buildAuthMap(authDestinations, principal, hasPermissions, accountName, clientId, fullClientId);
+                authMap = AuthorizationMapTemplate.getUserTemplate(hasPermissions[AclConstants.DEVICE_MANAGE_IDX],
+                        hasPermissions[AclConstants.DATA_VIEW_IDX],
+                        hasPermissions[AclConstants.DATA_MANAGE_IDX])
+                        .buildAuthorizationMap(authDestinations, principal, accountName, clientId, fullClientId);
 
                 // 4) find device
                 Context loginFindClientIdTimeContext = metricLoginFindClientIdTime.time();
@@ -400,13 +401,15 @@ public class KapuaSecurityBrokerFilter extends BrokerFilter {
                     deviceConnectionCreator.setUserId(userId);
                     deviceConnection = KapuaSecurityUtils.doPriviledge(() -> deviceConnectionService.create(deviceConnectionCreator));
                 } else {
-                    deviceConnection.setClientIp(clientIp);
-                    deviceConnection.setProtocol("MQTT");
-                    deviceConnection.setServerIp(null);// TODO to be filled with the proper value
-                    deviceConnection.setUserId(userId);
-                    deviceConnection.setStatus(DeviceConnectionStatus.CONNECTED);
-                    final DeviceConnection deviceConnectionToUpdate = deviceConnection;
-                    KapuaSecurityUtils.doPriviledge(() -> deviceConnectionService.update(deviceConnectionToUpdate));
+                    if (isDeviceConnectionChanged(deviceConnection, clientIp, userId)) {
+                        deviceConnection.setClientIp(clientIp);
+                        deviceConnection.setProtocol("MQTT");
+                        deviceConnection.setServerIp(null);// TODO to be filled with the proper value
+                        deviceConnection.setUserId(userId);
+                        deviceConnection.setStatus(DeviceConnectionStatus.CONNECTED);
+                        final DeviceConnection deviceConnectionToUpdate = deviceConnection;
+                        KapuaSecurityUtils.doPriviledge(() -> deviceConnectionService.update(deviceConnectionToUpdate));
+                    }
                     // TODO implement the banned status
                     // if (DeviceStatus.DISABLED.equals(device.getStatus())) {
                     // throw new KapuaIllegalAccessException("clientId - This client ID is disabled and cannot connect");
@@ -732,200 +735,21 @@ public class KapuaSecurityBrokerFilter extends BrokerFilter {
     //
     // ------------------------------------------------------------------
 
-    @SuppressWarnings("rawtypes")
-    private DefaultAuthorizationMap buildAdminAuthMap(List<String> authDestinations, KapuaPrincipal principal, String fullClientId) {
-        ArrayList<DestinationMapEntry> dme = new ArrayList<DestinationMapEntry>();
-        String clientId = principal.getClientId();
-        dme.addAll(createAuthorizationEntries(authDestinations, AclConstants.ACL_HASH,
-                principal, clientId, fullClientId, true, true, true));// (topic, principal, read, write, admin)
-        dme.addAll(createAuthorizationEntries(authDestinations, AclConstants.ACL_AMQ_ADVISORY,
-                principal, clientId, fullClientId, false, true, true));// (topic, principal, read, write, admin)
-        return new DefaultAuthorizationMap(dme);
-    }
-
-    @SuppressWarnings("rawtypes")
-    private DefaultAuthorizationMap buildProvisioningAuthMap(List<String> authDestinations, KapuaPrincipal principal, String accountName, String fullClientId) {
-        ArrayList<DestinationMapEntry> dme = new ArrayList<DestinationMapEntry>();
-
-        String clientId = principal.getClientId();
-        // Write reply to any client Id and any application
-        dme.addAll(createAuthorizationEntries(authDestinations, MessageFormat.format(AclConstants.ACL_CTRL_ACC_REPLY, accountName),
-                principal, clientId, fullClientId, false, true, false));// (topic, principal, read, write, admin)
-
-        // Publish only on MQTT/# for life-cycle messages and message that will trigger the provision service
-        dme.addAll(createAuthorizationEntries(authDestinations, MessageFormat.format(AclConstants.ACL_CTRL_ACC_CLI_MQTT_LIFE_CYCLE, accountName, clientId),
-                principal, clientId, fullClientId, false, true, false));// (topic, principal, read, write, admin)
-
-        // Read any control topic on its client id to be able to receive configurations and bundles
-        dme.addAll(createAuthorizationEntries(authDestinations, MessageFormat.format(AclConstants.ACL_CTRL_ACC_CLI, accountName, clientId),
-                principal, clientId, fullClientId, true, false, false));// (topic, principal, read, write, admin)
-
-        // FIXME: check if is correct "$EDC.{0}.>" instead of ">"
-        dme.addAll(createAuthorizationEntries(authDestinations, MessageFormat.format(AclConstants.ACL_CTRL_ACC, accountName),
-                principal, clientId, fullClientId, false, false, true));// (topic, principal, read, write, admin)
-
-        dme.addAll(createAuthorizationEntries(authDestinations, AclConstants.ACL_AMQ_ADVISORY,
-                principal, clientId, fullClientId, false, true, true));// (topic, principal, read, write, admin)
-
-        return new DefaultAuthorizationMap(dme);
-    }
-
-    @SuppressWarnings("rawtypes")
-    private DefaultAuthorizationMap buildAuthMap(List<String> authDestinations, KapuaPrincipal principal,
-            boolean[] hasPermissions,
-            String accountName,
-            String clientId,
-            String fullClientId) {
-        ArrayList<DestinationMapEntry> dme = new ArrayList<DestinationMapEntry>();
-
-        dme.addAll(createAuthorizationEntries(authDestinations, AclConstants.ACL_AMQ_ADVISORY,
-                principal, clientId, fullClientId, false, true, true));// (topic, principal, read, write, admin)
-
-        // addConnection checks BROKER_CONNECT_IDX permission before call this method
-        // then here user has BROKER_CONNECT_IDX permission and if check isn't needed
-        // if (hasPermissions[BROKER_CONNECT_IDX]) {
-        if (hasPermissions[AclConstants.DEVICE_MANAGE_IDX]) {
-            dme.addAll(createAuthorizationEntries(authDestinations,
-                    MessageFormat.format(AclConstants.ACL_CTRL_ACC, accountName),
-                    principal,
-                    clientId,
-                    fullClientId,
-                    true,
-                    true,
-                    true)); // (topic, principal, read, write, admin)
-        } else {
-            dme.addAll(createAuthorizationEntries(authDestinations,
-                    MessageFormat.format(AclConstants.ACL_CTRL_ACC_CLI, accountName, clientId),
-                    principal,
-                    clientId,
-                    fullClientId,
-                    true,
-                    true,
-                    true)); // (topic, principal, read, write, admin)
-        }
-
-        if (hasPermissions[AclConstants.DATA_MANAGE_IDX]) {
-            dme.addAll(createAuthorizationEntries(authDestinations,
-                    MessageFormat.format(AclConstants.ACL_DATA_ACC, accountName),
-                    principal,
-                    clientId,
-                    fullClientId,
-                    true,
-                    true,
-                    true)); // (topic, principal, read, write, admin)
-        } else if (hasPermissions[AclConstants.DATA_VIEW_IDX]) {
-            dme.addAll(createAuthorizationEntries(authDestinations,
-                    MessageFormat.format(AclConstants.ACL_DATA_ACC, accountName),
-                    principal,
-                    clientId,
-                    fullClientId,
-                    true,
-                    false,
-                    true)); // (topic, principal, read, write, admin)
-
-            dme.addAll(createAuthorizationEntries(authDestinations,
-                    MessageFormat.format(AclConstants.ACL_DATA_ACC_CLI, accountName, clientId),
-                    principal,
-                    clientId,
-                    fullClientId,
-                    false,
-                    true,
-                    false)); // (topic, principal, read, write, admin)
-        } else {
-            dme.addAll(createAuthorizationEntries(authDestinations,
-                    MessageFormat.format(AclConstants.ACL_DATA_ACC_CLI, accountName, clientId),
-                    principal,
-                    clientId,
-                    fullClientId,
-                    true,
-                    true,
-                    true)); // (topic, principal, read, write, admin)
-        }
-
-        dme.addAll(createAuthorizationEntries(authDestinations,
-                MessageFormat.format(AclConstants.ACL_CTRL_ACC_REPLY, accountName),
-                principal,
-                clientId,
-                fullClientId,
-                false,
-                true,
-                true)); // (topic, principal, read, write, admin)
-
-        // Write notify to any client Id and any application and operation
-        dme.addAll(createAuthorizationEntries(authDestinations,
-                MessageFormat.format(AclConstants.ACL_CTRL_ACC_NOTIFY, accountName, clientId),
-                principal,
-                clientId,
-                fullClientId,
-                false,
-                true,
-                false));// (topic, principal, read, write, admin)
-
-        return new DefaultAuthorizationMap(dme);
-    }
-
-    protected List<AuthorizationEntry> createAuthorizationEntries(List<String> authDestinations, String topic, KapuaPrincipal principal, String clientId, String fullClientId, boolean read,
-            boolean write, boolean admin) {
-        List<AuthorizationEntry> entries = new ArrayList<AuthorizationEntry>();
-        entries.add(createAuthorizationEntry(authDestinations, topic, principal, read, write, admin));
-        // added to support the vt topic name space for durable subscriptions
-        if (read) {
-            // logger.info("pattern {} - clientid {} - topic {} - evaluated {}", new Object[]{JmsConstants.ACL_VT_DURABLE_PREFIX[0], clientId, topic,
-            // MessageFormat.format(JmsConstants.ACL_VT_DURABLE_PREFIX[0], fullClientId, topic)});
-            entries.add(createAuthorizationEntry(authDestinations, MessageFormat.format(AclConstants.ACL_VT_DURABLE_PREFIX[0], fullClientId, topic), principal));
-            // logger.info("pattern {} - clientid {} - topic {} - evaluated {}", new Object[]{JmsConstants.ACL_VT_DURABLE_PREFIX[1], clientId, topic,
-            // MessageFormat.format(JmsConstants.ACL_VT_DURABLE_PREFIX[1], fullClientId, topic)});
-            entries.add(createAuthorizationEntry(authDestinations, MessageFormat.format(AclConstants.ACL_VT_DURABLE_PREFIX[1], fullClientId, topic), principal));
-        }
-        return entries;
-    }
-
-    protected AuthorizationEntry createAuthorizationEntry(List<String> authDestinations, String topic, KapuaPrincipal principal, boolean read, boolean write, boolean admin) {
-        AuthorizationEntry entry = new AuthorizationEntry();
-        entry.setDestination(ActiveMQDestination.createDestination(topic, ActiveMQDestination.TOPIC_TYPE));
-        Set<Object> writeACLs = new HashSet<Object>();
-        Set<Object> readACLs = new HashSet<Object>();
-        Set<Object> adminACLs = new HashSet<Object>();
-        if (read) {
-            readACLs.add(principal);
-        }
-        if (write) {
-            writeACLs.add(principal);
-        }
-        if (admin) {
-            adminACLs.add(principal);
-        }
-        entry.setWriteACLs(writeACLs);
-        entry.setReadACLs(readACLs);
-        entry.setAdminACLs(adminACLs);
-        addAuthDestinationToLog(authDestinations, MessageFormat.format(AclConstants.PERMISSION_LOG,
-                read ? "r" : "_",
-                write ? "w" : "_",
-                admin ? "a" : "_",
-                topic));
-        return entry;
-
-    }
-
-    protected AuthorizationEntry createAuthorizationEntry(List<String> authDestinations, String topic, KapuaPrincipal principal) {
-        AuthorizationEntry entry = new AuthorizationEntry();
-        entry.setDestination(ActiveMQDestination.createDestination(topic, ActiveMQDestination.QUEUE_TYPE));
-        Set<Object> writeACLs = new HashSet<Object>();
-        Set<Object> readACLs = new HashSet<Object>();
-        Set<Object> adminACLs = new HashSet<Object>();
-        readACLs.add(principal);
-        entry.setWriteACLs(writeACLs);
-        entry.setReadACLs(readACLs);
-        entry.setAdminACLs(adminACLs);
-        addAuthDestinationToLog(authDestinations, MessageFormat.format(AclConstants.PERMISSION_LOG, "r", "_", "_", topic));
-        return entry;
-
-    }
-
-    private void addAuthDestinationToLog(List<String> authDestinations, String message) {
-        if (logger.isDebugEnabled()) {
-            authDestinations.add(message);
-        }
+    /**
+     * Tell if the stored device connection has to be updated for the new connection.<br>
+     * A device reconnecting from the same address with the same user to a connection already marked as connected needs no write.
+     * 
+     * @param deviceConnection
+     * @param clientIp
+     * @param userId
+     * @return
+     */
+    private boolean isDeviceConnectionChanged(DeviceConnection deviceConnection, String clientIp, KapuaId userId) {
+        return !DeviceConnectionStatus.CONNECTED.equals(deviceConnection.getStatus()) ||
+                !"MQTT".equals(deviceConnection.getProtocol()) ||
+                deviceConnection.getServerIp() != null ||
+                !Objects.equals(clientIp, deviceConnection.getClientIp()) ||
+                !Objects.equals(userId, deviceConnection.getUserId());
     }
 
     private void logAuthDestinationToLog(List<String> authDestinations) {
@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.broker.core.plugin;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.Proxy;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.security.AuthorizationEntry;
+import org.eclipse.kapua.service.authentication.KapuaPrincipal;
+import org.junit.Test;
+
+/**
+ * Check the templates build the same ACL entries as the per connection MessageFormat based builder they replaced
+ */
+public class AuthorizationMapTemplateTest {
+
+    private static final String ACCOUNT_NAME   = "account";
+    private static final String CLIENT_ID      = "client-1";
+    private static final String FULL_CLIENT_ID = MessageFormat.format(AclConstants.MULTI_ACCOUNT_CLIENT_ID, ACCOUNT_NAME, CLIENT_ID);
+
+    private final KapuaPrincipal principal = (KapuaPrincipal) Proxy.newProxyInstance(KapuaPrincipal.class.getClassLoader(), new Class<?>[] { KapuaPrincipal.class },
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                case "getClientId":
+                    return CLIENT_ID;
+                case "toString":
+                    return FULL_CLIENT_ID;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    return null;
+                }
+            });
+
+    @Test
+    public void testAdminEntries() {
+        List<String> expectedLog = new ArrayList<>();
+        List<AuthorizationEntry> expected = buildAdminEntries(expectedLog);
+
+        List<String> log = new ArrayList<>();
+        List<AuthorizationEntry> entries = AuthorizationMapTemplate.getAdminTemplate().buildAuthorizationEntries(log, principal, ACCOUNT_NAME, CLIENT_ID, FULL_CLIENT_ID);
+
+        assertEntriesEqual(expected, entries);
+        assertEquals(expectedLog, log);
+    }
+
+    @Test
+    public void testNormalUserEntries() {
+        List<String> expectedLog = new ArrayList<>();
+        List<AuthorizationEntry> expected = buildUserEntries(expectedLog, false, false, false);
+
+        List<String> log = new ArrayList<>();
+        List<AuthorizationEntry> entries = AuthorizationMapTemplate.getUserTemplate(false, false, false).buildAuthorizationEntries(log, principal, ACCOUNT_NAME, CLIENT_ID, FULL_CLIENT_ID);
+
+        assertEntriesEqual(expected, entries);
+        assertEquals(expectedLog, log);
+    }
+
+    @Test
+    public void testDeviceManageEntries() {
+        List<String> expectedLog = new ArrayList<>();
+        List<AuthorizationEntry> expected = buildUserEntries(expectedLog, true, false, false);
+
+        List<String> log = new ArrayList<>();
+        List<AuthorizationEntry> entries = AuthorizationMapTemplate.getUserTemplate(true, false, false).buildAuthorizationEntries(log, principal, ACCOUNT_NAME, CLIENT_ID, FULL_CLIENT_ID);
+
+        assertEntriesEqual(expected, entries);
+        assertEquals(expectedLog, log);
+    }
+
+    @Test
+    public void testEveryPermissionProfileEntries() {
+        for (int i = 0; i < 8; i++) {
+            boolean deviceManage = (i & 1) != 0;
+            boolean dataView = (i & 2) != 0;
+            boolean dataManage = (i & 4) != 0;
+
+            List<String> expectedLog = new ArrayList<>();
+            List<AuthorizationEntry> expected = buildUserEntries(expectedLog, deviceManage, dataView, dataManage);
+
+            List<String> log = new ArrayList<>();
+            List<AuthorizationEntry> entries = AuthorizationMapTemplate.getUserTemplate(deviceManage, dataView, dataManage)
+                    .buildAuthorizationEntries(log, principal, ACCOUNT_NAME, CLIENT_ID, FULL_CLIENT_ID);
+
+            assertEntriesEqual(expected, entries);
+            assertEquals(expectedLog, log);
+        }
+    }
+
+    private static void assertEntriesEqual(List<AuthorizationEntry> expected, List<AuthorizationEntry> entries) {
+        assertEquals(describe(expected), describe(entries));
+    }
+
+    private static List<String> describe(List<AuthorizationEntry> entries) {
+        List<String> descriptions = new ArrayList<>();
+        for (AuthorizationEntry entry : entries) {
+            descriptions.add(new StringBuilder().append(entry.getDestination().getDestinationType())
+                    .append(' ').append(entry.getDestination().getPhysicalName())
+                    .append(" r=").append(entry.getReadACLs())
+                    .append(" w=").append(entry.getWriteACLs())
+                    .append(" a=").append(entry.getAdminACLs())
+                    .toString());
+        }
+        return descriptions;
+    }
+
+    //
+    // The builder replaced by the templates (KapuaSecurityBrokerFilter.buildAdminAuthMap and buildAuthMap)
+    //
+
+    private List<AuthorizationEntry> buildAdminEntries(List<String> authDestinations) {
+        List<AuthorizationEntry> dme = new ArrayList<>();
+        dme.addAll(createAuthorizationEntries(authDestinations, AclConstants.ACL_HASH, true, true, true));
+        dme.addAll(createAuthorizationEntries(authDestinations, AclConstants.ACL_AMQ_ADVISORY, false, true, true));
+        return dme;
+    }
+
+    private List<AuthorizationEntry> buildUserEntries(List<String> authDestinations, boolean deviceManage, boolean dataView, boolean dataManage) {
+        List<AuthorizationEntry> dme = new ArrayList<>();
+
+        dme.addAll(createAuthorizationEntries(authDestinations, AclConstants.ACL_AMQ_ADVISORY, false, true, true));
+
+        if (deviceManage) {
+            dme.addAll(createAuthorizationEntries(authDestinations, MessageFormat.format(AclConstants.ACL_CTRL_ACC, ACCOUNT_NAME), true, true, true));
+        } else {
+            dme.addAll(createAuthorizationEntries(authDestinations, MessageFormat.format(AclConstants.ACL_CTRL_ACC_CLI, ACCOUNT_NAME, CLIENT_ID), true, true, true));
+        }
+
+        if (dataManage) {
+            dme.addAll(createAuthorizationEntries(authDestinations, MessageFormat.format(AclConstants.ACL_DATA_ACC, ACCOUNT_NAME), true, true, true));
+        } else if (dataView) {
+            dme.addAll(createAuthorizationEntries(authDestinations, MessageFormat.format(AclConstants.ACL_DATA_ACC, ACCOUNT_NAME), true, false, true));
+            dme.addAll(createAuthorizationEntries(authDestinations, MessageFormat.format(AclConstants.ACL_DATA_ACC_CLI, ACCOUNT_NAME, CLIENT_ID), false, true, false));
+        } else {
+            dme.addAll(createAuthorizationEntries(authDestinations, MessageFormat.format(AclConstants.ACL_DATA_ACC_CLI, ACCOUNT_NAME, CLIENT_ID), true, true, true));
+        }
+
+        dme.addAll(createAuthorizationEntries(authDestinations, MessageFormat.format(AclConstants.ACL_CTRL_ACC_REPLY, ACCOUNT_NAME), false, true, true));
+        dme.addAll(createAuthorizationEntries(authDestinations, MessageFormat.format(AclConstants.ACL_CTRL_ACC_NOTIFY, ACCOUNT_NAME, CLIENT_ID), false, true, false));
+
+        return dme;
+    }
+
+    private List<AuthorizationEntry> createAuthorizationEntries(List<String> authDestinations, String topic, boolean read, boolean write, boolean admin) {
+        List<AuthorizationEntry> entries = new ArrayList<>();
+        entries.add(createAuthorizationEntry(authDestinations, topic, ActiveMQDestination.TOPIC_TYPE, read, write, admin));
+        if (read) {
+            entries.add(createAuthorizationEntry(authDestinations, MessageFormat.format(AclConstants.ACL_VT_DURABLE_PREFIX[0], FULL_CLIENT_ID, topic), ActiveMQDestination.QUEUE_TYPE, true, false, false));
+            entries.add(createAuthorizationEntry(authDestinations, MessageFormat.format(AclConstants.ACL_VT_DURABLE_PREFIX[1], FULL_CLIENT_ID, topic), ActiveMQDestination.QUEUE_TYPE, true, false, false));
+        }
+        return entries;
+    }
+
+    private AuthorizationEntry createAuthorizationEntry(List<String> authDestinations, String destination, byte type, boolean read, boolean write, boolean admin) {
+        AuthorizationEntry entry = new AuthorizationEntry();
+        entry.setDestination(ActiveMQDestination.createDestination(destination, type));
+        entry.setReadACLs(acl(read));
+        entry.setWriteACLs(acl(write));
+        entry.setAdminACLs(acl(admin));
+        authDestinations.add(MessageFormat.format(AclConstants.PERMISSION_LOG, read ? "r" : "_", write ? "w" : "_", admin ? "a" : "_", destination));
+        return entry;
+    }
+
+    private Set<Object> acl(boolean granted) {
+        Set<Object> acl = new HashSet<>();
+        if (granted) {
+            acl.add(principal);
+        }
+        return acl;
+    }
+}
@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.commons.cache;
+
+import java.math.BigInteger;
+
+import org.eclipse.kapua.commons.setting.system.SystemSetting;
+import org.eclipse.kapua.commons.setting.system.SystemSettingKey;
+import org.eclipse.kapua.model.id.KapuaId;
+
+/**
+ * Shared, bounded cache resolving the identities carried by the inbound device messages:
+ * the account name to the account id (the message scope id) and the (scope id, client id) pair to the device id.<br>
+ * Only existing entities are cached; the owning services have to evict the entries when the entities are deleted.
+ *
+ * @since 1.0
+ */
+public class IdentityCache
+{
+
+    private static final IdentityCache instance = new IdentityCache();
+
+    private final LocalCache<String, KapuaId>    accountIds;
+    private final LocalCache<DeviceKey, KapuaId> deviceIds;
+
+    private IdentityCache()
+    {
+        SystemSetting config = SystemSetting.getInstance();
+        int sizeMax = config.getInt(SystemSettingKey.IDENTITY_CACHE_SIZE_MAXIMUM, 10000);
+        int expireAfter = config.getInt(SystemSettingKey.IDENTITY_CACHE_EXPIRE_AFTER, 600);
+
+        accountIds = new LocalCache<String, KapuaId>(sizeMax, expireAfter, null);
+        deviceIds = new LocalCache<DeviceKey, KapuaId>(sizeMax, expireAfter, null);
+    }
+
+    /**
+     * Get the identity cache instance
+     *
+     * @return
+     */
+    public static IdentityCache getInstance()
+    {
+        return instance;
+    }
+
+    /**
+     * Return the cached account id for the given account name or null if not cached
+     *
+     * @param accountName
+     * @return
+     */
+    public KapuaId getAccountId(String accountName)
+    {
+        return accountIds.get(accountName);
+    }
+
+    /**
+     * Cache the account id for the given account name
+     *
+     * @param accountName
+     * @param accountId
+     */
+    public void putAccountId(String accountName, KapuaId accountId)
+    {
+        accountIds.put(accountName, accountId);
+    }
+
+    /**
+     * Return the cached device id for the given scope id and client id or null if not cached
+     *
+     * @param scopeId
+     * @param clientId
+     * @return
+     */
+    public KapuaId getDeviceId(KapuaId scopeId, String clientId)
+    {
+        return deviceIds.get(new DeviceKey(scopeId, clientId));
+    }
+
+    /**
+     * Cache the device id for the given scope id and client id
+     *
+     * @param scopeId
+     * @param clientId
+     * @param deviceId
+     */
+    public void putDeviceId(KapuaId scopeId, String clientId, KapuaId deviceId)
+    {
+        deviceIds.put(new DeviceKey(scopeId, clientId), deviceId);
+    }
+
+    /**
+     * Evict the given account and all the devices cached for its scope
+     *
+     * @param accountId
+     */
+    public void removeAccount(KapuaId accountId)
+    {
+        for (String accountName : accountIds.getAllKeys()) {
+            KapuaId cachedId = accountIds.get(accountName);
+            if (cachedId != null && accountId.getId().equals(cachedId.getId())) {
+                accountIds.remove(accountName);
+            }
+        }
+        for (DeviceKey deviceKey : deviceIds.getAllKeys()) {
+            if (accountId.getId().equals(deviceKey.scopeId)) {
+                deviceIds.remove(deviceKey);
+            }
+        }
+    }
+
+    /**
+     * Evict the given device
+     *
+     * @param scopeId
+     * @param deviceId
+     */
+    public void removeDevice(KapuaId scopeId, KapuaId deviceId)
+    {
+        for (DeviceKey deviceKey : deviceIds.getAllKeys()) {
+            KapuaId cachedId = deviceIds.get(deviceKey);
+            if (scopeId.getId().equals(deviceKey.scopeId) && cachedId != null && deviceId.getId().equals(cachedId.getId())) {
+                deviceIds.remove(deviceKey);
+            }
+        }
+    }
+
+    private static final class DeviceKey
+    {
+
+        private final BigInteger scopeId;
+        private final String     clientId;
+
+        private DeviceKey(KapuaId scopeId, String clientId)
+        {
+            this.scopeId = scopeId.getId();
+            this.clientId = clientId;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * scopeId.hashCode() + clientId.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof DeviceKey)) {
+                return false;
+            }
+            DeviceKey other = (DeviceKey) obj;
+            return scopeId.equals(other.scopeId) && clientId.equals(other.clientId);
+        }
+    }
+}
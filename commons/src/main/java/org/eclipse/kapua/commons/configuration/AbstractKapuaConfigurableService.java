@@ -20,6 +20,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.stream.FactoryConfigurationError;
 import javax.xml.stream.XMLStreamException;
@@ -32,6 +33,8 @@ import org.eclipse.kapua.commons.model.query.predicate.AndPredicate;
 import org.eclipse.kapua.commons.model.query.predicate.AttributePredicate;
 import org.eclipse.kapua.commons.security.KapuaSecurityUtils;
 import org.eclipse.kapua.commons.service.internal.AbstractKapuaService;
+import org.eclipse.kapua.commons.setting.system.SystemSetting;
+import org.eclipse.kapua.commons.setting.system.SystemSettingKey;
 import org.eclipse.kapua.commons.util.KapuaExceptionUtils;
 import org.eclipse.kapua.commons.util.ResourceUtils;
 import org.eclipse.kapua.commons.util.xml.XmlUtil;
@@ -56,6 +59,11 @@ import org.eclipse.kapua.service.config.KapuaConfigurableService;
 @SuppressWarnings("serial")
 public abstract class AbstractKapuaConfigurableService extends AbstractKapuaService implements KapuaConfigurableService, Serializable {
 
+    private static final Map<String, KapuaTocd>   OCD_CACHE    = new ConcurrentHashMap<String, KapuaTocd>();
+    private static final ServiceConfigValuesCache VALUES_CACHE = new ServiceConfigValuesCache(
+            SystemSetting.getInstance().getInt(SystemSettingKey.CONFIG_CACHE_SIZE_MAXIMUM, 1000),
+            SystemSetting.getInstance().getInt(SystemSettingKey.CONFIG_CACHE_EXPIRE_AFTER, 300));
+
     private Domain domain = null;
     private String pid = null;
 
@@ -265,11 +273,30 @@ public abstract class AbstractKapuaConfigurableService extends AbstractKapuaServ
         KapuaId scopeId = KapuaSecurityUtils.getSession().getScopeId();
         authorizationService.checkPermission(permissionFactory.newPermission(domain, Actions.read, scopeId));
 
+        return readOcd(this.pid);
+    }
+
+    /**
+     * Return the object class definition for the service pid.<br>
+     * The metatype is parsed only once, then the definition is served from the cache.
+     * 
+     * @param pid
+     * @return
+     * @throws KapuaException
+     */
+    private static KapuaTocd readOcd(String pid)
+            throws KapuaException {
+        KapuaTocd cachedOcd = OCD_CACHE.get(pid);
+        if (cachedOcd != null) {
+            return cachedOcd;
+        }
+
         try {
-            KapuaTmetadata metadata = readMetadata(this.pid);
-            if (metadata.getOCD() != null && metadata.getOCD().size() > 0) {
+            KapuaTmetadata metadata = readMetadata(pid);
+            if (metadata != null && metadata.getOCD() != null && metadata.getOCD().size() > 0) {
                 for (KapuaTocd ocd : metadata.getOCD()) {
                     if (ocd.getId() != null && ocd.getId().equals(pid)) {
+                        OCD_CACHE.put(pid, ocd);
                         return ocd;
                     }
                 }
@@ -280,6 +307,16 @@ public abstract class AbstractKapuaConfigurableService extends AbstractKapuaServ
         }
     }
 
+    /**
+     * Build the configuration values cache key for the service pid and the scope
+     * 
+     * @param scopeId
+     * @return
+     */
+    private String getValuesCacheKey(KapuaId scopeId) {
+        return new StringBuilder().append(pid).append('/').append(scopeId != null ? scopeId.getId() : null).toString();
+    }
+
     @Override
     public Map<String, Object> getConfigValues(KapuaId scopeId)
             throws KapuaException {
@@ -288,21 +325,34 @@ public abstract class AbstractKapuaConfigurableService extends AbstractKapuaServ
         PermissionFactory permissionFactory = locator.getFactory(PermissionFactory.class);
         authorizationService.checkPermission(permissionFactory.newPermission(domain, Actions.read, scopeId));
 
-        AndPredicate predicate = new AndPredicate()
-                .and(new AttributePredicate<String>("pid", this.pid, Operator.EQUAL))
-                .and(new AttributePredicate<KapuaId>("scopeId", scopeId, Operator.EQUAL));
-
-        ServiceConfigQueryImpl query = new ServiceConfigQueryImpl(scopeId);
-        query.setPredicate(predicate);
+        String cacheKey = getValuesCacheKey(scopeId);
+        Map<String, Object> values = VALUES_CACHE.get(cacheKey);
+        if (values == null) {
+            long generation = VALUES_CACHE.getGeneration();
+            AndPredicate predicate = new AndPredicate()
+                    .and(new AttributePredicate<String>("pid", this.pid, Operator.EQUAL))
+                    .and(new AttributePredicate<KapuaId>("scopeId", scopeId, Operator.EQUAL));
+
+            ServiceConfigQueryImpl query = new ServiceConfigQueryImpl(scopeId);
+            query.setPredicate(predicate);
+
+            Properties properties = null;
+            EntityManager em = this.entityManagerFactory.createEntityManager();
+            try {
+                ServiceConfigListResult result = ServiceConfigDAO.query(em, ServiceConfig.class, ServiceConfigImpl.class, new ServiceConfigListResultImpl(), query);
+                if (result != null && result.getSize() > 0)
+                    properties = result.getItem(0).getConfigurations();
+            } finally {
+                em.close();
+            }
 
-        Properties properties = null;
-        EntityManager em = this.entityManagerFactory.createEntityManager();
-        ServiceConfigListResult result = ServiceConfigDAO.query(em, ServiceConfig.class, ServiceConfigImpl.class, new ServiceConfigListResultImpl(), query);
-        if (result != null && result.getSize() > 0)
-            properties = result.getItem(0).getConfigurations();
+            KapuaTocd ocd = readOcd(this.pid);
+            values = toValues(ocd, properties);
+            VALUES_CACHE.put(cacheKey, values, generation);
+        }
 
-        KapuaTocd ocd = this.getConfigMetadata();
-        return toValues(ocd, properties);
+        // Callers are free to change the returned map
+        return new HashMap<String, Object>(values);
     }
 
     @Override
@@ -313,7 +363,7 @@ public abstract class AbstractKapuaConfigurableService extends AbstractKapuaServ
         PermissionFactory permissionFactory = locator.getFactory(PermissionFactory.class);
         authorizationService.checkPermission(permissionFactory.newPermission(domain, Actions.write, scopeId));
 
-        KapuaTocd ocd = this.getConfigMetadata();
+        KapuaTocd ocd = readOcd(this.pid);
         validateConfigurations(this.pid, ocd, values);
 
         Properties props = toProperties(values);
@@ -327,21 +377,31 @@ public abstract class AbstractKapuaConfigurableService extends AbstractKapuaServ
 
         ServiceConfig serviceConfig = null;
         EntityManager em = this.entityManagerFactory.createEntityManager();
-        ServiceConfigListResultImpl result = ServiceConfigDAO.query(em, ServiceConfig.class, ServiceConfigImpl.class, new ServiceConfigListResultImpl(), query);
-
-        // In not exists create then return
-        if (result == null || result.getSize() == 0) {
-            ServiceConfigImpl serviceConfigNew = new ServiceConfigImpl(scopeId);
-            serviceConfigNew.setPid(this.pid);
-            serviceConfigNew.setConfigurations(props);
-            serviceConfig = this.create(em, serviceConfigNew);
-            return;
+        ServiceConfigListResultImpl result;
+        try {
+            result = ServiceConfigDAO.query(em, ServiceConfig.class, ServiceConfigImpl.class, new ServiceConfigListResultImpl(), query);
+        } catch (KapuaException | RuntimeException e) {
+            em.close();
+            throw e;
         }
 
-        // If exists update it
-        serviceConfig = result.getItem(0);
-        serviceConfig.setConfigurations(props);
-        this.update(em, serviceConfig);
-        return;
+        try {
+            // In not exists create then return
+            if (result == null || result.getSize() == 0) {
+                ServiceConfigImpl serviceConfigNew = new ServiceConfigImpl(scopeId);
+                serviceConfigNew.setPid(this.pid);
+                serviceConfigNew.setConfigurations(props);
+                serviceConfig = this.create(em, serviceConfigNew);
+                return;
+            }
+
+            // If exists update it
+            serviceConfig = result.getItem(0);
+            serviceConfig.setConfigurations(props);
+            this.update(em, serviceConfig);
+            return;
+        } finally {
+            VALUES_CACHE.invalidate(getValuesCacheKey(scopeId));
+        }
     }
 }
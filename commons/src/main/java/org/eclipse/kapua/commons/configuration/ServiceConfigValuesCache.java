@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.commons.configuration;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.kapua.commons.cache.LocalCache;
+
+/**
+ * Cache of the configuration values by service pid and scope.<br>
+ * A load started before an invalidation may read the values being replaced, so the values are cached only if no invalidation happened while loading them:
+ * the loader reads the generation before loading and passes it to {@link #put(String, Map, long)}, which drops the values if the generation changed meanwhile.
+ * 
+ * @since 1.0
+ */
+class ServiceConfigValuesCache {
+
+    private final LocalCache<String, Map<String, Object>> values;
+    private final AtomicLong                              generation = new AtomicLong();
+
+    /**
+     * Constructor
+     * 
+     * @param sizeMax maximum number of cached configurations
+     * @param expireAfter maximum age (seconds) of a cached configuration
+     */
+    ServiceConfigValuesCache(int sizeMax, int expireAfter) {
+        this.values = new LocalCache<String, Map<String, Object>>(sizeMax, expireAfter, null);
+    }
+
+    /**
+     * Return the current generation, to be read before loading the values to be cached
+     * 
+     * @return
+     */
+    long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Return the cached values, or null if not cached
+     * 
+     * @param key
+     * @return
+     */
+    Map<String, Object> get(String key) {
+        return values.get(key);
+    }
+
+    /**
+     * Cache the loaded values, unless an invalidation happened since the given generation has been read
+     * 
+     * @param key
+     * @param loadedValues
+     * @param loadGeneration the generation read before loading the values
+     */
+    void put(String key, Map<String, Object> loadedValues, long loadGeneration) {
+        if (generation.get() != loadGeneration) {
+            return;
+        }
+
+        values.put(key, loadedValues);
+
+        // An invalidation may have happened between the check and the put
+        if (generation.get() != loadGeneration) {
+            values.remove(key);
+        }
+    }
+
+    /**
+     * Invalidate the cached values, to be called once the new values are committed
+     * 
+     * @param key
+     */
+    void invalidate(String key) {
+        generation.incrementAndGet();
+        values.remove(key);
+    }
+}
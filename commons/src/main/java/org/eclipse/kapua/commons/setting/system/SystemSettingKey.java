@@ -172,7 +172,25 @@ public enum SystemSettingKey implements SettingKey
     /**
      * Maximum allowed retry (due to a {@link EntityExistsException}, so already exists key) on insert operation
      */
-    KAPUA_INSERT_MAX_RETRY("commons.entity.insert.max.retry");
+    KAPUA_INSERT_MAX_RETRY("commons.entity.insert.max.retry"),
+
+    /**
+     * Service configuration values cache maximum size
+     */
+    CONFIG_CACHE_SIZE_MAXIMUM("commons.config.cache.size.maximum"),
+    /**
+     * Service configuration values cache entries ttl (seconds)
+     */
+    CONFIG_CACHE_EXPIRE_AFTER("commons.config.cache.expire.after"),
+
+    /**
+     * Account and device identity cache maximum size
+     */
+    IDENTITY_CACHE_SIZE_MAXIMUM("commons.identity.cache.size.maximum"),
+    /**
+     * Account and device identity cache entries ttl (seconds)
+     */
+    IDENTITY_CACHE_EXPIRE_AFTER("commons.identity.cache.expire.after");
 
     private String key;
 
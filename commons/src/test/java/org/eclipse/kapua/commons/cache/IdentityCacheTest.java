@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.commons.cache;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.junit.Test;
+
+public class IdentityCacheTest
+{
+
+    private static final Random random = new Random();
+
+    private static KapuaId newId()
+    {
+        return new KapuaEid(new BigInteger(64, random));
+    }
+
+    @Test
+    public void testDeviceIdLookup()
+    {
+        IdentityCache identityCache = IdentityCache.getInstance();
+        KapuaId scopeId = newId();
+        KapuaId deviceId = newId();
+
+        identityCache.putDeviceId(scopeId, "client-1", deviceId);
+
+        assertEquals(deviceId, identityCache.getDeviceId(new KapuaEid(scopeId.getId()), "client-1"));
+        assertNull(identityCache.getDeviceId(scopeId, "client-2"));
+        assertNull(identityCache.getDeviceId(newId(), "client-1"));
+    }
+
+    @Test
+    public void testRemoveDevice()
+    {
+        IdentityCache identityCache = IdentityCache.getInstance();
+        KapuaId scopeId = newId();
+        KapuaId deviceId = newId();
+        KapuaId otherDeviceId = newId();
+
+        identityCache.putDeviceId(scopeId, "client-1", deviceId);
+        identityCache.putDeviceId(scopeId, "client-2", otherDeviceId);
+        identityCache.removeDevice(scopeId, deviceId);
+
+        assertNull(identityCache.getDeviceId(scopeId, "client-1"));
+        assertEquals(otherDeviceId, identityCache.getDeviceId(scopeId, "client-2"));
+    }
+
+    @Test
+    public void testRemoveAccount()
+    {
+        IdentityCache identityCache = IdentityCache.getInstance();
+        KapuaId accountId = newId();
+        KapuaId otherAccountId = newId();
+        KapuaId deviceId = newId();
+        KapuaId otherDeviceId = newId();
+
+        identityCache.putAccountId("account-" + accountId, accountId);
+        identityCache.putAccountId("account-" + otherAccountId, otherAccountId);
+        identityCache.putDeviceId(accountId, "client-1", deviceId);
+        identityCache.putDeviceId(otherAccountId, "client-1", otherDeviceId);
+        identityCache.removeAccount(accountId);
+
+        assertNull(identityCache.getAccountId("account-" + accountId));
+        assertNull(identityCache.getDeviceId(accountId, "client-1"));
+        assertEquals(otherAccountId, identityCache.getAccountId("account-" + otherAccountId));
+        assertEquals(otherDeviceId, identityCache.getDeviceId(otherAccountId, "client-1"));
+    }
+}
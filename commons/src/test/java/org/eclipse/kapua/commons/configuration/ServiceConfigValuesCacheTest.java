@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.commons.configuration;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ServiceConfigValuesCacheTest
+{
+
+    private static Map<String, Object> values(int maxNumberChildEntities)
+    {
+        return Collections.<String, Object> singletonMap("maxNumberChildEntities", maxNumberChildEntities);
+    }
+
+    @Test
+    public void testLoadedValuesAreCached()
+    {
+        ServiceConfigValuesCache cache = new ServiceConfigValuesCache(10, 60);
+
+        cache.put("pid/1", values(5), cache.getGeneration());
+
+        assertEquals(values(5), cache.get("pid/1"));
+        assertNull(cache.get("pid/2"));
+    }
+
+    @Test
+    public void testInvalidateEvictsTheValues()
+    {
+        ServiceConfigValuesCache cache = new ServiceConfigValuesCache(10, 60);
+        cache.put("pid/1", values(5), cache.getGeneration());
+        cache.put("pid/2", values(7), cache.getGeneration());
+
+        cache.invalidate("pid/1");
+
+        assertNull(cache.get("pid/1"));
+        assertEquals(values(7), cache.get("pid/2"));
+    }
+
+    @Test
+    public void testValuesLoadedBeforeAnInvalidationAreNotCached()
+    {
+        ServiceConfigValuesCache cache = new ServiceConfigValuesCache(10, 60);
+        long generation = cache.getGeneration();
+
+        // The values are written and invalidated while the stale ones are being loaded
+        cache.invalidate("pid/1");
+        cache.put("pid/1", values(5), generation);
+
+        assertNull(cache.get("pid/1"));
+
+        cache.put("pid/1", values(10), cache.getGeneration());
+        assertEquals(values(10), cache.get("pid/1"));
+    }
+}
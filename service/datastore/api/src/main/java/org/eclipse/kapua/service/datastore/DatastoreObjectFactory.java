@@ -21,6 +21,7 @@ import org.eclipse.kapua.service.datastore.model.Position;
 import org.eclipse.kapua.service.datastore.model.TopicInfo;
 import org.eclipse.kapua.service.datastore.model.query.AssetInfoQuery;
 import org.eclipse.kapua.service.datastore.model.query.MessageQuery;
+import org.eclipse.kapua.service.datastore.model.query.MetricAggregationQuery;
 import org.eclipse.kapua.service.datastore.model.query.TopicInfoQuery;
 
 public interface DatastoreObjectFactory extends KapuaObjectFactory
@@ -31,6 +32,8 @@ public interface DatastoreObjectFactory extends KapuaObjectFactory
 
     public MessageQuery newStorableMessageQuery();
 
+    public MetricAggregationQuery newMetricAggregationQuery();
+
     public Payload newPayload();
 
     public Position newPosition();
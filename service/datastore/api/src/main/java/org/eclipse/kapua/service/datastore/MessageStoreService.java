@@ -12,6 +12,10 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.datastore;
 
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
 import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.model.id.KapuaId;
 import org.eclipse.kapua.service.KapuaService;
@@ -19,9 +23,13 @@ import org.eclipse.kapua.service.config.KapuaConfigurableService;
 import org.eclipse.kapua.service.datastore.model.Message;
 import org.eclipse.kapua.service.datastore.model.MessageCreator;
 import org.eclipse.kapua.service.datastore.model.MessageListResult;
+import org.eclipse.kapua.service.datastore.model.MetricAggregationListResult;
+import org.eclipse.kapua.service.datastore.model.MetricRollupListResult;
 import org.eclipse.kapua.service.datastore.model.StorableId;
 import org.eclipse.kapua.service.datastore.model.query.MessageFetchStyle;
+import org.eclipse.kapua.service.datastore.model.query.MessageHandler;
 import org.eclipse.kapua.service.datastore.model.query.MessageQuery;
+import org.eclipse.kapua.service.datastore.model.query.MetricAggregationQuery;
 
 /**
  * Service responsible for storing and accessing telemetry data generated by devices. If given operation is not
@@ -33,18 +41,124 @@ public interface MessageStoreService extends KapuaService,
     StorableId store(KapuaId scopeId, MessageCreator message)
         throws KapuaException;
 
+    /**
+     * Queue the message for storage without waiting for the underlying store to persist it.<br>
+     * Messages queued by concurrent callers may be written together.
+     * 
+     * @param scopeId
+     * @param message
+     * @return a future completed with the message id once the message is stored, or completed exceptionally if the store fails
+     * @throws KapuaException if the message cannot be queued
+     */
+    CompletableFuture<StorableId> storeAsync(KapuaId scopeId, MessageCreator message)
+        throws KapuaException;
+
     void delete(KapuaId scopeId, StorableId id)
         throws KapuaException;
 
+    /**
+     * Find the message by id, looking it up in every index of the account.<br>
+     * If the message timestamp is known prefer {@link #find(KapuaId, StorableId, Date, MessageFetchStyle)}, which gets the message directly.
+     * 
+     * @param scopeId
+     * @param id
+     * @param fetchStyle
+     * @return the message or null if not found
+     * @throws KapuaException
+     */
     Message find(KapuaId scopeId, StorableId id, MessageFetchStyle fetchStyle)
         throws KapuaException;
 
+    /**
+     * Find the message by id with a realtime get from the index holding the messages with the given timestamp.<br>
+     * The timestamp is the one of the stored message (as returned by the queries), the message is found as soon as it is stored.
+     * 
+     * @param scopeId
+     * @param id
+     * @param timestamp
+     * @param fetchStyle
+     * @return the message or null if not found
+     * @throws KapuaException
+     */
+    Message find(KapuaId scopeId, StorableId id, Date timestamp, MessageFetchStyle fetchStyle)
+        throws KapuaException;
+
+    /**
+     * Find the messages by id with a single realtime multi get, every message is read from the index holding the messages with its timestamp
+     * 
+     * @param scopeId
+     * @param ids the message ids with the timestamps of the stored messages
+     * @param fetchStyle
+     * @return the messages found, in the iteration order of the ids
+     * @throws KapuaException
+     */
+    MessageListResult find(KapuaId scopeId, Map<StorableId, Date> ids, MessageFetchStyle fetchStyle)
+        throws KapuaException;
+
     MessageListResult query(KapuaId scopeId, MessageQuery query)
         throws KapuaException;
 
+    /**
+     * Stream all the messages matching the query, ordered by timestamp (in the query sort direction), to the given handler.<br>
+     * The messages are read from a consistent snapshot, one page (of query limit size) at a time, so neither the whole result
+     * is kept in memory nor messages sharing the same timestamp are skipped or repeated. The query offset is ignored.
+     * 
+     * @param scopeId
+     * @param query
+     * @param handler
+     * @return the number of messages handled
+     * @throws KapuaException
+     */
+    long scroll(KapuaId scopeId, MessageQuery query, MessageHandler handler)
+        throws KapuaException;
+
+    /**
+     * Return the min, max, average and count of a numeric metric of the topic, in consecutive intervals of the given length between start and end.<br>
+     * The values are computed from the coarsest metric rollup (kept if enabled by the account service plan) whose interval evenly divides the requested one,
+     * or from the raw messages if no rollup fits. The intervals are aligned to the epoch, the empty ones are not returned.
+     * 
+     * @param scopeId
+     * @param topic the full topic (account/asset/semantic topic)
+     * @param metricName
+     * @param metricType the type of the metric values, one of Integer, Long, Float or Double
+     * @param start
+     * @param end
+     * @param interval the length of the intervals in milliseconds
+     * @return
+     * @throws KapuaException
+     */
+    MetricRollupListResult queryMetricRollup(KapuaId scopeId, String topic, String metricName, Class<?> metricType, Date start, Date end, long interval)
+        throws KapuaException;
+
+    /**
+     * Return the count, min, max, average, sum and the requested percentiles of a numeric metric of the messages matching the query predicate,
+     * per interval or over all the matching messages. The values are computed by the datastore, so only the aggregates are transferred.
+     * The empty intervals are not returned.<br>
+     * The queries per interval on a single topic (no wildcards), optionally bounded to whole rollup intervals and without percentiles,
+     * are served by the coarsest metric rollup (kept if enabled by the account service plan) whose interval evenly divides the requested one.
+     * 
+     * @param scopeId
+     * @param query
+     * @return
+     * @throws KapuaException if the query is not valid (e.g. the metric type is not Integer, Long, Float or Double) or the aggregation fails
+     */
+    MetricAggregationListResult aggregate(KapuaId scopeId, MetricAggregationQuery query)
+        throws KapuaException;
+
     long count(KapuaId scopeId, MessageQuery query)
         throws KapuaException;
 
     void delete(KapuaId scopeId, MessageQuery query)
         throws KapuaException;
+
+    /**
+     * Delete the data of the scope past the data time to live of its service plan: the weekly indexes holding only expired messages are deleted as a whole,
+     * together with the topics, metrics and assets not updated since.<br>
+     * Nothing is deleted if the time to live is unlimited or the storage is disabled. Meant to be called periodically (e.g. daily) for every scope.
+     * 
+     * @param scopeId
+     * @throws KapuaException
+     */
+    void deleteExpired(KapuaId scopeId)
+        throws KapuaException;
 }
@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.model;
+
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Aggregated values of a numeric metric, over a time interval or over all the messages matching a {@link org.eclipse.kapua.service.datastore.model.query.MetricAggregationQuery}
+ */
+public interface MetricAggregation extends Storable
+{
+    /**
+     * Return the beginning of the time interval, or null if the values are aggregated over all the matching messages
+     * 
+     * @return
+     */
+    public Date getTimestamp();
+
+    /**
+     * Return the number of metric values aggregated
+     * 
+     * @return
+     */
+    public long getCount();
+
+    public double getMin();
+
+    public double getMax();
+
+    public double getAvg();
+
+    public double getSum();
+
+    /**
+     * Return the requested percentiles, by percent
+     * 
+     * @return
+     */
+    public Map<Double, Double> getPercentiles();
+}
@@ -0,0 +1,41 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.model;
+
+import java.util.Date;
+
+/**
+ * Aggregated values of a numeric metric over a time interval
+ */
+public interface MetricRollup extends Storable
+{
+    /**
+     * Return the beginning of the time interval
+     * 
+     * @return
+     */
+    public Date getTimestamp();
+
+    public double getMin();
+
+    public double getMax();
+
+    public double getAvg();
+
+    /**
+     * Return the number of metric values aggregated
+     * 
+     * @return
+     */
+    public long getCount();
+}
@@ -0,0 +1,23 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.model;
+
+public interface MetricRollupListResult extends StorableListResult<MetricRollup>
+{
+    /**
+     * Return the interval (milliseconds) of the stored rollup the result has been computed from, or 0 if it has been computed from the raw messages
+     * 
+     * @return
+     */
+    public long getResolution();
+}
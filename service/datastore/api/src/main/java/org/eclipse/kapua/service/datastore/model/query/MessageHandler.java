@@ -0,0 +1,32 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.model.query;
+
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.service.datastore.model.Message;
+
+/**
+ * Receives, one at a time, the messages streamed by a cursor query
+ */
+public interface MessageHandler
+{
+    /**
+     * Handle the next message of the result
+     * 
+     * @param message
+     * @return true to continue with the next message, false to stop the query
+     * @throws KapuaException to stop the query, the exception is thrown by the query itself
+     */
+    public boolean handle(Message message)
+        throws KapuaException;
+}
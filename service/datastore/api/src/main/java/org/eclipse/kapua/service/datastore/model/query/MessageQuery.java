@@ -12,8 +12,30 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.datastore.model.query;
 
+import java.util.Set;
+
 import org.eclipse.kapua.service.datastore.model.Message;
 
 public interface MessageQuery extends StorableQuery<Message>
 {
+    /**
+     * Return the names of the metrics to be fetched, or null to fetch all the metrics.<br>
+     * The projection applies to the fetch styles including the headers: the other metrics are neither transferred nor decoded.
+     * 
+     * @return
+     */
+    public Set<String> getMetricProjection();
+
+    public void setMetricProjection(Set<String> metricNames);
+
+    /**
+     * Return true if the caller accepts an approximate message count.<br>
+     * The count of a whole account or of a topic (wildcards allowed) is then served by the message counters maintained during the ingestion,
+     * which may lag the stored messages by the counter flush interval and do not reflect the single deleted messages.
+     * 
+     * @return
+     */
+    public boolean isAcceptApproximateCount();
+
+    public void setAcceptApproximateCount(boolean acceptApproximateCount);
 }
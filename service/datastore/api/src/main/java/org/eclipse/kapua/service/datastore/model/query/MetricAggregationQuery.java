@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.model.query;
+
+/**
+ * Query of the aggregated values (count, min, max, average, sum and percentiles) of a numeric metric of the messages matching the predicate,
+ * computed by the datastore instead of by the client over the raw messages.<br>
+ * If an interval is set the values are aggregated per interval (a date histogram of the message timestamp, aligned to the epoch and ordered by the sort direction),
+ * otherwise over all the matching messages. Offset, limit and fetch style are not used.
+ */
+public interface MetricAggregationQuery extends MessageQuery
+{
+    public String getMetricName();
+
+    public void setMetricName(String metricName);
+
+    /**
+     * Return the type of the metric values
+     * 
+     * @return
+     */
+    public Class<?> getMetricType();
+
+    public void setMetricType(Class<?> metricType);
+
+    /**
+     * Return the length (milliseconds) of the aggregation intervals, 0 to aggregate all the matching messages together
+     * 
+     * @return
+     */
+    public long getInterval();
+
+    public void setInterval(long interval);
+
+    /**
+     * Return the percentiles (between 0 and 100) to be computed, empty if none
+     * 
+     * @return
+     */
+    public double[] getPercents();
+
+    public void setPercents(double... percents);
+}
@@ -120,6 +120,7 @@ public class AssetInfoStoreServiceImpl extends AbstractKapuaConfigurableService
             EsAssetDAO.connection(EsClient.getcurrent())
                       .instance(everyIndex, EsSchema.ASSET_TYPE_NAME)
                       .deleteById(id.toString());
+            DatastoreCacheManager.getInstance().getQueryCache().invalidate(scopeId);
         } catch (Exception exc) {
             // TODO manage exeception
             // CassandraUtils.handleException(e);
@@ -178,12 +179,19 @@ public class AssetInfoStoreServiceImpl extends AbstractKapuaConfigurableService
         }
 
         try {
+            QueryResultCache queryCache = DatastoreCacheManager.getInstance().getQueryCache();
+            String cacheKey = queryCache.isEnabled() ? QueryResultCache.key(scopeId, "asset.query", query) : null;
+            AssetInfoListResult result = queryCache.get(scopeId, cacheKey);
+            if (result != null)
+                return result;
+
+            long generation = queryCache.getGeneration(scopeId);
             String everyIndex = EsUtils.getAnyIndexName(scopeName);
-            AssetInfoListResult result = null;
             result = EsAssetDAO.connection(EsClient.getcurrent())
                                .instance(everyIndex, EsSchema.ASSET_TYPE_NAME)
                                .query(query);
 
+            queryCache.put(scopeId, cacheKey, result, generation);
             return result;
         } catch (Exception exc) {
             // TODO manage exeception
@@ -216,12 +224,20 @@ public class AssetInfoStoreServiceImpl extends AbstractKapuaConfigurableService
         }
 
         try {
+            QueryResultCache queryCache = DatastoreCacheManager.getInstance().getQueryCache();
+            String cacheKey = queryCache.isEnabled() ? QueryResultCache.key(scopeId, "asset.count", query) : null;
+            Long cachedResult = queryCache.get(scopeId, cacheKey);
+            if (cachedResult != null)
+                return cachedResult;
+
+            long generation = queryCache.getGeneration(scopeId);
             String everyIndex = EsUtils.getAnyIndexName(scopeName);
             long result;
             result = EsAssetDAO.connection(EsClient.getcurrent())
                                .instance(everyIndex, EsSchema.ASSET_TYPE_NAME)
                                .count(query);
 
+            queryCache.put(scopeId, cacheKey, result, generation);
             return result;
         } catch (Exception exc) {
             // TODO manage exeception
@@ -258,6 +274,7 @@ public class AssetInfoStoreServiceImpl extends AbstractKapuaConfigurableService
             EsAssetDAO.connection(EsClient.getcurrent())
                       .instance(everyIndex, EsSchema.ASSET_TYPE_NAME)
                       .deleteByQuery(query);
+            DatastoreCacheManager.getInstance().getQueryCache().invalidate(scopeId);
 
             return;
         } catch (Exception exc) {
@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.commons.security.KapuaSecurityUtils;
+import org.eclipse.kapua.commons.setting.system.SystemSetting;
+import org.eclipse.kapua.commons.setting.system.SystemSettingKey;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.account.Account;
+import org.eclipse.kapua.service.account.AccountService;
+import org.eclipse.kapua.service.datastore.MessageStoreService;
+import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettingKey;
+import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Periodic enforcement of the data time to live: at every run the expired data of every account is deleted through {@link MessageStoreService#deleteExpired(KapuaId)}.<br>
+ * Every node runs its own task, the deletions are idempotent so the concurrent runs of the other nodes only find less to delete.
+ *
+ * @since 1.0
+ */
+public class DataRetentionTask
+{
+    private static final Logger logger = LoggerFactory.getLogger(DataRetentionTask.class);
+
+    private static DataRetentionTask instance;
+
+    private final Callable<List<KapuaId>> accountsLookup;
+    private final MessageStoreService     messageStoreService;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Start the shared retention task, if not started yet, deleting the expired data of the accounts at the configured interval
+     *
+     * @param accountService
+     * @param messageStoreService
+     */
+    public static synchronized void startInstance(AccountService accountService, MessageStoreService messageStoreService)
+    {
+        if (instance != null)
+            return;
+
+        long interval = DatastoreSettings.getInstance().getLong(DatastoreSettingKey.CONFIG_RETENTION_INTERVAL, 3600000L);
+        instance = new DataRetentionTask(() -> KapuaSecurityUtils.doPriviledge(() -> listAccountIds(accountService)), messageStoreService, interval);
+    }
+
+    /**
+     * Stop the shared retention task, if started
+     */
+    public static synchronized void closeInstance()
+    {
+        if (instance == null)
+            return;
+
+        try {
+            instance.close();
+        }
+        finally {
+            instance = null;
+        }
+    }
+
+    /**
+     * Create a new retention task, running at the given interval if positive
+     *
+     * @param accountsLookup lookup of the ids of the accounts whose expired data is deleted
+     * @param messageStoreService
+     * @param interval milliseconds between two runs, 0 to run only when requested
+     */
+    DataRetentionTask(Callable<List<KapuaId>> accountsLookup, MessageStoreService messageStoreService, long interval)
+    {
+        this.accountsLookup = accountsLookup;
+        this.messageStoreService = messageStoreService;
+
+        if (interval > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "datastore-data-retention");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::deleteExpired, interval, interval, TimeUnit.MILLISECONDS);
+        }
+        else {
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Delete the expired data of every account, a failure on an account does not stop the others
+     *
+     * @return the number of accounts whose expired data has been deleted
+     */
+    int deleteExpired()
+    {
+        List<KapuaId> scopeIds;
+        try {
+            scopeIds = accountsLookup.call();
+        }
+        catch (Exception e) {
+            logger.warn("Cannot list the accounts, skipping the data retention run", e);
+            return 0;
+        }
+
+        int deleted = 0;
+        for (KapuaId scopeId : scopeIds) {
+            try {
+                KapuaSecurityUtils.doPriviledge(() -> {
+                    messageStoreService.deleteExpired(scopeId);
+                    return null;
+                });
+                deleted++;
+            }
+            catch (Exception e) {
+                logger.warn("Cannot delete the expired data of account {}", scopeId, e);
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Stop the task, waiting for the running deletion if any
+     */
+    void close()
+    {
+        if (scheduler == null)
+            return;
+
+        scheduler.shutdown();
+        try {
+            if (!scheduler.awaitTermination(1, TimeUnit.MINUTES))
+                logger.warn("The data retention run did not complete in time");
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static List<KapuaId> listAccountIds(AccountService accountService)
+        throws KapuaException
+    {
+        List<KapuaId> scopeIds = new ArrayList<KapuaId>();
+        Account sysAccount = accountService.findByName(SystemSetting.getInstance().getString(SystemSettingKey.SYS_ADMIN_ACCOUNT));
+        if (sysAccount == null)
+            return scopeIds;
+
+        scopeIds.add(sysAccount.getId());
+        for (Account account : accountService.findChildsRecursively(sysAccount.getId()).getItems())
+            scopeIds.add(account.getId());
+        return scopeIds;
+    }
+}
@@ -12,19 +12,39 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.datastore.internal;
 
+import java.util.function.Supplier;
+
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.KapuaRuntimeException;
 import org.eclipse.kapua.commons.cache.LocalCache;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.model.id.KapuaId;
 import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettingKey;
 import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettings;
+import org.eclipse.kapua.service.metric.MetricsService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
 
 public class DatastoreCacheManager
 {
-    private static DatastoreCacheManager instance = new DatastoreCacheManager();
-    
-    private final LocalCache<String, Boolean> topicsCache;
-    private final LocalCache<String, Boolean> metricsCache;
-    private final LocalCache<String, Boolean> assetsCache;
+    private static final Logger logger = LoggerFactory.getLogger(DatastoreCacheManager.class);
 
-    private DatastoreCacheManager()
+    private final FingerprintSet topicsCache;
+    private final FingerprintSet metricsCache;
+    private final FingerprintSet assetsCache;
+    private final LocalCache<String, Boolean> failedUpsertsCache;
+    private final LocalCache<KapuaId, AccountInfo> servicePlanCache;
+    private final QueryResultCache queryCache;
+
+    /**
+     * Constructor
+     *
+     * @param metricsServiceLookup
+     *            lookup of the metrics service the cache metrics are registered to, the metrics are not registered if the lookup fails
+     */
+    DatastoreCacheManager(Supplier<MetricsService> metricsServiceLookup)
     {
         DatastoreSettings config = DatastoreSettings.getInstance();
         int expireAfter = config.getInt(DatastoreSettingKey.CONFIG_CACHE_LOCAL_EXPIRE_AFTER);
@@ -33,25 +53,96 @@ public class DatastoreCacheManager
         // TODO set expiration to happen frequently because the reset cache method will not get
         // called from service clients any more
         // TODO wrap the caches into a Statically accessible method
-        topicsCache = new LocalCache<String, Boolean>(sizeMax, expireAfter, false);
-        metricsCache = new LocalCache<String, Boolean>(sizeMax, expireAfter, false);
-        assetsCache = new LocalCache<String, Boolean>(sizeMax, expireAfter, false);
+        // The already stored metadata ids can be millions, only their fingerprints are kept
+        int metadataSizeMax = config.getInt(DatastoreSettingKey.CONFIG_CACHE_METADATA_SIZE_MAXIMUM);
+        int metadataConcurrencyLevel = config.getInt(DatastoreSettingKey.CONFIG_CACHE_METADATA_CONCURRENCY_LEVEL);
+        topicsCache = new FingerprintSet(metadataSizeMax, expireAfter, metadataConcurrencyLevel);
+        metricsCache = new FingerprintSet(metadataSizeMax, expireAfter, metadataConcurrencyLevel);
+        assetsCache = new FingerprintSet(metadataSizeMax, expireAfter, metadataConcurrencyLevel);
+
+        // The ids of the metadata whose upsert failed, not upserted again until the entry expires
+        int retryAfter = config.getInt(DatastoreSettingKey.CONFIG_CACHE_METADATA_RETRY_AFTER, 30);
+        failedUpsertsCache = new LocalCache<String, Boolean>(metadataSizeMax, retryAfter, null);
+
+        MetricsService metricsService = getMetricsService(metricsServiceLookup);
+        if (metricsService != null) {
+            registerMetrics(metricsService, "topics", topicsCache);
+            registerMetrics(metricsService, "metrics", metricsCache);
+            registerMetrics(metricsService, "assets", assetsCache);
+        }
+
+        // Account and service plan are resolved per scope, the entry is dropped when the datastore configuration changes
+        int servicePlanExpireAfter = config.getInt(DatastoreSettingKey.CONFIG_CACHE_SERVICE_PLAN_EXPIRE_AFTER);
+        servicePlanCache = new LocalCache<KapuaId, AccountInfo>(sizeMax, servicePlanExpireAfter, null);
+
+        // Optional, disabled unless an expiration time is configured
+        queryCache = new QueryResultCache(config.getInt(DatastoreSettingKey.CONFIG_CACHE_QUERY_SIZE_MAXIMUM, 1000),
+                                          config.getInt(DatastoreSettingKey.CONFIG_CACHE_QUERY_EXPIRE_AFTER, 0));
+    }
+
+    /**
+     * Return the metrics service or null if not provided (i.e. by the console and the REST API locators),
+     * in that case the cache metrics are not registered
+     *
+     * @return
+     */
+    private static MetricsService getMetricsService(Supplier<MetricsService> metricsServiceLookup)
+    {
+        try {
+            return metricsServiceLookup.get();
+        }
+        catch (KapuaRuntimeException e) {
+            logger.info("Metrics service not available, the metadata cache metrics are not registered: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static void registerMetrics(MetricsService metricsService, String cacheName, FingerprintSet cache)
+    {
+        try {
+            metricsService.registerGauge((Gauge<Long>) cache::getHitCount, "datastore", "cache", cacheName, "hit", "count");
+            metricsService.registerGauge((Gauge<Long>) cache::getMissCount, "datastore", "cache", cacheName, "miss", "count");
+            metricsService.registerGauge((Gauge<Double>) cache::getHitRatio, "datastore", "cache", cacheName, "hit", "ratio");
+            metricsService.registerGauge((Gauge<Double>) cache::getMissRatio, "datastore", "cache", cacheName, "miss", "ratio");
+            metricsService.registerGauge((Gauge<Long>) cache::size, "datastore", "cache", cacheName, "size");
+        }
+        catch (KapuaException e) {
+            logger.warn("Cannot register the {} cache metrics", cacheName, e);
+        }
     }
 
     public static DatastoreCacheManager getInstance()
     {
-        return instance;
+        return InstanceHolder.instance;
     }
     
-    public LocalCache<String, Boolean> getTopicsCache(){
+    public FingerprintSet getTopicsCache(){
        return topicsCache;
     }
     
-    public LocalCache<String, Boolean> getMetricsCache(){
+    public FingerprintSet getMetricsCache(){
        return metricsCache;
     }
     
-    public LocalCache<String, Boolean> getAssetsCache(){
+    public FingerprintSet getAssetsCache(){
        return assetsCache;
     }
+
+    LocalCache<String, Boolean> getFailedUpsertsCache(){
+       return failedUpsertsCache;
+    }
+
+    LocalCache<KapuaId, AccountInfo> getServicePlanCache(){
+       return servicePlanCache;
+    }
+
+    QueryResultCache getQueryCache(){
+       return queryCache;
+    }
+
+    // Created on first use, so that building a cache manager does not need the locator
+    private static class InstanceHolder
+    {
+        private static final DatastoreCacheManager instance = new DatastoreCacheManager(() -> KapuaLocator.getInstance().getService(MetricsService.class));
+    }
 }
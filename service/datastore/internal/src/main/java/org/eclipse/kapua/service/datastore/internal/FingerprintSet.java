@@ -0,0 +1,371 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Compact set of the already seen metadata (topic, metric and asset) ids.<br>
+ * Only a 64-bit fingerprint of every id is kept, in open addressing tables of primitive longs split in shards, so an entry
+ * costs 8 bytes plus the table slack instead of the id string plus the cache entry overhead. A fingerprint collision only makes the caller
+ * skip a redundant upsert of an id never seen before, which with 64-bit fingerprints is negligible for any realistic cardinality.<br>
+ * Every shard keeps two generations: new ids go to the current generation and, when it is full or older than the expiration time,
+ * it becomes the previous generation and the former previous one is dropped. Ids found in the previous generation are promoted
+ * to the current one, so the frequently seen ids are not evicted while the stale ones expire after at most two generations.<br>
+ * The promotions of an id are bounded: once promoted the maximum number of times since it was last added, the id is reported as missing,
+ * so the caller upserts it again (refreshing its timestamps) and adds it back. A hot id is therefore upserted at least once every
+ * maximum promotions plus two generations.
+ *
+ * @since 1.0
+ */
+public class FingerprintSet
+{
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    // Empty slot marker, the fingerprint 0 is stored as 1
+    private static final long         EMPTY         = 0L;
+
+    private static final int          DEFAULT_MAX_PROMOTIONS = 4;
+
+    private final Shard[]             shards;
+    private final int                 shardMask;
+    private final long                expireAfterNanos;
+    private final int                 maxPromotions;
+
+    private final LongAdder           hitCount      = new LongAdder();
+    private final LongAdder           missCount     = new LongAdder();
+
+    /**
+     * Create a new fingerprint set
+     *
+     * @param sizeMax maximum number of ids held by a generation
+     * @param expireAfter maximum age (seconds) of a generation
+     * @param concurrencyLevel expected number of concurrent callers, the number of shards is the next power of two
+     */
+    public FingerprintSet(int sizeMax, int expireAfter, int concurrencyLevel)
+    {
+        this(sizeMax, expireAfter, concurrencyLevel, DEFAULT_MAX_PROMOTIONS);
+    }
+
+    /**
+     * Create a new fingerprint set
+     *
+     * @param sizeMax maximum number of ids held by a generation
+     * @param expireAfter maximum age (seconds) of a generation
+     * @param concurrencyLevel expected number of concurrent callers, the number of shards is the next power of two
+     * @param maxPromotions maximum number of promotions of an id to a new generation before it is reported as missing again
+     */
+    public FingerprintSet(int sizeMax, int expireAfter, int concurrencyLevel, int maxPromotions)
+    {
+        this.maxPromotions = Math.min(Byte.MAX_VALUE, Math.max(0, maxPromotions));
+
+        int shardCount = Integer.highestOneBit(Math.max(1, concurrencyLevel - 1)) << 1;
+        shards = new Shard[shardCount];
+        shardMask = shardCount - 1;
+        expireAfterNanos = TimeUnit.SECONDS.toNanos(expireAfter);
+
+        int shardSizeMax = Math.max(1, sizeMax / shardCount);
+        for (int i = 0; i < shardCount; i++)
+            shards[i] = new Shard(shardSizeMax);
+    }
+
+    /**
+     * Return true if the id has been seen (and not removed or expired)
+     *
+     * @param id
+     * @return
+     */
+    public boolean contains(String id)
+    {
+        long fingerprint = fingerprint(id);
+        boolean found = shard(fingerprint).contains(fingerprint, System.nanoTime());
+        if (found)
+            hitCount.increment();
+        else
+            missCount.increment();
+        return found;
+    }
+
+    /**
+     * Mark the id as seen, resetting its promotions
+     *
+     * @param id
+     */
+    public void add(String id)
+    {
+        long fingerprint = fingerprint(id);
+        shard(fingerprint).add(fingerprint, System.nanoTime());
+    }
+
+    /**
+     * Forget the id
+     *
+     * @param id
+     */
+    public void remove(String id)
+    {
+        long fingerprint = fingerprint(id);
+        shard(fingerprint).remove(fingerprint);
+    }
+
+    /**
+     * Forget all the ids
+     */
+    public void clear()
+    {
+        for (Shard shard : shards)
+            shard.clear(System.nanoTime());
+    }
+
+    /**
+     * Return the number of ids currently held, in both generations
+     *
+     * @return
+     */
+    public long size()
+    {
+        long size = 0;
+        for (Shard shard : shards)
+            size += shard.size();
+        return size;
+    }
+
+    /**
+     * Return the number of {@link #contains(String)} calls which found the id
+     *
+     * @return
+     */
+    public long getHitCount()
+    {
+        return hitCount.sum();
+    }
+
+    /**
+     * Return the number of {@link #contains(String)} calls which did not find the id
+     *
+     * @return
+     */
+    public long getMissCount()
+    {
+        return missCount.sum();
+    }
+
+    /**
+     * Return the ratio of {@link #contains(String)} calls which found the id, or 0 if the set has never been queried
+     *
+     * @return
+     */
+    public double getHitRatio()
+    {
+        long hits = getHitCount();
+        long requests = hits + getMissCount();
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    /**
+     * Return the ratio of {@link #contains(String)} calls which did not find the id, or 0 if the set has never been queried
+     *
+     * @return
+     */
+    public double getMissRatio()
+    {
+        long misses = getMissCount();
+        long requests = getHitCount() + misses;
+        return requests == 0 ? 0 : (double) misses / requests;
+    }
+
+    private Shard shard(long fingerprint)
+    {
+        // The low bits select the slot inside the shard tables
+        return shards[(int) (fingerprint >>> 48) & shardMask];
+    }
+
+    private static long fingerprint(String id)
+    {
+        long fingerprint = HASH_FUNCTION.hashString(id, StandardCharsets.UTF_8).asLong();
+        return fingerprint == EMPTY ? 1L : fingerprint;
+    }
+
+    private final class Shard
+    {
+
+        private final int    sizeMax;
+        private LongTable    current;
+        private LongTable    previous;
+        private long         currentCreatedOn;
+
+        private Shard(int sizeMax)
+        {
+            this.sizeMax = sizeMax;
+            this.current = new LongTable(sizeMax);
+            this.previous = new LongTable(sizeMax);
+            this.currentCreatedOn = System.nanoTime();
+        }
+
+        private synchronized boolean contains(long fingerprint, long now)
+        {
+            rotateIfExpired(now);
+            if (current.contains(fingerprint))
+                return true;
+
+            int promotions = previous.remove(fingerprint);
+            if (promotions >= maxPromotions) {
+                // Promoted too many times, forget it so the caller upserts it again
+                return false;
+            }
+            if (promotions >= 0) {
+                // Promote the hot entry
+                addToCurrent(fingerprint, promotions + 1, now);
+                return true;
+            }
+            return false;
+        }
+
+        private synchronized void add(long fingerprint, long now)
+        {
+            rotateIfExpired(now);
+            if (current.contains(fingerprint)) {
+                current.add(fingerprint, 0);
+            }
+            else {
+                previous.remove(fingerprint);
+                addToCurrent(fingerprint, 0, now);
+            }
+        }
+
+        private synchronized void remove(long fingerprint)
+        {
+            current.remove(fingerprint);
+            previous.remove(fingerprint);
+        }
+
+        private synchronized void clear(long now)
+        {
+            current = new LongTable(sizeMax);
+            previous = new LongTable(sizeMax);
+            currentCreatedOn = now;
+        }
+
+        private synchronized long size()
+        {
+            return current.size() + previous.size();
+        }
+
+        private void addToCurrent(long fingerprint, int promotions, long now)
+        {
+            if (current.size() >= sizeMax)
+                rotate(now);
+            current.add(fingerprint, promotions);
+        }
+
+        private void rotateIfExpired(long now)
+        {
+            if (now - currentCreatedOn >= expireAfterNanos)
+                rotate(now);
+        }
+
+        private void rotate(long now)
+        {
+            long previousCreatedOn = currentCreatedOn;
+            previous = current;
+            current = new LongTable(sizeMax);
+            currentCreatedOn = now;
+            // A generation older than twice the expiration time is stale as well
+            if (now - previousCreatedOn >= 2 * expireAfterNanos)
+                previous = new LongTable(sizeMax);
+        }
+    }
+
+    /**
+     * Open addressing (linear probing) hash table of non zero longs, with the number of promotions of every long
+     */
+    private static final class LongTable
+    {
+
+        private final long[] slots;
+        private final byte[] promotions;
+        private final int    mask;
+        private int          size;
+
+        private LongTable(int sizeMax)
+        {
+            // Keep the load factor below 0.75
+            int capacity = Integer.highestOneBit(Math.max(2, sizeMax + sizeMax / 3) - 1) << 1;
+            slots = new long[capacity];
+            promotions = new byte[capacity];
+            mask = capacity - 1;
+        }
+
+        private int size()
+        {
+            return size;
+        }
+
+        private boolean contains(long fingerprint)
+        {
+            for (int i = (int) fingerprint & mask; slots[i] != EMPTY; i = (i + 1) & mask) {
+                if (slots[i] == fingerprint)
+                    return true;
+            }
+            return false;
+        }
+
+        private void add(long fingerprint, int promotionCount)
+        {
+            int i = (int) fingerprint & mask;
+            for (; slots[i] != EMPTY; i = (i + 1) & mask) {
+                if (slots[i] == fingerprint) {
+                    promotions[i] = (byte) promotionCount;
+                    return;
+                }
+            }
+            slots[i] = fingerprint;
+            promotions[i] = (byte) promotionCount;
+            size++;
+        }
+
+        /**
+         * Remove the long, returning its number of promotions or -1 if it was not found
+         */
+        private int remove(long fingerprint)
+        {
+            int i = (int) fingerprint & mask;
+            for (; slots[i] != fingerprint; i = (i + 1) & mask) {
+                if (slots[i] == EMPTY)
+                    return -1;
+            }
+            int promotionCount = promotions[i];
+
+            // Backward shift deletion keeps the probe sequences intact without tombstones
+            int hole = i;
+            for (int j = (hole + 1) & mask; slots[j] != EMPTY; j = (j + 1) & mask) {
+                int home = (int) slots[j] & mask;
+                if (((j - home) & mask) >= ((j - hole) & mask)) {
+                    slots[hole] = slots[j];
+                    promotions[hole] = promotions[j];
+                    hole = j;
+                }
+            }
+            slots[hole] = EMPTY;
+            promotions[hole] = 0;
+            size--;
+            return promotionCount;
+        }
+    }
+}
@@ -18,13 +18,19 @@ import static java.util.concurrent.TimeUnit.DAYS;
 import java.io.IOException;
 import java.net.UnknownHostException;
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import org.eclipse.kapua.KapuaErrorCodes;
 import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.KapuaIllegalArgumentException;
 import org.eclipse.kapua.commons.cache.LocalCache;
 import org.eclipse.kapua.commons.configuration.AbstractKapuaConfigurableService;
 import org.eclipse.kapua.commons.util.ArgumentValidator;
@@ -40,27 +46,46 @@ import org.eclipse.kapua.service.authorization.permission.Actions;
 import org.eclipse.kapua.service.authorization.permission.PermissionFactory;
 import org.eclipse.kapua.service.datastore.DatastoreDomain;
 import org.eclipse.kapua.service.datastore.MessageStoreService;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsBulkIngestQueue;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsClient;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsDataRetention;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsDatastoreException;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsDocumentBuilder;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsMessageField;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsMetric;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsMetadataUpdateQueue;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsMetricDocumentBuilder;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsMessageCounters;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsMetricRollup;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsSchema;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsTopicTrieCache;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsUtils;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.KapuaInvalidTopicException;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.KapuaTopic;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.LocalServicePlan;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.MessageQueryConverter;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.MetricAggregationQueryConverter;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.MetricRollupBuilder;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.dao.EsAssetDAO;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.dao.EsMessageCounterDAO;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.dao.EsMessageDAO;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.dao.EsMetricDAO;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.dao.EsMetricRollupDAO;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.dao.EsTopicDAO;
 import org.eclipse.kapua.service.datastore.internal.model.DataIndexBy;
 import org.eclipse.kapua.service.datastore.internal.model.MessageImpl;
 import org.eclipse.kapua.service.datastore.internal.model.MessageListResultImpl;
+import org.eclipse.kapua.service.datastore.internal.model.MetricAggregationListResultImpl;
+import org.eclipse.kapua.service.datastore.internal.model.MetricRollupListResultImpl;
 import org.eclipse.kapua.service.datastore.internal.model.MetricsIndexBy;
 import org.eclipse.kapua.service.datastore.internal.model.StorableIdImpl;
+import org.eclipse.kapua.service.datastore.internal.model.query.AndPredicateImpl;
 import org.eclipse.kapua.service.datastore.internal.model.query.AssetInfoQueryImpl;
+import org.eclipse.kapua.service.datastore.internal.model.query.IdsPredicateImpl;
+import org.eclipse.kapua.service.datastore.internal.model.query.MessageQueryImpl;
+import org.eclipse.kapua.service.datastore.internal.model.query.MetricAggregationQueryImpl;
 import org.eclipse.kapua.service.datastore.internal.model.query.MetricInfoQueryImpl;
+import org.eclipse.kapua.service.datastore.internal.model.query.RangePredicateImpl;
 import org.eclipse.kapua.service.datastore.internal.model.query.TopicInfoQueryImpl;
 import org.eclipse.kapua.service.datastore.internal.model.query.TopicMatchPredicateImpl;
 import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettingKey;
@@ -69,16 +94,18 @@ import org.eclipse.kapua.service.datastore.model.AssetInfoListResult;
 import org.eclipse.kapua.service.datastore.model.Message;
 import org.eclipse.kapua.service.datastore.model.MessageCreator;
 import org.eclipse.kapua.service.datastore.model.MessageListResult;
+import org.eclipse.kapua.service.datastore.model.MetricAggregationListResult;
 import org.eclipse.kapua.service.datastore.model.MetricInfoListResult;
+import org.eclipse.kapua.service.datastore.model.MetricRollupListResult;
 import org.eclipse.kapua.service.datastore.model.StorableId;
 import org.eclipse.kapua.service.datastore.model.TopicInfoListResult;
 import org.eclipse.kapua.service.datastore.model.query.MessageFetchStyle;
+import org.eclipse.kapua.service.datastore.model.query.MessageHandler;
 import org.eclipse.kapua.service.datastore.model.query.MessageQuery;
-import org.elasticsearch.action.bulk.BulkItemResponse;
-import org.elasticsearch.action.bulk.BulkRequest;
-import org.elasticsearch.action.bulk.BulkResponse;
-import org.elasticsearch.action.update.UpdateResponse;
-import org.elasticsearch.index.engine.DocumentAlreadyExistsException;
+import org.eclipse.kapua.service.datastore.model.query.MetricAggregationQuery;
+import org.eclipse.kapua.service.datastore.model.query.StorablePredicate;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.index.engine.VersionConflictEngineException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -108,11 +135,10 @@ public class MessageStoreServiceImpl extends AbstractKapuaConfigurableService im
     private final EsSchema       esSchema;
     private final int            maxTopicDepth;
 
-    private final Object         metadataUpdateSync;
 
     public MessageStoreServiceImpl(AccountService accountService, AuthorizationService authorizationService,
                                       PermissionFactory permissionFactory, EsSchema esSchema,
-                                      int maxTopicDepth, Object metadataUpdateSync) {
+                                      int maxTopicDepth) {
 
         super(MessageStoreService.class.getName(), datastoreDomain, DatastoreEntityManagerFactory.getInstance());
         this.accountService = accountService;
@@ -120,18 +146,43 @@ public class MessageStoreServiceImpl extends AbstractKapuaConfigurableService im
         this.permissionFactory = permissionFactory;
         this.esSchema = esSchema;
         this.maxTopicDepth = maxTopicDepth;
-        this.metadataUpdateSync = metadataUpdateSync;
     }
 
     public MessageStoreServiceImpl() {
         this(locator.getService(AccountService.class), locator.getService(AuthorizationService.class),
                 locator.getFactory(PermissionFactory.class), new EsSchema(),
-                DatastoreSettings.getInstance().getInt(DatastoreSettingKey.CONFIG_TOPIC_MAX_DEPTH), new Object());
+                DatastoreSettings.getInstance().getInt(DatastoreSettingKey.CONFIG_TOPIC_MAX_DEPTH));
+
+        // Enforce the data time to live of the accounts periodically
+        DataRetentionTask.startInstance(accountService, this);
+    }
+
+    @Override
+    public void setConfigValues(KapuaId scopeId, Map<String, Object> values)
+            throws KapuaException {
+        super.setConfigValues(scopeId, values);
+
+        // Make the next message of the scope pick up the new service plan
+        DatastoreCacheManager.getInstance().getServicePlanCache().remove(scopeId);
     }
 
     @Override
     public StorableId store(KapuaId scopeId, MessageCreator messageCreator)
             throws KapuaException {
+        CompletableFuture<StorableId> storedMessageId = this.storeAsync(scopeId, messageCreator);
+        try {
+            return storedMessageId.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw KapuaException.internalError(e);
+        } catch (ExecutionException e) {
+            throw KapuaException.internalError(e.getCause());
+        }
+    }
+
+    @Override
+    public CompletableFuture<StorableId> storeAsync(KapuaId scopeId, MessageCreator messageCreator)
+            throws KapuaException {
         ArgumentValidator.notNull(messageCreator, "messageCreator");
 
         MessageImpl messageImpl = new MessageImpl();
@@ -143,7 +194,7 @@ public class MessageStoreServiceImpl extends AbstractKapuaConfigurableService im
         return this.store(scopeId, messageImpl);
     }
 
-    private StorableId store(KapuaId scopeId, Message message)
+    private CompletableFuture<StorableId> store(KapuaId scopeId, Message message)
             throws KapuaException {
         //
         // Argument Validation
@@ -195,6 +246,9 @@ public class MessageStoreServiceImpl extends AbstractKapuaConfigurableService im
         if (DataIndexBy.DEVICE_TIMESTAMP.equals(accountServicePlan.getDataIndexBy()) && capturedOn != null)
             indexedOn = capturedOn.getTime();
 
+        // The cached query results of the scope do not include this message
+        DatastoreCacheManager.getInstance().getQueryCache().invalidate(scopeId);
+
         // MessageDAO: query
         try {
 
@@ -204,7 +258,8 @@ public class MessageStoreServiceImpl extends AbstractKapuaConfigurableService im
                                      indexedOn,
                                      receivedOn,
                                      ttl,
-                                     accountServicePlan.getMetricsIndexBy());
+                                     accountServicePlan.getMetricsIndexBy(),
+                                     accountServicePlan.getMetricsRollupIntervals());
         } catch (Exception e) { // TODO create e new datastore exception
             // TODO manage execeptions
             // CassandraUtils.handleException(e);
@@ -242,6 +297,7 @@ public class MessageStoreServiceImpl extends AbstractKapuaConfigurableService im
             EsMessageDAO.connection(EsClient.getcurrent())
                         .instance(everyIndex, EsSchema.MESSAGE_TYPE_NAME)
                         .deleteById(id.toString());
+            DatastoreCacheManager.getInstance().getQueryCache().invalidate(scopeId);
         } catch (Exception exc) {
             // TODO manage exeception
             // CassandraUtils.handleException(e);
@@ -261,23 +317,113 @@ public class MessageStoreServiceImpl extends AbstractKapuaConfigurableService im
         // Check Access
         this.checkDataAccess(scopeId, Actions.read);
 
+        //
+        // Do the find
         AccountInfo accountInfo = getAccountServicePlan(scopeId);
         String scopeName = accountInfo.getAccount().getName();
+        LocalServicePlan accountServicePlan = accountInfo.getServicePlan();
+        long ttl = accountServicePlan.getDataTimeToLive() * DAY_MILLIS;
+
+        if (!accountServicePlan.getDataStorageEnabled() || ttl == LocalServicePlan.DISABLED) {
+            logger.debug("Storage not enabled for account {}, returning empty result", scopeName);
+            return null;
+        }
 
         try {
+            // The index holding the message is unknown, look the id up in every index of the account
+            MessageQueryImpl idsQuery = new MessageQueryImpl();
+            idsQuery.setPredicate(new IdsPredicateImpl().addValue(id));
+            idsQuery.setLimit(1);
+            idsQuery.setFetchStyle(fetchStyle);
+
             String everyIndex = EsUtils.getAnyIndexName(scopeName);
-            MessageListResult result = null;
-            result = EsMessageDAO.connection(EsClient.getcurrent())
-                                 .instance(everyIndex, EsSchema.MESSAGE_TYPE_NAME)
-                                 .query(null);
+            MessageListResult result = EsMessageDAO.connection(EsClient.getcurrent())
+                                                   .instance(everyIndex, EsSchema.MESSAGE_TYPE_NAME)
+                                                   .query(idsQuery);
 
-            if (true)
-                throw KapuaException.internalError("Method not implemented.");
+            return result.isEmpty() ? null : result.get(0);
+        } catch (Exception exc) {
+            throw KapuaException.internalError(exc);
+        }
+    }
 
+    @Override
+    public Message find(KapuaId scopeId, StorableId id, Date timestamp, MessageFetchStyle fetchStyle)
+            throws KapuaException {
+        //
+        // Argument Validation
+        ArgumentValidator.notNull(scopeId, "scopeId");
+        ArgumentValidator.notNull(id, "id");
+        ArgumentValidator.notNull(timestamp, "timestamp");
+        ArgumentValidator.notNull(fetchStyle, "fetchStyle");
+        //
+        // Check Access
+        this.checkDataAccess(scopeId, Actions.read);
+
+        //
+        // Do the find
+        AccountInfo accountInfo = getAccountServicePlan(scopeId);
+        String scopeName = accountInfo.getAccount().getName();
+        LocalServicePlan accountServicePlan = accountInfo.getServicePlan();
+        long ttl = accountServicePlan.getDataTimeToLive() * DAY_MILLIS;
+
+        if (!accountServicePlan.getDataStorageEnabled() || ttl == LocalServicePlan.DISABLED) {
+            logger.debug("Storage not enabled for account {}, returning empty result", scopeName);
             return null;
+        }
+
+        try {
+            String indexName = EsUtils.getActualIndexName(scopeName, timestamp.getTime());
+            return EsMessageDAO.connection(EsClient.getcurrent())
+                               .instance(indexName, EsSchema.MESSAGE_TYPE_NAME)
+                               .find(id.toString(), fetchStyle);
+        } catch (Exception exc) {
+            throw KapuaException.internalError(exc);
+        }
+    }
+
+    @Override
+    public MessageListResult find(KapuaId scopeId, Map<StorableId, Date> ids, MessageFetchStyle fetchStyle)
+            throws KapuaException {
+        //
+        // Argument Validation
+        ArgumentValidator.notNull(scopeId, "scopeId");
+        ArgumentValidator.notNull(ids, "ids");
+        ArgumentValidator.notNull(fetchStyle, "fetchStyle");
+        //
+        // Check Access
+        this.checkDataAccess(scopeId, Actions.read);
+
+        //
+        // Do the find
+        AccountInfo accountInfo = getAccountServicePlan(scopeId);
+        String scopeName = accountInfo.getAccount().getName();
+        LocalServicePlan accountServicePlan = accountInfo.getServicePlan();
+        long ttl = accountServicePlan.getDataTimeToLive() * DAY_MILLIS;
+
+        if (!accountServicePlan.getDataStorageEnabled() || ttl == LocalServicePlan.DISABLED) {
+            logger.debug("Storage not enabled for account {}, returning empty result", scopeName);
+            return new MessageListResultImpl();
+        }
+
+        try {
+            Map<String, String> indexNamesById = new LinkedHashMap<String, String>();
+            for (Map.Entry<StorableId, Date> id : ids.entrySet()) {
+                ArgumentValidator.notNull(id.getValue(), "timestamp");
+                indexNamesById.put(id.getKey().toString(), EsUtils.getActualIndexName(scopeName, id.getValue().getTime()));
+            }
+
+            String everyIndex = EsUtils.getAnyIndexName(scopeName);
+            List<Message> messages = EsMessageDAO.connection(EsClient.getcurrent())
+                                                 .instance(everyIndex, EsSchema.MESSAGE_TYPE_NAME)
+                                                 .find(indexNamesById, fetchStyle);
+
+            MessageListResultImpl result = new MessageListResultImpl();
+            result.addAll(messages);
+            return result;
+        } catch (KapuaException exc) {
+            throw exc;
         } catch (Exception exc) {
-            // TODO manage exeception
-            // CassandraUtils.handleException(e);
             throw KapuaException.internalError(exc);
         }
     }
@@ -306,12 +452,19 @@ public class MessageStoreServiceImpl extends AbstractKapuaConfigurableService im
         }
 
         try {
-            String everyIndex = EsUtils.getAnyIndexName(scopeName);
-            MessageListResult result = null;
+            QueryResultCache queryCache = DatastoreCacheManager.getInstance().getQueryCache();
+            String cacheKey = queryCache.isEnabled() ? QueryResultCache.key(scopeId, "message.query", query) : null;
+            MessageListResult result = queryCache.get(scopeId, cacheKey);
+            if (result != null)
+                return result;
+
+            long generation = queryCache.getGeneration(scopeId);
+            String indexNames = new MessageQueryConverter().getIndexNames(scopeName, query);
             result = EsMessageDAO.connection(EsClient.getcurrent())
-                                 .instance(everyIndex, EsSchema.MESSAGE_TYPE_NAME)
+                                 .instance(indexNames, EsSchema.MESSAGE_TYPE_NAME)
                                  .query(query);
 
+            queryCache.put(scopeId, cacheKey, result, generation);
             return result;
         } catch (Exception exc) {
             // TODO manage exeception
@@ -320,6 +473,43 @@ public class MessageStoreServiceImpl extends AbstractKapuaConfigurableService im
         }
     }
 
+    @Override
+    public long scroll(KapuaId scopeId, MessageQuery query, MessageHandler handler)
+            throws KapuaException {
+        //
+        // Argument Validation
+        ArgumentValidator.notNull(scopeId, "scopeId");
+        ArgumentValidator.notNull(query, "query");
+        ArgumentValidator.notNull(handler, "handler");
+        //
+        // Check Access
+        this.checkDataAccess(scopeId, Actions.read);
+
+        //
+        // Do the scroll
+        AccountInfo accountInfo = getAccountServicePlan(scopeId);
+        String scopeName = accountInfo.getAccount().getName();
+        LocalServicePlan accountServicePlan = accountInfo.getServicePlan();
+        long ttl = accountServicePlan.getDataTimeToLive() * DAY_MILLIS;
+
+        if (!accountServicePlan.getDataStorageEnabled() || ttl == LocalServicePlan.DISABLED) {
+            logger.debug("Storage not enabled for account {}, returning empty result", scopeName);
+            return 0;
+        }
+
+        try {
+            String indexNames = new MessageQueryConverter().getIndexNames(scopeName, query);
+            return EsMessageDAO.connection(EsClient.getcurrent())
+                               .instance(indexNames, EsSchema.MESSAGE_TYPE_NAME)
+                               .scroll(query, handler);
+        } catch (KapuaException exc) {
+            // Thrown by the handler
+            throw exc;
+        } catch (Exception exc) {
+            throw KapuaException.internalError(exc);
+        }
+    }
+
     public long count(KapuaId scopeId, MessageQuery query)
             throws KapuaException {
         //
@@ -343,12 +533,29 @@ public class MessageStoreServiceImpl extends AbstractKapuaConfigurableService im
         }
 
         try {
-            String everyIndex = EsUtils.getAnyIndexName(scopeName);
+            QueryResultCache queryCache = DatastoreCacheManager.getInstance().getQueryCache();
+            String cacheKey = queryCache.isEnabled() ? QueryResultCache.key(scopeId, "message.count", query) : null;
+            Long cachedResult = queryCache.get(scopeId, cacheKey);
+            if (cachedResult != null)
+                return cachedResult;
+
+            long generation = queryCache.getGeneration(scopeId);
             long result;
-            result = EsMessageDAO.connection(EsClient.getcurrent())
-                                 .instance(everyIndex, EsSchema.MESSAGE_TYPE_NAME)
-                                 .count(query);
+            if (EsMessageCounters.isCountable(query)) {
+                // Approximate count from the message counters of the metadata index
+                String kapuaIndexName = EsUtils.getActualKapuaIndexName(scopeName, 0);
+                result = EsMessageCounterDAO.connection(EsClient.getcurrent())
+                                            .instance(kapuaIndexName, EsSchema.COUNTER_TYPE_NAME)
+                                            .count(query.getPredicate());
+            }
+            else {
+                String indexNames = new MessageQueryConverter().getIndexNames(scopeName, query);
+                result = EsMessageDAO.connection(EsClient.getcurrent())
+                                     .instance(indexNames, EsSchema.MESSAGE_TYPE_NAME)
+                                     .count(query);
+            }
 
+            queryCache.put(scopeId, cacheKey, result, generation);
             return result;
         } catch (Exception exc) {
             // TODO manage exeception
@@ -381,10 +588,11 @@ public class MessageStoreServiceImpl extends AbstractKapuaConfigurableService im
         }
 
         try {
-            String everyIndex = EsUtils.getAnyIndexName(scopeName);
+            String indexNames = new MessageQueryConverter().getIndexNames(scopeName, query);
             EsMessageDAO.connection(EsClient.getcurrent())
-                        .instance(everyIndex, EsSchema.MESSAGE_TYPE_NAME)
+                        .instance(indexNames, EsSchema.MESSAGE_TYPE_NAME)
                         .deleteByQuery(query);
+            DatastoreCacheManager.getInstance().getQueryCache().invalidate(scopeId);
 
             return;
         } catch (Exception exc) {
@@ -394,6 +602,172 @@ public class MessageStoreServiceImpl extends AbstractKapuaConfigurableService im
         }
     }
 
+    @Override
+    public MetricRollupListResult queryMetricRollup(KapuaId scopeId, String topic, String metricName, Class<?> metricType, Date start, Date end, long interval)
+            throws KapuaException {
+        //
+        // Argument Validation
+        ArgumentValidator.notNull(scopeId, "scopeId");
+        ArgumentValidator.notEmptyOrNull(topic, "topic");
+        ArgumentValidator.notEmptyOrNull(metricName, "metricName");
+        ArgumentValidator.notNull(metricType, "metricType");
+        checkNumericMetricType(metricType, "metricType");
+        ArgumentValidator.notNull(start, "start");
+        ArgumentValidator.notNull(end, "end");
+        ArgumentValidator.dateRange(start, end);
+        ArgumentValidator.numRange(interval, 1, Long.MAX_VALUE, "interval");
+        //
+        // Check Access
+        this.checkDataAccess(scopeId, Actions.read);
+
+        //
+        // Do the query
+        AccountInfo accountInfo = getAccountServicePlan(scopeId);
+        String scopeName = accountInfo.getAccount().getName();
+        LocalServicePlan accountServicePlan = accountInfo.getServicePlan();
+        long ttl = accountServicePlan.getDataTimeToLive() * DAY_MILLIS;
+
+        if (!accountServicePlan.getDataStorageEnabled() || ttl == LocalServicePlan.DISABLED) {
+            logger.debug("Storage not enabled for account {}, returning empty result", scopeName);
+            return new MetricRollupListResultImpl(0);
+        }
+
+        try {
+            KapuaTopic kapuaTopic = new KapuaTopic(topic);
+            String esMetricName = EsUtils.normalizeMetricName(metricName);
+            String esMetricType = EsUtils.convertToEsType(metricType);
+
+            // The coarsest rollup evenly dividing the requested interval, otherwise the raw messages
+            long rollupInterval = EsMetricRollup.selectInterval(accountServicePlan.getMetricsRollupIntervals(), interval);
+            if (rollupInterval > 0) {
+                return EsMetricRollupDAO.connection(EsClient.getcurrent())
+                                        .instance(EsUtils.getRollupIndexName(scopeName, rollupInterval), EsSchema.ROLLUP_TYPE_NAME)
+                                        .aggregate(kapuaTopic.getAsset(), kapuaTopic.getSemanticTopic(), esMetricName, esMetricType, start, end, interval);
+            }
+
+            // The same aggregation as the metric aggregation queries
+            MetricAggregationQueryImpl query = new MetricAggregationQueryImpl();
+            query.setPredicate(new AndPredicateImpl(Arrays.<StorablePredicate> asList(new TopicMatchPredicateImpl(topic),
+                                                                                      new RangePredicateImpl(EsMessageField.TIMESTAMP, start, end))));
+            query.setMetricName(metricName);
+            query.setMetricType(metricType);
+            query.setInterval(interval);
+
+            String indexNames = new MessageQueryConverter().getIndexNames(scopeName, start.getTime(), end.getTime());
+            String metricField = EsSchema.MESSAGE_MTR + "." + EsUtils.getMetricValueQualifier(esMetricName, esMetricType);
+            MetricAggregationListResult aggregations = EsMessageDAO.connection(EsClient.getcurrent())
+                                                                   .instance(indexNames, EsSchema.MESSAGE_TYPE_NAME)
+                                                                   .aggregate(metricField, query);
+            return new MetricRollupBuilder().buildFromAggregations(aggregations, 0).getResult();
+        } catch (KapuaException exc) {
+            throw exc;
+        } catch (Exception exc) {
+            throw KapuaException.internalError(exc, String.format("Cannot query the rollups of metric %s of topic %s", metricName, topic));
+        }
+    }
+
+    @Override
+    public MetricAggregationListResult aggregate(KapuaId scopeId, MetricAggregationQuery query)
+            throws KapuaException {
+        //
+        // Argument Validation
+        ArgumentValidator.notNull(scopeId, "scopeId");
+        ArgumentValidator.notNull(query, "query");
+        ArgumentValidator.notEmptyOrNull(query.getMetricName(), "query.metricName");
+        ArgumentValidator.notNull(query.getMetricType(), "query.metricType");
+        checkNumericMetricType(query.getMetricType(), "query.metricType");
+        ArgumentValidator.numRange(query.getInterval(), 0, Long.MAX_VALUE, "query.interval");
+        if (query.getPercents() != null) {
+            for (double percent : query.getPercents()) {
+                if (!(percent >= 0 && percent <= 100))
+                    throw new KapuaIllegalArgumentException("query.percents", String.valueOf(percent));
+            }
+        }
+        //
+        // Check Access
+        this.checkDataAccess(scopeId, Actions.read);
+
+        //
+        // Do the aggregation
+        AccountInfo accountInfo = getAccountServicePlan(scopeId);
+        String scopeName = accountInfo.getAccount().getName();
+        LocalServicePlan accountServicePlan = accountInfo.getServicePlan();
+        long ttl = accountServicePlan.getDataTimeToLive() * DAY_MILLIS;
+
+        if (!accountServicePlan.getDataStorageEnabled() || ttl == LocalServicePlan.DISABLED) {
+            logger.debug("Storage not enabled for account {}, returning empty result", scopeName);
+            return new MetricAggregationListResultImpl();
+        }
+
+        try {
+            String esMetricName = EsUtils.normalizeMetricName(query.getMetricName());
+            String esMetricType = EsUtils.convertToEsType(query.getMetricType());
+            String metricField = EsSchema.MESSAGE_MTR + "." + EsUtils.getMetricValueQualifier(esMetricName, esMetricType);
+
+            QueryResultCache queryCache = DatastoreCacheManager.getInstance().getQueryCache();
+            String cacheKey = queryCache.isEnabled() ? QueryResultCache.key(scopeId, String.format("message.aggregate %s %d %s", metricField, query.getInterval(), Arrays.toString(query.getPercents())), query) : null;
+            MetricAggregationListResult result = queryCache.get(scopeId, cacheKey);
+            if (result != null)
+                return result;
+
+            long generation = queryCache.getGeneration(scopeId);
+
+            // The coarsest rollup evenly dividing the requested interval, if the query selects a single topic over whole rollup intervals
+            long rollupInterval = EsMetricRollup.selectInterval(accountServicePlan.getMetricsRollupIntervals(), query.getInterval());
+            KapuaTopic rollupTopic = new MetricAggregationQueryConverter().getRollupTopic(scopeName, query, rollupInterval);
+            if (rollupTopic != null) {
+                result = EsMetricRollupDAO.connection(EsClient.getcurrent())
+                                          .instance(EsUtils.getRollupIndexName(scopeName, rollupInterval), EsSchema.ROLLUP_TYPE_NAME)
+                                          .aggregate(rollupTopic.getAsset(), rollupTopic.getSemanticTopic(), esMetricName, esMetricType, query);
+            }
+            else {
+                String indexNames = new MessageQueryConverter().getIndexNames(scopeName, query);
+                result = EsMessageDAO.connection(EsClient.getcurrent())
+                                     .instance(indexNames, EsSchema.MESSAGE_TYPE_NAME)
+                                     .aggregate(metricField, query);
+            }
+
+            queryCache.put(scopeId, cacheKey, result, generation);
+            return result;
+        } catch (KapuaException exc) {
+            throw exc;
+        } catch (Exception exc) {
+            throw KapuaException.internalError(exc, String.format("Cannot aggregate metric %s", query.getMetricName()));
+        }
+    }
+
+    @Override
+    public void deleteExpired(KapuaId scopeId)
+            throws KapuaException {
+        //
+        // Argument Validation
+        ArgumentValidator.notNull(scopeId, "scopeId");
+        //
+        // Check Access
+        this.checkDataAccess(scopeId, Actions.delete);
+
+        //
+        // Do the delete
+        AccountInfo accountInfo = getAccountServicePlan(scopeId);
+        String scopeName = accountInfo.getAccount().getName();
+        LocalServicePlan accountServicePlan = accountInfo.getServicePlan();
+        long ttl = accountServicePlan.getDataTimeToLive() * DAY_MILLIS;
+
+        if (!accountServicePlan.getDataStorageEnabled() || ttl == LocalServicePlan.DISABLED || ttl < 0) {
+            logger.debug("Storage not enabled or unlimited time to live for account {}, skipping retention", scopeName);
+            return;
+        }
+
+        try {
+            long expiredBefore = KapuaDateUtils.getKapuaSysDate().getTime() - ttl;
+            String[] deletedIndexNames = new EsDataRetention().deleteExpired(scopeName, expiredBefore, accountServicePlan.getMetricsRollupIntervals());
+            DatastoreCacheManager.getInstance().getQueryCache().invalidate(scopeId);
+            logger.info("Data of account {} older than {} deleted [{} expired indexes]", scopeName, new Date(expiredBefore), deletedIndexNames.length);
+        } catch (Exception exc) {
+            throw KapuaException.internalError(exc, String.format("Cannot delete the expired data of account %s", scopeName));
+        }
+    }
+
     private void checkDataAccess(KapuaId scopeId, Actions action)
             throws KapuaException {
         //
@@ -411,17 +785,24 @@ public class MessageStoreServiceImpl extends AbstractKapuaConfigurableService im
 
     private AccountInfo getAccountServicePlan(KapuaId scopeId)
             throws KapuaException {
-        Account account = accountService.find(scopeId);
-        return new AccountInfo(account, new LocalServicePlan(this.getConfigValues(account.getId())));
+        LocalCache<KapuaId, AccountInfo> servicePlanCache = DatastoreCacheManager.getInstance().getServicePlanCache();
+        AccountInfo accountInfo = servicePlanCache.get(scopeId);
+        if (accountInfo == null) {
+            Account account = accountService.find(scopeId);
+            accountInfo = new AccountInfo(account, new LocalServicePlan(this.getConfigValues(account.getId())));
+            servicePlanCache.put(scopeId, accountInfo);
+        }
+        return accountInfo;
     }
 
-    private StorableId storeMessage(String accountName,
+    private CompletableFuture<StorableId> storeMessage(String accountName,
                                     Message message,
                                     int maxTopicDepth,
                                     long indexedOn,
                                     long receivedOn,
                                     long ttl,
-                                    MetricsIndexBy indexBy)
+                                    MetricsIndexBy indexBy,
+                                    long[] rollupIntervals)
             throws IOException, ParseException, EsDatastoreException, KapuaInvalidTopicException {
 
         // Extract schema metadata
@@ -445,125 +826,118 @@ public class MessageStoreServiceImpl extends AbstractKapuaConfigurableService im
         Map<String, EsMetric> esMetrics = docBuilder.getMessageMetrics();
         this.esSchema.updateMessageMappings(accountName, indexedOn, esMetrics);
 
-        // TODO Investigate why update indivudual performs better than update bulk (!!!)
-        this.updateIndividually(schemaMetadata, docBuilder);
-        // this.updateBulk(schemaMetadata, docBuilder);
+        // Save message (the big one) through the bulk ingest queue
+        UpdateRequest messageRequest = EsMessageDAO.connection(EsClient.getcurrent())
+                                                   .instance(schemaMetadata.getPublicIndexName(), schemaMetadata.getMessageTypeName())
+                                                   .getUpsertReq(docBuilder.getMessageId(), docBuilder.getMessage());
+        CompletableFuture<String> storedMessage = EsBulkIngestQueue.getInstance().submit(messageRequest);
+
+        // Count the message for the approximate counts
+        KapuaTopic kapuaTopic = new KapuaTopic(message.getTopic());
+        EsMessageCounters.getInstance().increment(accountName, schemaMetadata.getPublicIndexName(), kapuaTopic.getAsset(), kapuaTopic.getSemanticTopic());
+
+        // Aggregate the numeric metrics for the rollup indexes, if any
+        if (rollupIntervals.length > 0) {
+            EsMetricRollup.getInstance().add(accountName, kapuaTopic.getAsset(), kapuaTopic.getSemanticTopic(),
+                                             message.getPayload().getMetrics(), indexedOn, rollupIntervals);
+        }
+
+        // Save metadata through the metadata update queue, a failed metadata upsert does not fail the message
+        CompletableFuture<Void> updatedMetadata = this.updateMetadata(accountName, message.getTopic(), schemaMetadata, docBuilder);
 
-        return messageId;
+        final StorableId storedMessageId = messageId;
+        return storedMessage.thenCombine(updatedMetadata, (documentId, metadata) -> storedMessageId);
     }
 
-    private void updateIndividually(EsSchema.Metadata schemaMetadata, EsDocumentBuilder docBuilder)
-            throws UnknownHostException, EsDatastoreException {
+    private CompletableFuture<Void> updateMetadata(String accountName, String topic, EsSchema.Metadata schemaMetadata, EsDocumentBuilder docBuilder)
+            throws UnknownHostException, EsDatastoreException, KapuaInvalidTopicException {
 
-        String indexName = schemaMetadata.getPublicIndexName();
-        String messageTypeName = schemaMetadata.getMessageTypeName();
         String kapuaIndexName = schemaMetadata.getPrivateIndexName();
         String topicTypeName = schemaMetadata.getTopicTypeName();
         String metricTypeName = schemaMetadata.getMetricTypeName();
         String assetTypeName = schemaMetadata.getAssetTypeName();
 
-        // Save message (the big one)
-        // TODO check response
-        EsMessageDAO.connection(EsClient.getcurrent())
-                    .instance(indexName, messageTypeName)
-                    .upsert(docBuilder.getMessageId(), docBuilder.getMessage());
+        // The upserts are deduplicated and coalesced by the metadata update queue,
+        // the caches are updated once the upserts are completed successfully
+        EsMetadataUpdateQueue metadataUpdateQueue = EsMetadataUpdateQueue.getInstance();
+        List<CompletableFuture<String>> updates = new ArrayList<CompletableFuture<String>>();
 
         // Save topic. Look up topic in the cache, and cache it if it doesn't exist
-        if (!DatastoreCacheManager.getInstance().getTopicsCache().get(docBuilder.getTopicId())) {
-
-            // The code is safe even without the synchronized block
-            // Synchronize in order to let the first thread complete its update
-            // then the others of the same type will find the cache updated and skip
-            // the update.
-            synchronized (this.metadataUpdateSync) {
-                if (!DatastoreCacheManager.getInstance().getTopicsCache().get(docBuilder.getTopicId())) {
-                    UpdateResponse response = null;
-                    try {
-                        response = EsTopicDAO.connection(EsClient.getcurrent())
-                                             .instance(kapuaIndexName, topicTypeName)
-                                             .upsert(docBuilder.getTopicId(), docBuilder.getTopicBuilder());
-                        logger.debug(String.format("Upsert on topic succesfully executed [%s.%s, %s]", kapuaIndexName, topicTypeName, response.getId()));
-                    } catch (DocumentAlreadyExistsException exc) {
-                        logger.trace(String.format("Upsert failed because topic already exists [%s, %s]", docBuilder.getTopicId(), exc.getMessage()));
-                    }
-                    // Update cache if topic update is completed successfully
-                    DatastoreCacheManager.getInstance().getTopicsCache().put(docBuilder.getTopicId(), true);
-                }
-            }
+        if (this.isUpsertNeeded(DatastoreCacheManager.getInstance().getTopicsCache(), docBuilder.getTopicId())) {
+            KapuaTopic kapuaTopic = new KapuaTopic(topic);
+            EsTopicTrieCache.getInstance().add(accountName, kapuaTopic.getAsset(), kapuaTopic.getSemanticTopic());
+
+            UpdateRequest topicRequest = EsTopicDAO.connection(EsClient.getcurrent())
+                                                   .instance(kapuaIndexName, topicTypeName)
+                                                   .getUpsertRequest(docBuilder.getTopicId(), docBuilder.getTopicBuilder());
+            updates.add(this.cacheOnSuccess(metadataUpdateQueue.submit(topicRequest), DatastoreCacheManager.getInstance().getTopicsCache(), docBuilder.getTopicId(), "topic"));
         }
 
         // Save topic metrics
-        EsMetricDAO.connection(EsClient.getcurrent())
-                   .instance(kapuaIndexName, metricTypeName);
-
-        BulkRequest bulkRequest = new BulkRequest();
         List<EsMetricDocumentBuilder> esTopicMetrics = docBuilder.getTopicMetrics();
         if (esTopicMetrics != null) {
             for (EsMetricDocumentBuilder esTopicMetric : esTopicMetrics) {
-                if (DatastoreCacheManager.getInstance().getMetricsCache().get(esTopicMetric.getId()))
+                if (!this.isUpsertNeeded(DatastoreCacheManager.getInstance().getMetricsCache(), esTopicMetric.getId()))
                     continue;
-                // this.esTopicMetricDAO.upsert(esTopicMetric);
-                bulkRequest.add(EsMetricDAO.connection(EsClient.getcurrent())
-                                           .instance(kapuaIndexName, metricTypeName)
-                                           .getUpsertRequest(esTopicMetric));
+
+                UpdateRequest metricRequest = EsMetricDAO.connection(EsClient.getcurrent())
+                                                         .instance(kapuaIndexName, metricTypeName)
+                                                         .getUpsertRequest(esTopicMetric);
+                updates.add(this.cacheOnSuccess(metadataUpdateQueue.submit(metricRequest), DatastoreCacheManager.getInstance().getMetricsCache(), esTopicMetric.getId(), "topic metric"));
             }
         }
 
-        if (bulkRequest.numberOfActions() > 0) {
-
-            // The code is safe even without the synchronized block
-            // Synchronize in order to let the first thread complete its update
-            // then the others of the same type will find the cache updated and skip
-            // the update.
-            synchronized (this.metadataUpdateSync) {
-                BulkResponse response = EsMetricDAO.connection(EsClient.getcurrent())
-                                                   .bulk(bulkRequest);
+        // Save asset
+        if (this.isUpsertNeeded(DatastoreCacheManager.getInstance().getAssetsCache(), docBuilder.getAssetId())) {
+            UpdateRequest assetRequest = EsAssetDAO.connection(EsClient.getcurrent())
+                                                   .instance(kapuaIndexName, assetTypeName)
+                                                   .getUpsertRequest(docBuilder.getAssetId(), docBuilder.getAssetBuilder());
+            updates.add(this.cacheOnSuccess(metadataUpdateQueue.submit(assetRequest), DatastoreCacheManager.getInstance().getAssetsCache(), docBuilder.getAssetId(), "asset"));
+        }
 
-                BulkItemResponse[] itemResponses = response.getItems();
-                if (itemResponses != null) {
-                    for (BulkItemResponse bulkItemResponse : itemResponses) {
-                        String topicMetricId = ((UpdateResponse) bulkItemResponse.getResponse()).getId();
-                        if (bulkItemResponse.isFailed()) {
-                            String failureMessage = bulkItemResponse.getFailureMessage();
-                            logger.trace(String.format("Upsert failed because topic metric already exists [%s, %s]", topicMetricId, failureMessage));
-                            continue;
-                        }
+        return CompletableFuture.allOf(updates.toArray(new CompletableFuture<?>[updates.size()]));
+    }
 
-                        logger.debug(String.format("Upsert on topic metric succesfully executed [%s.%s, %s]", kapuaIndexName, topicTypeName, topicMetricId));
+    private static void checkNumericMetricType(Class<?> metricType, String argumentName)
+            throws KapuaIllegalArgumentException {
+        // Only the numeric metrics can be aggregated
+        if (metricType != Integer.class && metricType != Long.class && metricType != Float.class && metricType != Double.class)
+            throw new KapuaIllegalArgumentException(argumentName, metricType.getName());
+    }
 
-                        if (DatastoreCacheManager.getInstance().getMetricsCache().get(topicMetricId))
-                            continue;
+    private boolean isUpsertNeeded(FingerprintSet cache, String id) {
+        // Skip the ids already stored and the ones whose upsert failed recently
+        return !cache.contains(id) && DatastoreCacheManager.getInstance().getFailedUpsertsCache().get(id) == null;
+    }
 
-                        // Update cache if topic metric update is completed successfully
-                        DatastoreCacheManager.getInstance().getMetricsCache().put(topicMetricId, true);
-                    }
+    private CompletableFuture<String> cacheOnSuccess(CompletableFuture<String> update, FingerprintSet cache, String id, String metadataType) {
+        return update.handle((documentId, error) -> {
+            if (error != null) {
+                if (isVersionConflict(error)) {
+                    // The document has been upserted concurrently (e.g. by another node), so it is stored anyway
+                    logger.debug(String.format("Upsert on %s concurrently executed [%s]", metadataType, id));
+                    cache.add(id);
+                    return id;
                 }
-            }
-        }
 
-        // Save asset
-        if (!DatastoreCacheManager.getInstance().getAssetsCache().get(docBuilder.getAssetId())) {
-
-            // The code is safe even without the synchronized block
-            // Synchronize in order to let the first thread complete its update
-            // then the others of the same type will find the cache updated and skip
-            // the update.
-            synchronized (this.metadataUpdateSync) {
-                if (!DatastoreCacheManager.getInstance().getAssetsCache().get(docBuilder.getAssetId())) {
-                    UpdateResponse response = null;
-                    try {
-                        response = EsAssetDAO.connection(EsClient.getcurrent())
-                                             .instance(kapuaIndexName, assetTypeName)
-                                             .upsert(docBuilder.getAssetId(), docBuilder.getAssetBuilder());
-                        logger.debug(String.format("Upsert on asset succesfully executed [%s.%s, %s]", kapuaIndexName, topicTypeName, response.getId()));
-                    } catch (DocumentAlreadyExistsException exc) {
-                        logger.trace(String.format("Upsert failed because asset already exists [%s, %s]", docBuilder.getAssetId(), exc.getMessage()));
-                    }
-                    // Update cache if asset update is completed successfully
-                    DatastoreCacheManager.getInstance().getAssetsCache().put(docBuilder.getAssetId(), true);
-                }
+                // Not cached, a later message will retry the upsert once the retry delay expires
+                logger.warn(String.format("Upsert on %s failed [%s]", metadataType, error.getMessage()));
+                DatastoreCacheManager.getInstance().getFailedUpsertsCache().put(id, Boolean.TRUE);
+                return null;
             }
+
+            logger.debug(String.format("Upsert on %s succesfully executed [%s]", metadataType, documentId));
+            cache.add(documentId);
+            return documentId;
+        });
+    }
+
+    private static boolean isVersionConflict(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof VersionConflictEngineException)
+                return true;
         }
+        return false;
     }
 
     private void resetCache(String accountName, String topic)
@@ -610,13 +984,12 @@ public class MessageStoreServiceImpl extends AbstractKapuaConfigurableService im
                                                       .query(metricQuery);
 
             totalHits = metrics.size();
-            LocalCache<String, Boolean> metricsCache = DatastoreCacheManager.getInstance().getMetricsCache();
+            FingerprintSet metricsCache = DatastoreCacheManager.getInstance().getMetricsCache();
             long toBeProcessed = totalHits > pageSize ? pageSize : totalHits;
 
             for (int i = 0; i < toBeProcessed; i++) {
                 String id = metrics.get(i).getId().toString();
-                if (metricsCache.get(id))
-                    metricsCache.remove(id);
+                metricsCache.remove(id);
             }
 
             if (totalHits > pageSize)
@@ -649,13 +1022,12 @@ public class MessageStoreServiceImpl extends AbstractKapuaConfigurableService im
                                                    .query(topicQuery);
 
             totalHits = topics.size();
-            LocalCache<String, Boolean> topicsCache = DatastoreCacheManager.getInstance().getTopicsCache();
+            FingerprintSet topicsCache = DatastoreCacheManager.getInstance().getTopicsCache();
             long toBeProcessed = totalHits > pageSize ? pageSize : totalHits;
 
             for (int i = 0; i < toBeProcessed; i++) {
                 String id = topics.get(0).getId().toString();
-                if (topicsCache.get(id))
-                    topicsCache.remove(id);
+                topicsCache.remove(id);
             }
             if (totalHits > pageSize)
                 offset += (pageSize + 1);
@@ -668,6 +1040,7 @@ public class MessageStoreServiceImpl extends AbstractKapuaConfigurableService im
                   .deleteByQuery(topicQuery);
 
         logger.debug(String.format("Removed topics for [%s]", topic));
+        EsTopicTrieCache.getInstance().evict(accountName);
         //
 
         // Remove asset
@@ -689,13 +1062,12 @@ public class MessageStoreServiceImpl extends AbstractKapuaConfigurableService im
                                                        .query(assetQuery);
 
                 totalHits = assets.size();
-                LocalCache<String, Boolean> assetsCache = DatastoreCacheManager.getInstance().getAssetsCache();
+                FingerprintSet assetsCache = DatastoreCacheManager.getInstance().getAssetsCache();
                 long toBeProcessed = totalHits > pageSize ? pageSize : totalHits;
 
                 for (int i = 0; i < toBeProcessed; i++) {
                     String id = assets.get(i).getId().toString();
-                    if (assetsCache.get(id))
-                        assetsCache.remove(id);
+                    assetsCache.remove(id);
                 }
                 if (totalHits > pageSize)
                     offset += (pageSize + 1);
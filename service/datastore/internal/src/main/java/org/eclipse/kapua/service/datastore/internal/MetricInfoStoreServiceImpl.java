@@ -120,6 +120,7 @@ public class MetricInfoStoreServiceImpl extends AbstractKapuaConfigurableService
             EsMetricDAO.connection(EsClient.getcurrent())
                        .instance(everyIndex, EsSchema.METRIC_TYPE_NAME)
                        .deleteById(id.toString());
+            DatastoreCacheManager.getInstance().getQueryCache().invalidate(scopeId);
         } catch (Exception exc) {
             // TODO manage exeception
             // CassandraUtils.handleException(e);
@@ -179,12 +180,19 @@ public class MetricInfoStoreServiceImpl extends AbstractKapuaConfigurableService
         }
 
         try {
+            QueryResultCache queryCache = DatastoreCacheManager.getInstance().getQueryCache();
+            String cacheKey = queryCache.isEnabled() ? QueryResultCache.key(scopeId, "metric.query", query) : null;
+            MetricInfoListResult result = queryCache.get(scopeId, cacheKey);
+            if (result != null)
+                return result;
+
+            long generation = queryCache.getGeneration(scopeId);
             String everyIndex = EsUtils.getAnyIndexName(scopeName);
-            MetricInfoListResult result = null;
             result = EsMetricDAO.connection(EsClient.getcurrent())
                                 .instance(everyIndex, EsSchema.METRIC_TYPE_NAME)
                                 .query(query);
 
+            queryCache.put(scopeId, cacheKey, result, generation);
             return result;
         } catch (Exception exc) {
             // TODO manage exeception
@@ -217,12 +225,20 @@ public class MetricInfoStoreServiceImpl extends AbstractKapuaConfigurableService
         }
 
         try {
+            QueryResultCache queryCache = DatastoreCacheManager.getInstance().getQueryCache();
+            String cacheKey = queryCache.isEnabled() ? QueryResultCache.key(scopeId, "metric.count", query) : null;
+            Long cachedResult = queryCache.get(scopeId, cacheKey);
+            if (cachedResult != null)
+                return cachedResult;
+
+            long generation = queryCache.getGeneration(scopeId);
             String everyIndex = EsUtils.getAnyIndexName(scopeName);
             long result;
             result = EsMetricDAO.connection(EsClient.getcurrent())
                                 .instance(everyIndex, EsSchema.METRIC_TYPE_NAME)
                                 .count(query);
 
+            queryCache.put(scopeId, cacheKey, result, generation);
             return result;
         } catch (Exception exc) {
             // TODO manage exeception
@@ -258,6 +274,7 @@ public class MetricInfoStoreServiceImpl extends AbstractKapuaConfigurableService
             EsMetricDAO.connection(EsClient.getcurrent())
                        .instance(everyIndex, EsSchema.METRIC_TYPE_NAME)
                        .deleteByQuery(query);
+            DatastoreCacheManager.getInstance().getQueryCache().invalidate(scopeId);
 
             return;
         } catch (Exception exc) {
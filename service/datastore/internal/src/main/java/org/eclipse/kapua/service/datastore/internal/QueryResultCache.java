@@ -0,0 +1,296 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.kapua.commons.cache.LocalCache;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.datastore.model.StorableId;
+import org.eclipse.kapua.service.datastore.model.query.AndPredicate;
+import org.eclipse.kapua.service.datastore.model.query.IdsPredicate;
+import org.eclipse.kapua.service.datastore.model.query.MessageQuery;
+import org.eclipse.kapua.service.datastore.model.query.RangePredicate;
+import org.eclipse.kapua.service.datastore.model.query.StorablePredicate;
+import org.eclipse.kapua.service.datastore.model.query.StorableQuery;
+import org.eclipse.kapua.service.datastore.model.query.TermPredicate;
+import org.eclipse.kapua.service.datastore.model.query.TopicMatchPredicate;
+
+/**
+ * Short lived cache of the query and count results, to absorb the same query repeated by dashboards and polling clients.<br>
+ * The key is a canonical form of the query (predicate tree, sort, fetch style, offset, limit, total count flag, metric projection and approximate count flag) plus the scope,
+ * so equivalent queries share the entry whatever the order of the and-ed predicates or of the ids.<br>
+ * Every scope has a generation, increased whenever a message is stored or data is deleted in the scope: an entry is served only while the
+ * generation it has been computed under is still the current one, so no result older than the last write of its scope is returned.
+ * Entries also expire after the (short) configured time, which bounds the staleness of the writes not seen by this node.
+ * A non positive expiration time disables the cache.
+ *
+ * @since 1.0
+ */
+public class QueryResultCache
+{
+
+    private static class Entry
+    {
+
+        private final Object result;
+        private final long   generation;
+
+        private Entry(Object result, long generation)
+        {
+            this.result = result;
+            this.generation = generation;
+        }
+    }
+
+    private final boolean                            enabled;
+    private final LocalCache<String, Entry>          results;
+    private final ConcurrentMap<KapuaId, AtomicLong> generations = new ConcurrentHashMap<KapuaId, AtomicLong>();
+
+    /**
+     * Create a new query result cache
+     *
+     * @param sizeMax maximum number of cached results
+     * @param expireAfter maximum age (seconds) of a cached result, 0 to disable the cache
+     */
+    public QueryResultCache(int sizeMax, int expireAfter)
+    {
+        this.enabled = sizeMax > 0 && expireAfter > 0;
+        this.results = enabled ? new LocalCache<String, Entry>(sizeMax, expireAfter, null) : null;
+    }
+
+    /**
+     * Return true if the results are cached
+     *
+     * @return
+     */
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Return the cache key of the query
+     *
+     * @param scopeId
+     * @param kind the kind of result (e.g. message query, message count), since the same query may have different results
+     * @param query
+     * @return the key, or null if the query cannot be cached (the predicate has no canonical form)
+     */
+    public static String key(KapuaId scopeId, String kind, StorableQuery<?> query)
+    {
+        StringBuilder key = new StringBuilder(128);
+        append(key, scopeId.getId());
+        append(key, kind);
+        if (!appendPredicate(key, query.getPredicate()))
+            return null;
+        append(key, query.getSort());
+        append(key, query.getFetchStyle());
+        append(key, query.getOffset());
+        append(key, query.getLimit());
+        append(key, query.isAskTotalCount());
+        if (query instanceof MessageQuery) {
+            appendProjection(key, ((MessageQuery) query).getMetricProjection());
+            append(key, ((MessageQuery) query).isAcceptApproximateCount());
+        }
+        return key.toString();
+    }
+
+    /**
+     * Return the current generation of the scope, to be read before running the query whose result is then cached
+     *
+     * @param scopeId
+     * @return
+     */
+    public long getGeneration(KapuaId scopeId)
+    {
+        AtomicLong generation = generations.get(scopeId);
+        return generation != null ? generation.get() : 0;
+    }
+
+    /**
+     * Return a copy of the cached result, or null if not cached, expired or computed before the last write of the scope
+     *
+     * @param scopeId
+     * @param key
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <R> R get(KapuaId scopeId, String key)
+    {
+        if (!enabled || key == null)
+            return null;
+
+        Entry entry = results.get(key);
+        if (entry == null)
+            return null;
+
+        if (entry.generation != getGeneration(scopeId)) {
+            results.remove(key);
+            return null;
+        }
+        return (R) copy(entry.result);
+    }
+
+    /**
+     * Cache the result of a query
+     *
+     * @param scopeId
+     * @param key
+     * @param result
+     * @param generation the generation of the scope read before running the query
+     */
+    public void put(KapuaId scopeId, String key, Object result, long generation)
+    {
+        if (!enabled || key == null || result == null)
+            return;
+
+        // A write happened while running the query, the result may already be stale
+        if (generation != getGeneration(scopeId))
+            return;
+
+        results.put(key, new Entry(copy(result), generation));
+    }
+
+    /**
+     * Invalidate all the cached results of the scope
+     *
+     * @param scopeId
+     */
+    public void invalidate(KapuaId scopeId)
+    {
+        if (!enabled)
+            return;
+
+        generations.computeIfAbsent(scopeId, id -> new AtomicLong()).incrementAndGet();
+    }
+
+    private static Object copy(Object result)
+    {
+        // The list results are mutable, the caller must not change the cached instance (the elements are shared)
+        if (result instanceof ArrayList)
+            return ((ArrayList<?>) result).clone();
+        return result;
+    }
+
+    private static boolean appendPredicate(StringBuilder key, StorablePredicate predicate)
+    {
+        if (predicate == null) {
+            key.append("*;");
+            return true;
+        }
+
+        if (predicate instanceof AndPredicate) {
+            List<String> children = new ArrayList<String>();
+            for (StorablePredicate child : ((AndPredicate) predicate).getPredicates()) {
+                StringBuilder childKey = new StringBuilder();
+                if (!appendPredicate(childKey, child))
+                    return false;
+                children.add(childKey.toString());
+            }
+            Collections.sort(children);
+            key.append("and(").append(children.size()).append(';');
+            for (String child : children)
+                key.append(child);
+            key.append(");");
+            return true;
+        }
+
+        if (predicate instanceof IdsPredicate) {
+            IdsPredicate idsPredicate = (IdsPredicate) predicate;
+            List<String> ids = new ArrayList<String>();
+            if (idsPredicate.getIdSet() != null) {
+                for (StorableId id : idsPredicate.getIdSet())
+                    ids.add(String.valueOf(id));
+            }
+            Collections.sort(ids);
+            key.append("ids(");
+            append(key, idsPredicate.getField() != null ? idsPredicate.getField().field() : null);
+            append(key, ids.size());
+            for (String id : ids)
+                append(key, id);
+            key.append(");");
+            return true;
+        }
+
+        if (predicate instanceof TopicMatchPredicate) {
+            key.append("topic(");
+            append(key, ((TopicMatchPredicate) predicate).getExpression());
+            key.append(");");
+            return true;
+        }
+
+        if (predicate instanceof RangePredicate) {
+            RangePredicate rangePredicate = (RangePredicate) predicate;
+            key.append("range(");
+            append(key, rangePredicate.getField() != null ? rangePredicate.getField().field() : null);
+            append(key, rangePredicate.getMinValue());
+            append(key, rangePredicate.getMaxValue());
+            key.append(");");
+            return true;
+        }
+
+        if (predicate instanceof TermPredicate) {
+            TermPredicate termPredicate = (TermPredicate) predicate;
+            key.append("term(");
+            append(key, termPredicate.getField() != null ? termPredicate.getField().field() : null);
+            append(key, termPredicate.getValue());
+            key.append(");");
+            return true;
+        }
+
+        // Unknown predicate, no canonical form
+        return false;
+    }
+
+    private static void appendProjection(StringBuilder key, Set<String> metricProjection)
+    {
+        if (metricProjection == null) {
+            key.append("*;");
+            return;
+        }
+
+        List<String> metricNames = new ArrayList<String>(metricProjection);
+        Collections.sort(metricNames);
+        key.append("metrics(");
+        append(key, metricNames.size());
+        for (String metricName : metricNames)
+            append(key, metricName);
+        key.append(");");
+    }
+
+    private static void append(StringBuilder key, Object value)
+    {
+        // Type tagged and length prefixed, so different values never render the same
+        if (value == null) {
+            key.append("n;");
+            return;
+        }
+
+        String string;
+        if (value instanceof Date)
+            string = Long.toString(((Date) value).getTime());
+        else if (value instanceof Enum)
+            string = ((Enum<?>) value).name();
+        else
+            string = value.toString();
+        key.append(value.getClass().getSimpleName()).append(':').append(string.length()).append(':').append(string).append(';');
+    }
+}
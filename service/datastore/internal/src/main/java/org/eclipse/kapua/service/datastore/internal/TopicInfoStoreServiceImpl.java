@@ -32,6 +32,7 @@ import org.eclipse.kapua.service.datastore.TopicInfoStoreService;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsClient;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsMessageField;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsSchema;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsTopicTrieCache;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsUtils;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.LocalServicePlan;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.dao.EsMessageDAO;
@@ -143,6 +144,8 @@ public class TopicInfoStoreServiceImpl extends AbstractKapuaConfigurableService
             EsTopicDAO.connection(EsClient.getcurrent())
                       .instance(everyIndex, EsSchema.TOPIC_TYPE_NAME)
                       .deleteById(id.toString());
+            DatastoreCacheManager.getInstance().getQueryCache().invalidate(scopeId);
+            EsTopicTrieCache.getInstance().evict(scopeName);
         } catch (Exception exc) {
             // TODO manage exeception
             // CassandraUtils.handleException(e);
@@ -205,12 +208,19 @@ public class TopicInfoStoreServiceImpl extends AbstractKapuaConfigurableService
         }
 
         try {
+            QueryResultCache queryCache = DatastoreCacheManager.getInstance().getQueryCache();
+            String cacheKey = queryCache.isEnabled() ? QueryResultCache.key(scopeId, "topic.query", query) : null;
+            TopicInfoListResult result = queryCache.get(scopeId, cacheKey);
+            if (result != null)
+                return result;
+
+            long generation = queryCache.getGeneration(scopeId);
             String everyIndex = EsUtils.getAnyIndexName(scopeName);
-            TopicInfoListResult result = null;
             result = EsTopicDAO.connection(EsClient.getcurrent())
                                .instance(everyIndex, EsSchema.TOPIC_TYPE_NAME)
                                .query(query);
 
+            queryCache.put(scopeId, cacheKey, result, generation);
             return result;
         } catch (Exception exc) {
             // TODO manage exeception
@@ -243,12 +253,20 @@ public class TopicInfoStoreServiceImpl extends AbstractKapuaConfigurableService
         }
 
         try {
+            QueryResultCache queryCache = DatastoreCacheManager.getInstance().getQueryCache();
+            String cacheKey = queryCache.isEnabled() ? QueryResultCache.key(scopeId, "topic.count", query) : null;
+            Long cachedResult = queryCache.get(scopeId, cacheKey);
+            if (cachedResult != null)
+                return cachedResult;
+
+            long generation = queryCache.getGeneration(scopeId);
             String everyIndex = EsUtils.getAnyIndexName(scopeName);
             long result;
             result = EsTopicDAO.connection(EsClient.getcurrent())
                                .instance(everyIndex, EsSchema.TOPIC_TYPE_NAME)
                                .count(query);
 
+            queryCache.put(scopeId, cacheKey, result, generation);
             return result;
         } catch (Exception exc) {
             // TODO manage exeception
@@ -306,6 +324,8 @@ public class TopicInfoStoreServiceImpl extends AbstractKapuaConfigurableService
             EsTopicDAO.connection(EsClient.getcurrent())
                       .instance(everyIndex, EsSchema.TOPIC_TYPE_NAME)
                       .deleteByQuery(query);
+            DatastoreCacheManager.getInstance().getQueryCache().invalidate(scopeId);
+            EsTopicTrieCache.getInstance().evict(scopeName);
 
             return;
         } catch (Exception exc) {
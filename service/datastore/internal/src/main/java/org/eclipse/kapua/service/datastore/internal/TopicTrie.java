@@ -0,0 +1,285 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Trie of the topics of an account, one node per topic level, used to expand an MQTT style topic filter into the exact set of the known topics it matches.<br>
+ * The filter wildcards follow the MQTT rules: '+' matches exactly one level and '#', allowed as last level only, matches the parent level and any number of sub levels.
+ * The topics and the filters are split into levels by scanning for the '/' separator, without regular expressions nor intermediate arrays of the topic levels.<br>
+ * The trie is safe for concurrent use: the matches share a read lock while the additions and removals take the write lock.
+ *
+ * @since 1.0
+ */
+public class TopicTrie
+{
+
+    private static final char   SEPARATOR          = '/';
+    private static final String SINGLE_LEVEL_WCARD = "+";
+    private static final String MULTI_LEVEL_WCARD  = "#";
+
+    private final ReadWriteLock lock               = new ReentrantReadWriteLock();
+    private final Node          root               = new Node();
+    private int                 size;
+
+    /**
+     * Add the topic
+     *
+     * @param topic
+     * @return true if the topic was not known
+     */
+    public boolean add(String topic)
+    {
+        lock.writeLock().lock();
+        try {
+            Node node = root;
+            int start = 0;
+            while (true) {
+                int end = levelEnd(topic, start);
+                node = node.getOrCreateChild(topic.substring(start, end));
+                if (end == topic.length())
+                    break;
+                start = end + 1;
+            }
+
+            if (node.topic != null)
+                return false;
+
+            node.topic = topic;
+            size++;
+            return true;
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove the topic, and the levels left without topics
+     *
+     * @param topic
+     * @return true if the topic was known
+     */
+    public boolean remove(String topic)
+    {
+        lock.writeLock().lock();
+        try {
+            List<Node> path = new ArrayList<Node>();
+            List<String> levels = new ArrayList<String>();
+            Node node = root;
+            int start = 0;
+            while (node != null) {
+                int end = levelEnd(topic, start);
+                String level = topic.substring(start, end);
+                path.add(node);
+                levels.add(level);
+                node = node.children != null ? node.children.get(level) : null;
+                if (end == topic.length())
+                    break;
+                start = end + 1;
+            }
+
+            if (node == null || node.topic == null)
+                return false;
+
+            node.topic = null;
+            size--;
+
+            // Prune the levels left empty, from the leaf up
+            for (int i = path.size() - 1; i >= 0 && node.topic == null && node.children == null; i--) {
+                Node parent = path.get(i);
+                parent.removeChild(levels.get(i));
+                node = parent;
+            }
+            return true;
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Return true if the topic is known
+     *
+     * @param topic
+     * @return
+     */
+    public boolean contains(String topic)
+    {
+        lock.readLock().lock();
+        try {
+            Node node = root;
+            int start = 0;
+            while (true) {
+                int end = levelEnd(topic, start);
+                node = node.children != null ? node.children.get(topic.substring(start, end)) : null;
+                if (node == null)
+                    return false;
+                if (end == topic.length())
+                    return node.topic != null;
+                start = end + 1;
+            }
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return the known topics matching the filter
+     *
+     * @param filter the topic filter, with the '+' and '#' wildcards
+     * @param maxMatches the maximum number of topics returned
+     * @return the matching topics, or null if they are more than the maximum
+     */
+    public List<String> match(String filter, int maxMatches)
+    {
+        lock.readLock().lock();
+        try {
+            List<String> matches = new ArrayList<String>();
+            return match(root, filter, 0, matches, maxMatches) ? matches : null;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Remove all the topics
+     */
+    public void clear()
+    {
+        lock.writeLock().lock();
+        try {
+            root.children = null;
+            size = 0;
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Return the number of known topics
+     *
+     * @return
+     */
+    public int size()
+    {
+        lock.readLock().lock();
+        try {
+            return size;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Add to the matches the topics of the node subtree matching the filter levels from the given offset
+     *
+     * @return false if the maximum number of matches has been exceeded
+     */
+    private static boolean match(Node node, String filter, int start, List<String> matches, int maxMatches)
+    {
+        int end = levelEnd(filter, start);
+        String level = filter.substring(start, end);
+        boolean last = end == filter.length();
+
+        if (MULTI_LEVEL_WCARD.equals(level))
+            return collect(node, matches, maxMatches);
+
+        if (node.children == null)
+            return true;
+
+        if (SINGLE_LEVEL_WCARD.equals(level)) {
+            for (Node child : node.children.values()) {
+                if (!matchChild(child, filter, end, last, matches, maxMatches))
+                    return false;
+            }
+            return true;
+        }
+
+        Node child = node.children.get(level);
+        return child == null || matchChild(child, filter, end, last, matches, maxMatches);
+    }
+
+    private static boolean matchChild(Node child, String filter, int levelEnd, boolean last, List<String> matches, int maxMatches)
+    {
+        if (last)
+            return child.topic == null || addMatch(child.topic, matches, maxMatches);
+        return match(child, filter, levelEnd + 1, matches, maxMatches);
+    }
+
+    private static boolean collect(Node node, List<String> matches, int maxMatches)
+    {
+        if (node.topic != null && !addMatch(node.topic, matches, maxMatches))
+            return false;
+
+        if (node.children != null) {
+            for (Node child : node.children.values()) {
+                if (!collect(child, matches, maxMatches))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean addMatch(String topic, List<String> matches, int maxMatches)
+    {
+        if (matches.size() >= maxMatches)
+            return false;
+        matches.add(topic);
+        return true;
+    }
+
+    private static int levelEnd(String topic, int start)
+    {
+        int end = topic.indexOf(SEPARATOR, start);
+        return end == -1 ? topic.length() : end;
+    }
+
+    private static final class Node
+    {
+
+        private Map<String, Node> children;
+        // The topic ending at this level, if known
+        private String            topic;
+
+        private Node getOrCreateChild(String level)
+        {
+            if (children == null)
+                children = new HashMap<String, Node>(4);
+
+            Node child = children.get(level);
+            if (child == null) {
+                child = new Node();
+                children.put(level, child);
+            }
+            return child;
+        }
+
+        private void removeChild(String level)
+        {
+            children.remove(level);
+            if (children.isEmpty())
+                children = null;
+        }
+    }
+}
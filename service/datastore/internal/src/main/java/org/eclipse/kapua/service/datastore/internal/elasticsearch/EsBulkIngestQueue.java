@@ -0,0 +1,287 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettingKey;
+import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettings;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.common.unit.TimeValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded ingest stage gathering write requests coming from concurrent callers (i.e. the Camel consumer threads)
+ * and flushing them to Elasticsearch as a single bulk request when either the bulk size or the flush interval is reached.<br>
+ * Every submitted request gets its own future, completed with the document id or with the failure reported by
+ * Elasticsearch for that bulk item, so the caller can still acknowledge (or reject) each message individually.
+ *
+ * @since 1.0
+ */
+public class EsBulkIngestQueue
+{
+
+    private static final Logger s_logger = LoggerFactory.getLogger(EsBulkIngestQueue.class);
+
+    // Upper bound of the idle wait so a close request is noticed quickly
+    private static final long   IDLE_POLL_TIMEOUT = 100;
+
+    private static EsBulkIngestQueue instance;
+
+    /**
+     * Executes the bulk request built by the queue
+     */
+    public interface BulkExecutor
+    {
+
+        /**
+         * Execute the bulk request and return the response
+         *
+         * @param bulkRequest
+         * @return
+         * @throws Exception
+         */
+        public BulkResponse execute(BulkRequest bulkRequest)
+            throws Exception;
+    }
+
+    private static class PendingRequest
+    {
+
+        private final ActionRequest<?>          request;
+        private final CompletableFuture<String> future;
+
+        private PendingRequest(ActionRequest<?> request, CompletableFuture<String> future)
+        {
+            this.request = request;
+            this.future = future;
+        }
+    }
+
+    private final BlockingQueue<PendingRequest> queue;
+    private final int                           bulkSize;
+    private final long                          flushInterval;
+    private final long                          offerTimeout;
+    private final BulkExecutor                  executor;
+    private final Thread                        flusher;
+
+    private volatile boolean                    running;
+
+    /**
+     * Get the shared ingest queue configured by the datastore settings and bound to the current Elasticsearch client
+     *
+     * @return
+     */
+    public static synchronized EsBulkIngestQueue getInstance()
+    {
+        if (instance == null) {
+            DatastoreSettings config = DatastoreSettings.getInstance();
+            instance = new EsBulkIngestQueue(config.getInt(DatastoreSettingKey.CONFIG_INGEST_QUEUE_SIZE),
+                                             config.getInt(DatastoreSettingKey.CONFIG_INGEST_BULK_SIZE),
+                                             config.getLong(DatastoreSettingKey.CONFIG_INGEST_BULK_FLUSH_INTERVAL),
+                                             config.getLong(DatastoreSettingKey.CONFIG_INGEST_QUEUE_OFFER_TIMEOUT),
+                                             bulkRequest -> EsClient.getcurrent()
+                                                                    .bulk(bulkRequest)
+                                                                    .actionGet(TimeValue.timeValueMillis(EsUtils.getQueryTimeout())));
+        }
+        return instance;
+    }
+
+    /**
+     * Close the shared ingest queue, if created, flushing the pending requests
+     */
+    public static synchronized void closeInstance()
+    {
+        if (instance == null)
+            return;
+
+        try {
+            instance.close();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            s_logger.warn("Interrupted while closing the bulk ingest queue");
+        }
+        finally {
+            instance = null;
+        }
+    }
+
+    /**
+     * Create and start a new ingest queue
+     *
+     * @param queueSize maximum number of requests waiting to be flushed
+     * @param bulkSize maximum number of requests sent with a single bulk request
+     * @param flushInterval maximum time (milliseconds) a request waits for the bulk to fill up
+     * @param offerTimeout maximum time (milliseconds) a caller waits for a free slot when the queue is full
+     * @param executor bulk request executor
+     */
+    public EsBulkIngestQueue(int queueSize, int bulkSize, long flushInterval, long offerTimeout, BulkExecutor executor)
+    {
+        this.queue = new ArrayBlockingQueue<PendingRequest>(queueSize);
+        this.bulkSize = bulkSize;
+        this.flushInterval = flushInterval;
+        this.offerTimeout = offerTimeout;
+        this.executor = executor;
+        this.running = true;
+
+        this.flusher = new Thread(this::flushLoop, "datastore-bulk-ingest");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Queue the request for the next bulk flush.<br>
+     * If the queue is full the caller waits at most the offer timeout, then the returned future fails.
+     *
+     * @param request
+     * @return a future completed with the stored document id once the bulk containing the request has been executed
+     */
+    public CompletableFuture<String> submit(ActionRequest<?> request)
+    {
+        CompletableFuture<String> future = new CompletableFuture<String>();
+        if (!running) {
+            future.completeExceptionally(new EsDatastoreException("Bulk ingest queue is closed"));
+            return future;
+        }
+
+        try {
+            if (!queue.offer(new PendingRequest(request, future), offerTimeout, TimeUnit.MILLISECONDS))
+                future.completeExceptionally(new EsDatastoreException(String.format("Bulk ingest queue is full [%s requests pending]", queue.size())));
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(e);
+        }
+
+        return future;
+    }
+
+    /**
+     * Return the number of requests waiting to be flushed
+     *
+     * @return
+     */
+    public int getPendingCount()
+    {
+        return queue.size();
+    }
+
+    /**
+     * Stop accepting requests, flush the pending ones and stop the flusher thread
+     *
+     * @throws InterruptedException
+     */
+    public void close()
+        throws InterruptedException
+    {
+        running = false;
+        flusher.join();
+
+        // Requests queued while the flusher was terminating
+        List<PendingRequest> orphans = new ArrayList<PendingRequest>();
+        queue.drainTo(orphans);
+        for (PendingRequest orphan : orphans)
+            orphan.future.completeExceptionally(new EsDatastoreException("Bulk ingest queue is closed"));
+    }
+
+    private void flushLoop()
+    {
+        List<PendingRequest> batch = new ArrayList<PendingRequest>(bulkSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingRequest first = queue.poll(Math.min(flushInterval, IDLE_POLL_TIMEOUT), TimeUnit.MILLISECONDS);
+                if (first == null)
+                    continue;
+
+                // The time limit starts with the first request of the bulk
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushInterval);
+                while (batch.size() < bulkSize) {
+                    queue.drainTo(batch, bulkSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= bulkSize || remaining <= 0)
+                        break;
+
+                    PendingRequest next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null)
+                        break;
+                    batch.add(next);
+                }
+
+                flush(batch);
+            }
+            catch (InterruptedException e) {
+                s_logger.warn("Bulk ingest flusher interrupted");
+                flush(batch);
+            }
+            catch (Throwable t) {
+                s_logger.error("Unexpected error while flushing bulk ingest requests", t);
+                fail(batch, t);
+            }
+            finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<PendingRequest> batch)
+    {
+        if (batch.isEmpty())
+            return;
+
+        BulkRequest bulkRequest = new BulkRequest();
+        for (PendingRequest pending : batch)
+            bulkRequest.add(pending.request);
+
+        BulkResponse bulkResponse;
+        try {
+            bulkResponse = executor.execute(bulkRequest);
+        }
+        catch (Exception e) {
+            s_logger.error(String.format("Bulk ingest of %s requests failed", batch.size()), e);
+            fail(batch, e);
+            return;
+        }
+
+        BulkItemResponse[] itemResponses = bulkResponse.getItems();
+        if (itemResponses != null) {
+            for (BulkItemResponse itemResponse : itemResponses) {
+                PendingRequest pending = batch.get(itemResponse.getItemId());
+                if (itemResponse.isFailed())
+                    pending.future.completeExceptionally(new EsDatastoreException(itemResponse.getFailureMessage(), itemResponse.getFailure().getCause()));
+                else
+                    pending.future.complete(itemResponse.getId());
+            }
+        }
+
+        // Every request must get an answer
+        fail(batch, new EsDatastoreException("No bulk item response returned for the request"));
+        s_logger.debug("Bulk ingest of {} requests executed in {} ms", batch.size(), bulkResponse.getTookInMillis());
+    }
+
+    private void fail(List<PendingRequest> batch, Throwable cause)
+    {
+        for (PendingRequest pending : batch)
+            pending.future.completeExceptionally(cause);
+    }
+}
@@ -12,64 +12,172 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.datastore.internal.elasticsearch;
 
+import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
+import org.eclipse.kapua.service.datastore.internal.DataRetentionTask;
 import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettingKey;
 import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettings;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.client.transport.TransportClient;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.transport.InetSocketTransportAddress;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Provider of the Elasticsearch transport client shared by the datastore services.<br>
+ * The client is created once, on first use, and connects to all the configured seed nodes
+ * ({@code datastore.elasticsearch.node.NN=host[:port]}) or to the node given by the
+ * {@code ELASTICSEARCH_SERVICE_HOST} (and optional {@code ELASTICSEARCH_SERVICE_PORT_TRANSPORT}) environment variables.
+ * The port is the one of the transport protocol (default {@value #DEFAULT_PORT}): {@code ELASTICSEARCH_SERVICE_PORT} is not used since it usually
+ * holds the HTTP port of the service.
+ * Requests are balanced among the connected nodes, so a slow node no longer throttles the whole ingestion.<br>
+ * The client is closed by {@link #close()}, which is also called by a JVM shutdown hook.
+ *
+ * @since 1.0
+ */
+public class EsClient
+{
+
+    private static final Logger    s_logger     = LoggerFactory.getLogger(EsClient.class);
+
+    private static final int       DEFAULT_PORT = 9300;
+
+    private static volatile Client client;
+    private static boolean         shutdownHookRegistered;
+
+    private EsClient()
+    {
+    }
+
+    /**
+     * Get the shared Elasticsearch client, creating it on first use
+     *
+     * @return
+     * @throws UnknownHostException
+     * @throws EsDatastoreException
+     */
+    public static Client getcurrent()
+        throws UnknownHostException, EsDatastoreException
+    {
+        Client current = client;
+        if (current == null) {
+            synchronized (EsClient.class) {
+                current = client;
+                if (current == null) {
+                    current = newClient();
+                    client = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Close the shared Elasticsearch client, if created.<br>
+     * The data retention task is stopped and the pending metric rollups, message counts, metadata upserts and bulk ingest requests are flushed before closing the client. A further {@link #getcurrent()} creates a new client.
+     */
+    public static synchronized void close()
+    {
+        DataRetentionTask.closeInstance();
+        EsMetricRollup.closeInstance();
+        EsMessageCounters.closeInstance();
+        EsMetadataUpdateQueue.closeInstance();
+        EsBulkIngestQueue.closeInstance();
+
+        Client current = client;
+        client = null;
+        if (current != null) {
+            s_logger.info("Closing Elasticsearch client...");
+            current.close();
+            s_logger.info("Closing Elasticsearch client... DONE");
+        }
+    }
+
+    private static Client newClient()
+        throws UnknownHostException, EsDatastoreException
+    {
+        DatastoreSettings config = DatastoreSettings.getInstance();
+
+        List<InetSocketTransportAddress> addresses = new ArrayList<InetSocketTransportAddress>();
+        String esHost = System.getenv("ELASTICSEARCH_SERVICE_HOST");
+        if (esHost != null) {
+            addresses.add(parseNode(getServiceNode(esHost, System.getenv("ELASTICSEARCH_SERVICE_PORT_TRANSPORT"))));
+        }
+        else {
+            // Keep the configuration order (node.01, node.02, ...) so the first node is predictable
+            Map<String, String> nodes = new TreeMap<String, String>(config.getMap(String.class, DatastoreSettingKey.ELASTICSEARCH_NODES, "[0-9]+"));
+            for (String node : nodes.values())
+                addresses.add(parseNode(node));
+        }
+
+        if (addresses.isEmpty())
+            throw new EsDatastoreException("No elasticsearch nodes found");
+
+        Settings settings = Settings.settingsBuilder()
+                                    .put("cluster.name", config.getString(DatastoreSettingKey.ELASTICSEARCH_CLUSTER))
+                                    .put("client.transport.sniff", config.getBoolean(DatastoreSettingKey.ELASTICSEARCH_CLIENT_SNIFF, false))
+                                    .put("client.transport.ping_timeout", config.getString(DatastoreSettingKey.ELASTICSEARCH_CLIENT_PING_TIMEOUT, "5s"))
+                                    .put("client.transport.nodes_sampler_interval", config.getString(DatastoreSettingKey.ELASTICSEARCH_CLIENT_SAMPLER_INTERVAL, "5s"))
+                                    .put("transport.connections_per_node.reg", config.getInt(DatastoreSettingKey.ELASTICSEARCH_CLIENT_CONNECTIONS_REG, 6))
+                                    .put("transport.connections_per_node.bulk", config.getInt(DatastoreSettingKey.ELASTICSEARCH_CLIENT_CONNECTIONS_BULK, 3))
+                                    .build();
+
+        TransportClient transportClient = TransportClient.builder().settings(settings).build();
+        for (InetSocketTransportAddress address : addresses)
+            transportClient.addTransportAddress(address);
+
+        if (!shutdownHookRegistered) {
+            Runtime.getRuntime().addShutdownHook(new Thread(EsClient::close, "datastore-es-client-shutdown"));
+            shutdownHookRegistered = true;
+        }
+
+        s_logger.info("Elasticsearch client created [nodes {}]", addresses);
+        return transportClient;
+    }
+
+    /**
+     * Return the node of the Elasticsearch service given by the environment
+     *
+     * @param esHost
+     * @param esTransportPort the transport port, or null for the default one
+     * @return the node in the form {@code host[:port]}
+     */
+    static String getServiceNode(String esHost, String esTransportPort)
+    {
+        return esTransportPort != null && !esTransportPort.trim().isEmpty() ? esHost + ":" + esTransportPort.trim() : esHost;
+    }
+
+    /**
+     * Parse an Elasticsearch node in the form {@code host[:port]}, the port defaults to {@value #DEFAULT_PORT}
+     *
+     * @param node
+     * @return
+     * @throws UnknownHostException
+     * @throws EsDatastoreException
+     */
+    static InetSocketTransportAddress parseNode(String node)
+        throws UnknownHostException, EsDatastoreException
+    {
+        if (node == null || node.trim().isEmpty())
+            throw new EsDatastoreException("Empty elasticsearch node");
+
+        String[] nodeParts = node.trim().split(":");
+        int esPort = DEFAULT_PORT;
+        if (nodeParts.length > 1) {
+            try {
+                esPort = Integer.parseInt(nodeParts[1]);
+            }
+            catch (NumberFormatException e) {
+                throw new EsDatastoreException("Could not parse port: " + nodeParts[1]);
+            }
+        }
 
-public class EsClient {
-	
-	@SuppressWarnings("unused")
-	private static final Logger   s_logger = LoggerFactory.getLogger(EsClient.class);
-			
-	private static Client client;
-	
-	private static final int DEFAULT_PORT = 9300;
-
-	public static Client getcurrent() throws UnknownHostException, EsDatastoreException {
-		// TODO read hostname and port from configurations
-		if (client == null) {
-			DatastoreSettings config = DatastoreSettings.getInstance();
-			String esHost = System.getenv("ELASTICSEARCH_SERVICE_HOST");
-			int esPort = DEFAULT_PORT;
-
-			if(esHost == null) {
-				Map<String, String> map = config.getMap(String.class, DatastoreSettingKey.ELASTICSEARCH_NODES, "[0-9]+");
-				String[] esNodes = new String[]{};
-				if (map != null)
-					esNodes = map.values().toArray(new String[]{});
-
-				if (esNodes == null || esNodes.length == 0)
-					throw new EsDatastoreException("No elasticsearch nodes found");
-
-				String[] nodeParts = getNodeParts(esNodes[0]);
-
-				if (nodeParts.length > 0)
-					esHost = nodeParts[0];
-				if (nodeParts.length > 1) {
-					try {
-						Integer.parseInt(nodeParts[1]);
-					} catch (NumberFormatException e) {
-						throw new EsDatastoreException("Could not parse port: " + nodeParts[1]);
-					}
-				}
-			}
-			client = EsUtils.getEsClient(esHost, esPort, config.getString(DatastoreSettingKey.ELASTICSEARCH_CLUSTER));
-		}
-		return client;
-	}
-	
-	private static String[] getNodeParts(String node)
-	{
-	    if (node==null)
-	        return new String[] {};
-	    
-	    String[] split = node.split(":");
-	    return split;
-	}
+        return new InetSocketTransportAddress(InetAddress.getByName(nodeParts[0]), esPort);
+    }
 }
@@ -0,0 +1,330 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch;
+
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import org.eclipse.kapua.service.datastore.internal.DatastoreCacheManager;
+import org.eclipse.kapua.service.datastore.internal.FingerprintSet;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.dao.EsTypeDAO;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Enforces the data time to live of an account.<br>
+ * The weekly data indexes ({@code account-YYYY-WW}) whose whole time range is past the time to live are deleted at once, rather than
+ * deleting their messages one by one, which on large indexes triggers heavy segment merges competing with the ingestion.<br>
+ * The topic, metric and asset entries of the account metadata index not updated since the same time are then deleted as orphaned,
+ * as are the expired metric rollups and the message counters of the deleted data indexes, and the deleted entries are removed from the metadata caches so they are stored again if a message shows up.
+ * An entry is only deleted if not updated meanwhile.<br>
+ * The metadata of the frequently seen topics is not upserted by every message, so an old entry timestamp does not mean the entry is orphaned:
+ * an entry is kept as long as the remaining data indexes hold messages of its asset and topic (the metrics are kept with their topic).
+ * Only the assets and topics of the entries not updated since the time to live are looked up in the data indexes, a batch at a time.
+ *
+ * @since 1.0
+ */
+public class EsDataRetention
+{
+
+    private static final Logger s_logger = LoggerFactory.getLogger(EsDataRetention.class);
+
+    private static final IndicesOptions EVERY_INDEX = IndicesOptions.fromOptions(true, true, true, true);
+
+    private static final String         ASSETS      = "assets";
+    private static final String         TOPICS      = "topics";
+
+    // Assets looked up in the data indexes by a single search, bounding the aggregation buckets
+    private static final int            BATCH_SIZE  = 100;
+
+    /**
+     * Return the names, among the given ones, of the weekly data indexes of the account holding only messages older than the given time
+     *
+     * @param accountName
+     * @param indexNames
+     * @param expiredBefore
+     * @return
+     */
+    public static String[] getExpiredIndexNames(String accountName, String[] indexNames, long expiredBefore)
+    {
+        List<String> expiredIndexNames = new ArrayList<String>();
+        for (String indexName : indexNames) {
+            long indexEnd = EsUtils.getDataIndexEnd(accountName, indexName);
+            if (indexEnd != -1 && indexEnd <= expiredBefore)
+                expiredIndexNames.add(indexName);
+        }
+        return expiredIndexNames.toArray(new String[expiredIndexNames.size()]);
+    }
+
+    /**
+     * Return a filter accepting the source of the asset entries without messages
+     *
+     * @param liveTopics the topics having messages, by asset
+     * @return
+     */
+    static Predicate<Map<String, Object>> isOrphanedAsset(Map<String, Set<String>> liveTopics)
+    {
+        return source -> !liveTopics.containsKey(source.get(EsSchema.ASSET_NAME));
+    }
+
+    /**
+     * Return a filter accepting the source of the topic entries without messages
+     *
+     * @param liveTopics the topics having messages, by asset
+     * @return
+     */
+    static Predicate<Map<String, Object>> isOrphanedTopic(Map<String, Set<String>> liveTopics)
+    {
+        return source -> !liveTopics.getOrDefault(source.get(EsSchema.TOPIC_ASSET), Collections.emptySet()).contains(source.get(EsSchema.TOPIC_SEM_NAME));
+    }
+
+    /**
+     * Return a filter accepting the source of the metric entries whose topic has no messages
+     *
+     * @param liveTopics the topics having messages, by asset
+     * @return
+     */
+    static Predicate<Map<String, Object>> isOrphanedMetric(Map<String, Set<String>> liveTopics)
+    {
+        return source -> !liveTopics.getOrDefault(source.get(EsSchema.METRIC_ASSET), Collections.emptySet()).contains(source.get(EsSchema.METRIC_SEM_NAME));
+    }
+
+    /**
+     * Delete the data of the account older than the given time
+     *
+     * @param accountName
+     * @param expiredBefore
+     * @param rollupIntervals the metric rollup intervals of the account
+     * @return the names of the deleted data indexes
+     * @throws UnknownHostException
+     * @throws EsDatastoreException
+     */
+    public String[] deleteExpired(String accountName, long expiredBefore, long[] rollupIntervals)
+        throws UnknownHostException, EsDatastoreException
+    {
+        Client client = EsClient.getcurrent();
+        TimeValue queryTimeout = TimeValue.timeValueMillis(EsUtils.getQueryTimeout());
+
+        String[] indexNames = client.admin().indices()
+                                    .prepareGetIndex()
+                                    .setIndices(EsUtils.getAnyIndexName(accountName))
+                                    .setIndicesOptions(EVERY_INDEX)
+                                    .get(queryTimeout)
+                                    .getIndices();
+
+        String[] expiredIndexNames = getExpiredIndexNames(accountName, indexNames, expiredBefore);
+        if (expiredIndexNames.length > 0) {
+            s_logger.info("Deleting the expired indexes of account {}: {}", accountName, expiredIndexNames);
+            client.admin().indices()
+                  .prepareDelete(expiredIndexNames)
+                  .setIndicesOptions(EVERY_INDEX)
+                  .get(queryTimeout);
+            new EsSchema().evict(expiredIndexNames);
+            EsMessageCounters.getInstance().evict(expiredIndexNames);
+        }
+
+        // Orphaned metadata, checked against the messages of the remaining data indexes
+        String kapuaIndexName = EsUtils.getActualKapuaIndexName(accountName, expiredBefore);
+        Date expiredBeforeDt = new Date(expiredBefore);
+        DatastoreCacheManager cacheManager = DatastoreCacheManager.getInstance();
+        Map<String, Set<String>> liveTopics = getLiveTopics(client, accountName, getCandidateTopics(client, kapuaIndexName, expiredBeforeDt), queryTimeout);
+        for (String asset : getLiveAssets(client, accountName, getCandidateAssets(client, kapuaIndexName, expiredBeforeDt), queryTimeout))
+            liveTopics.putIfAbsent(asset, new HashSet<String>());
+        deleteBefore(client, kapuaIndexName, EsSchema.TOPIC_TYPE_NAME, EsSchema.TOPIC_TIMESTAMP, expiredBeforeDt, isOrphanedTopic(liveTopics), cacheManager.getTopicsCache());
+        deleteBefore(client, kapuaIndexName, EsSchema.METRIC_TYPE_NAME, EsSchema.METRIC_MTR_TIMESTAMP_FULL, expiredBeforeDt, isOrphanedMetric(liveTopics), cacheManager.getMetricsCache());
+        deleteBefore(client, kapuaIndexName, EsSchema.ASSET_TYPE_NAME, EsSchema.ASSET_TIMESTAMP, expiredBeforeDt, isOrphanedAsset(liveTopics), cacheManager.getAssetsCache());
+        EsTopicTrieCache.getInstance().evict(accountName);
+
+        // Message counters, holding the end of their data index time range
+        EsTypeDAO.connection(client)
+                 .instance(kapuaIndexName, EsSchema.COUNTER_TYPE_NAME)
+                 .deleteByQuery(QueryBuilders.rangeQuery(EsSchema.COUNTER_TIMESTAMP).lte(expiredBeforeDt));
+
+        // Metric rollups, the rollup indexes are not split by time and are far smaller than the data indexes
+        for (long rollupInterval : rollupIntervals)
+            deleteBefore(client, EsUtils.getRollupIndexName(accountName, rollupInterval), EsSchema.ROLLUP_TYPE_NAME, EsSchema.ROLLUP_TIMESTAMP, expiredBeforeDt, null, null);
+
+        return expiredIndexNames;
+    }
+
+    /**
+     * Return the topics (by asset) of the topic and metric entries not updated since the given time
+     */
+    private static Map<String, Set<String>> getCandidateTopics(Client client, String kapuaIndexName, Date expiredBefore)
+    {
+        Map<String, Set<String>> candidateTopics = new HashMap<String, Set<String>>();
+        scanBefore(client, kapuaIndexName, EsSchema.TOPIC_TYPE_NAME, EsSchema.TOPIC_TIMESTAMP, expiredBefore,
+                   source -> candidateTopics.computeIfAbsent((String) source.get(EsSchema.TOPIC_ASSET), key -> new HashSet<String>())
+                                            .add((String) source.get(EsSchema.TOPIC_SEM_NAME)));
+        scanBefore(client, kapuaIndexName, EsSchema.METRIC_TYPE_NAME, EsSchema.METRIC_MTR_TIMESTAMP_FULL, expiredBefore,
+                   source -> candidateTopics.computeIfAbsent((String) source.get(EsSchema.METRIC_ASSET), key -> new HashSet<String>())
+                                            .add((String) source.get(EsSchema.METRIC_SEM_NAME)));
+        return candidateTopics;
+    }
+
+    /**
+     * Return the assets of the asset entries not updated since the given time
+     */
+    private static Set<String> getCandidateAssets(Client client, String kapuaIndexName, Date expiredBefore)
+    {
+        Set<String> candidateAssets = new HashSet<String>();
+        scanBefore(client, kapuaIndexName, EsSchema.ASSET_TYPE_NAME, EsSchema.ASSET_TIMESTAMP, expiredBefore,
+                   source -> candidateAssets.add((String) source.get(EsSchema.ASSET_NAME)));
+        return candidateAssets;
+    }
+
+    /**
+     * Split the items in batches of at most the given size
+     *
+     * @param items
+     * @param batchSize
+     * @return
+     */
+    static <T> List<List<T>> getBatches(Collection<T> items, int batchSize)
+    {
+        List<List<T>> batches = new ArrayList<List<T>>();
+        List<T> batch = null;
+        for (T item : items) {
+            if (batch == null || batch.size() == batchSize) {
+                batch = new ArrayList<T>(batchSize);
+                batches.add(batch);
+            }
+            batch.add(item);
+        }
+        return batches;
+    }
+
+    /**
+     * Return the query selecting the messages of the given topics of each asset
+     *
+     * @param candidateTopics the topics by asset
+     * @return
+     */
+    static QueryBuilder getCandidateTopicsQuery(Map<String, Set<String>> candidateTopics)
+    {
+        BoolQueryBuilder query = QueryBuilders.boolQuery();
+        for (Map.Entry<String, Set<String>> entry : candidateTopics.entrySet()) {
+            query.should(QueryBuilders.boolQuery()
+                                      .filter(QueryBuilders.termQuery(EsSchema.MESSAGE_AS_NAME, entry.getKey()))
+                                      .filter(QueryBuilders.termsQuery(EsSchema.MESSAGE_SEM_TOPIC, entry.getValue())));
+        }
+        return query;
+    }
+
+    /**
+     * Return the topics (by asset), among the candidate ones, having messages in the data indexes of the account
+     */
+    private static Map<String, Set<String>> getLiveTopics(Client client, String accountName, Map<String, Set<String>> candidateTopics, TimeValue queryTimeout)
+    {
+        Map<String, Set<String>> liveTopics = new HashMap<String, Set<String>>();
+        for (List<String> assets : getBatches(candidateTopics.keySet(), BATCH_SIZE)) {
+            Map<String, Set<String>> batch = new HashMap<String, Set<String>>();
+            Set<String> topics = new HashSet<String>();
+            for (String asset : assets) {
+                batch.put(asset, candidateTopics.get(asset));
+                topics.addAll(candidateTopics.get(asset));
+            }
+
+            // Only the candidate topics of the batch assets match, so the aggregation buckets are bounded by the batch
+            SearchResponse response = client.prepareSearch(EsUtils.getAnyIndexName(accountName))
+                                            .setTypes(EsSchema.MESSAGE_TYPE_NAME)
+                                            .setIndicesOptions(IndicesOptions.lenientExpandOpen())
+                                            .setSize(0)
+                                            .setQuery(getCandidateTopicsQuery(batch))
+                                            .addAggregation(AggregationBuilders.terms(ASSETS)
+                                                                               .field(EsSchema.MESSAGE_AS_NAME)
+                                                                               .size(0)
+                                                                               .subAggregation(AggregationBuilders.terms(TOPICS)
+                                                                                                                  .field(EsSchema.MESSAGE_SEM_TOPIC)
+                                                                                                                  .include(topics.toArray(new String[topics.size()]))
+                                                                                                                  .size(0)))
+                                            .get(queryTimeout);
+
+            if (response.getAggregations() == null || response.getAggregations().get(ASSETS) == null)
+                continue;
+
+            for (Terms.Bucket assetBucket : ((Terms) response.getAggregations().get(ASSETS)).getBuckets()) {
+                Set<String> assetTopics = batch.getOrDefault(assetBucket.getKeyAsString(), Collections.emptySet());
+                for (Terms.Bucket topicBucket : ((Terms) assetBucket.getAggregations().get(TOPICS)).getBuckets()) {
+                    // The included topics are those of every asset of the batch
+                    if (assetTopics.contains(topicBucket.getKeyAsString()))
+                        liveTopics.computeIfAbsent(assetBucket.getKeyAsString(), key -> new HashSet<String>()).add(topicBucket.getKeyAsString());
+                }
+            }
+        }
+        return liveTopics;
+    }
+
+    /**
+     * Return the assets, among the candidate ones, having messages in the data indexes of the account
+     */
+    private static Set<String> getLiveAssets(Client client, String accountName, Set<String> candidateAssets, TimeValue queryTimeout)
+    {
+        Set<String> liveAssets = new HashSet<String>();
+        for (List<String> batch : getBatches(candidateAssets, BATCH_SIZE)) {
+            SearchResponse response = client.prepareSearch(EsUtils.getAnyIndexName(accountName))
+                                            .setTypes(EsSchema.MESSAGE_TYPE_NAME)
+                                            .setIndicesOptions(IndicesOptions.lenientExpandOpen())
+                                            .setSize(0)
+                                            .setQuery(QueryBuilders.termsQuery(EsSchema.MESSAGE_AS_NAME, batch))
+                                            .addAggregation(AggregationBuilders.terms(ASSETS)
+                                                                               .field(EsSchema.MESSAGE_AS_NAME)
+                                                                               .size(0))
+                                            .get(queryTimeout);
+
+            if (response.getAggregations() == null || response.getAggregations().get(ASSETS) == null)
+                continue;
+
+            for (Terms.Bucket assetBucket : ((Terms) response.getAggregations().get(ASSETS)).getBuckets())
+                liveAssets.add(assetBucket.getKeyAsString());
+        }
+        return liveAssets;
+    }
+
+    private static void scanBefore(Client client, String indexName, String typeName, String timestampField, Date expiredBefore,
+                                   Consumer<Map<String, Object>> sourceHandler)
+    {
+        EsTypeDAO.connection(client)
+                 .instance(indexName, typeName)
+                 .scan(QueryBuilders.rangeQuery(timestampField).lt(expiredBefore), sourceHandler);
+    }
+
+    private static void deleteBefore(Client client, String indexName, String typeName, String timestampField, Date expiredBefore,
+                                     Predicate<Map<String, Object>> filter, FingerprintSet cache)
+    {
+        EsTypeDAO.connection(client)
+                 .instance(indexName, typeName)
+                 .deleteByQuery(QueryBuilders.rangeQuery(timestampField).lt(expiredBefore),
+                                filter,
+                                cache != null ? cache::remove : null);
+    }
+}
@@ -19,4 +19,8 @@ public class EsDatastoreException extends Exception
     public EsDatastoreException(String message) {
 		super(message);
 	}
+
+    public EsDatastoreException(String message, Throwable cause) {
+		super(message, cause);
+	}
 }
@@ -13,7 +13,6 @@
 package org.eclipse.kapua.service.datastore.internal.elasticsearch;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Date;
@@ -28,14 +27,11 @@ import org.eclipse.kapua.service.datastore.model.Payload;
 import org.eclipse.kapua.service.datastore.model.Position;
 import org.eclipse.kapua.service.datastore.model.StorableId;
 import org.eclipse.kapua.service.datastore.model.TopicInfo;
-import org.elasticsearch.common.Base64;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.hash.Hashing;
-
 public class EsDocumentBuilder
 {
 
@@ -68,33 +64,21 @@ public class EsDocumentBuilder
         messageMetrics = null;
     }
 
-    private String getHashCode(String aString)
-    {
-        byte[] hashCode = Hashing.sha256()
-                                 .hashString(aString, StandardCharsets.UTF_8)
-                                 .asBytes();
-
-        return Base64.encodeBytes(hashCode);
-        // return aString;
-    }
-
     private String getTopicKey(String topicFullName)
     {
-        return this.getHashCode(topicFullName);
+        return StorableIdHasher.get().hash(topicFullName);
     }
 
     private String getAssetKey(String accountName, String assetName)
     {
-        String assetFullName = String.format("%s/%s", accountName, assetName);
-        String assetHashCode = this.getHashCode(assetFullName);
-        return assetHashCode;
+        // Id of "accountName/assetName"
+        return StorableIdHasher.get().hash(accountName, assetName);
     }
 
     private String getTopicMetricKey(String topicFullName, String metricMappedName)
     {
-        String topicMetricFullName = String.format("%s/%s", topicFullName, metricMappedName);
-        String topicMetricHashCode = this.getHashCode(topicMetricFullName);
-        return topicMetricHashCode;
+        // Id of "topicFullName/metricMappedName"
+        return StorableIdHasher.get().hash(topicFullName, metricMappedName);
     }
 
     private XContentBuilder getAssetBuilder(String asset, String msgId, Date msgTimestamp, String account)
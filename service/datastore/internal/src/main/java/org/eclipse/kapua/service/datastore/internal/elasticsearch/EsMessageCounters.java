@@ -0,0 +1,296 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettingKey;
+import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettings;
+import org.eclipse.kapua.service.datastore.model.query.MessageQuery;
+import org.eclipse.kapua.service.datastore.model.query.TopicMatchPredicate;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.index.VersionType;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Approximate message counters, per account, asset and topic.<br>
+ * The stored messages are counted in memory per topic and per weekly data index, and the counts are periodically written to the account metadata index.
+ * Every node (every instance of the counters) keeps its own cumulative counts and every flush overwrites, for the counters updated since the previous flush,
+ * the counter document of the node, whose id is derived from the node id, the data index, the asset and the topic. The document version is the count,
+ * so an older count never overwrites a newer one. The counter queries sum the counts of the matching topics over the nodes.<br>
+ * Every counter holds the end of the time range of its data index, so the counters of the expired data indexes are deleted along with them.
+ * The single deleted messages are not subtracted.
+ *
+ * @since 1.0
+ */
+public class EsMessageCounters
+{
+
+    private static final Logger s_logger = LoggerFactory.getLogger(EsMessageCounters.class);
+
+    private static EsMessageCounters instance;
+
+    /**
+     * Count of the messages of a topic stored in a data index by this node
+     */
+    public static class Counter
+    {
+
+        private final String id;
+        private final String accountName;
+        private final String dataIndexName;
+        private final String asset;
+        private final String semTopic;
+
+        private long         count;
+        private boolean      updated;
+
+        private Counter(String id, String accountName, String dataIndexName, String asset, String semTopic)
+        {
+            this.id = id;
+            this.accountName = accountName;
+            this.dataIndexName = dataIndexName;
+            this.asset = asset;
+            this.semTopic = semTopic;
+        }
+
+        /**
+         * Return the id of the counter document, the same for every flush of this node
+         *
+         * @return
+         */
+        public String getId()
+        {
+            return id;
+        }
+
+        public String getAccountName()
+        {
+            return accountName;
+        }
+
+        public String getDataIndexName()
+        {
+            return dataIndexName;
+        }
+
+        public String getAsset()
+        {
+            return asset;
+        }
+
+        public String getSemTopic()
+        {
+            return semTopic;
+        }
+
+        public synchronized long getCount()
+        {
+            return count;
+        }
+
+        private XContentBuilder toXContent()
+            throws IOException
+        {
+            return XContentFactory.jsonBuilder()
+                                  .startObject()
+                                  .field(EsSchema.COUNTER_ACCOUNT, accountName)
+                                  .field(EsSchema.COUNTER_ASSET, asset)
+                                  .field(EsSchema.COUNTER_SEM_TOPIC, semTopic)
+                                  .field(EsSchema.COUNTER_TIMESTAMP, new Date(EsUtils.getDataIndexEnd(accountName, dataIndexName)))
+                                  .field(EsSchema.COUNTER_COUNT, getCount())
+                                  .endObject();
+        }
+    }
+
+    private final String                         nodeId   = UUID.randomUUID().toString();
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+    private final ScheduledExecutorService       flusher;
+
+    /**
+     * Get the shared message counters, flushing to the shared bulk ingest queue at the configured flush interval
+     *
+     * @return
+     */
+    public static synchronized EsMessageCounters getInstance()
+    {
+        if (instance == null) {
+            long flushInterval = DatastoreSettings.getInstance().getLong(DatastoreSettingKey.CONFIG_COUNTER_FLUSH_INTERVAL, 10000L);
+            instance = new EsMessageCounters(flushInterval);
+        }
+        return instance;
+    }
+
+    /**
+     * Close the shared message counters, if created, flushing the pending counts
+     */
+    public static synchronized void closeInstance()
+    {
+        if (instance == null)
+            return;
+
+        try {
+            instance.close();
+        }
+        finally {
+            instance = null;
+        }
+    }
+
+    /**
+     * Return true if the count of the query can be served by the message counters, that is if the caller accepts an approximate count
+     * and the query selects a whole account (no predicate) or a topic (wildcards allowed)
+     *
+     * @param query
+     * @return
+     */
+    public static boolean isCountable(MessageQuery query)
+    {
+        return query.isAcceptApproximateCount() && (query.getPredicate() == null || query.getPredicate() instanceof TopicMatchPredicate);
+    }
+
+    /**
+     * Create new message counters, flushing at the given interval if positive
+     *
+     * @param flushInterval milliseconds between two flushes, 0 to flush only when requested
+     */
+    public EsMessageCounters(long flushInterval)
+    {
+        if (flushInterval > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "datastore-message-counters");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        }
+        else {
+            flusher = null;
+        }
+    }
+
+    /**
+     * Count a stored message
+     *
+     * @param accountName
+     * @param dataIndexName the weekly data index the message is stored in
+     * @param asset
+     * @param semTopic
+     */
+    public void increment(String accountName, String dataIndexName, String asset, String semTopic)
+    {
+        String key = new StringBuilder(accountName).append('\n')
+                                                   .append(dataIndexName).append('\n')
+                                                   .append(asset).append('\n')
+                                                   .append(semTopic)
+                                                   .toString();
+        Counter counter = counters.computeIfAbsent(key, k -> new Counter(StorableIdHasher.get().hash(nodeId, k), accountName, dataIndexName, asset, semTopic));
+        synchronized (counter) {
+            counter.count++;
+            counter.updated = true;
+        }
+    }
+
+    /**
+     * Return a copy of the counters updated since the previous drain, holding their cumulative counts
+     *
+     * @return
+     */
+    public List<Counter> drain()
+    {
+        List<Counter> drained = new ArrayList<Counter>();
+        for (Counter counter : counters.values()) {
+            synchronized (counter) {
+                if (!counter.updated)
+                    continue;
+
+                counter.updated = false;
+                Counter copy = new Counter(counter.id, counter.accountName, counter.dataIndexName, counter.asset, counter.semTopic);
+                copy.count = counter.count;
+                drained.add(copy);
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * Forget the counters of the given (deleted) data indexes
+     *
+     * @param dataIndexNames
+     */
+    public void evict(String... dataIndexNames)
+    {
+        Set<String> evicted = new HashSet<String>(Arrays.asList(dataIndexNames));
+        counters.values().removeIf(counter -> evicted.contains(counter.getDataIndexName()));
+    }
+
+    /**
+     * Write the counts updated since the previous flush to the account metadata indexes, through the bulk ingest queue
+     */
+    public void flush()
+    {
+        List<Counter> drained = drain();
+        if (drained.isEmpty())
+            return;
+
+        EsBulkIngestQueue bulkQueue = EsBulkIngestQueue.getInstance();
+        for (Counter counter : drained) {
+            try {
+                // The metadata index and the counter mapping have been created when storing the counted messages
+                String kapuaIndexName = EsUtils.getActualKapuaIndexName(counter.getAccountName(), 0);
+                IndexRequest indexRequest = new IndexRequest(kapuaIndexName, EsSchema.COUNTER_TYPE_NAME, counter.getId()).source(counter.toXContent())
+                                                                                                            .versionType(VersionType.EXTERNAL_GTE)
+                                                                                                            .version(counter.getCount());
+                bulkQueue.submit(indexRequest).whenComplete((documentId, error) -> {
+                    if (error != null)
+                        s_logger.warn("Cannot store message counter of {}/{}: {}", counter.getAsset(), counter.getSemTopic(), error.getMessage());
+                });
+            }
+            catch (Exception e) {
+                s_logger.warn("Cannot store message counter of {}/{}: {}", counter.getAsset(), counter.getSemTopic(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Stop the periodic flush and flush the pending counts
+     */
+    public void close()
+    {
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(EsUtils.getQueryTimeout(), TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+    }
+}
@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettingKey;
+import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettings;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.common.unit.TimeValue;
+
+/**
+ * Ingest stage of the topic, metric and asset metadata upserts.<br>
+ * The upserts coming from concurrent callers are coalesced into bulk requests by a dedicated {@link EsBulkIngestQueue},
+ * so they do not compete with the message writes, and are deduplicated while in flight: a caller submitting the upsert
+ * of a document already waiting to be flushed gets the future of the pending upsert instead of queueing a new one.
+ *
+ * @since 1.0
+ */
+public class EsMetadataUpdateQueue
+{
+
+    private static EsMetadataUpdateQueue instance;
+
+    private final EsBulkIngestQueue                                 bulkQueue;
+    private final ConcurrentMap<String, CompletableFuture<String>> pendingUpdates = new ConcurrentHashMap<String, CompletableFuture<String>>();
+
+    /**
+     * Get the shared metadata update queue configured by the datastore settings and bound to the current Elasticsearch client
+     *
+     * @return
+     */
+    public static synchronized EsMetadataUpdateQueue getInstance()
+    {
+        if (instance == null) {
+            DatastoreSettings config = DatastoreSettings.getInstance();
+            instance = new EsMetadataUpdateQueue(new EsBulkIngestQueue(config.getInt(DatastoreSettingKey.CONFIG_INGEST_QUEUE_SIZE),
+                                                                       config.getInt(DatastoreSettingKey.CONFIG_METADATA_BULK_SIZE),
+                                                                       config.getLong(DatastoreSettingKey.CONFIG_METADATA_BULK_FLUSH_INTERVAL),
+                                                                       config.getLong(DatastoreSettingKey.CONFIG_INGEST_QUEUE_OFFER_TIMEOUT),
+                                                                       bulkRequest -> EsClient.getcurrent()
+                                                                                              .bulk(bulkRequest)
+                                                                                              .actionGet(TimeValue.timeValueMillis(EsUtils.getQueryTimeout()))));
+        }
+        return instance;
+    }
+
+    /**
+     * Close the shared metadata update queue, if created, flushing the pending upserts
+     */
+    public static synchronized void closeInstance()
+    {
+        if (instance == null)
+            return;
+
+        try {
+            instance.close();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            instance = null;
+        }
+    }
+
+    /**
+     * Create a new metadata update queue flushing the upserts through the given bulk queue
+     *
+     * @param bulkQueue
+     */
+    public EsMetadataUpdateQueue(EsBulkIngestQueue bulkQueue)
+    {
+        this.bulkQueue = bulkQueue;
+    }
+
+    /**
+     * Queue the upsert for the next bulk flush, unless an upsert of the same document is already pending
+     *
+     * @param upsertRequest
+     * @return a future completed with the document id once the bulk containing the upsert has been executed
+     */
+    public CompletableFuture<String> submit(UpdateRequest upsertRequest)
+    {
+        String key = upsertRequest.index() + "/" + upsertRequest.type() + "/" + upsertRequest.id();
+
+        CompletableFuture<String> pendingUpdate = pendingUpdates.get(key);
+        if (pendingUpdate != null)
+            return pendingUpdate;
+
+        CompletableFuture<String> newUpdate = new CompletableFuture<String>();
+        pendingUpdate = pendingUpdates.putIfAbsent(key, newUpdate);
+        if (pendingUpdate != null)
+            return pendingUpdate;
+
+        bulkQueue.submit(upsertRequest).whenComplete((documentId, error) -> {
+            pendingUpdates.remove(key, newUpdate);
+            if (error != null)
+                newUpdate.completeExceptionally(error);
+            else
+                newUpdate.complete(documentId);
+        });
+        return newUpdate;
+    }
+
+    /**
+     * Return the number of distinct upserts waiting to be flushed
+     *
+     * @return
+     */
+    public int getPendingCount()
+    {
+        return pendingUpdates.size();
+    }
+
+    /**
+     * Stop accepting upserts and flush the pending ones
+     *
+     * @throws InterruptedException
+     */
+    public void close()
+        throws InterruptedException
+    {
+        bulkQueue.close();
+    }
+}
@@ -0,0 +1,422 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettingKey;
+import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettings;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.VersionType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Optional rollup stage of the numeric metrics.<br>
+ * The min, max, sum and count of every numeric metric are accumulated in memory, per topic and per interval (aligned to the epoch)
+ * for each of the rollup intervals of the account service plan, and periodically written to the metric rollup index of the account and interval.<br>
+ * Every node (every instance of the rollup stage) keeps its own cumulative aggregates and every flush overwrites, for the intervals updated since the previous flush,
+ * the aggregate document of the node, whose id is derived from the node id, the metric and the interval. The document version is the count,
+ * so an older aggregate never overwrites a newer one. The rollup queries merge the aggregates of the nodes: the minimum of the minimums, the sum of the counts, and so on.<br>
+ * The aggregates of an interval are kept in memory until the interval has ended for longer than the configured lateness,
+ * the values of the messages older than that are not rolled up.
+ *
+ * @since 1.0
+ */
+public class EsMetricRollup
+{
+
+    private static final Logger s_logger = LoggerFactory.getLogger(EsMetricRollup.class);
+
+    private static final long   MIN_INTERVAL = 1000;
+
+    private static EsMetricRollup instance;
+
+    /**
+     * Aggregated values of a metric over an interval, accumulated by this node
+     */
+    public static class Bucket
+    {
+
+        private final String id;
+        private final String accountName;
+        private final String asset;
+        private final String semTopic;
+        private final String metricName;
+        private final String metricType;
+        private final long   interval;
+        private final long   timestamp;
+
+        private double       min      = Double.POSITIVE_INFINITY;
+        private double       max      = Double.NEGATIVE_INFINITY;
+        private double       sum;
+        private long         count;
+        private boolean      updated;
+        private boolean      evicted;
+
+        private Bucket(String id, String accountName, String asset, String semTopic, String metricName, String metricType, long interval, long timestamp)
+        {
+            this.id = id;
+            this.accountName = accountName;
+            this.asset = asset;
+            this.semTopic = semTopic;
+            this.metricName = metricName;
+            this.metricType = metricType;
+            this.interval = interval;
+            this.timestamp = timestamp;
+        }
+
+        /**
+         * Return the id of the aggregate document, the same for every flush of this node
+         *
+         * @return
+         */
+        public String getId()
+        {
+            return id;
+        }
+
+        public String getAccountName()
+        {
+            return accountName;
+        }
+
+        public String getAsset()
+        {
+            return asset;
+        }
+
+        public String getSemTopic()
+        {
+            return semTopic;
+        }
+
+        public String getMetricName()
+        {
+            return metricName;
+        }
+
+        public String getMetricType()
+        {
+            return metricType;
+        }
+
+        public long getInterval()
+        {
+            return interval;
+        }
+
+        public long getTimestamp()
+        {
+            return timestamp;
+        }
+
+        public synchronized double getMin()
+        {
+            return min;
+        }
+
+        public synchronized double getMax()
+        {
+            return max;
+        }
+
+        public synchronized double getSum()
+        {
+            return sum;
+        }
+
+        public synchronized long getCount()
+        {
+            return count;
+        }
+
+        private XContentBuilder toXContent()
+            throws IOException
+        {
+            return XContentFactory.jsonBuilder()
+                                  .startObject()
+                                  .field(EsSchema.ROLLUP_ACCOUNT, accountName)
+                                  .field(EsSchema.ROLLUP_ASSET, asset)
+                                  .field(EsSchema.ROLLUP_SEM_TOPIC, semTopic)
+                                  .field(EsSchema.ROLLUP_METRIC_NAME, metricName)
+                                  .field(EsSchema.ROLLUP_METRIC_TYPE, metricType)
+                                  .field(EsSchema.ROLLUP_TIMESTAMP, new Date(timestamp))
+                                  .field(EsSchema.ROLLUP_MIN, getMin())
+                                  .field(EsSchema.ROLLUP_MAX, getMax())
+                                  .field(EsSchema.ROLLUP_SUM, getSum())
+                                  .field(EsSchema.ROLLUP_COUNT, getCount())
+                                  .endObject();
+        }
+    }
+
+    private final String                        nodeId  = UUID.randomUUID().toString();
+    private final ConcurrentMap<String, Bucket> buckets = new ConcurrentHashMap<String, Bucket>();
+    private final long                          lateness;
+    private final LongSupplier                  clock;
+    private final ScheduledExecutorService      flusher;
+
+    /**
+     * Get the shared rollup stage, flushing to the shared bulk ingest queue at the configured flush interval
+     *
+     * @return
+     */
+    public static synchronized EsMetricRollup getInstance()
+    {
+        if (instance == null) {
+            long flushInterval = DatastoreSettings.getInstance().getLong(DatastoreSettingKey.CONFIG_ROLLUP_FLUSH_INTERVAL, 10000L);
+            long lateness = DatastoreSettings.getInstance().getLong(DatastoreSettingKey.CONFIG_ROLLUP_LATENESS, 3600000L);
+            instance = new EsMetricRollup(flushInterval, lateness);
+        }
+        return instance;
+    }
+
+    /**
+     * Close the shared rollup stage, if created, flushing the pending aggregates
+     */
+    public static synchronized void closeInstance()
+    {
+        if (instance == null)
+            return;
+
+        try {
+            instance.close();
+        }
+        finally {
+            instance = null;
+        }
+    }
+
+    /**
+     * Parse a comma separated list of rollup intervals (e.g. {@code 5m,1h,1d}), ignoring the intervals shorter than one second
+     *
+     * @param intervals
+     * @return the intervals in milliseconds, sorted and without duplicates
+     */
+    public static long[] parseIntervals(String intervals)
+    {
+        if (intervals == null || intervals.trim().isEmpty())
+            return new long[0];
+
+        return Arrays.stream(intervals.split(","))
+                     .map(String::trim)
+                     .filter(interval -> !interval.isEmpty())
+                     .mapToLong(interval -> TimeValue.parseTimeValue(interval, null, DatastoreSettingKey.CONFIG_ROLLUP_INTERVALS.key()).millis())
+                     .filter(interval -> interval >= MIN_INTERVAL)
+                     .map(interval -> interval - interval % MIN_INTERVAL)
+                     .sorted()
+                     .distinct()
+                     .toArray();
+    }
+
+    /**
+     * Return the coarsest of the (sorted) rollup intervals evenly dividing the requested interval
+     *
+     * @param intervals
+     * @param requestedInterval
+     * @return the rollup interval, or 0 if none fits
+     */
+    public static long selectInterval(long[] intervals, long requestedInterval)
+    {
+        long selected = 0;
+        for (long interval : intervals) {
+            if (interval > requestedInterval)
+                break;
+            if (requestedInterval % interval == 0)
+                selected = interval;
+        }
+        return selected;
+    }
+
+    /**
+     * Create a new rollup stage, flushing at the given interval if positive
+     *
+     * @param flushInterval milliseconds between two flushes, 0 to flush only when requested
+     * @param lateness milliseconds the aggregates of an interval are kept after the interval end, waiting for late messages
+     */
+    public EsMetricRollup(long flushInterval, long lateness)
+    {
+        this(flushInterval, lateness, System::currentTimeMillis);
+    }
+
+    EsMetricRollup(long flushInterval, long lateness, LongSupplier clock)
+    {
+        this.lateness = lateness;
+        this.clock = clock;
+        if (flushInterval > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "datastore-metric-rollup");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        }
+        else {
+            flusher = null;
+        }
+    }
+
+    /**
+     * Add the numeric metrics of a message to the aggregates of every rollup interval. Non numeric metrics are ignored.
+     *
+     * @param accountName
+     * @param asset
+     * @param semTopic
+     * @param metrics the message metrics by (kapua) name
+     * @param timestamp the message timestamp
+     * @param intervals the rollup intervals of the account
+     */
+    public void add(String accountName, String asset, String semTopic, Map<String, Object> metrics, long timestamp, long[] intervals)
+    {
+        if (metrics == null || intervals.length == 0)
+            return;
+
+        for (Map.Entry<String, Object> metric : metrics.entrySet()) {
+            if (!(metric.getValue() instanceof Number))
+                continue;
+
+            String metricName = EsUtils.normalizeMetricName(metric.getKey());
+            String metricType = EsUtils.getEsTypeFromValue(metric.getValue());
+            double value = ((Number) metric.getValue()).doubleValue();
+            for (long interval : intervals)
+                add(accountName, asset, semTopic, metricName, metricType, interval, timestamp - Math.floorMod(timestamp, interval), value);
+        }
+    }
+
+    private void add(String accountName, String asset, String semTopic, String metricName, String metricType, long interval, long bucketTimestamp, double value)
+    {
+        String key = new StringBuilder(accountName).append('\n')
+                                                   .append(asset).append('\n')
+                                                   .append(semTopic).append('\n')
+                                                   .append(metricName).append('\n')
+                                                   .append(metricType).append('\n')
+                                                   .append(interval).append('\n')
+                                                   .append(bucketTimestamp)
+                                                   .toString();
+        if (isExpired(interval, bucketTimestamp, clock.getAsLong())) {
+            s_logger.debug("Metric {} of {} is too late to be rolled up", metricName, semTopic);
+            return;
+        }
+
+        Bucket bucket = buckets.computeIfAbsent(key, k -> new Bucket(StorableIdHasher.get().hash(nodeId, k), accountName, asset, semTopic, metricName, metricType, interval, bucketTimestamp));
+        synchronized (bucket) {
+            // An evicted bucket has been removed from the map already, its interval is too old to be rolled up
+            if (bucket.evicted)
+                return;
+
+            bucket.min = Math.min(bucket.min, value);
+            bucket.max = Math.max(bucket.max, value);
+            bucket.sum += value;
+            bucket.count++;
+            bucket.updated = true;
+        }
+    }
+
+    private boolean isExpired(long interval, long bucketTimestamp, long now)
+    {
+        return bucketTimestamp + interval + lateness < now;
+    }
+
+    /**
+     * Return a copy of the aggregates updated since the previous drain, holding their cumulative values.<br>
+     * The aggregates not updated since the previous drain whose interval has ended for longer than the lateness are evicted.
+     *
+     * @return
+     */
+    public List<Bucket> drain()
+    {
+        long now = clock.getAsLong();
+        List<Bucket> drained = new ArrayList<Bucket>();
+        for (Iterator<Bucket> iterator = buckets.values().iterator(); iterator.hasNext();) {
+            Bucket bucket = iterator.next();
+            synchronized (bucket) {
+                if (bucket.updated) {
+                    bucket.updated = false;
+                    Bucket copy = new Bucket(bucket.id, bucket.accountName, bucket.asset, bucket.semTopic, bucket.metricName, bucket.metricType, bucket.interval, bucket.timestamp);
+                    copy.min = bucket.min;
+                    copy.max = bucket.max;
+                    copy.sum = bucket.sum;
+                    copy.count = bucket.count;
+                    drained.add(copy);
+                }
+                else if (isExpired(bucket.interval, bucket.timestamp, now)) {
+                    // Already written with its final values
+                    bucket.evicted = true;
+                    iterator.remove();
+                }
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * Write the aggregates updated since the previous flush to the rollup indexes, through the bulk ingest queue
+     */
+    public void flush()
+    {
+        List<Bucket> drained = drain();
+        if (drained.isEmpty())
+            return;
+
+        EsSchema esSchema = new EsSchema();
+        EsBulkIngestQueue bulkQueue = EsBulkIngestQueue.getInstance();
+        for (Bucket bucket : drained) {
+            try {
+                String rollupIndex = esSchema.synchRollup(bucket.getAccountName(), bucket.getInterval());
+                IndexRequest indexRequest = new IndexRequest(rollupIndex, EsSchema.ROLLUP_TYPE_NAME, bucket.getId()).source(bucket.toXContent())
+                                                                                                     .versionType(VersionType.EXTERNAL_GTE)
+                                                                                                     .version(bucket.getCount());
+                bulkQueue.submit(indexRequest).whenComplete((documentId, error) -> {
+                    if (error != null)
+                        s_logger.warn("Cannot store metric rollup {} of {}: {}", bucket.getMetricName(), bucket.getSemTopic(), error.getMessage());
+                });
+            }
+            catch (Exception e) {
+                s_logger.warn("Cannot store metric rollup {} of {}: {}", bucket.getMetricName(), bucket.getSemTopic(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Stop the periodic flush and flush the pending aggregates
+     */
+    public void close()
+    {
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(EsUtils.getQueryTimeout(), TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+    }
+}
@@ -14,11 +14,17 @@ package org.eclipse.kapua.service.datastore.internal.elasticsearch;
 
 import java.io.IOException;
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.regex.Pattern;
 
 import org.elasticsearch.action.admin.indices.exists.indices.IndicesExistsRequest;
@@ -30,6 +36,7 @@ import org.elasticsearch.cluster.metadata.MappingMetaData;
 import org.elasticsearch.common.collect.ImmutableOpenMap;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.indices.IndexAlreadyExistsException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsMetric;
@@ -43,8 +50,6 @@ public class EsSchema
     //
     private static final Logger s_logger                        = LoggerFactory.getLogger(EsSchema.class);
 
-    private static final String NULL_METADATA_MSG               = "No metadata available (use update(account, time))";
-
     public final static String  MESSAGE_TYPE_NAME               = "message";
     public final static String  MESSAGE_TIMESTAMP               = "timestamp";
     public final static String  MESSAGE_RECEIVED_ON             = "received_on";
@@ -102,6 +107,25 @@ public class EsSchema
     public final static String  ASSET_ACCOUNT               = "account";
     public final static String  ASSET_TIMESTAMP             = "timestamp";
     public final static String  ASSET_MESSAGE_ID            = "message_id";
+
+    public final static String  ROLLUP_TYPE_NAME            = "metric_rollup";
+    public final static String  ROLLUP_ACCOUNT              = "account";
+    public final static String  ROLLUP_ASSET                = "asset";
+    public final static String  ROLLUP_SEM_TOPIC            = "topic";
+    public final static String  ROLLUP_METRIC_NAME          = "metric";
+    public final static String  ROLLUP_METRIC_TYPE          = "type";
+    public final static String  ROLLUP_TIMESTAMP            = "timestamp";
+    public final static String  ROLLUP_MIN                  = "min";
+    public final static String  ROLLUP_MAX                  = "max";
+    public final static String  ROLLUP_SUM                  = "sum";
+    public final static String  ROLLUP_COUNT                = "count";
+
+    public final static String  COUNTER_TYPE_NAME           = "message_counter";
+    public final static String  COUNTER_ACCOUNT             = "account";
+    public final static String  COUNTER_ASSET               = "asset";
+    public final static String  COUNTER_SEM_TOPIC           = "topic";
+    public final static String  COUNTER_TIMESTAMP           = "timestamp";
+    public final static String  COUNTER_COUNT               = "count";
 //
 //    public final static String  ASSET_TOPIC_TYPE_NAME           = "asset_topic";
 //    public final static String  ASSET_TOPIC_AS_NAME             = "asset_name";
@@ -134,10 +158,11 @@ public class EsSchema
         // Custom mappings can only increase within the same account
         // No removal of existing cached mappings or changes in the
         // existing mappings.
-        private Map<String, EsMetric> messageMappingsCache;
+        // Every mapping is completed once it has been put in the index.
+        private ConcurrentMap<String, CompletableFuture<EsMetric>> messageMappingsCache;
         //
 
-        private Map<String, EsMetric> getMessageMappingsCache()
+        private ConcurrentMap<String, CompletableFuture<EsMetric>> getMessageMappingsCache()
         {
             return messageMappingsCache;
         }
@@ -149,7 +174,7 @@ public class EsSchema
             metricTypeName = METRIC_TYPE_NAME;
             assetTypeName = ASSET_TYPE_NAME;
 
-            messageMappingsCache = new HashMap<String, EsMetric>(100);
+            messageMappingsCache = new ConcurrentHashMap<String, CompletableFuture<EsMetric>>(100);
         }
 
         public String getPublicIndexName()
@@ -183,9 +208,17 @@ public class EsSchema
         }
     }
 
-    private Map<String, Metadata> schemaCache;
-    private Object                schemaCacheSync;
-    private Object                mappingsSync;
+    // Metadata by data index name, completed once the indexes and their mappings exist
+    private static final ConcurrentMap<String, CompletableFuture<Metadata>> schemaCache = new ConcurrentHashMap<String, CompletableFuture<Metadata>>();
+
+    // Metric rollup index names, completed once the index and its mapping exist
+    private static final ConcurrentMap<String, CompletableFuture<String>>   rollupCache = new ConcurrentHashMap<String, CompletableFuture<String>>();
+
+    private interface SchemaLoader<T>
+    {
+        public T load()
+            throws IOException, EsDatastoreException;
+    }
 
     private XContentBuilder getIndexSettings()
         throws IOException
@@ -638,120 +671,352 @@ public class EsSchema
 //        }
 //    }
 
-    private Map<String, EsMetric> getMessageMappingDiffs(Metadata currentMetadata, Map<String, EsMetric> esMetrics)
+    /**
+     * Claim the metrics not yet mapped: the claimed metrics are returned (with the future to complete once they are mapped) while the futures
+     * of the metrics claimed by other callers, and not yet mapped, are added to the pending list.
+     */
+    private Map<String, CompletableFuture<EsMetric>> getMessageMappingDiffs(Metadata currentMetadata, Map<String, EsMetric> esMetrics, List<CompletableFuture<EsMetric>> pending)
     {
 
         if (esMetrics == null || esMetrics.size() == 0)
             return null;
 
         Entry<String, EsMetric> el;
-        Map<String, EsMetric> diffs = null;
+        Map<String, CompletableFuture<EsMetric>> diffs = null;
         Iterator<Entry<String, EsMetric>> iter = esMetrics.entrySet().iterator();
         while (iter.hasNext()) {
 
             el = iter.next();
-            if (!currentMetadata.getMessageMappingsCache().containsKey(el.getKey())) {
+            CompletableFuture<EsMetric> cachedValue = currentMetadata.getMessageMappingsCache().get(el.getKey());
+            if (cachedValue == null) {
+                CompletableFuture<EsMetric> newValue = new CompletableFuture<EsMetric>();
+                cachedValue = currentMetadata.getMessageMappingsCache().putIfAbsent(el.getKey(), newValue);
+                if (cachedValue == null) {
 
-                if (diffs == null)
-                    diffs = new HashMap<String, EsMetric>(100);
+                    if (diffs == null)
+                        diffs = new HashMap<String, CompletableFuture<EsMetric>>(100);
 
-                currentMetadata.getMessageMappingsCache().put(el.getKey(), el.getValue());
-                diffs.put(el.getKey(), el.getValue());
+                    diffs.put(el.getKey(), newValue);
+                    continue;
+                }
             }
+
+            if (!cachedValue.isDone() || cachedValue.isCompletedExceptionally())
+                pending.add(cachedValue);
         }
 
         return diffs;
     }
 
+    /**
+     * Create the schema handler.<br>
+     * The schema cache is shared by all the instances, since the services using them are created on every lookup.
+     */
     public EsSchema()
     {
-        schemaCache = new HashMap<String, Metadata>();
-        schemaCacheSync = new Object();
-        mappingsSync = new Object();
     }
 
+    /**
+     * Return the metadata of the weekly indexes of the given account and time, creating the indexes and their mappings if needed.<br>
+     * The indexes are checked (and created) once per index name: the first caller does it while the concurrent callers for the same index
+     * wait for its outcome, and callers for other indexes are not blocked at all.
+     *
+     * @param accountName
+     * @param time
+     * @return
+     * @throws IOException
+     * @throws EsDatastoreException
+     */
     public Metadata synch(String accountName, long time)
         throws IOException, EsDatastoreException
     {
 
         String newIndex = EsUtils.getActualIndexName(accountName, time);
+        return computeOnce(schemaCache, newIndex, () -> this.createMetadata(accountName, time, newIndex));
+    }
 
-        synchronized (schemaCacheSync) {
-            if (schemaCache.containsKey(newIndex)) {
-                Metadata currentMetadata = schemaCache.get(newIndex);
-                return currentMetadata;
-            }
-        }
+    /**
+     * Return the name of the metric rollup index of the given account and interval, creating the index and its mapping if needed.<br>
+     * As for the data indexes, the index is checked (and created) once per index name.
+     *
+     * @param accountName
+     * @param interval
+     * @return
+     * @throws IOException
+     * @throws EsDatastoreException
+     */
+    public String synchRollup(String accountName, long interval)
+        throws IOException, EsDatastoreException
+    {
+        String rollupIndex = EsUtils.getRollupIndexName(accountName, interval);
+        return computeOnce(rollupCache, rollupIndex, () -> this.createRollupIndex(rollupIndex));
+    }
 
-        s_logger.info("Before entering updating metadata");
+    /**
+     * Forget the metadata of the given (deleted) data indexes, so the indexes and their mappings are created again by the next message stored in them
+     *
+     * @param indexNames
+     */
+    public void evict(String... indexNames)
+    {
+        for (String indexName : indexNames)
+            schemaCache.remove(indexName);
+    }
 
-        Metadata currentMetadata = null;
-        synchronized (mappingsSync) {
-            s_logger.info("Entered updating metadata");
-            currentMetadata = new Metadata();
+    private static <T> T computeOnce(ConcurrentMap<String, CompletableFuture<T>> cache, String indexName, SchemaLoader<T> loader)
+        throws IOException, EsDatastoreException
+    {
+        CompletableFuture<T> cachedValue = cache.get(indexName);
+        if (cachedValue == null) {
+            CompletableFuture<T> newValue = new CompletableFuture<T>();
+            cachedValue = cache.putIfAbsent(indexName, newValue);
+            if (cachedValue == null) {
+                cachedValue = newValue;
+                try {
+                    newValue.complete(loader.load());
+                }
+                catch (IOException | EsDatastoreException | RuntimeException e) {
+                    // Let the next caller retry
+                    cache.remove(indexName, newValue);
+                    newValue.completeExceptionally(e);
+                    throw e;
+                }
+            }
+        }
 
-            IndicesExistsResponse existsResponse = null;
-            Client esClient = EsClient.getcurrent();
+        return await(cachedValue, String.format("the index %s", indexName));
+    }
 
-            // Check existence of the data index
-            existsResponse = esClient.admin().indices()
-                                     .exists(new IndicesExistsRequest(newIndex))
-                                     .actionGet();
+    private static <T> T await(CompletableFuture<T> value, String description)
+        throws IOException, EsDatastoreException
+    {
+        try {
+            return value.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EsDatastoreException(String.format("Interrupted while waiting for %s to be created", description));
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof EsDatastoreException)
+                throw (EsDatastoreException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new EsDatastoreException(String.format("Cannot create %s: %s", description, cause));
+        }
+    }
 
-            boolean indexExists = existsResponse.isExists();
-            if (!indexExists) {
+    private String createRollupIndex(String rollupIndex)
+        throws IOException, EsDatastoreException
+    {
+        Client esClient = EsClient.getcurrent();
+        IndicesExistsResponse existsResponse = esClient.admin().indices()
+                                                       .exists(new IndicesExistsRequest(rollupIndex))
+                                                       .actionGet();
+        if (!existsResponse.isExists()) {
+            try {
                 esClient.admin().indices()
-                        .prepareCreate(newIndex)
+                        .prepareCreate(rollupIndex)
                         .setSettings(this.getIndexSettings())
+                        .addMapping(ROLLUP_TYPE_NAME, this.getRollupTypeBuilder())
                         .execute()
                         .actionGet();
-
-                s_logger.info("Data index created: " + newIndex);
+                s_logger.info("Metric rollup index created: " + rollupIndex);
             }
+            catch (IndexAlreadyExistsException e) {
+                // Created meanwhile by another node
+            }
+        }
+        return rollupIndex;
+    }
 
-            boolean enableAllField = false;
-            boolean enableSourceField = true;
+    private void initCounterMappings(String indexName)
+        throws IOException, EsDatastoreException
+    {
 
-            this.initMessageMappings(newIndex, enableAllField, enableSourceField);
+        Client esClient = EsClient.getcurrent();
 
-            // Check existence of the kapua internal index
-            String newKapuaMetadataIdx = EsUtils.getActualKapuaIndexName(accountName, time);
-            existsResponse = esClient.admin().indices()
-                                     .exists(new IndicesExistsRequest(newKapuaMetadataIdx))
-                                     .actionGet();
+        // Check message counter type mapping
+        GetMappingsRequest mappingsRequest = new GetMappingsRequest().indices(indexName);
+        GetMappingsResponse mappingsResponse = esClient.admin().indices().getMappings(mappingsRequest).actionGet();
+        ImmutableOpenMap<String, ImmutableOpenMap<String, MappingMetaData>> mappings = mappingsResponse.getMappings();
+        ImmutableOpenMap<String, MappingMetaData> map = mappings.get(indexName);
+        MappingMetaData metadata = map != null ? map.get(COUNTER_TYPE_NAME) : null;
+        if (metadata == null) {
+            XContentBuilder builder = this.getCounterTypeBuilder();
+            esClient.admin().indices().preparePutMapping(indexName).setType(COUNTER_TYPE_NAME).setSource(builder).execute().actionGet();
+            s_logger.trace("Message counter mapping created: " + builder.string());
+        }
+    }
 
-            indexExists = existsResponse.isExists();
-            if (!indexExists) {
-                esClient.admin()
-                        .indices()
-                        .prepareCreate(newKapuaMetadataIdx)
-                        .setSettings(this.getIndexSettings())
-                        .execute()
-                        .actionGet();
+    private XContentBuilder getCounterTypeBuilder()
+        throws IOException
+    {
+        XContentBuilder builder = XContentFactory.jsonBuilder()
+         .startObject()
+             .startObject(COUNTER_TYPE_NAME)
+                 .startObject("_all")
+                     .field("enabled", false)
+                 .endObject()
+                 .startObject("properties")
+                     .startObject(COUNTER_ACCOUNT)
+                         .field("type", "string")
+                         .field("index", "not_analyzed")
+                     .endObject()
+                     .startObject(COUNTER_ASSET)
+                         .field("type", "string")
+                         .field("index", "not_analyzed")
+                     .endObject()
+                     .startObject(COUNTER_SEM_TOPIC)
+                         .field("type", "string")
+                         .field("index", "not_analyzed")
+                     .endObject()
+                     .startObject(COUNTER_TIMESTAMP)
+                         .field("type", "date")
+                     .endObject()
+                     .startObject(COUNTER_COUNT)
+                         .field("type", "long")
+                     .endObject()
+                 .endObject() // End Of Properties
+             .endObject() // End of type
+         .endObject();
 
-                s_logger.info("Metadata index created: " + newKapuaMetadataIdx);
+        return builder;
+    }
 
-                this.initTopicMappings(newKapuaMetadataIdx, enableAllField, enableSourceField);
-                this.initMetricMappings(newKapuaMetadataIdx, enableAllField, enableSourceField);
-                this.initAssetMappings(newKapuaMetadataIdx, enableAllField, enableSourceField);
-            }
+    private XContentBuilder getRollupTypeBuilder()
+        throws IOException
+    {
+        XContentBuilder builder = XContentFactory.jsonBuilder()
+         .startObject()
+             .startObject(ROLLUP_TYPE_NAME)
+                 .startObject("_all")
+                     .field("enabled", false)
+                 .endObject()
+                 .startObject("properties")
+                     .startObject(ROLLUP_ACCOUNT)
+                         .field("type", "string")
+                         .field("index", "not_analyzed")
+                     .endObject()
+                     .startObject(ROLLUP_ASSET)
+                         .field("type", "string")
+                         .field("index", "not_analyzed")
+                     .endObject()
+                     .startObject(ROLLUP_SEM_TOPIC)
+                         .field("type", "string")
+                         .field("index", "not_analyzed")
+                     .endObject()
+                     .startObject(ROLLUP_METRIC_NAME)
+                         .field("type", "string")
+                         .field("index", "not_analyzed")
+                     .endObject()
+                     .startObject(ROLLUP_METRIC_TYPE)
+                         .field("type", "string")
+                         .field("index", "not_analyzed")
+                     .endObject()
+                     .startObject(ROLLUP_TIMESTAMP)
+                         .field("type", "date")
+                     .endObject()
+                     .startObject(ROLLUP_MIN)
+                         .field("type", "double")
+                     .endObject()
+                     .startObject(ROLLUP_MAX)
+                         .field("type", "double")
+                     .endObject()
+                     .startObject(ROLLUP_SUM)
+                         .field("type", "double")
+                     .endObject()
+                     .startObject(ROLLUP_COUNT)
+                         .field("type", "long")
+                     .endObject()
+                 .endObject() // End Of Properties
+             .endObject() // End of type
+         .endObject();
+
+        return builder;
+    }
+
+    private Metadata createMetadata(String accountName, long time, String newIndex)
+        throws IOException, EsDatastoreException
+    {
+        s_logger.info("Entered updating metadata");
+        Metadata currentMetadata = new Metadata();
+
+        IndicesExistsResponse existsResponse = null;
+        Client esClient = EsClient.getcurrent();
+
+        // Check existence of the data index
+        existsResponse = esClient.admin().indices()
+                                 .exists(new IndicesExistsRequest(newIndex))
+                                 .actionGet();
+
+        boolean indexExists = existsResponse.isExists();
+        if (!indexExists) {
+            esClient.admin().indices()
+                    .prepareCreate(newIndex)
+                    .setSettings(this.getIndexSettings())
+                    .execute()
+                    .actionGet();
 
-            currentMetadata.indexName = newIndex;
-            currentMetadata.kapuaIndexName = newKapuaMetadataIdx;
-            s_logger.info("Leaving updating metadata");
+            s_logger.info("Data index created: " + newIndex);
         }
 
-        synchronized (schemaCacheSync) {
-            // Current metadata can only increase the custom mappings
-            // other fields does not change within the same account id
-            // and custom mappings are not and must not be exposed to
-            // outside this class to preserve thread safetyness
-            schemaCache.put(newIndex, currentMetadata);
+        boolean enableAllField = false;
+        boolean enableSourceField = true;
+
+        this.initMessageMappings(newIndex, enableAllField, enableSourceField);
+
+        // Check existence of the kapua internal index
+        String newKapuaMetadataIdx = EsUtils.getActualKapuaIndexName(accountName, time);
+        existsResponse = esClient.admin().indices()
+                                 .exists(new IndicesExistsRequest(newKapuaMetadataIdx))
+                                 .actionGet();
+
+        indexExists = existsResponse.isExists();
+        if (!indexExists) {
+            esClient.admin()
+                    .indices()
+                    .prepareCreate(newKapuaMetadataIdx)
+                    .setSettings(this.getIndexSettings())
+                    .execute()
+                    .actionGet();
+
+            s_logger.info("Metadata index created: " + newKapuaMetadataIdx);
+
+            this.initTopicMappings(newKapuaMetadataIdx, enableAllField, enableSourceField);
+            this.initMetricMappings(newKapuaMetadataIdx, enableAllField, enableSourceField);
+            this.initAssetMappings(newKapuaMetadataIdx, enableAllField, enableSourceField);
         }
 
+        // The metadata indexes created before the message counters miss their mapping
+        this.initCounterMappings(newKapuaMetadataIdx);
+
+        // Current metadata can only increase the custom mappings
+        // other fields does not change within the same account id
+        // and custom mappings are not and must not be exposed to
+        // outside this class to preserve thread safetyness
+        currentMetadata.indexName = newIndex;
+        currentMetadata.kapuaIndexName = newKapuaMetadataIdx;
+        s_logger.info("Leaving updating metadata");
+
         return currentMetadata;
     }
 
+    /**
+     * Add the mappings of the metrics not yet mapped in the index of the given account and time.<br>
+     * Every new metric is claimed by a single caller, so the same mapping is not sent twice by concurrent callers, and the concurrent callers
+     * wait until the claimed mappings are put in the index (so no message is stored with a metric that is not mapped yet).
+     *
+     * @param accountName
+     * @param time
+     * @param esMetrics
+     * @throws IOException
+     * @throws ParseException
+     * @throws EsDatastoreException
+     */
     public void updateMessageMappings(String accountName, long time, Map<String, EsMetric> esMetrics)
         throws IOException, ParseException, EsDatastoreException
     {
@@ -759,31 +1024,41 @@ public class EsSchema
         if (esMetrics.size() == 0)
             return;
 
-        Metadata currentMetadata = null;
-        synchronized (schemaCacheSync) {
-            String newIndex = EsUtils.getActualIndexName(accountName, time);
-            currentMetadata = schemaCache.get(newIndex);
-            assert currentMetadata != null : NULL_METADATA_MSG;
-        }
-
-        XContentBuilder builder = null;
-        Map<String, EsMetric> diffs = null;
-
-        synchronized (mappingsSync) {
-
-            // Update mappings only if a metric is new (not in cache)
-            diffs = this.getMessageMappingDiffs(currentMetadata, esMetrics);
-            if (diffs == null || diffs.size() == 0)
-                return;
+        Metadata currentMetadata = this.synch(accountName, time);
+
+        // Update mappings only if a metric is new (not in cache)
+        List<CompletableFuture<EsMetric>> pending = new ArrayList<CompletableFuture<EsMetric>>();
+        Map<String, CompletableFuture<EsMetric>> diffs = this.getMessageMappingDiffs(currentMetadata, esMetrics, pending);
+        if (diffs != null && diffs.size() > 0) {
+            try {
+                Map<String, EsMetric> diffMetrics = new HashMap<String, EsMetric>(diffs.size());
+                for (String metricName : diffs.keySet())
+                    diffMetrics.put(metricName, esMetrics.get(metricName));
+
+                XContentBuilder builder = this.getNewMessageMappingsBuilder(diffMetrics);
+
+                s_logger.trace("Sending dynamic message mappings: " + builder.string());
+                Client esClient = EsClient.getcurrent();
+                esClient.admin().indices().preparePutMapping(currentMetadata.indexName)
+                        .setType(MESSAGE_TYPE_NAME)
+                        .setSource(builder)
+                        .execute().actionGet();
+            }
+            catch (IOException | EsDatastoreException | RuntimeException e) {
+                // Let the next caller retry
+                for (Entry<String, CompletableFuture<EsMetric>> diff : diffs.entrySet()) {
+                    currentMetadata.getMessageMappingsCache().remove(diff.getKey(), diff.getValue());
+                    diff.getValue().completeExceptionally(e);
+                }
+                throw e;
+            }
 
-            builder = this.getNewMessageMappingsBuilder(diffs);
+            for (Entry<String, CompletableFuture<EsMetric>> diff : diffs.entrySet())
+                diff.getValue().complete(esMetrics.get(diff.getKey()));
         }
 
-        s_logger.trace("Sending dynamic message mappings: " + builder.string());
-        Client esClient = EsClient.getcurrent();
-        esClient.admin().indices().preparePutMapping(currentMetadata.indexName)
-                .setType(MESSAGE_TYPE_NAME)
-                .setSource(builder)
-                .execute().actionGet();
+        // Wait for the mappings claimed by the concurrent callers
+        for (CompletableFuture<EsMetric> pendingValue : pending)
+            await(pendingValue, String.format("the mapping of a metric in the index %s", currentMetadata.indexName));
     }
 }
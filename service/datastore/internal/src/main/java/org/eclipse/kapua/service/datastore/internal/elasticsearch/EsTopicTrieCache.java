@@ -0,0 +1,243 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.kapua.service.datastore.internal.TopicTrie;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.dao.EsTopicDAO;
+import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettingKey;
+import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tries of the known topics ({@code asset/semantic topic}) of every account, used to expand the wildcard topic filters into the exact topics before querying.<br>
+ * The trie of an account is loaded from the topic metadata on first use, then kept up to date by the topics stored by this node and reloaded periodically,
+ * so the topics first stored by other nodes are known at most a reload interval later.
+ * No trie is kept for the accounts having more topics than the configured maximum, their filters are resolved by Elasticsearch.<br>
+ * A trie only holds the topics of the topic metadata, which can miss topics having messages (topics first stored by other nodes,
+ * topic upserts still pending when the trie is loaded, topic metadata deleted while their messages are kept).
+ * A trie is reported as complete only if the metadata is declared complete by the configuration (a single node storing the messages and
+ * no topic metadata deleted while its messages are kept) and no topic upsert was pending when it was loaded.
+ * Only the complete tries are used to expand the filters ({@link #getComplete(String)}).
+ *
+ * @since 1.0
+ */
+public class EsTopicTrieCache
+{
+
+    private static final Logger     s_logger = LoggerFactory.getLogger(EsTopicTrieCache.class);
+
+    private static EsTopicTrieCache instance;
+
+    private static final class Entry
+    {
+
+        private volatile TopicTrie    trie;
+        // Trie being loaded, receiving the topics stored meanwhile
+        private volatile TopicTrie    loading;
+        private volatile long         loadedOn;
+        private volatile boolean      loaded;
+        private volatile boolean      complete;
+        private final AtomicBoolean   reloading = new AtomicBoolean();
+    }
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private final int                          sizeMax;
+    private final int                          expansionMax;
+    private final long                         reloadIntervalNanos;
+    private final boolean                      metadataComplete;
+
+    /**
+     * Get the shared topic trie cache
+     *
+     * @return
+     */
+    public static synchronized EsTopicTrieCache getInstance()
+    {
+        if (instance == null) {
+            DatastoreSettings config = DatastoreSettings.getInstance();
+            instance = new EsTopicTrieCache(config.getInt(DatastoreSettingKey.CONFIG_TOPIC_TRIE_SIZE_MAXIMUM, 100000),
+                                            config.getInt(DatastoreSettingKey.CONFIG_TOPIC_TRIE_EXPANSION_MAXIMUM, 1000),
+                                            config.getLong(DatastoreSettingKey.CONFIG_TOPIC_TRIE_RELOAD_INTERVAL, 300L),
+                                            config.getBoolean(DatastoreSettingKey.CONFIG_TOPIC_TRIE_COMPLETE, false));
+        }
+        return instance;
+    }
+
+    /**
+     * Create a new topic trie cache
+     *
+     * @param sizeMax maximum number of topics of an account, 0 to disable the tries
+     * @param expansionMax maximum number of topics a filter is expanded into
+     * @param reloadInterval seconds after which a trie is reloaded from the topic metadata
+     * @param metadataComplete true if the topic metadata holds every topic having messages
+     */
+    public EsTopicTrieCache(int sizeMax, int expansionMax, long reloadInterval, boolean metadataComplete)
+    {
+        this.sizeMax = sizeMax;
+        this.expansionMax = expansionMax;
+        this.reloadIntervalNanos = TimeUnit.SECONDS.toNanos(reloadInterval);
+        this.metadataComplete = metadataComplete;
+    }
+
+    /**
+     * Return the maximum number of topics a filter is expanded into
+     *
+     * @return
+     */
+    public int getExpansionMaximum()
+    {
+        return expansionMax;
+    }
+
+    /**
+     * Return the trie of the known topics of the account, loading it if needed
+     *
+     * @param accountName
+     * @return the trie, or null if not available (too many topics or loading failed)
+     */
+    public TopicTrie get(String accountName)
+    {
+        if (sizeMax <= 0)
+            return null;
+
+        Entry entry = entries.computeIfAbsent(accountName, name -> new Entry());
+        if (!entry.loaded) {
+            // Nothing to serve yet, the concurrent callers wait for the first load
+            synchronized (entry) {
+                if (!entry.loaded)
+                    load(accountName, entry);
+            }
+        }
+        else if (System.nanoTime() - entry.loadedOn >= reloadIntervalNanos && entry.reloading.compareAndSet(false, true)) {
+            // The concurrent callers keep using the current trie while it is reloaded
+            try {
+                load(accountName, entry);
+            }
+            finally {
+                entry.reloading.set(false);
+            }
+        }
+        return entry.trie;
+    }
+
+    /**
+     * Return the trie of the known topics of the account, loading it if needed, only if it holds every topic having messages.<br>
+     * No trie is loaded if the topic metadata is not declared complete by the configuration.
+     *
+     * @param accountName
+     * @return the trie, or null if not available or not complete
+     */
+    public TopicTrie getComplete(String accountName)
+    {
+        if (!metadataComplete)
+            return null;
+
+        TopicTrie trie = get(accountName);
+        return trie != null && isComplete(accountName) ? trie : null;
+    }
+
+    /**
+     * Return true if the trie of the account (as returned by {@link #get(String)}) holds every topic having messages,
+     * so a filter can be resolved by the trie alone
+     *
+     * @param accountName
+     * @return
+     */
+    public boolean isComplete(String accountName)
+    {
+        Entry entry = entries.get(accountName);
+        return entry != null && entry.trie != null && entry.complete;
+    }
+
+    /**
+     * Add a stored topic to the trie of its account, if loaded
+     *
+     * @param accountName
+     * @param asset
+     * @param semTopic
+     */
+    public void add(String accountName, String asset, String semTopic)
+    {
+        Entry entry = entries.get(accountName);
+        if (entry == null)
+            return;
+
+        String topic = asset + '/' + semTopic;
+        TopicTrie current = entry.trie;
+        if (current != null) {
+            current.add(topic);
+            // Grown too big, dropped until the next reload
+            if (current.size() > sizeMax)
+                entry.trie = null;
+        }
+
+        TopicTrie next = entry.loading;
+        if (next != null)
+            next.add(topic);
+    }
+
+    /**
+     * Forget the trie of the account (e.g. after its topics have been deleted), it is loaded again on next use
+     *
+     * @param accountName
+     */
+    public void evict(String accountName)
+    {
+        entries.remove(accountName);
+    }
+
+    private void load(String accountName, Entry entry)
+    {
+        TopicTrie trie = new TopicTrie();
+        entry.loading = trie;
+        boolean complete = false;
+        try {
+            String kapuaIndexName = EsUtils.getActualKapuaIndexName(accountName, 0);
+            if (metadataComplete) {
+                // The topics upserted before the load must be searchable
+                complete = EsMetadataUpdateQueue.getInstance().getPendingCount() == 0;
+                EsClient.getcurrent().admin().indices().prepareRefresh(kapuaIndexName).get();
+            }
+            long count = EsTopicDAO.connection(EsClient.getcurrent())
+                                   .instance(kapuaIndexName, EsSchema.TOPIC_TYPE_NAME)
+                                   .scrollTopicNames((asset, semTopic) -> {
+                                       if (trie.size() <= sizeMax)
+                                           trie.add(asset + '/' + semTopic);
+                                   });
+
+            if (count > sizeMax || trie.size() > sizeMax) {
+                s_logger.debug("Too many topics for account {} [{}], no topic trie kept", accountName, count);
+                entry.trie = null;
+            }
+            else {
+                entry.complete = complete;
+                entry.trie = trie;
+            }
+        }
+        catch (Exception e) {
+            s_logger.warn("Cannot load the topics of account {}: {}", accountName, e.getMessage());
+            entry.trie = null;
+        }
+        finally {
+            entry.loading = null;
+            entry.loadedOn = System.nanoTime();
+            entry.loaded = true;
+        }
+    }
+}
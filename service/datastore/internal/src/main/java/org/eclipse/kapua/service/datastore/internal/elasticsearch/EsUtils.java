@@ -18,6 +18,9 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.eclipse.kapua.commons.util.KapuaDateUtils;
@@ -32,6 +35,8 @@ public class EsUtils {
 	
 	private static final Logger s_logger = LoggerFactory.getLogger(EsUtils.class);
 
+	private static final Pattern DATA_INDEX_SUFFIX = Pattern.compile("([0-9]{4})-([0-9]{2})");
+
 	private static final char SPECIAL_DOT = '.';
 	private static final String SPECIAL_DOT_ESC = "$2e";
 
@@ -155,6 +160,97 @@ public class EsUtils {
 		return actualName;
 	}
 
+	/**
+	 * Return the names of the weekly data indexes ({@code account-YYYY-WW}) holding the messages with a timestamp in the given range, bounds included.<br>
+	 * The names are the same returned by {@link #getActualIndexName(String, long)} for every timestamp in the range, in chronological order.
+	 * 
+	 * @param accountName
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	public static String[] getDataIndexNames(String accountName, long start, long end) {
+		Set<String> indexNames = new LinkedHashSet<String>();
+		Calendar cal = KapuaDateUtils.getKapuaCalendar();
+		long timestamp = start;
+		while (timestamp <= end) {
+			indexNames.add(getActualIndexName(accountName, timestamp));
+
+			// The index name changes at the beginning of every week and of every year (the first week can start in the previous year)
+			cal.setTimeInMillis(timestamp);
+			cal.set(Calendar.HOUR_OF_DAY, 0);
+			cal.clear(Calendar.MINUTE);
+			cal.clear(Calendar.SECOND);
+			cal.clear(Calendar.MILLISECOND);
+			cal.set(Calendar.DAY_OF_WEEK, cal.getFirstDayOfWeek());
+			if (cal.getTimeInMillis() > timestamp)
+				cal.add(Calendar.WEEK_OF_YEAR, -1);
+			cal.add(Calendar.WEEK_OF_YEAR, 1);
+			long nextWeek = cal.getTimeInMillis();
+
+			cal.setTimeInMillis(timestamp);
+			cal.set(cal.get(Calendar.YEAR) + 1, Calendar.JANUARY, 1, 0, 0, 0);
+			cal.clear(Calendar.MILLISECOND);
+			long nextYear = cal.getTimeInMillis();
+
+			timestamp = Math.min(nextWeek, nextYear);
+		}
+		return indexNames.toArray(new String[indexNames.size()]);
+	}
+
+	/**
+	 * Return the end (exclusive) of the time range covered by the given weekly data index of the account,
+	 * that is the first timestamp after the ones for which {@link #getActualIndexName(String, long)} returns that name.<br>
+	 * The last days of December can belong to the first week of the next year, so the first week index of a year can also hold the end of that year.
+	 * 
+	 * @param accountName
+	 * @param indexName
+	 * @return the end of the index time range, or -1 if the name is not the one of a weekly data index of the account
+	 */
+	public static long getDataIndexEnd(String accountName, String indexName) {
+		String prefix = EsUtils.normalizedIndexName(accountName) + "-";
+		if (indexName == null || !indexName.startsWith(prefix))
+			return -1;
+
+		Matcher matcher = DATA_INDEX_SUFFIX.matcher(indexName.substring(prefix.length()));
+		if (!matcher.matches())
+			return -1;
+
+		int year = Integer.parseInt(matcher.group(1));
+		int weekOfTheYear = Integer.parseInt(matcher.group(2));
+
+		Calendar cal = KapuaDateUtils.getKapuaCalendar();
+		if (weekOfTheYear == 1) {
+			cal.clear();
+			cal.set(year, Calendar.DECEMBER, 31);
+			if (cal.get(Calendar.WEEK_OF_YEAR) == 1) {
+				cal.set(year + 1, Calendar.JANUARY, 1);
+				return cal.getTimeInMillis();
+			}
+		}
+
+		cal.clear();
+		cal.set(Calendar.YEAR, year);
+		cal.set(Calendar.WEEK_OF_YEAR, weekOfTheYear);
+		cal.set(Calendar.DAY_OF_WEEK, cal.getFirstDayOfWeek());
+		cal.add(Calendar.WEEK_OF_YEAR, 1);
+		return cal.getTimeInMillis();
+	}
+
+	/**
+	 * Return the name of the metric rollup index of the given account and interval (milliseconds).<br>
+	 * The name starts with '.' so it is not matched by the data indexes wildcard of the account.
+	 * 
+	 * @param accountName
+	 * @param interval
+	 * @return
+	 */
+	public static String getRollupIndexName(String accountName, long interval) {
+		String actualName = EsUtils.normalizedIndexName(accountName);
+		actualName = String.format(".%s-rollup-%d", actualName, interval / 1000);
+		return actualName;
+	}
+
 	public static String getActualKapuaIndexName(String accountName, long timestamp) {
 		String actualName = EsUtils.normalizedIndexName(accountName);
 		actualName = String.format(".%s", actualName);
@@ -199,7 +295,7 @@ public class EsUtils {
 		if (value instanceof Date)
 			return ES_TYPE_DATE;
 		
-		if (value instanceof Byte[])
+		if (value instanceof byte[])
 			return ES_TYPE_BINARY;
 		
 		if (value instanceof Boolean)
@@ -238,6 +334,35 @@ public class EsUtils {
 		throw new IllegalArgumentException(String.format("Unknown type [%s]", esType));
 	}
 	
+	public static String getEsTypeFromAcronym(String acronym) {
+		
+		if (acronym.equals(ES_TYPE_SHORT_STRING))
+			return ES_TYPE_STRING;
+		
+		if (acronym.equals(ES_TYPE_SHORT_INTEGER))
+			return ES_TYPE_INTEGER;
+		
+		if (acronym.equals(ES_TYPE_SHORT_LONG))
+			return ES_TYPE_LONG;
+		
+		if (acronym.equals(ES_TYPE_SHORT_FLOAT))
+			return ES_TYPE_FLOAT;
+		
+		if (acronym.equals(ES_TYPE_SHORT_DOUBLE))
+			return ES_TYPE_DOUBLE;
+		
+		if (acronym.equals(ES_TYPE_SHORT_BOOL))
+			return ES_TYPE_BOOL;
+		
+		if (acronym.equals(ES_TYPE_SHORT_DATE))
+			return ES_TYPE_DATE;
+		
+		if (acronym.equals(ES_TYPE_SHORT_BINARY))
+			return ES_TYPE_BINARY;
+		
+		throw new IllegalArgumentException(String.format("Unknown type acronym [%s]", acronym));
+	}
+	
 	public static void main (String[] args) {
 		System.out.println((new byte[]{}).getClass().getName());
 	}
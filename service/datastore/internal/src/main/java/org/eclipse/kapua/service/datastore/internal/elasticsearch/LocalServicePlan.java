@@ -17,9 +17,15 @@ import java.util.Map;
 
 import org.eclipse.kapua.service.datastore.internal.model.DataIndexBy;
 import org.eclipse.kapua.service.datastore.internal.model.MetricsIndexBy;
+import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettingKey;
+import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettings;
+import org.elasticsearch.ElasticsearchParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class LocalServicePlan
 {
+    private static final Logger s_logger = LoggerFactory.getLogger(LocalServicePlan.class);
 
     /**
      * Defines a value in service plan as unlimited resource
@@ -31,14 +37,33 @@ public class LocalServicePlan
      */
     public static final int DISABLED = 0;
 
+    /**
+     * Service plan configuration property of the metric rollup intervals
+     */
+    public static final String METRICS_ROLLUP_INTERVALS = "metricsRollupIntervals";
+
     private Date expirationDate = null;
     private boolean dataStorageEnabled = true;
     private int dataTimeToLive = 90;
     private DataIndexBy dataIndexBy = DataIndexBy.SERVER_TIMESTAMP;
     private MetricsIndexBy metricsIndexBy = MetricsIndexBy.TIMESTAMP;
+    private long[] metricsRollupIntervals;
     
     public LocalServicePlan(Map<String, Object> values)
     {
+        // The account rollup intervals, if set (and valid), override the default ones
+        Object rollupIntervals = values != null ? values.get(METRICS_ROLLUP_INTERVALS) : null;
+        if (rollupIntervals instanceof String && !((String) rollupIntervals).trim().isEmpty()) {
+            try {
+                metricsRollupIntervals = EsMetricRollup.parseIntervals((String) rollupIntervals);
+            }
+            catch (ElasticsearchParseException e) {
+                // A malformed account value must not break every datastore call of the account
+                s_logger.warn("Invalid {} [{}], using the default intervals: {}", METRICS_ROLLUP_INTERVALS, rollupIntervals, e.getMessage());
+            }
+        }
+        if (metricsRollupIntervals == null)
+            metricsRollupIntervals = EsMetricRollup.parseIntervals(DatastoreSettings.getInstance().getString(DatastoreSettingKey.CONFIG_ROLLUP_INTERVALS, ""));
     }
 
     public Date getExpirationDate()
@@ -90,4 +115,19 @@ public class LocalServicePlan
     {
         this.metricsIndexBy = metricsIndexBy;
     }
+
+    /**
+     * Return the intervals (milliseconds, sorted) of the metric rollups, empty if the rollup is disabled
+     * 
+     * @return
+     */
+    public long[] getMetricsRollupIntervals()
+    {
+        return metricsRollupIntervals;
+    }
+
+    public void setMetricsRollupIntervals(long[] metricsRollupIntervals)
+    {
+        this.metricsRollupIntervals = metricsRollupIntervals;
+    }
 }
@@ -13,9 +13,11 @@
 package org.eclipse.kapua.service.datastore.internal.elasticsearch;
 
 import java.text.ParseException;
+import java.util.Base64;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import org.eclipse.kapua.service.datastore.internal.model.MessageImpl;
 import org.eclipse.kapua.service.datastore.internal.model.PayloadImpl;
@@ -23,6 +25,8 @@ import org.eclipse.kapua.service.datastore.internal.model.PositionImpl;
 import org.eclipse.kapua.service.datastore.internal.model.StorableIdImpl;
 import org.eclipse.kapua.service.datastore.model.Message;
 import org.eclipse.kapua.service.datastore.model.query.MessageFetchStyle;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.index.get.GetField;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHitField;
 
@@ -34,31 +38,70 @@ public class MessageBuilder
     public MessageBuilder build(SearchHit searchHit, MessageFetchStyle fetchStyle)
         throws KapuaInvalidTopicException, ParseException
     {
+        return build(searchHit, fetchStyle, null);
+    }
+
+    /**
+     * Build the message from the search hit, decoding only the parts required by the fetch style and, if a metric projection is given, only the projected metrics
+     * 
+     * @param searchHit
+     * @param fetchStyle
+     * @param metricProjection the names of the metrics to be decoded, null for all the metrics
+     * @return
+     * @throws KapuaInvalidTopicException
+     * @throws ParseException
+     */
+    public MessageBuilder build(SearchHit searchHit, MessageFetchStyle fetchStyle, Set<String> metricProjection)
+        throws KapuaInvalidTopicException, ParseException
+    {
+        Map<String, SearchHitField> fields = searchHit.getFields();
+        return build(searchHit.getId(),
+                     fields.get(EsSchema.MESSAGE_ACCOUNT).getValue(),
+                     fields.get(EsSchema.MESSAGE_AS_NAME).getValue(),
+                     fields.get(EsSchema.MESSAGE_SEM_TOPIC).getValue(),
+                     fields.get(EsSchema.MESSAGE_TIMESTAMP) == null ? null : fields.get(EsSchema.MESSAGE_TIMESTAMP).getValue(),
+                     searchHit.getSource(),
+                     fetchStyle,
+                     metricProjection);
+    }
+
+    public MessageBuilder build(GetResponse getResponse, MessageFetchStyle fetchStyle)
+        throws KapuaInvalidTopicException, ParseException
+    {
+        Map<String, GetField> fields = getResponse.getFields();
+        return build(getResponse.getId(),
+                     (String) fields.get(EsSchema.MESSAGE_ACCOUNT).getValue(),
+                     (String) fields.get(EsSchema.MESSAGE_AS_NAME).getValue(),
+                     (String) fields.get(EsSchema.MESSAGE_SEM_TOPIC).getValue(),
+                     fields.get(EsSchema.MESSAGE_TIMESTAMP) == null ? null : fields.get(EsSchema.MESSAGE_TIMESTAMP).getValue(),
+                     getResponse.getSource(),
+                     fetchStyle,
+                     null);
+    }
 
-        String account = searchHit.getFields().get(EsSchema.MESSAGE_ACCOUNT).getValue();
-        String asset = searchHit.getFields().get(EsSchema.MESSAGE_AS_NAME).getValue();
-        String topic = searchHit.getFields().get(EsSchema.MESSAGE_SEM_TOPIC).getValue();
+    @SuppressWarnings("unchecked")
+    private MessageBuilder build(String id, String account, String asset, String topic, Object timestamp, Map<String, Object> source, MessageFetchStyle fetchStyle,
+                                 Set<String> metricProjection)
+        throws KapuaInvalidTopicException, ParseException
+    {
         KapuaTopic kapuaTopic = new KapuaTopic(account, asset, topic);
 
         MessageImpl tmpMessage = new MessageImpl();
         tmpMessage.setTopic(kapuaTopic.getFullTopic());
 
-        SearchHitField timestampObj = searchHit.getFields().get(EsSchema.MESSAGE_TIMESTAMP);
-        tmpMessage.setTimestamp((Date) (timestampObj == null ? null : EsUtils.convertToKapuaObject("date", (String) timestampObj.getValue())));
-        tmpMessage.setId(new StorableIdImpl(searchHit.getId()));
+        tmpMessage.setTimestamp((Date) (timestamp == null ? null : EsUtils.convertToKapuaObject("date", (String) timestamp)));
+        tmpMessage.setId(new StorableIdImpl(id));
 
-        if (fetchStyle.equals(MessageFetchStyle.METADATA)) {
+        // Nothing else fetched
+        if (fetchStyle.equals(MessageFetchStyle.METADATA) || source == null) {
             this.message = tmpMessage;
             return this;
         }
 
-        Map<String, Object> source = searchHit.getSource();
-
         PayloadImpl payload = new PayloadImpl();
-        PositionImpl position = null;
         if (source.get(EsSchema.MESSAGE_POS) != null) {
 
-            position = new PositionImpl();
+            PositionImpl position = new PositionImpl();
             Map<String, Object> positionMap = (Map<String, Object>) source.get(EsSchema.MESSAGE_POS);
 
             Map<String, Object> locationMap = (Map<String, Object>) positionMap.get(EsSchema.MESSAGE_POS_LOCATION);
@@ -66,7 +109,7 @@ public class MessageBuilder
                 position.setLatitude((double) locationMap.get("lat"));
 
             if (locationMap != null && locationMap.get("lon") != null)
-                position.setLatitude((double) locationMap.get("lon"));
+                position.setLongitude((double) locationMap.get("lon"));
 
             Object obj = positionMap.get(EsSchema.MESSAGE_POS_ALT);
             if (obj != null)
@@ -95,6 +138,8 @@ public class MessageBuilder
             obj = positionMap.get(EsSchema.MESSAGE_POS_TIMESTAMP);
             if (obj != null)
                 position.setTimestamp((Date) EsUtils.convertToKapuaObject("date", (String) obj));
+
+            payload.setPosition(position);
         }
 
         Object collectedOnFld = source.get(EsSchema.MESSAGE_COLLECTED_ON);
@@ -102,28 +147,16 @@ public class MessageBuilder
             payload.setCollectedOn((Date) (collectedOnFld == null ? null : EsUtils.convertToKapuaObject("date", (String) collectedOnFld)));
         }
 
-        if (source.get(EsSchema.MESSAGE_MTR) != null) {
-
-            Map<String, Object> metrics = (Map<String, Object>) source.get(EsSchema.MESSAGE_MTR);
-            
-            Map<String, Object> payloadMetrics = new HashMap<String, Object>();
-            
-            String[] metricNames = metrics.keySet().toArray(new String[] {});
-            for (String metricsName : metricNames) {
-                Map<String, Object> metricValue = (Map<String, Object>) metrics.get(metricsName);
-                if (metricValue.size() > 0) {
-                    String[] valueTypes = metricValue.keySet().toArray(new String[] {});
-                    Object value = metricValue.get(valueTypes[0]);
-                    if (value != null && value instanceof Integer)
-                        payloadMetrics.put(EsUtils.restoreMetricName(metricsName), value);
-                }
-            }
-            
-            payload.setMetrics(payloadMetrics);
-        }
+        Map<String, Object> metrics = (Map<String, Object>) source.get(EsSchema.MESSAGE_MTR);
+        if (metrics != null)
+            payload.setMetrics(decodeMetrics(metrics, metricProjection));
+
+        tmpMessage.setPayload(payload);
 
+        // The body, if any, is only decoded when requested
         if (fetchStyle.equals(MessageFetchStyle.METADATA_HEADERS)) {
             this.message = tmpMessage;
+            return this;
         }
 
         if (source.get(EsSchema.MESSAGE_BODY) != null) {
@@ -131,13 +164,63 @@ public class MessageBuilder
             payload.setBody(body);
         }
 
-        if (payload != null)
-            tmpMessage.setPayload(payload);
-
         this.message = tmpMessage;
         return this;
     }
 
+    /**
+     * Decode the metrics of the message source, only the projected ones if a projection is given
+     * 
+     * @param metrics the metrics of the message source, by normalized name
+     * @param metricProjection the names of the metrics to be decoded, null for all the metrics
+     * @return the metric values by name, converted to the type of the metric
+     * @throws ParseException
+     */
+    static Map<String, Object> decodeMetrics(Map<String, Object> metrics, Set<String> metricProjection)
+        throws ParseException
+    {
+        Map<String, Object> payloadMetrics = new HashMap<String, Object>();
+        if (metricProjection != null) {
+            for (String metricName : metricProjection) {
+                Object value = getMetricValue(metrics.get(EsUtils.normalizeMetricName(metricName)));
+                if (value != null)
+                    payloadMetrics.put(metricName, value);
+            }
+        }
+        else {
+            for (Map.Entry<String, Object> metric : metrics.entrySet()) {
+                Object value = getMetricValue(metric.getValue());
+                if (value != null)
+                    payloadMetrics.put(EsUtils.restoreMetricName(metric.getKey()), value);
+            }
+        }
+        return payloadMetrics;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object getMetricValue(Object metric)
+        throws ParseException
+    {
+        // A metric is an object holding its value under the type acronym
+        if (!(metric instanceof Map))
+            return null;
+
+        Map<String, Object> metricValue = (Map<String, Object>) metric;
+        if (metricValue.isEmpty())
+            return null;
+
+        Map.Entry<String, Object> typedValue = metricValue.entrySet().iterator().next();
+        if (typedValue.getValue() == null)
+            return null;
+
+        // The source holds the JSON value (e.g. a long as an integer, a float as a double, a date or a binary as a string)
+        String esType = EsUtils.getEsTypeFromAcronym(typedValue.getKey());
+        if (EsUtils.ES_TYPE_BINARY.equals(esType))
+            return Base64.getDecoder().decode((String) typedValue.getValue());
+
+        return EsUtils.convertToKapuaObject(EsUtils.convertToKapuaType(esType), String.valueOf(typedValue.getValue()));
+    }
+
     public Message getMessage()
     {
         return message;
@@ -12,13 +12,186 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.datastore.internal.elasticsearch;
 
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
 import org.eclipse.kapua.service.datastore.internal.model.query.AbstractStorableQueryConverter;
+import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettingKey;
+import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettings;
 import org.eclipse.kapua.service.datastore.model.Message;
+import org.eclipse.kapua.service.datastore.model.query.AndPredicate;
 import org.eclipse.kapua.service.datastore.model.query.MessageFetchStyle;
 import org.eclipse.kapua.service.datastore.model.query.MessageQuery;
+import org.eclipse.kapua.service.datastore.model.query.RangePredicate;
+import org.eclipse.kapua.service.datastore.model.query.StorablePredicate;
+import org.elasticsearch.action.get.GetRequestBuilder;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.search.fetch.source.FetchSourceContext;
 
 public class MessageQueryConverter extends AbstractStorableQueryConverter<Message, MessageQuery>
 {
+
+    private static final long WEEK_MILLIS = TimeUnit.DAYS.toMillis(7);
+
+    /**
+     * Create the realtime get request of the message with the given id, fetching the fields required by the fetch style
+     * 
+     * @param index
+     * @param type
+     * @param id
+     * @param fetchStyle
+     * @return
+     * @throws UnknownHostException
+     * @throws EsDatastoreException
+     */
+    public GetRequestBuilder toGetRequestBuilder(String index, String type, String id, MessageFetchStyle fetchStyle)
+        throws UnknownHostException, EsDatastoreException
+    {
+        return EsClient.getcurrent()
+                       .prepareGet(index, type, id)
+                       .setRealtime(true)
+                       .setFields(this.getFields())
+                       .setFetchSource(this.getIncludes(fetchStyle), this.getExcludes(fetchStyle));
+    }
+
+    /**
+     * Create the multi get item of the message with the given id, fetching the fields required by the fetch style
+     * 
+     * @param index
+     * @param type
+     * @param id
+     * @param fetchStyle
+     * @return
+     */
+    public MultiGetRequest.Item toMultiGetItem(String index, String type, String id, MessageFetchStyle fetchStyle)
+    {
+        return new MultiGetRequest.Item(index, type, id).fields(this.getFields())
+                                                        .fetchSourceContext(new FetchSourceContext(this.getIncludes(fetchStyle), this.getExcludes(fetchStyle)));
+    }
+
+    /**
+     * Return the comma separated names of the account indexes to be searched by the query.<br>
+     * If the query predicate bounds the message timestamp (a range on the timestamp, alone or in a conjunction) the names are the ones of the weekly indexes
+     * covering that range, otherwise (or if the range spans more weeks than the configured maximum) the name matching every index of the account.
+     * 
+     * @param accountName
+     * @param query
+     * @return
+     */
+    public String getIndexNames(String accountName, MessageQuery query)
+    {
+        long[] range = getTimestampRange(query);
+        return getIndexNames(accountName, range[0], range[1]);
+    }
+
+    /**
+     * Return the message timestamp range (min and max, inclusive) bounded by the query predicate (a range on the timestamp, alone or in a conjunction),
+     * the unbounded ends being {@link Long#MIN_VALUE} and {@link Long#MAX_VALUE}
+     * 
+     * @param query
+     * @return
+     */
+    public static long[] getTimestampRange(MessageQuery query)
+    {
+        long[] range = new long[] { Long.MIN_VALUE, Long.MAX_VALUE };
+        if (query != null && query.getPredicate() != null)
+            restrictTimestampRange(query.getPredicate(), range);
+        return range;
+    }
+
+    /**
+     * Return the comma separated names of the weekly indexes of the account covering the given time range (inclusive),
+     * or the index pattern matching all the indexes of the account if the range is unbounded or too wide
+     * 
+     * @param accountName
+     * @param start
+     * @param end
+     * @return
+     */
+    public String getIndexNames(String accountName, long start, long end)
+    {
+        if (start == Long.MIN_VALUE || end == Long.MAX_VALUE)
+            return EsUtils.getAnyIndexName(accountName);
+
+        // An empty range still targets one (existing or not) index so the query runs and returns no hits
+        if (end < start)
+            end = start;
+
+        int maxWeeks = DatastoreSettings.getInstance().getInt(DatastoreSettingKey.CONFIG_QUERY_INDEX_WEEKS_MAXIMUM, 53);
+        if ((end - start) / WEEK_MILLIS >= maxWeeks)
+            return EsUtils.getAnyIndexName(accountName);
+
+        return String.join(",", EsUtils.getDataIndexNames(accountName, start, end));
+    }
+
+    /**
+     * Narrow the range (min and max timestamp, inclusive) with the timestamp bounds found in the predicate
+     * 
+     * @param predicate
+     * @param range
+     * @return true if the predicate bounds the timestamp
+     */
+    private static boolean restrictTimestampRange(StorablePredicate predicate, long[] range)
+    {
+        if (predicate instanceof AndPredicate) {
+            boolean restricted = false;
+            for (StorablePredicate subPredicate : ((AndPredicate) predicate).getPredicates())
+                restricted |= restrictTimestampRange(subPredicate, range);
+            return restricted;
+        }
+
+        if (predicate instanceof RangePredicate) {
+            RangePredicate rangePredicate = (RangePredicate) predicate;
+            if (rangePredicate.getField() == null || !EsSchema.MESSAGE_TIMESTAMP.equals(rangePredicate.getField().field()))
+                return false;
+
+            Long min = toMillis(rangePredicate.getMinValue());
+            Long max = toMillis(rangePredicate.getMaxValue());
+            if (min != null)
+                range[0] = Math.max(range[0], min);
+            if (max != null)
+                range[1] = Math.min(range[1], max);
+            return min != null || max != null;
+        }
+
+        return false;
+    }
+
+    private static Long toMillis(Object value)
+    {
+        if (value instanceof Date)
+            return ((Date) value).getTime();
+        if (value instanceof Number)
+            return ((Number) value).longValue();
+        // Unknown (e.g. date math expressions) bounds are not used to restrict the range
+        return null;
+    }
+
+    /**
+     * Return the source fields fetched by the query: the ones of its fetch style, narrowed to the projected metrics if a metric projection is set
+     */
+    @Override
+    protected String[] getIncludes(MessageQuery query)
+    {
+        Set<String> metricProjection = query.getMetricProjection();
+        MessageFetchStyle fetchStyle = query.getFetchStyle();
+        if (metricProjection == null || fetchStyle == MessageFetchStyle.METADATA)
+            return this.getIncludes(fetchStyle);
+
+        List<String> includes = new ArrayList<String>(metricProjection.size() + 3);
+        includes.add(EsSchema.MESSAGE_COLLECTED_ON);
+        includes.add(EsSchema.MESSAGE_POS + ".*");
+        if (fetchStyle == MessageFetchStyle.METADATA_HEADERS_PAYLOAD)
+            includes.add(EsSchema.MESSAGE_BODY);
+        for (String metricName : metricProjection)
+            includes.add(EsSchema.MESSAGE_MTR + "." + EsUtils.normalizeMetricName(metricName) + ".*");
+        return includes.toArray(new String[includes.size()]);
+    }
+
     @Override
     protected String[] getIncludes(MessageFetchStyle fetchStyle)
     {
@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.kapua.service.datastore.internal.model.MetricAggregationImpl;
+import org.eclipse.kapua.service.datastore.internal.model.MetricAggregationListResultImpl;
+import org.eclipse.kapua.service.datastore.model.MetricAggregationListResult;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.bucket.histogram.Histogram;
+import org.elasticsearch.search.aggregations.metrics.max.Max;
+import org.elasticsearch.search.aggregations.metrics.min.Min;
+import org.elasticsearch.search.aggregations.metrics.percentiles.Percentiles;
+import org.elasticsearch.search.aggregations.metrics.stats.Stats;
+import org.elasticsearch.search.aggregations.metrics.sum.Sum;
+import org.joda.time.DateTime;
+
+/**
+ * Builds the metric aggregations from the aggregations created by {@link MetricAggregationQueryConverter}, or by {@link MetricRollupQueryConverter} for the queries served by the metric rollups
+ *
+ * @since 1.0
+ */
+public class MetricAggregationBuilder
+{
+
+    private MetricAggregationListResult result;
+
+    /**
+     * Build the metric aggregations from the search response
+     * 
+     * @param response
+     * @param percents the requested percentiles
+     * @return
+     */
+    public MetricAggregationBuilder build(SearchResponse response, double[] percents)
+    {
+        MetricAggregationListResultImpl aggregations = new MetricAggregationListResultImpl();
+        Histogram intervals = response.getAggregations().get(MetricAggregationQueryConverter.INTERVALS);
+        if (intervals != null) {
+            for (Histogram.Bucket bucket : intervals.getBuckets())
+                add(aggregations, getTimestamp(bucket), bucket.getAggregations(), percents);
+        }
+        else {
+            add(aggregations, null, response.getAggregations(), percents);
+        }
+
+        this.result = aggregations;
+        return this;
+    }
+
+    /**
+     * Build the metric aggregations from the aggregation of the per node aggregates stored in a metric rollup index ({@link MetricRollupQueryConverter}),
+     * no percentiles are available
+     * 
+     * @param response
+     * @return
+     */
+    public MetricAggregationBuilder buildFromRollup(SearchResponse response)
+    {
+        MetricAggregationListResultImpl aggregations = new MetricAggregationListResultImpl();
+        Histogram intervals = response.getAggregations().get(MetricRollupQueryConverter.INTERVALS);
+        for (Histogram.Bucket bucket : intervals.getBuckets()) {
+            Aggregations bucketAggregations = bucket.getAggregations();
+            long count = (long) ((Sum) bucketAggregations.get(MetricRollupQueryConverter.COUNT)).getValue();
+            if (count == 0)
+                continue;
+
+            double sum = ((Sum) bucketAggregations.get(MetricRollupQueryConverter.SUM)).getValue();
+            aggregations.add(new MetricAggregationImpl(getTimestamp(bucket),
+                                                       count,
+                                                       ((Min) bucketAggregations.get(MetricRollupQueryConverter.MIN)).getValue(),
+                                                       ((Max) bucketAggregations.get(MetricRollupQueryConverter.MAX)).getValue(),
+                                                       sum / count,
+                                                       sum,
+                                                       Collections.<Double, Double> emptyMap()));
+        }
+
+        this.result = aggregations;
+        return this;
+    }
+
+    public MetricAggregationListResult getResult()
+    {
+        return result;
+    }
+
+    private static void add(MetricAggregationListResultImpl aggregations, Date timestamp, Aggregations bucketAggregations, double[] percents)
+    {
+        Stats stats = bucketAggregations.get(MetricAggregationQueryConverter.STATS);
+        // No message carrying the metric
+        if (stats.getCount() == 0)
+            return;
+
+        Map<Double, Double> percentiles = Collections.emptyMap();
+        Percentiles esPercentiles = bucketAggregations.get(MetricAggregationQueryConverter.PERCENTILES);
+        if (esPercentiles != null && percents != null) {
+            percentiles = new LinkedHashMap<Double, Double>();
+            for (double percent : percents)
+                percentiles.put(percent, esPercentiles.percentile(percent));
+        }
+
+        aggregations.add(new MetricAggregationImpl(timestamp, stats.getCount(), stats.getMin(), stats.getMax(), stats.getAvg(), stats.getSum(), percentiles));
+    }
+
+    private static Date getTimestamp(Histogram.Bucket bucket)
+    {
+        Object key = bucket.getKey();
+        if (key instanceof DateTime)
+            return ((DateTime) key).toDate();
+        return new Date(((Number) key).longValue());
+    }
+}
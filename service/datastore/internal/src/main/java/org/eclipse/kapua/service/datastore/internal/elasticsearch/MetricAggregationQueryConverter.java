@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch;
+
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.service.datastore.model.query.AndPredicate;
+import org.eclipse.kapua.service.datastore.model.query.MetricAggregationQuery;
+import org.eclipse.kapua.service.datastore.model.query.RangePredicate;
+import org.eclipse.kapua.service.datastore.model.query.SortDirection;
+import org.eclipse.kapua.service.datastore.model.query.StorablePredicate;
+import org.eclipse.kapua.service.datastore.model.query.TopicMatchPredicate;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramBuilder;
+import org.elasticsearch.search.aggregations.bucket.histogram.Histogram;
+
+/**
+ * Converts the metric aggregation queries into native aggregations over the metric values of the matching messages:
+ * a stats (and optionally a percentiles) aggregation, under a date histogram of the message timestamp if an interval is requested.<br>
+ * The queries on a single topic can be served by the metric rollups instead ({@link #getRollupTopic(String, MetricAggregationQuery, long)}).
+ *
+ * @since 1.0
+ */
+public class MetricAggregationQueryConverter
+{
+
+    public static final String INTERVALS   = "intervals";
+    public static final String STATS       = "stats";
+    public static final String PERCENTILES = "percentiles";
+
+    /**
+     * Create the aggregation of the metric values of the messages matching the query
+     * 
+     * @param indices comma separated index names
+     * @param type
+     * @param metricField the full name of the metric value field
+     * @param query
+     * @return
+     * @throws KapuaException
+     * @throws UnknownHostException
+     * @throws EsDatastoreException
+     */
+    public SearchRequestBuilder toSearchRequestBuilder(String indices, String type, String metricField, MetricAggregationQuery query)
+        throws KapuaException, UnknownHostException, EsDatastoreException
+    {
+        if (query == null)
+            throw new EsDatastoreException(String.format("Query parameter is undefined"));
+
+        // Only the messages carrying the metric contribute to the aggregates
+        BoolQueryBuilder esQuery = QueryBuilders.boolQuery().filter(QueryBuilders.existsQuery(metricField));
+        if (query.getPredicate() != null)
+            esQuery.filter(new PredicateConverter().toElasticsearchQuery(query.getPredicate()));
+
+        SearchRequestBuilder searchReqBuilder = EsClient.getcurrent()
+                                                        .prepareSearch(indices.split(","))
+                                                        .setTypes(type)
+                                                        .setIndicesOptions(IndicesOptions.lenientExpandOpen())
+                                                        .setQuery(esQuery)
+                                                        .setSize(0);
+
+        boolean withPercentiles = query.getPercents() != null && query.getPercents().length > 0;
+        if (query.getInterval() > 0) {
+            DateHistogramBuilder intervals = AggregationBuilders.dateHistogram(INTERVALS)
+                                                                .field(EsSchema.MESSAGE_TIMESTAMP)
+                                                                .interval(query.getInterval())
+                                                                .minDocCount(1)
+                                                                .order(query.getSort() == SortDirection.DESC ? Histogram.Order.KEY_DESC : Histogram.Order.KEY_ASC)
+                                                                .subAggregation(AggregationBuilders.stats(STATS).field(metricField));
+            if (withPercentiles)
+                intervals.subAggregation(AggregationBuilders.percentiles(PERCENTILES).field(metricField).percentiles(query.getPercents()));
+            searchReqBuilder.addAggregation(intervals);
+        }
+        else {
+            searchReqBuilder.addAggregation(AggregationBuilders.stats(STATS).field(metricField));
+            if (withPercentiles)
+                searchReqBuilder.addAggregation(AggregationBuilders.percentiles(PERCENTILES).field(metricField).percentiles(query.getPercents()));
+        }
+
+        return searchReqBuilder;
+    }
+
+    /**
+     * Return the topic of the query if the metric rollups of the given interval hold the same aggregates as the messages matching the query:
+     * the query aggregates per interval without percentiles, and its predicate selects a single topic of the account (no wildcards),
+     * optionally with a timestamp range made of whole rollup intervals
+     * 
+     * @param accountName
+     * @param query
+     * @param rollupInterval the rollup interval evenly dividing the query interval, 0 if none
+     * @return the topic, or null if the query must be served by the messages
+     */
+    public KapuaTopic getRollupTopic(String accountName, MetricAggregationQuery query, long rollupInterval)
+    {
+        if (rollupInterval <= 0 || query.getInterval() <= 0 || (query.getPercents() != null && query.getPercents().length > 0))
+            return null;
+
+        List<TopicMatchPredicate> topicPredicates = new ArrayList<TopicMatchPredicate>();
+        if (query.getPredicate() == null || !isRollupPredicate(query.getPredicate(), topicPredicates) || topicPredicates.size() != 1)
+            return null;
+
+        KapuaTopic kapuaTopic;
+        try {
+            kapuaTopic = new KapuaTopic(topicPredicates.get(0).getExpression());
+        }
+        catch (KapuaInvalidTopicException e) {
+            return null;
+        }
+        if (!accountName.equals(kapuaTopic.getAccount()) || isWildcard(kapuaTopic.getAsset()) || isWildcard(kapuaTopic.getSemanticTopic()))
+            return null;
+
+        // A rollup interval is either entirely in the range or not at all
+        long[] range = MessageQueryConverter.getTimestampRange(query);
+        if ((range[0] != Long.MIN_VALUE && Math.floorMod(range[0], rollupInterval) != 0) ||
+            (range[1] != Long.MAX_VALUE && Math.floorMod(range[1] + 1, rollupInterval) != 0))
+            return null;
+
+        return kapuaTopic;
+    }
+
+    /**
+     * Return true if the predicate only holds topic filters and timestamp ranges with known bounds, collecting the topic filters
+     */
+    private static boolean isRollupPredicate(StorablePredicate predicate, List<TopicMatchPredicate> topicPredicates)
+    {
+        if (predicate instanceof AndPredicate) {
+            for (StorablePredicate subPredicate : ((AndPredicate) predicate).getPredicates()) {
+                if (!isRollupPredicate(subPredicate, topicPredicates))
+                    return false;
+            }
+            return true;
+        }
+
+        if (predicate instanceof TopicMatchPredicate) {
+            topicPredicates.add((TopicMatchPredicate) predicate);
+            return true;
+        }
+
+        if (predicate instanceof RangePredicate) {
+            RangePredicate rangePredicate = (RangePredicate) predicate;
+            return rangePredicate.getField() != null && EsSchema.MESSAGE_TIMESTAMP.equals(rangePredicate.getField().field()) &&
+                   isKnownBound(rangePredicate.getMinValue()) && isKnownBound(rangePredicate.getMaxValue());
+        }
+
+        return false;
+    }
+
+    private static boolean isKnownBound(Object value)
+    {
+        return value == null || value instanceof Date || value instanceof Number;
+    }
+
+    private static boolean isWildcard(String topic)
+    {
+        return topic.contains(KapuaTopic.SINGLE_LEVEL_WCARD) || topic.contains(KapuaTopic.MULTI_LEVEL_WCARD);
+    }
+}
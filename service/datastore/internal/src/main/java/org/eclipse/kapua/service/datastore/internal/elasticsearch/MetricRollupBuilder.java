@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch;
+
+import org.eclipse.kapua.service.datastore.internal.model.MetricRollupImpl;
+import org.eclipse.kapua.service.datastore.internal.model.MetricRollupListResultImpl;
+import org.eclipse.kapua.service.datastore.model.MetricAggregation;
+import org.eclipse.kapua.service.datastore.model.MetricAggregationListResult;
+import org.eclipse.kapua.service.datastore.model.MetricRollupListResult;
+import org.elasticsearch.action.search.SearchResponse;
+
+/**
+ * Builds the metric rollups from the date histogram aggregations created by {@link MetricRollupQueryConverter} and {@link MetricAggregationQueryConverter}
+ *
+ * @since 1.0
+ */
+public class MetricRollupBuilder
+{
+
+    private MetricRollupListResult result;
+
+    /**
+     * Build the metric rollups from the aggregation of the per node aggregates stored in a metric rollup index
+     * 
+     * @param response
+     * @param resolution the interval of the metric rollup index
+     * @return
+     */
+    public MetricRollupBuilder buildFromRollup(SearchResponse response, long resolution)
+    {
+        return buildFromAggregations(new MetricAggregationBuilder().buildFromRollup(response).getResult(), resolution);
+    }
+
+    /**
+     * Build the metric rollups from the metric aggregations (per interval) of the raw messages or of a metric rollup index
+     * 
+     * @param aggregations
+     * @param resolution the interval of the metric rollup index, 0 for the raw messages
+     * @return
+     */
+    public MetricRollupBuilder buildFromAggregations(MetricAggregationListResult aggregations, long resolution)
+    {
+        MetricRollupListResultImpl rollups = new MetricRollupListResultImpl(resolution);
+        for (MetricAggregation aggregation : aggregations)
+            rollups.add(new MetricRollupImpl(aggregation.getTimestamp(), aggregation.getMin(), aggregation.getMax(), aggregation.getAvg(), aggregation.getCount()));
+
+        this.result = rollups;
+        return this;
+    }
+
+    public MetricRollupListResult getResult()
+    {
+        return result;
+    }
+}
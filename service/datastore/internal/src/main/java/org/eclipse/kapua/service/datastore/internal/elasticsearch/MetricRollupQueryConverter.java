@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch;
+
+import java.net.UnknownHostException;
+import java.util.Date;
+
+import org.eclipse.kapua.service.datastore.model.query.SortDirection;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramBuilder;
+import org.elasticsearch.search.aggregations.bucket.histogram.Histogram;
+
+/**
+ * Converts the metric rollup queries into date histogram aggregations over the metric rollup index
+ * (the raw messages are aggregated by {@link MetricAggregationQueryConverter})
+ *
+ * @since 1.0
+ */
+public class MetricRollupQueryConverter
+{
+
+    public static final String INTERVALS = "intervals";
+    public static final String MIN       = "min";
+    public static final String MAX       = "max";
+    public static final String SUM       = "sum";
+    public static final String COUNT     = "count";
+
+    /**
+     * Create the aggregation of the per node aggregates stored in the metric rollup index
+     * 
+     * @param index
+     * @param type
+     * @param asset
+     * @param semTopic
+     * @param metricName
+     * @param metricType
+     * @param start the first rollup timestamp, unbounded if null
+     * @param end the last rollup timestamp, unbounded if null
+     * @param interval
+     * @param sort the order of the intervals, ascending if null
+     * @return
+     * @throws UnknownHostException
+     * @throws EsDatastoreException
+     */
+    public SearchRequestBuilder toRollupSearchRequestBuilder(String index, String type, String asset, String semTopic, String metricName, String metricType,
+                                                             Date start, Date end, long interval, SortDirection sort)
+        throws UnknownHostException, EsDatastoreException
+    {
+        BoolQueryBuilder query = QueryBuilders.boolQuery()
+                                              .filter(QueryBuilders.termQuery(EsSchema.ROLLUP_ASSET, asset))
+                                              .filter(QueryBuilders.termQuery(EsSchema.ROLLUP_SEM_TOPIC, semTopic))
+                                              .filter(QueryBuilders.termQuery(EsSchema.ROLLUP_METRIC_NAME, metricName))
+                                              .filter(QueryBuilders.termQuery(EsSchema.ROLLUP_METRIC_TYPE, metricType))
+                                              .filter(QueryBuilders.rangeQuery(EsSchema.ROLLUP_TIMESTAMP).from(start).to(end));
+
+        DateHistogramBuilder intervals = AggregationBuilders.dateHistogram(INTERVALS)
+                                                            .field(EsSchema.ROLLUP_TIMESTAMP)
+                                                            .interval(interval)
+                                                            .minDocCount(1)
+                                                            .order(sort == SortDirection.DESC ? Histogram.Order.KEY_DESC : Histogram.Order.KEY_ASC)
+                                                            .subAggregation(AggregationBuilders.min(MIN).field(EsSchema.ROLLUP_MIN))
+                                                            .subAggregation(AggregationBuilders.max(MAX).field(EsSchema.ROLLUP_MAX))
+                                                            .subAggregation(AggregationBuilders.sum(SUM).field(EsSchema.ROLLUP_SUM))
+                                                            .subAggregation(AggregationBuilders.sum(COUNT).field(EsSchema.ROLLUP_COUNT));
+
+        return EsClient.getcurrent()
+                       .prepareSearch(index)
+                       .setTypes(type)
+                       .setIndicesOptions(IndicesOptions.lenientExpandOpen())
+                       .setQuery(query)
+                       .setSize(0)
+                       .addAggregation(intervals);
+    }
+}
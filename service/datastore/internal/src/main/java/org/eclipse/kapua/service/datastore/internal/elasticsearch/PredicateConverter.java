@@ -12,10 +12,15 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.datastore.internal.elasticsearch;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.service.datastore.internal.TopicTrie;
 import org.eclipse.kapua.service.datastore.model.StorableId;
 import org.eclipse.kapua.service.datastore.model.query.AndPredicate;
 import org.eclipse.kapua.service.datastore.model.query.IdsPredicate;
@@ -31,6 +36,10 @@ import org.elasticsearch.index.query.TermQueryBuilder;
 
 public class PredicateConverter
 {
+
+    private static final char   TOPIC_SEPARATOR = '/';
+    private static final String REGEXP_RESERVED = ".?+*|{}[]()\"\\#@&<>~";
+
     public QueryBuilder toElasticsearchQuery(StorablePredicate predicate)
         throws KapuaException
     {
@@ -38,19 +47,19 @@ public class PredicateConverter
             throw KapuaException.internalError(String.format("Predicate parameter is undefined"));
 
         if (predicate instanceof AndPredicate)
-            return toElasticsearchQuery(predicate);
+            return toElasticsearchQuery((AndPredicate) predicate);
 
         if (predicate instanceof IdsPredicate)
-            return toElasticsearchQuery(predicate);
+            return toElasticsearchQuery((IdsPredicate) predicate);
 
         if (predicate instanceof TopicMatchPredicate)
-            return toElasticsearchQuery(predicate);
+            return toElasticsearchQuery((TopicMatchPredicate) predicate);
 
         if (predicate instanceof RangePredicate)
-            return toElasticsearchQuery(predicate);
+            return toElasticsearchQuery((RangePredicate) predicate);
 
         if (predicate instanceof TermPredicate)
-            return toElasticsearchQuery(predicate);
+            return toElasticsearchQuery((TermPredicate) predicate);
 
         throw KapuaException.internalError(String.format("Unknown predicate type %s", this.getClass().getName()));
     }
@@ -79,6 +88,16 @@ public class PredicateConverter
         return idsQuery;
     }
     
+    /**
+     * Convert the topic filter into a query.<br>
+     * The wildcard filters of an account are expanded into the matching topics known by the topic metadata ({@link EsTopicTrieCache}),
+     * replacing the filter, only if the topic metadata of the account is known to be complete. Otherwise the filter alone is matched,
+     * since adding the known topics to it would only make the query more expensive.
+     * 
+     * @param predicate
+     * @return
+     * @throws KapuaException
+     */
     public QueryBuilder toElasticsearchQuery(TopicMatchPredicate predicate) throws KapuaException
     {
         if (predicate == null)
@@ -93,30 +112,139 @@ public class PredicateConverter
         {
             throw KapuaException.internalError(e);
         }
-        
-        if (!kapuaTopic.isKapuaTopic())
+
+        if (kapuaTopic.getAccount() == null)
             throw KapuaException.internalError(String.format("Not a kapua topic %s", predicate.getExpression()));
 
+        String account = kapuaTopic.getAccount();
+        String asset = kapuaTopic.getAsset();
+        String semTopic = kapuaTopic.getSemanticTopic();
+
         BoolQueryBuilder boolQuery = QueryBuilders.boolQuery();
-        
-        if (kapuaTopic.isAnyAccount())
-            boolQuery.must(QueryBuilders.termQuery(EsMessageField.ACCOUNT.toString(), kapuaTopic.getAccount()));
+        if (!kapuaTopic.isAnyAccount())
+            boolQuery.must(QueryBuilders.termQuery(EsMessageField.ACCOUNT.field(), account));
 
-        if (kapuaTopic.isAnyAsset())
-            boolQuery.must(QueryBuilders.termQuery(EsMessageField.ASSET.toString(), kapuaTopic.getAsset()));
+        if (!isWildcard(asset) && !isWildcard(semTopic)) {
+            boolQuery.must(QueryBuilders.termQuery(EsMessageField.ASSET.field(), asset));
+            boolQuery.must(QueryBuilders.termQuery(EsMessageField.SEMANTIC_TOPIC.field(), semTopic));
+            return boolQuery;
+        }
 
-        if (kapuaTopic.isAnySubtopic())
-            boolQuery.must(QueryBuilders.termQuery(EsMessageField.SEMANTIC_TOPIC.toString(), kapuaTopic.getSemanticTopic()));
+        // Expand the filter into the known topics of the account, so the topics are matched by exact terms.
+        // The known topics come from the topic metadata, they replace the filter only if they are every topic having messages.
+        List<String> topics = null;
+        if (!kapuaTopic.isAnyAccount()) {
+            EsTopicTrieCache topicTries = EsTopicTrieCache.getInstance();
+            TopicTrie topicTrie = topicTries.getComplete(account);
+            if (topicTrie != null)
+                topics = topicTrie.match(asset + TOPIC_SEPARATOR + semTopic, topicTries.getExpansionMaximum());
+        }
 
+        boolQuery.must(toWildcardQuery(kapuaTopic, topics));
         return boolQuery;
     }
+
+    /**
+     * Query matching the asset and semantic topic filter: the given topics if any (all the topics having messages matched by the filter),
+     * otherwise (unknown or too many topics) the filter itself, matched by Elasticsearch
+     */
+    static QueryBuilder toWildcardQuery(KapuaTopic kapuaTopic, List<String> topics)
+    {
+        return topics != null ? toTopicsQuery(topics) : toFilterQuery(kapuaTopic);
+    }
+
+    /**
+     * Query matching the asset and semantic topic filter
+     */
+    private static QueryBuilder toFilterQuery(KapuaTopic kapuaTopic)
+    {
+        BoolQueryBuilder filterQuery = QueryBuilders.boolQuery();
+        if (!kapuaTopic.isAnyAsset())
+            filterQuery.must(QueryBuilders.termQuery(EsMessageField.ASSET.field(), kapuaTopic.getAsset()));
+        if (!KapuaTopic.MULTI_LEVEL_WCARD.equals(kapuaTopic.getSemanticTopic()))
+            filterQuery.must(QueryBuilders.regexpQuery(EsMessageField.SEMANTIC_TOPIC.field(), toRegexp(kapuaTopic.getSemanticTopic())));
+        if (!filterQuery.hasClauses())
+            filterQuery.must(QueryBuilders.matchAllQuery());
+        return filterQuery;
+    }
+
+    /**
+     * Query matching exactly the given topics ({@code asset/semantic topic}), grouped by asset
+     */
+    private static QueryBuilder toTopicsQuery(List<String> topics)
+    {
+        if (topics.isEmpty())
+            return QueryBuilders.boolQuery().mustNot(QueryBuilders.matchAllQuery());
+
+        Map<String, List<String>> semTopicsByAsset = new LinkedHashMap<String, List<String>>();
+        for (String topic : topics) {
+            int assetEnd = topic.indexOf(TOPIC_SEPARATOR);
+            semTopicsByAsset.computeIfAbsent(topic.substring(0, assetEnd), asset -> new ArrayList<String>())
+                            .add(topic.substring(assetEnd + 1));
+        }
+
+        BoolQueryBuilder topicsQuery = QueryBuilders.boolQuery().minimumNumberShouldMatch(1);
+        for (Map.Entry<String, List<String>> assetTopics : semTopicsByAsset.entrySet()) {
+            topicsQuery.should(QueryBuilders.boolQuery()
+                                            .must(QueryBuilders.termQuery(EsMessageField.ASSET.field(), assetTopics.getKey()))
+                                            .must(QueryBuilders.termsQuery(EsMessageField.SEMANTIC_TOPIC.field(), assetTopics.getValue())));
+        }
+        return topicsQuery;
+    }
+
+    /**
+     * Regular expression (Lucene syntax) matching the semantic topics matched by the semantic topic filter
+     */
+    static String toRegexp(String semTopicFilter)
+    {
+        StringBuilder regexp = new StringBuilder();
+        int start = 0;
+        while (true) {
+            int end = semTopicFilter.indexOf(TOPIC_SEPARATOR, start);
+            String level = semTopicFilter.substring(start, end == -1 ? semTopicFilter.length() : end);
+            if (KapuaTopic.MULTI_LEVEL_WCARD.equals(level)) {
+                // The parent level and any sub level
+                if (start > 0) {
+                    regexp.setLength(regexp.length() - 1);
+                    regexp.append("(/.*)?");
+                }
+                else {
+                    regexp.append(".*");
+                }
+                break;
+            }
+
+            if (KapuaTopic.SINGLE_LEVEL_WCARD.equals(level)) {
+                regexp.append("[^/]*");
+            }
+            else {
+                for (int i = 0; i < level.length(); i++) {
+                    char c = level.charAt(i);
+                    if (REGEXP_RESERVED.indexOf(c) != -1)
+                        regexp.append('\\');
+                    regexp.append(c);
+                }
+            }
+
+            if (end == -1)
+                break;
+            regexp.append(TOPIC_SEPARATOR);
+            start = end + 1;
+        }
+        return regexp.toString();
+    }
+
+    private static boolean isWildcard(String topic)
+    {
+        return topic.indexOf('+') != -1 || topic.indexOf('#') != -1;
+    }
     
     public QueryBuilder toElasticsearchQuery(RangePredicate predicate) throws KapuaException 
     {
         if (predicate == null)
             throw KapuaException.internalError(String.format("Predicate parameter is undefined"));
        
-        RangeQueryBuilder rangeQuery = QueryBuilders.rangeQuery(predicate.getField().toString());
+        RangeQueryBuilder rangeQuery = QueryBuilders.rangeQuery(predicate.getField().field());
         if (predicate.getMinValue() != null)
             rangeQuery.from(predicate.getMinValue());
         if (predicate.getMaxValue() != null)
@@ -130,7 +258,7 @@ public class PredicateConverter
         if (predicate == null)
             throw KapuaException.internalError(String.format("Predicate parameter is undefined"));
        
-        TermQueryBuilder termQuery = QueryBuilders.termQuery(predicate.getField().toString(), predicate.getValue());
+        TermQueryBuilder termQuery = QueryBuilders.termQuery(predicate.getField().field(), predicate.getValue());
        
         return termQuery;
     }
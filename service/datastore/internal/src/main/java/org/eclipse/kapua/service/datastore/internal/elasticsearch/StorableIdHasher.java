@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettingKey;
+import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettings;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Derives the storable ids of the topic, asset and metric documents from their full names.<br>
+ * Two algorithms are available, selected by the {@code datastore.elasticsearch.id.hash} setting:
+ * <ul>
+ * <li>{@code sha256} (migration compatible): SHA-256 of the UTF-8 name, Base64 encoded with padding, the ids stored so far</li>
+ * <li>{@code murmur3}: non cryptographic Murmur3 x64 128-bit hash of the UTF-8 name, URL safe Base64 encoded without padding</li>
+ * </ul>
+ * Switching algorithm on a populated datastore makes the new ids differ from the stored ones, so the metadata is stored again under the new ids.<br>
+ * The parent and child names are hashed without building the joined name. The hasher is thread safe.
+ *
+ * @since 1.0
+ */
+public class StorableIdHasher
+{
+
+    /**
+     * Id hash algorithm
+     */
+    public enum Algorithm
+    {
+        /**
+         * SHA-256, Base64 with padding (migration compatible)
+         */
+        SHA256,
+        /**
+         * Murmur3 x64 128-bit, URL safe Base64 without padding
+         */
+        MURMUR3
+    }
+
+    private static final StorableIdHasher instance = new StorableIdHasher(Algorithm.valueOf(DatastoreSettings.getInstance()
+                                                                                                         .getString(DatastoreSettingKey.ELASTICSEARCH_ID_HASH, "sha256")
+                                                                                                         .toUpperCase()));
+
+    private final HashFunction            hashFunction;
+    private final Base64.Encoder          encoder;
+
+    /**
+     * Get the hasher using the configured algorithm
+     *
+     * @return
+     */
+    public static StorableIdHasher get()
+    {
+        return instance;
+    }
+
+    /**
+     * Create a new hasher
+     *
+     * @param algorithm
+     */
+    public StorableIdHasher(Algorithm algorithm)
+    {
+        if (algorithm == Algorithm.SHA256) {
+            hashFunction = Hashing.sha256();
+            encoder = Base64.getEncoder();
+        }
+        else {
+            hashFunction = Hashing.murmur3_128();
+            encoder = Base64.getUrlEncoder().withoutPadding();
+        }
+    }
+
+    /**
+     * Return the id of the given name
+     *
+     * @param name
+     * @return
+     */
+    public String hash(String name)
+    {
+        return encoder.encodeToString(hashFunction.hashString(name, StandardCharsets.UTF_8).asBytes());
+    }
+
+    /**
+     * Return the id of the name made of the given parent and child names joined by '/'
+     *
+     * @param parentName
+     * @param childName
+     * @return
+     */
+    public String hash(String parentName, String childName)
+    {
+        return encoder.encodeToString(hashFunction.newHasher()
+                                                  .putString(parentName, StandardCharsets.UTF_8)
+                                                  .putByte((byte) '/')
+                                                  .putString(childName, StandardCharsets.UTF_8)
+                                                  .hash()
+                                                  .asBytes());
+    }
+}
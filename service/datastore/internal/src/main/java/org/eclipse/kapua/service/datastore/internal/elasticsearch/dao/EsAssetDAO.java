@@ -32,6 +32,7 @@ import org.eclipse.kapua.service.datastore.model.AssetInfoListResult;
 import org.eclipse.kapua.service.datastore.model.query.AssetInfoQuery;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.action.update.UpdateResponse;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.common.unit.TimeValue;
@@ -112,11 +113,11 @@ public class EsAssetDAO
 //
 //        return boolQuery;
 //    }
-//
-//    public UpdateRequest getUpsertRequest(String id, XContentBuilder esAsset)
-//    {
-//        return this.esTypeDAO.getUpsertRequest(id, esAsset);
-//    }
+
+    public UpdateRequest getUpsertRequest(String id, XContentBuilder esAsset)
+    {
+        return this.esTypeDAO.getUpsertRequest(id, esAsset);
+    }
 
     public UpdateResponse upsert(AssetInfo assetInfo) throws IOException
     {
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch.dao;
+
+import java.net.UnknownHostException;
+
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsSchema;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsUtils;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.PredicateConverter;
+import org.eclipse.kapua.service.datastore.model.query.StorablePredicate;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.metrics.sum.Sum;
+
+public class EsMessageCounterDAO
+{
+
+    private static final String COUNT = "count";
+
+    private EsTypeDAO           esTypeDAO;
+
+    private EsMessageCounterDAO()
+    {
+    }
+
+    public static EsMessageCounterDAO connection(Client client)
+        throws UnknownHostException
+    {
+        EsMessageCounterDAO counterDAO = new EsMessageCounterDAO();
+        counterDAO.esTypeDAO = EsTypeDAO.connection(client);
+        return counterDAO;
+    }
+
+    public EsMessageCounterDAO instance(String indexName, String typeName)
+    {
+        this.esTypeDAO.instance(indexName, typeName);
+        return this;
+    }
+
+    /**
+     * Sum the partial counts of the counters matching the predicate
+     *
+     * @param predicate a topic match predicate, or null to count all the messages of the account
+     * @return
+     * @throws Exception
+     */
+    public long count(StorablePredicate predicate)
+        throws Exception
+    {
+        QueryBuilder query = predicate != null ? new PredicateConverter().toElasticsearchQuery(predicate) : QueryBuilders.matchAllQuery();
+        SearchResponse response = esTypeDAO.getClient()
+                                           .prepareSearch(esTypeDAO.getIndexName())
+                                           .setTypes(esTypeDAO.getTypeName())
+                                           .setIndicesOptions(IndicesOptions.lenientExpandOpen())
+                                           .setQuery(query)
+                                           .setSize(0)
+                                           .addAggregation(AggregationBuilders.sum(COUNT).field(EsSchema.COUNTER_COUNT))
+                                           .get(TimeValue.timeValueMillis(EsUtils.getQueryTimeout()));
+        if (response.getAggregations() == null)
+            return 0;
+        return (long) ((Sum) response.getAggregations().get(COUNT)).getValue();
+    }
+}
@@ -16,18 +16,32 @@ import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 
 import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsDatastoreException;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsSchema;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsUtils;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.MessageBuilder;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.MessageQueryConverter;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.MetricAggregationBuilder;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.MetricAggregationQueryConverter;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.PredicateConverter;
 import org.eclipse.kapua.service.datastore.internal.model.MessageListResultImpl;
 import org.eclipse.kapua.service.datastore.internal.model.query.MessageQueryImpl;
 import org.eclipse.kapua.service.datastore.model.Message;
 import org.eclipse.kapua.service.datastore.model.MessageListResult;
+import org.eclipse.kapua.service.datastore.model.MetricAggregationListResult;
+import org.eclipse.kapua.service.datastore.model.query.MessageFetchStyle;
+import org.eclipse.kapua.service.datastore.model.query.MessageHandler;
 import org.eclipse.kapua.service.datastore.model.query.MessageQuery;
+import org.eclipse.kapua.service.datastore.model.query.MetricAggregationQuery;
+import org.eclipse.kapua.service.datastore.model.query.SortDirection;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequestBuilder;
+import org.elasticsearch.action.get.MultiGetResponse;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.update.UpdateRequest;
@@ -35,12 +49,20 @@ import org.elasticsearch.action.update.UpdateResponse;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.index.IndexNotFoundException;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHits;
+import org.elasticsearch.search.sort.SortOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class EsMessageDAO
 {
 
+    private static final Logger s_logger                 = LoggerFactory.getLogger(EsMessageDAO.class);
+
+    private static final int    DEFAULT_SCROLL_PAGE_SIZE = 100;
+
     private EsTypeDAO esTypeDAO;
 
     private EsMessageDAO()
@@ -224,6 +246,70 @@ public class EsMessageDAO
 //        this.esTypeDAO.deleteByQuery(boolQuery);
 //    }
 
+    /**
+     * Get the message with the given id from the index of the DAO. The get is realtime, so a message is found as soon as it is stored.
+     * 
+     * @param id
+     * @param fetchStyle
+     * @return the message or null if not found (or if the index does not exist)
+     * @throws Exception
+     */
+    public Message find(String id, MessageFetchStyle fetchStyle) throws Exception
+    {
+        MessageQueryConverter converter = new MessageQueryConverter();
+        GetResponse response;
+        try {
+            response = converter.toGetRequestBuilder(esTypeDAO.getIndexName(), esTypeDAO.getTypeName(), id, fetchStyle)
+                                .get(TimeValue.timeValueMillis(EsUtils.getQueryTimeout()));
+        }
+        catch (IndexNotFoundException e) {
+            return null;
+        }
+
+        if (!response.isExists())
+            return null;
+
+        return new MessageBuilder().build(response, fetchStyle).getMessage();
+    }
+
+    /**
+     * Get the messages with the given ids, each one from the given index, with a single realtime multi get request
+     * 
+     * @param indexNamesById the index name of every message id
+     * @param fetchStyle
+     * @return the messages found, in the order of the ids. The messages not found (or whose index does not exist) are skipped.
+     * @throws EsDatastoreException if the get of a message fails for any other reason
+     * @throws Exception
+     */
+    public List<Message> find(Map<String, String> indexNamesById, MessageFetchStyle fetchStyle) throws Exception
+    {
+        List<Message> messages = new ArrayList<Message>(indexNamesById.size());
+        if (indexNamesById.isEmpty())
+            return messages;
+
+        MessageQueryConverter converter = new MessageQueryConverter();
+        MultiGetRequestBuilder builder = esTypeDAO.getClient().prepareMultiGet().setRealtime(true);
+        for (Map.Entry<String, String> indexNameById : indexNamesById.entrySet())
+            builder.add(converter.toMultiGetItem(indexNameById.getValue(), esTypeDAO.getTypeName(), indexNameById.getKey(), fetchStyle));
+
+        MultiGetResponse response = builder.get(TimeValue.timeValueMillis(EsUtils.getQueryTimeout()));
+        MessageBuilder msgBuilder = new MessageBuilder();
+        for (MultiGetItemResponse item : response.getResponses()) {
+            if (item.isFailed()) {
+                // A message of a deleted index is not found, any other failure fails the whole request
+                if (!(ExceptionsHelper.unwrapCause(item.getFailure().getFailure()) instanceof IndexNotFoundException))
+                    throw new EsDatastoreException(String.format("Cannot get message %s from index %s: %s", item.getId(), item.getIndex(), item.getFailure().getMessage()),
+                                                   item.getFailure().getFailure());
+
+                s_logger.debug("Cannot get message {} from index {}: {}", item.getId(), item.getIndex(), item.getFailure().getMessage());
+                continue;
+            }
+            if (item.getResponse().isExists())
+                messages.add(msgBuilder.build(item.getResponse(), fetchStyle).getMessage());
+        }
+        return messages;
+    }
+
     public MessageListResult query(MessageQuery query) throws Exception
     {
         MessageQueryImpl localQuery = new MessageQueryImpl();
@@ -244,7 +330,7 @@ public class EsMessageDAO
         MessageBuilder msgBuilder = new MessageBuilder();
         for(SearchHit searchHit:searchHits.getHits()) {
             if (i < query.getLimit()) {
-                Message message = msgBuilder.build(searchHit, query.getFetchStyle()).getMessage();
+                Message message = msgBuilder.build(searchHit, query.getFetchStyle(), query.getMetricProjection()).getMessage();
                 messages.add(message);
             }
             i++;
@@ -254,7 +340,7 @@ public class EsMessageDAO
         // TODO what is this nextKey
         Object nextKey = null;
         if (searchHitsSize > query.getLimit()) {
-            Message lastMessage = msgBuilder.build(searchHits.getHits()[searchHitsSize-1], query.getFetchStyle()).getMessage();
+            Message lastMessage = msgBuilder.build(searchHits.getHits()[searchHitsSize-1], query.getFetchStyle(), query.getMetricProjection()).getMessage();
             nextKey = lastMessage.getTimestamp().getTime();
         }
 
@@ -273,6 +359,91 @@ public class EsMessageDAO
         return result;
     }
 
+    /**
+     * Handler of the hits of a scroll
+     */
+    interface SearchHitHandler
+    {
+
+        /**
+         * Handle the hit
+         * 
+         * @param searchHit
+         * @return false to stop the scroll
+         * @throws Exception
+         */
+        boolean handle(SearchHit searchHit) throws Exception;
+    }
+
+    /**
+     * Stream all the messages matching the query to the handler, one scroll page at a time.<br>
+     * The hits are sorted by timestamp only: the scroll reads a point in time snapshot, so the pages neither skip nor repeat the messages sharing the same timestamp.
+     * 
+     * @param query
+     * @param handler
+     * @return the number of messages handled
+     * @throws Exception
+     */
+    public long scroll(MessageQuery query, MessageHandler handler) throws Exception
+    {
+        TimeValue queryTimeout = TimeValue.timeValueMillis(EsUtils.getQueryTimeout());
+        TimeValue scrollTimeout = TimeValue.timeValueMillis(EsUtils.getScrollTimeout());
+        SortOrder sortOrder = query.getSort() == SortDirection.DESC ? SortOrder.DESC : SortOrder.ASC;
+
+        MessageQueryConverter converter = new MessageQueryConverter();
+        SearchRequestBuilder builder = converter.toSearchRequestBuilder(esTypeDAO.getIndexName(), esTypeDAO.getTypeName(), query);
+        builder.setFrom(0)
+               .setSize(query.getLimit() > 0 ? query.getLimit() : DEFAULT_SCROLL_PAGE_SIZE)
+               .addSort(EsSchema.MESSAGE_TIMESTAMP, sortOrder)
+               .setScroll(scrollTimeout);
+        SearchResponse response = builder.get(queryTimeout);
+
+        String[] scrollId = new String[] { response.getScrollId() };
+        MessageBuilder msgBuilder = new MessageBuilder();
+        try {
+            return scroll(response,
+                          nextScrollId -> {
+                              SearchResponse nextResponse = esTypeDAO.getClient()
+                                                                     .prepareSearchScroll(nextScrollId)
+                                                                     .setScroll(scrollTimeout)
+                                                                     .get(queryTimeout);
+                              scrollId[0] = nextResponse.getScrollId();
+                              return nextResponse;
+                          },
+                          searchHit -> handler.handle(msgBuilder.build(searchHit, query.getFetchStyle(), query.getMetricProjection()).getMessage()));
+        }
+        finally {
+            if (scrollId[0] != null)
+                esTypeDAO.getClient().prepareClearScroll().addScrollId(scrollId[0]).get(queryTimeout);
+        }
+    }
+
+    /**
+     * Hand every hit of the scroll pages to the handler, reading the next page until an empty one is returned or the handler stops the scroll
+     * 
+     * @param firstPage
+     *            the response of the search opening the scroll
+     * @param nextPage
+     *            read the page following the one with the given scroll id
+     * @param handler
+     * @return the number of hits handled
+     * @throws Exception
+     */
+    static long scroll(SearchResponse firstPage, Function<String, SearchResponse> nextPage, SearchHitHandler handler) throws Exception
+    {
+        long count = 0;
+        SearchResponse response = firstPage;
+        while (response.getHits() != null && response.getHits().getHits().length > 0) {
+            for (SearchHit searchHit : response.getHits().getHits()) {
+                count++;
+                if (!handler.handle(searchHit))
+                    return count;
+            }
+            response = nextPage.apply(response.getScrollId());
+        }
+        return count;
+    }
+
     public long count(MessageQuery query)
         throws Exception
     {
@@ -287,6 +458,15 @@ public class EsMessageDAO
         return searchHits.getTotalHits();
     }
 
+    public MetricAggregationListResult aggregate(String metricField, MetricAggregationQuery query)
+        throws Exception
+    {
+        MetricAggregationQueryConverter converter = new MetricAggregationQueryConverter();
+        SearchRequestBuilder builder = converter.toSearchRequestBuilder(esTypeDAO.getIndexName(), esTypeDAO.getTypeName(), metricField, query);
+        SearchResponse response = builder.get(TimeValue.timeValueMillis(EsUtils.getQueryTimeout()));
+        return new MetricAggregationBuilder().build(response, query.getPercents()).getResult();
+    }
+
 //    
 //    public SearchHits findByTopic(String asset,
 //                                  boolean isAnyAsset,
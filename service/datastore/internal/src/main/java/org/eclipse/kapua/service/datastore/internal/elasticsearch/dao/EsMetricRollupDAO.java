@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch.dao;
+
+import java.net.UnknownHostException;
+import java.util.Date;
+
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsUtils;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.MessageQueryConverter;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.MetricAggregationBuilder;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.MetricRollupBuilder;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.MetricRollupQueryConverter;
+import org.eclipse.kapua.service.datastore.model.MetricAggregationListResult;
+import org.eclipse.kapua.service.datastore.model.MetricRollupListResult;
+import org.eclipse.kapua.service.datastore.model.query.MetricAggregationQuery;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+
+public class EsMetricRollupDAO
+{
+
+    private EsTypeDAO esTypeDAO;
+
+    private EsMetricRollupDAO()
+    {
+    }
+
+    public static EsMetricRollupDAO connection(Client client)
+        throws UnknownHostException
+    {
+        EsMetricRollupDAO rollupDAO = new EsMetricRollupDAO();
+        rollupDAO.esTypeDAO = EsTypeDAO.connection(client);
+        return rollupDAO;
+    }
+
+    public EsMetricRollupDAO instance(String indexName, String typeName)
+    {
+        this.esTypeDAO.instance(indexName, typeName);
+        return this;
+    }
+
+    public MetricRollupListResult aggregate(String asset, String semTopic, String metricName, String metricType, Date start, Date end, long interval)
+        throws Exception
+    {
+        MetricRollupQueryConverter converter = new MetricRollupQueryConverter();
+        SearchRequestBuilder builder = converter.toRollupSearchRequestBuilder(esTypeDAO.getIndexName(), esTypeDAO.getTypeName(),
+                                                                              asset, semTopic, metricName, metricType, start, end, interval, null);
+        SearchResponse response = builder.get(TimeValue.timeValueMillis(EsUtils.getQueryTimeout()));
+        return new MetricRollupBuilder().buildFromRollup(response, interval).getResult();
+    }
+
+    public MetricAggregationListResult aggregate(String asset, String semTopic, String metricName, String metricType, MetricAggregationQuery query)
+        throws Exception
+    {
+        long[] range = MessageQueryConverter.getTimestampRange(query);
+        Date start = range[0] != Long.MIN_VALUE ? new Date(range[0]) : null;
+        Date end = range[1] != Long.MAX_VALUE ? new Date(range[1]) : null;
+
+        MetricRollupQueryConverter converter = new MetricRollupQueryConverter();
+        SearchRequestBuilder builder = converter.toRollupSearchRequestBuilder(esTypeDAO.getIndexName(), esTypeDAO.getTypeName(),
+                                                                              asset, semTopic, metricName, metricType, start, end, query.getInterval(), query.getSort());
+        SearchResponse response = builder.get(TimeValue.timeValueMillis(EsUtils.getQueryTimeout()));
+        return new MetricAggregationBuilder().buildFromRollup(response).getResult();
+    }
+}
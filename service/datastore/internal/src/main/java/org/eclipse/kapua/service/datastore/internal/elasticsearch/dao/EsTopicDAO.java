@@ -17,10 +17,13 @@ import java.net.UnknownHostException;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
 
 import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsDatastoreException;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsDocumentBuilder;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsSchema;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsUtils;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.KapuaInvalidTopicException;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.PredicateConverter;
@@ -34,17 +37,23 @@ import org.eclipse.kapua.service.datastore.model.query.StorablePredicate;
 import org.eclipse.kapua.service.datastore.model.query.TopicInfoQuery;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.action.update.UpdateResponse;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHits;
+import org.elasticsearch.search.sort.SortOrder;
 
 public class EsTopicDAO
 {
 
-    private EsTypeDAO esTypeDAO;
+    private static final int SCROLL_PAGE_SIZE = 1000;
+
+    private EsTypeDAO        esTypeDAO;
 
     private EsTopicDAO()
     {
@@ -77,11 +86,11 @@ public class EsTopicDAO
         this.esTypeDAO.instance(indexName, typeName);
         return this;
     }
-//
-//    public UpdateRequest getUpsertRequest(String id, XContentBuilder esAsset)
-//    {
-//        return this.esTypeDAO.getUpsertRequest(id, esAsset);
-//    }
+
+    public UpdateRequest getUpsertRequest(String id, XContentBuilder esAsset)
+    {
+        return this.esTypeDAO.getUpsertRequest(id, esAsset);
+    }
 
     public UpdateResponse upsert(TopicInfo topicInfo) throws IOException, KapuaInvalidTopicException
     {
@@ -115,6 +124,52 @@ public class EsTopicDAO
                  .get(TimeValue.timeValueMillis(EsUtils.getQueryTimeout()));
     }
 
+    /**
+     * Pass the asset and the semantic topic of every stored topic to the handler
+     * 
+     * @param handler
+     * @return the number of topics
+     */
+    public long scrollTopicNames(BiConsumer<String, String> handler)
+    {
+        TimeValue queryTimeout = TimeValue.timeValueMillis(EsUtils.getQueryTimeout());
+        TimeValue scrollTimeout = TimeValue.timeValueMillis(EsUtils.getScrollTimeout());
+
+        SearchResponse response = esTypeDAO.getClient()
+                                           .prepareSearch(esTypeDAO.getIndexName())
+                                           .setTypes(esTypeDAO.getTypeName())
+                                           .setIndicesOptions(IndicesOptions.lenientExpandOpen())
+                                           .setQuery(QueryBuilders.matchAllQuery())
+                                           .setFetchSource(new String[] { EsSchema.TOPIC_ASSET, EsSchema.TOPIC_SEM_NAME }, null)
+                                           .addSort("_doc", SortOrder.ASC)
+                                           .setSize(SCROLL_PAGE_SIZE)
+                                           .setScroll(scrollTimeout)
+                                           .get(queryTimeout);
+
+        long count = 0;
+        String scrollId = response.getScrollId();
+        try {
+            while (response.getHits() != null && response.getHits().getHits().length > 0) {
+                for (SearchHit searchHit : response.getHits().getHits()) {
+                    Map<String, Object> source = searchHit.getSource();
+                    handler.accept((String) source.get(EsSchema.TOPIC_ASSET), (String) source.get(EsSchema.TOPIC_SEM_NAME));
+                    count++;
+                }
+
+                response = esTypeDAO.getClient()
+                                    .prepareSearchScroll(scrollId)
+                                    .setScroll(scrollTimeout)
+                                    .get(queryTimeout);
+                scrollId = response.getScrollId();
+            }
+            return count;
+        }
+        finally {
+            if (scrollId != null)
+                esTypeDAO.getClient().prepareClearScroll().addScrollId(scrollId).get(queryTimeout);
+        }
+    }
+
     public void deleteByQuery(TopicInfoQuery query) throws KapuaException
     {
         StorablePredicate predicate = query.getPredicate();
@@ -13,15 +13,19 @@
 package org.eclipse.kapua.service.datastore.internal.elasticsearch.dao;
 
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsDatastoreException;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsUtils;
+import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.index.IndexResponse;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.support.IndicesOptions;
 import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.action.update.UpdateResponse;
 import org.elasticsearch.client.Client;
@@ -171,14 +175,86 @@ public class EsTypeDAO
 
     public void deleteByQuery(QueryBuilder query)
     {
+        this.deleteByQuery(query, null);
+    }
+
+    /**
+     * Delete the documents matching the query, reporting the id of every document actually deleted
+     * 
+     * @param query
+     * @param deletedIdHandler receives the ids of the deleted documents, may be null
+     */
+    public void deleteByQuery(QueryBuilder query, Consumer<String> deletedIdHandler)
+    {
+        this.deleteByQuery(query, null, deletedIdHandler);
+    }
 
+    /**
+     * Delete the documents matching the query and accepted by the filter, reporting the id of every document actually deleted
+     * 
+     * @param query
+     * @param filter receives the source of every document matching the query and returns true if it must be deleted, may be null to delete them all
+     * @param deletedIdHandler receives the ids of the deleted documents, may be null
+     */
+    public void deleteByQuery(QueryBuilder query, Predicate<Map<String, Object>> filter, Consumer<String> deletedIdHandler)
+    {
         TimeValue queryTimeout = TimeValue.timeValueMillis(EsUtils.getQueryTimeout());
-        TimeValue scrollTimeout = TimeValue.timeValueMillis(EsUtils.getScrollTimeout());
 
         // delete by query API is deprecated, scroll with bulk delete must be used
-        SearchResponse scrollResponse = this.client.prepareSearch(this.getIndexName())
+        this.scroll(query, filter != null, hits -> {
+            BulkRequest bulkRequest = new BulkRequest();
+            for (SearchHit hit : hits) {
+                if (filter != null && !filter.test(hit.getSource()))
+                    continue;
+
+                DeleteRequest delete = new DeleteRequest().index(hit.index())
+                                                          .type(hit.type())
+                                                          .id(hit.id())
+                                                          .version(hit.version());
+                bulkRequest.add(delete);
+            }
+
+            if (bulkRequest.numberOfActions() > 0) {
+                BulkResponse bulkResponse = this.getClient().bulk(bulkRequest).actionGet(queryTimeout);
+                if (deletedIdHandler != null) {
+                    // A version conflict means the document has been updated meanwhile, so it is kept
+                    for (BulkItemResponse item : bulkResponse.getItems()) {
+                        if (!item.isFailed())
+                            deletedIdHandler.accept(item.getId());
+                    }
+                }
+            }
+
+            // TODO manage events
+            if (eventListener != null)
+                eventListener.notify(new EsTypeCrudEvent());
+        });
+    }
+
+    /**
+     * Pass the source of every document matching the query to the handler
+     * 
+     * @param query
+     * @param sourceHandler
+     */
+    public void scan(QueryBuilder query, Consumer<Map<String, Object>> sourceHandler)
+    {
+        this.scroll(query, true, hits -> {
+            for (SearchHit hit : hits)
+                sourceHandler.accept(hit.getSource());
+        });
+    }
+
+    private void scroll(QueryBuilder query, boolean fetchSource, Consumer<SearchHit[]> pageHandler)
+    {
+
+        TimeValue queryTimeout = TimeValue.timeValueMillis(EsUtils.getQueryTimeout());
+        TimeValue scrollTimeout = TimeValue.timeValueMillis(EsUtils.getScrollTimeout());
+
+        SearchResponse scrollResponse = this.client.prepareSearch(this.getIndexName().split(","))
                                                    .setTypes(this.getTypeName())
-                                                   .setFetchSource(false)
+                                                   .setIndicesOptions(IndicesOptions.lenientExpandOpen())
+                                                   .setFetchSource(fetchSource)
                                                    .addSort("_doc", SortOrder.ASC)
                                                    .setVersion(true)
                                                    .setScroll(scrollTimeout)
@@ -193,20 +269,7 @@ public class EsTypeDAO
             if (scrollResponse.getHits().getHits().length == 0)
                 break;
 
-            BulkRequest bulkRequest = new BulkRequest();
-            for (SearchHit hit : scrollResponse.getHits().hits()) {
-                DeleteRequest delete = new DeleteRequest().index(hit.index())
-                                                          .type(hit.type())
-                                                          .id(hit.id())
-                                                          .version(hit.version());
-                bulkRequest.add(delete);
-            }
-
-            this.getClient().bulk(bulkRequest).actionGet(queryTimeout);
-
-            // TODO manage events
-            if (eventListener != null)
-                eventListener.notify(new EsTypeCrudEvent());
+            pageHandler.accept(scrollResponse.getHits().hits());
 
             scrollResponse = this.client.prepareSearchScroll(scrollResponse.getScrollId())
                                         .setScroll(scrollTimeout)
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.model;
+
+import java.util.Date;
+import java.util.Map;
+
+import org.eclipse.kapua.service.datastore.model.MetricAggregation;
+
+public class MetricAggregationImpl implements MetricAggregation
+{
+    private Date                timestamp;
+    private long                count;
+    private double              min;
+    private double              max;
+    private double              avg;
+    private double              sum;
+    private Map<Double, Double> percentiles;
+
+    public MetricAggregationImpl(Date timestamp, long count, double min, double max, double avg, double sum, Map<Double, Double> percentiles)
+    {
+        this.timestamp = timestamp;
+        this.count = count;
+        this.min = min;
+        this.max = max;
+        this.avg = avg;
+        this.sum = sum;
+        this.percentiles = percentiles;
+    }
+
+    @Override
+    public Date getTimestamp()
+    {
+        return timestamp;
+    }
+
+    @Override
+    public long getCount()
+    {
+        return count;
+    }
+
+    @Override
+    public double getMin()
+    {
+        return min;
+    }
+
+    @Override
+    public double getMax()
+    {
+        return max;
+    }
+
+    @Override
+    public double getAvg()
+    {
+        return avg;
+    }
+
+    @Override
+    public double getSum()
+    {
+        return sum;
+    }
+
+    @Override
+    public Map<Double, Double> getPercentiles()
+    {
+        return percentiles;
+    }
+}
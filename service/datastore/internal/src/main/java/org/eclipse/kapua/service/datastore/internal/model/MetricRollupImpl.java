@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.model;
+
+import java.util.Date;
+
+import org.eclipse.kapua.service.datastore.model.MetricRollup;
+
+public class MetricRollupImpl implements MetricRollup
+{
+    private Date   timestamp;
+    private double min;
+    private double max;
+    private double avg;
+    private long   count;
+
+    public MetricRollupImpl(Date timestamp, double min, double max, double avg, long count)
+    {
+        this.timestamp = timestamp;
+        this.min = min;
+        this.max = max;
+        this.avg = avg;
+        this.count = count;
+    }
+
+    @Override
+    public Date getTimestamp()
+    {
+        return timestamp;
+    }
+
+    @Override
+    public double getMin()
+    {
+        return min;
+    }
+
+    @Override
+    public double getMax()
+    {
+        return max;
+    }
+
+    @Override
+    public double getAvg()
+    {
+        return avg;
+    }
+
+    @Override
+    public long getCount()
+    {
+        return count;
+    }
+}
@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.model;
+
+import org.eclipse.kapua.service.datastore.internal.model.query.AbstractStorableListResult;
+import org.eclipse.kapua.service.datastore.model.MetricRollup;
+import org.eclipse.kapua.service.datastore.model.MetricRollupListResult;
+
+public class MetricRollupListResultImpl extends AbstractStorableListResult<MetricRollup> implements MetricRollupListResult
+{
+    private static final long serialVersionUID = 4518227465137312309L;
+
+    private long              resolution;
+
+    public MetricRollupListResultImpl(long resolution)
+    {
+        super();
+        this.resolution = resolution;
+    }
+
+    @Override
+    public long getResolution()
+    {
+        return resolution;
+    }
+}
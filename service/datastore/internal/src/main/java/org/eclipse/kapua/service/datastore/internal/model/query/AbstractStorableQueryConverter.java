@@ -22,7 +22,12 @@ import org.eclipse.kapua.service.datastore.model.Storable;
 import org.eclipse.kapua.service.datastore.model.query.MessageFetchStyle;
 import org.eclipse.kapua.service.datastore.model.query.StorableQuery;
 import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.support.IndicesOptions;
 
+/**
+ * Base converter of the storable queries into Elasticsearch search requests.<br>
+ * The indexes are given as a comma separated list of names (or wildcard expressions), the ones not (or no longer) existing are ignored.
+ */
 public abstract class AbstractStorableQueryConverter<S extends Storable, Q extends StorableQuery<S>>
 {
     public SearchRequestBuilder toCountRequestBuilder(String indices, String type, Q query) throws KapuaException, EsDatastoreException, UnknownHostException
@@ -31,8 +36,9 @@ public abstract class AbstractStorableQueryConverter<S extends Storable, Q exten
             throw new EsDatastoreException(String.format("Query parameter is undefined"));
 
         PredicateConverter pc = new PredicateConverter();
-        SearchRequestBuilder searchReqBuilder = EsClient.getcurrent().prepareSearch(indices);
+        SearchRequestBuilder searchReqBuilder = EsClient.getcurrent().prepareSearch(indices.split(","));
         searchReqBuilder.setTypes(type)
+                        .setIndicesOptions(IndicesOptions.lenientExpandOpen())
                         .setQuery(pc.toElasticsearchQuery(query.getPredicate()))
                         .setSize(0);
         
@@ -45,14 +51,15 @@ public abstract class AbstractStorableQueryConverter<S extends Storable, Q exten
             throw new EsDatastoreException(String.format("Query parameter is undefined"));
 
         PredicateConverter pc = new PredicateConverter();
-        SearchRequestBuilder searchReqBuilder = EsClient.getcurrent().prepareSearch(indices);
+        SearchRequestBuilder searchReqBuilder = EsClient.getcurrent().prepareSearch(indices.split(","));
         searchReqBuilder.setTypes(type)
+                        .setIndicesOptions(IndicesOptions.lenientExpandOpen())
                         .setQuery(pc.toElasticsearchQuery(query.getPredicate()))
                         .setFrom(query.getOffset())
                         .setSize(query.getLimit());
         
-        String[] includes = this.getIncludes(query.getFetchStyle());
-        String[] excludes = this.getExcludes(query.getFetchStyle());
+        String[] includes = this.getIncludes(query);
+        String[] excludes = this.getExcludes(query);
         if (includes != null || excludes != null)
             searchReqBuilder.setFetchSource(includes, excludes);
         
@@ -63,6 +70,28 @@ public abstract class AbstractStorableQueryConverter<S extends Storable, Q exten
         return searchReqBuilder;
     }
     
+    /**
+     * Return the source fields fetched by the query, by default the ones of its fetch style
+     * 
+     * @param query
+     * @return
+     */
+    protected String[] getIncludes(Q query)
+    {
+        return this.getIncludes(query.getFetchStyle());
+    }
+
+    /**
+     * Return the source fields not fetched by the query, by default the ones of its fetch style
+     * 
+     * @param query
+     * @return
+     */
+    protected String[] getExcludes(Q query)
+    {
+        return this.getExcludes(query.getFetchStyle());
+    }
+
     protected abstract String[] getIncludes(MessageFetchStyle fetchStyle);
     
     protected abstract String[] getExcludes(MessageFetchStyle fetchStyle);
@@ -29,7 +29,7 @@ public class AndPredicateImpl implements AndPredicate
     
     public AndPredicateImpl(Collection<StorablePredicate> predicates)
     {
-        predicates.addAll(predicates);
+        this.predicates.addAll(predicates);
     }
     
     @Override
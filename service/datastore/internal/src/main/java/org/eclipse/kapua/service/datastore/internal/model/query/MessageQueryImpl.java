@@ -12,14 +12,45 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.datastore.internal.model.query;
 
+import java.util.Set;
+
 import org.eclipse.kapua.service.datastore.internal.AbstractStorableQuery;
 import org.eclipse.kapua.service.datastore.model.Message;
 import org.eclipse.kapua.service.datastore.model.query.MessageQuery;
 
 public class MessageQueryImpl extends AbstractStorableQuery<Message> implements MessageQuery
 {
+    private Set<String> metricProjection;
+    private boolean     acceptApproximateCount;
+
+    @Override
+    public Set<String> getMetricProjection()
+    {
+        return metricProjection;
+    }
+
+    @Override
+    public void setMetricProjection(Set<String> metricNames)
+    {
+        this.metricProjection = metricNames;
+    }
+
+    @Override
+    public boolean isAcceptApproximateCount()
+    {
+        return acceptApproximateCount;
+    }
+
+    @Override
+    public void setAcceptApproximateCount(boolean acceptApproximateCount)
+    {
+        this.acceptApproximateCount = acceptApproximateCount;
+    }
+
     public void copy(MessageQuery query)
     {
         super.copy(query);
+        this.setMetricProjection(query.getMetricProjection());
+        this.setAcceptApproximateCount(query.isAcceptApproximateCount());
     }
 }
@@ -22,12 +22,46 @@ public enum DatastoreSettingKey implements SettingKey
     ELASTICSEARCH_CLUSTER("datastore.elasticsearch.cluster"),
     ELASTICSEARCH_TOPIC_MAX_DEPTH("datastore.elasticsearch.topic.max.depth"),
     ELASTICSEARCH_IDX_REFRESH_INTERVAL("datastore.elasticsearch.index.refresh_interval"),
+    ELASTICSEARCH_ID_HASH("datastore.elasticsearch.id.hash"),
+    ELASTICSEARCH_CLIENT_SNIFF("datastore.elasticsearch.client.sniff"),
+    ELASTICSEARCH_CLIENT_PING_TIMEOUT("datastore.elasticsearch.client.ping_timeout"),
+    ELASTICSEARCH_CLIENT_SAMPLER_INTERVAL("datastore.elasticsearch.client.nodes_sampler_interval"),
+    ELASTICSEARCH_CLIENT_CONNECTIONS_REG("datastore.elasticsearch.client.connections_per_node.reg"),
+    ELASTICSEARCH_CLIENT_CONNECTIONS_BULK("datastore.elasticsearch.client.connections_per_node.bulk"),
 
     CONFIG_CACHE_LOCAL_EXPIRE_AFTER("datastore.cache.local.expire.after"),
     CONFIG_CACHE_LOCAL_SIZE_MAXIMUM("datastore.cache.local.size.maximum"),
+    CONFIG_CACHE_SERVICE_PLAN_EXPIRE_AFTER("datastore.cache.service.plan.expire.after"),
+    CONFIG_CACHE_METADATA_SIZE_MAXIMUM("datastore.cache.metadata.size.maximum"),
+    CONFIG_CACHE_METADATA_CONCURRENCY_LEVEL("datastore.cache.metadata.concurrency.level"),
+    CONFIG_CACHE_METADATA_RETRY_AFTER("datastore.cache.metadata.retry.after"),
+    CONFIG_CACHE_QUERY_EXPIRE_AFTER("datastore.cache.query.expire.after"),
+    CONFIG_CACHE_QUERY_SIZE_MAXIMUM("datastore.cache.query.size.maximum"),
     CONFIG_TOPIC_MAX_DEPTH("datastore.elasticsearch.topic.max.depth"),
     CONFIG_DATA_STORAGE_ENABLE_TIMING_PROFILE("datastore.enableTimingProfile"),
-    CONFIG_DATA_STORAGE_TIMING_PROFILE_THRESHOLD("datastore.timingProfileThreshold");
+    CONFIG_DATA_STORAGE_TIMING_PROFILE_THRESHOLD("datastore.timingProfileThreshold"),
+
+    CONFIG_INGEST_QUEUE_SIZE("datastore.ingest.queue.size"),
+    CONFIG_INGEST_QUEUE_OFFER_TIMEOUT("datastore.ingest.queue.offer.timeout"),
+    CONFIG_INGEST_BULK_SIZE("datastore.ingest.bulk.size"),
+    CONFIG_INGEST_BULK_FLUSH_INTERVAL("datastore.ingest.bulk.flush.interval"),
+    CONFIG_METADATA_BULK_SIZE("datastore.metadata.bulk.size"),
+    CONFIG_METADATA_BULK_FLUSH_INTERVAL("datastore.metadata.bulk.flush.interval"),
+
+    CONFIG_QUERY_INDEX_WEEKS_MAXIMUM("datastore.query.index.weeks.maximum"),
+
+    CONFIG_TOPIC_TRIE_SIZE_MAXIMUM("datastore.topic.trie.size.maximum"),
+    CONFIG_TOPIC_TRIE_EXPANSION_MAXIMUM("datastore.topic.trie.expansion.maximum"),
+    CONFIG_TOPIC_TRIE_RELOAD_INTERVAL("datastore.topic.trie.reload.interval"),
+    CONFIG_TOPIC_TRIE_COMPLETE("datastore.topic.trie.complete"),
+
+    CONFIG_ROLLUP_INTERVALS("datastore.rollup.intervals"),
+    CONFIG_ROLLUP_FLUSH_INTERVAL("datastore.rollup.flush.interval"),
+    CONFIG_ROLLUP_LATENESS("datastore.rollup.lateness"),
+
+    CONFIG_COUNTER_FLUSH_INTERVAL("datastore.counter.flush.interval"),
+
+    CONFIG_RETENTION_INTERVAL("datastore.retention.interval");
     
 	private String key;
 	
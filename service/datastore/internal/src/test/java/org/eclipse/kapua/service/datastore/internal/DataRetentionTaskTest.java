@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.reflect.Proxy;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.eclipse.kapua.commons.security.KapuaSecurityUtils;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.datastore.MessageStoreService;
+import org.junit.Test;
+
+public class DataRetentionTaskTest {
+
+    private static final KapuaId ACCOUNT_1 = new KapuaEid(BigInteger.valueOf(1));
+    private static final KapuaId ACCOUNT_2 = new KapuaEid(BigInteger.valueOf(2));
+    private static final KapuaId ACCOUNT_3 = new KapuaEid(BigInteger.valueOf(3));
+
+    private final List<KapuaId> deleted = new CopyOnWriteArrayList<KapuaId>();
+    private final List<Boolean> trusted = new CopyOnWriteArrayList<Boolean>();
+
+    private MessageStoreService messageStoreService(KapuaId failingScopeId, CountDownLatch latch) {
+        return (MessageStoreService) Proxy.newProxyInstance(MessageStoreService.class.getClassLoader(), new Class<?>[] { MessageStoreService.class },
+                (proxy, method, args) -> {
+                    if (!"deleteExpired".equals(method.getName()))
+                        throw new UnsupportedOperationException(method.getName());
+
+                    trusted.add(KapuaSecurityUtils.getSession().isTrustedMode());
+                    if (args[0].equals(failingScopeId))
+                        throw KapuaException.internalError("Cannot delete");
+                    deleted.add((KapuaId) args[0]);
+                    if (latch != null)
+                        latch.countDown();
+                    return null;
+                });
+    }
+
+    @Test
+    public void everyAccountIsProcessedInTrustedMode() {
+        // Given
+        DataRetentionTask task = new DataRetentionTask(() -> Arrays.asList(ACCOUNT_1, ACCOUNT_2, ACCOUNT_3), messageStoreService(null, null), 0);
+
+        // When
+        int processed = task.deleteExpired();
+
+        // Then
+        assertThat(processed).isEqualTo(3);
+        assertThat(deleted).containsExactly(ACCOUNT_1, ACCOUNT_2, ACCOUNT_3);
+        assertThat(trusted).containsOnly(true);
+    }
+
+    @Test
+    public void aFailingAccountDoesNotStopTheOthers() {
+        // Given
+        DataRetentionTask task = new DataRetentionTask(() -> Arrays.asList(ACCOUNT_1, ACCOUNT_2, ACCOUNT_3), messageStoreService(ACCOUNT_2, null), 0);
+
+        // When
+        int processed = task.deleteExpired();
+
+        // Then
+        assertThat(processed).isEqualTo(2);
+        assertThat(deleted).containsExactly(ACCOUNT_1, ACCOUNT_3);
+    }
+
+    @Test
+    public void aFailingAccountLookupSkipsTheRun() {
+        // Given
+        DataRetentionTask task = new DataRetentionTask(() -> {
+            throw KapuaException.internalError("Cannot list");
+        }, messageStoreService(null, null), 0);
+
+        // When
+        int processed = task.deleteExpired();
+
+        // Then
+        assertThat(processed).isZero();
+        assertThat(deleted).isEmpty();
+    }
+
+    @Test
+    public void theTaskRunsAtTheInterval() throws InterruptedException {
+        // Given
+        CountDownLatch latch = new CountDownLatch(4);
+        DataRetentionTask task = new DataRetentionTask(() -> Arrays.asList(ACCOUNT_1, ACCOUNT_2), messageStoreService(null, latch), 10);
+
+        try {
+            // When
+            boolean ranTwice = latch.await(10, TimeUnit.SECONDS);
+
+            // Then
+            assertThat(ranTwice).isTrue();
+            assertThat(deleted).startsWith(ACCOUNT_1, ACCOUNT_2, ACCOUNT_1, ACCOUNT_2);
+        } finally {
+            task.close();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.eclipse.kapua.KapuaRuntimeException;
+import org.eclipse.kapua.locator.KapuaLocatorErrorCodes;
+import org.eclipse.kapua.service.metric.MetricsService;
+import org.junit.Test;
+
+public class DatastoreCacheManagerTest {
+
+    @Test
+    public void cachesAreAvailableWithoutMetricsService() {
+        // Given
+        DatastoreCacheManager cacheManager = new DatastoreCacheManager(() -> {
+            throw new KapuaRuntimeException(KapuaLocatorErrorCodes.SERVICE_UNAVAILABLE, MetricsService.class);
+        });
+
+        // When
+        cacheManager.getTopicsCache().add("topic-id");
+
+        // Then
+        assertThat(cacheManager.getTopicsCache().contains("topic-id")).isTrue();
+        assertThat(cacheManager.getMetricsCache().contains("topic-id")).isFalse();
+        assertThat(cacheManager.getServicePlanCache()).isNotNull();
+    }
+}
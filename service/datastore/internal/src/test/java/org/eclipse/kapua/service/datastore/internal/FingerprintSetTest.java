@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class FingerprintSetTest {
+
+    @Test
+    public void addedIdsAreContained() {
+        // Given
+        FingerprintSet set = new FingerprintSet(1000, 3600, 4);
+
+        // When
+        for (int i = 0; i < 500; i++) {
+            set.add("id-" + i);
+        }
+
+        // Then
+        for (int i = 0; i < 500; i++) {
+            assertThat(set.contains("id-" + i)).isTrue();
+        }
+        assertThat(set.contains("id-500")).isFalse();
+        assertThat(set.size()).isEqualTo(500);
+    }
+
+    @Test
+    public void removedIdsAreNotContained() {
+        // Given
+        FingerprintSet set = new FingerprintSet(1000, 3600, 1);
+        for (int i = 0; i < 700; i++) {
+            set.add("id-" + i);
+        }
+
+        // When
+        for (int i = 0; i < 700; i += 2) {
+            set.remove("id-" + i);
+        }
+
+        // Then
+        for (int i = 0; i < 700; i++) {
+            assertThat(set.contains("id-" + i)).isEqualTo(i % 2 == 1);
+        }
+        assertThat(set.size()).isEqualTo(350);
+    }
+
+    @Test
+    public void hotIdsSurviveGenerationRotations() {
+        // Given
+        FingerprintSet set = new FingerprintSet(100, 3600, 1, 100);
+        set.add("hot");
+
+        // When
+        for (int i = 0; i < 1000; i++) {
+            set.add("cold-" + i);
+            if (i % 50 == 0) {
+                assertThat(set.contains("hot")).isTrue();
+            }
+        }
+
+        // Then
+        assertThat(set.contains("hot")).isTrue();
+        assertThat(set.contains("cold-0")).isFalse();
+        assertThat(set.size()).isLessThanOrEqualTo(200);
+    }
+
+    @Test
+    public void hotIdsAreReportedMissingAfterTheMaximumPromotions() {
+        // Given
+        FingerprintSet set = new FingerprintSet(10, 3600, 1, 2);
+        set.add("hot");
+
+        // When
+        boolean[] found = new boolean[4];
+        for (int generation = 0; generation < 4; generation++) {
+            for (int i = 0; i < 10; i++) {
+                set.add("cold-" + generation + "-" + i);
+            }
+            found[generation] = set.contains("hot");
+        }
+        set.add("hot");
+
+        // Then
+        assertThat(found).containsExactly(true, true, false, false);
+        assertThat(set.contains("hot")).isTrue();
+    }
+
+    @Test
+    public void expiredIdsAreNotContained() throws InterruptedException {
+        // Given
+        FingerprintSet set = new FingerprintSet(100, 1, 1);
+        set.add("id");
+
+        // When
+        Thread.sleep(2100);
+
+        // Then
+        assertThat(set.contains("id")).isFalse();
+    }
+
+    @Test
+    public void hitAndMissRatiosAreReported() {
+        // Given
+        FingerprintSet set = new FingerprintSet(100, 3600, 2);
+        set.add("seen");
+
+        // When
+        set.contains("seen");
+        set.contains("seen");
+        set.contains("seen");
+        set.contains("unseen");
+
+        // Then
+        assertThat(set.getHitCount()).isEqualTo(3);
+        assertThat(set.getMissCount()).isEqualTo(1);
+        assertThat(set.getHitRatio()).isEqualTo(0.75);
+        assertThat(set.getMissRatio()).isEqualTo(0.25);
+    }
+
+}
@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsMessageField;
+import org.eclipse.kapua.service.datastore.internal.model.MessageImpl;
+import org.eclipse.kapua.service.datastore.internal.model.MessageListResultImpl;
+import org.eclipse.kapua.service.datastore.internal.model.StorableIdImpl;
+import org.eclipse.kapua.service.datastore.internal.model.query.AndPredicateImpl;
+import org.eclipse.kapua.service.datastore.internal.model.query.IdsPredicateImpl;
+import org.eclipse.kapua.service.datastore.internal.model.query.MessageQueryImpl;
+import org.eclipse.kapua.service.datastore.internal.model.query.RangePredicateImpl;
+import org.eclipse.kapua.service.datastore.internal.model.query.TermPredicateImpl;
+import org.eclipse.kapua.service.datastore.model.StorableId;
+import org.eclipse.kapua.service.datastore.model.query.StorablePredicate;
+import org.junit.Test;
+
+public class QueryResultCacheTest {
+
+    private static final KapuaId SCOPE       = new KapuaEid(BigInteger.ONE);
+    private static final KapuaId OTHER_SCOPE = new KapuaEid(BigInteger.TEN);
+
+    private static MessageQueryImpl query(StorablePredicate... predicates) {
+        MessageQueryImpl query = new MessageQueryImpl();
+        query.setPredicate(new AndPredicateImpl(Arrays.asList(predicates)));
+        query.setLimit(10);
+        return query;
+    }
+
+    private static StorablePredicate asset(String asset) {
+        return new TermPredicateImpl(EsMessageField.ASSET, asset);
+    }
+
+    private static StorablePredicate timestamp(long start, long end) {
+        return new RangePredicateImpl(EsMessageField.TIMESTAMP, new Date(start), new Date(end));
+    }
+
+    private static StorablePredicate ids(String... ids) {
+        StorableId[] storableIds = new StorableId[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            storableIds[i] = new StorableIdImpl(ids[i]);
+        }
+        return new IdsPredicateImpl(EsMessageField.ID, Arrays.asList(storableIds));
+    }
+
+    @Test
+    public void equivalentQueriesHaveTheSameKey() {
+        // Given
+        MessageQueryImpl query = query(asset("device-1"), timestamp(1000, 2000), ids("a", "b"));
+        MessageQueryImpl reordered = query(ids("b", "a"), timestamp(1000, 2000), asset("device-1"));
+
+        // When / Then
+        assertThat(QueryResultCache.key(SCOPE, "message.query", query)).isEqualTo(QueryResultCache.key(SCOPE, "message.query", reordered));
+    }
+
+    @Test
+    public void differentQueriesHaveDifferentKeys() {
+        // Given
+        MessageQueryImpl query = query(asset("device-1"), timestamp(1000, 2000));
+        MessageQueryImpl otherLimit = query(asset("device-1"), timestamp(1000, 2000));
+        otherLimit.setLimit(20);
+
+        // When
+        String key = QueryResultCache.key(SCOPE, "message.query", query);
+
+        // Then
+        assertThat(key).isNotEqualTo(QueryResultCache.key(SCOPE, "message.query", query(asset("device-2"), timestamp(1000, 2000))));
+        assertThat(key).isNotEqualTo(QueryResultCache.key(SCOPE, "message.query", query(asset("device-1"), timestamp(1000, 3000))));
+        assertThat(key).isNotEqualTo(QueryResultCache.key(SCOPE, "message.query", otherLimit));
+        assertThat(key).isNotEqualTo(QueryResultCache.key(SCOPE, "message.count", query));
+        assertThat(key).isNotEqualTo(QueryResultCache.key(OTHER_SCOPE, "message.query", query));
+
+        MessageQueryImpl projected = query(asset("device-1"), timestamp(1000, 2000));
+        projected.setMetricProjection(Collections.singleton("temperature"));
+        assertThat(key).isNotEqualTo(QueryResultCache.key(SCOPE, "message.query", projected));
+
+        MessageQueryImpl approximate = query(asset("device-1"), timestamp(1000, 2000));
+        approximate.setAcceptApproximateCount(true);
+        assertThat(key).isNotEqualTo(QueryResultCache.key(SCOPE, "message.query", approximate));
+    }
+
+    @Test
+    public void cachedResultIsACopy() {
+        // Given
+        QueryResultCache cache = new QueryResultCache(10, 60);
+        String key = QueryResultCache.key(SCOPE, "message.query", query(asset("device-1")));
+        MessageListResultImpl result = new MessageListResultImpl(null, 1);
+        result.add(new MessageImpl(new StorableIdImpl("a")));
+        cache.put(SCOPE, key, result, cache.getGeneration(SCOPE));
+
+        // When
+        MessageListResultImpl cached = cache.get(SCOPE, key);
+        cached.clear();
+
+        // Then
+        MessageListResultImpl cachedAgain = cache.get(SCOPE, key);
+        assertThat(cachedAgain).hasSize(1);
+        assertThat(cachedAgain.getTotalCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void writeInvalidatesOnlyItsScope() {
+        // Given
+        QueryResultCache cache = new QueryResultCache(10, 60);
+        MessageQueryImpl query = query(asset("device-1"));
+        String key = QueryResultCache.key(SCOPE, "message.count", query);
+        String otherKey = QueryResultCache.key(OTHER_SCOPE, "message.count", query);
+        cache.put(SCOPE, key, 5L, cache.getGeneration(SCOPE));
+        cache.put(OTHER_SCOPE, otherKey, 7L, cache.getGeneration(OTHER_SCOPE));
+
+        // When
+        cache.invalidate(SCOPE);
+
+        // Then
+        assertThat(cache.<Long> get(SCOPE, key)).isNull();
+        assertThat(cache.<Long> get(OTHER_SCOPE, otherKey)).isEqualTo(7L);
+    }
+
+    @Test
+    public void resultOfAQueryOverlappingAWriteIsNotCached() {
+        // Given
+        QueryResultCache cache = new QueryResultCache(10, 60);
+        String key = QueryResultCache.key(SCOPE, "message.count", query(asset("device-1")));
+        long generation = cache.getGeneration(SCOPE);
+
+        // When
+        cache.invalidate(SCOPE);
+        cache.put(SCOPE, key, 5L, generation);
+
+        // Then
+        assertThat(cache.<Long> get(SCOPE, key)).isNull();
+    }
+
+    @Test
+    public void disabledCacheKeepsNothing() {
+        // Given
+        QueryResultCache cache = new QueryResultCache(10, 0);
+        String key = QueryResultCache.key(SCOPE, "message.count", query(asset("device-1")));
+
+        // When
+        cache.put(SCOPE, key, 5L, cache.getGeneration(SCOPE));
+
+        // Then
+        assertThat(cache.isEnabled()).isFalse();
+        assertThat(cache.<Long> get(SCOPE, key)).isNull();
+    }
+}
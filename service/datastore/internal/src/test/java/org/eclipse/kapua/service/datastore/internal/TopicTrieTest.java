@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class TopicTrieTest {
+
+    private static TopicTrie trie(String... topics) {
+        TopicTrie trie = new TopicTrie();
+        for (String topic : topics) {
+            trie.add(topic);
+        }
+        return trie;
+    }
+
+    @Test
+    public void addedTopicsAreContained() {
+        // Given
+        TopicTrie trie = trie("device-1/sensors/temperature", "device-1/sensors");
+
+        // When
+        boolean added = trie.add("device-1/sensors");
+
+        // Then
+        assertThat(added).isFalse();
+        assertThat(trie.size()).isEqualTo(2);
+        assertThat(trie.contains("device-1/sensors/temperature")).isTrue();
+        assertThat(trie.contains("device-1/sensors")).isTrue();
+        assertThat(trie.contains("device-1")).isFalse();
+        assertThat(trie.contains("device-1/sensors/humidity")).isFalse();
+    }
+
+    @Test
+    public void exactFilterMatchesOnlyTheTopic() {
+        // Given
+        TopicTrie trie = trie("device-1/sensors/temperature", "device-1/sensors/humidity");
+
+        // When / Then
+        assertThat(trie.match("device-1/sensors/temperature", 10)).containsExactly("device-1/sensors/temperature");
+        assertThat(trie.match("device-1/sensors/pressure", 10)).isEmpty();
+    }
+
+    @Test
+    public void singleLevelWildcardMatchesOneLevel() {
+        // Given
+        TopicTrie trie = trie("device-1/sensors/temperature",
+                              "device-2/sensors/temperature",
+                              "device-2/sensors/temperature/max",
+                              "device-3/alerts/temperature");
+
+        // When / Then
+        assertThat(trie.match("+/sensors/temperature", 10)).containsOnly("device-1/sensors/temperature", "device-2/sensors/temperature");
+        assertThat(trie.match("device-2/+/temperature", 10)).containsOnly("device-2/sensors/temperature");
+        assertThat(trie.match("+/+/+", 10)).containsOnly("device-1/sensors/temperature", "device-2/sensors/temperature", "device-3/alerts/temperature");
+    }
+
+    @Test
+    public void multiLevelWildcardMatchesTheParentAndEverySubLevel() {
+        // Given
+        TopicTrie trie = trie("device-1/sensors",
+                              "device-1/sensors/temperature",
+                              "device-1/sensors/temperature/max",
+                              "device-1/alerts",
+                              "device-2/sensors");
+
+        // When / Then
+        assertThat(trie.match("device-1/sensors/#", 10)).containsOnly("device-1/sensors", "device-1/sensors/temperature", "device-1/sensors/temperature/max");
+        assertThat(trie.match("+/sensors/#", 10)).containsOnly("device-1/sensors", "device-1/sensors/temperature", "device-1/sensors/temperature/max", "device-2/sensors");
+        assertThat(trie.match("#", 10)).hasSize(5);
+    }
+
+    @Test
+    public void tooManyMatchesReturnNull() {
+        // Given
+        TopicTrie trie = new TopicTrie();
+        for (int i = 0; i < 20; i++) {
+            trie.add("device-" + i + "/sensors");
+        }
+
+        // When / Then
+        assertThat(trie.match("+/sensors", 19)).isNull();
+        assertThat(trie.match("+/sensors", 20)).hasSize(20);
+    }
+
+    @Test
+    public void removedTopicsAreNotMatched() {
+        // Given
+        TopicTrie trie = trie("device-1/sensors/temperature", "device-1/sensors/temperature/max");
+
+        // When
+        boolean removed = trie.remove("device-1/sensors/temperature/max");
+        boolean removedAgain = trie.remove("device-1/sensors/temperature/max");
+
+        // Then
+        assertThat(removed).isTrue();
+        assertThat(removedAgain).isFalse();
+        assertThat(trie.size()).isEqualTo(1);
+        assertThat(trie.match("device-1/#", 10)).containsExactly("device-1/sensors/temperature");
+
+        // When
+        trie.remove("device-1/sensors/temperature");
+
+        // Then
+        assertThat(trie.size()).isEqualTo(0);
+        assertThat(trie.match("#", 10)).isEmpty();
+    }
+}
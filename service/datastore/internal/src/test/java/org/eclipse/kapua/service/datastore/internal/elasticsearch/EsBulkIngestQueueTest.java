@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.action.update.UpdateResponse;
+import org.elasticsearch.index.engine.VersionConflictEngineException;
+import org.elasticsearch.index.shard.ShardId;
+import org.junit.Test;
+
+public class EsBulkIngestQueueTest {
+
+    private final List<Integer> bulkSizes = new CopyOnWriteArrayList<Integer>();
+
+    private BulkResponse execute(BulkRequest bulkRequest) {
+        bulkSizes.add(bulkRequest.numberOfActions());
+
+        List<ActionRequest> requests = bulkRequest.requests();
+        BulkItemResponse[] items = new BulkItemResponse[requests.size()];
+        for (int i = 0; i < items.length; i++) {
+            UpdateRequest request = (UpdateRequest) requests.get(i);
+            if (request.id().startsWith("bad")) {
+                BulkItemResponse.Failure failure = new BulkItemResponse.Failure(request.index(), request.type(), request.id(), new IllegalArgumentException("mapping conflict"));
+                items[i] = new BulkItemResponse(i, "update", failure);
+            } else if (request.id().startsWith("conflict")) {
+                BulkItemResponse.Failure failure = new BulkItemResponse.Failure(request.index(), request.type(), request.id(),
+                                                                                new VersionConflictEngineException(new ShardId(request.index(), 0), request.type(), request.id(), 2, 1));
+                items[i] = new BulkItemResponse(i, "update", failure);
+            } else {
+                items[i] = new BulkItemResponse(i, "update", new UpdateResponse(request.index(), request.type(), request.id(), 1, true));
+            }
+        }
+        return new BulkResponse(items, 1);
+    }
+
+    @Test
+    public void requestsAreFlushedTogetherWhenBulkSizeIsReached() throws Exception {
+        // Given
+        EsBulkIngestQueue queue = new EsBulkIngestQueue(100, 3, 60000, 1000, this::execute);
+
+        // When
+        List<CompletableFuture<String>> futures = new ArrayList<CompletableFuture<String>>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(queue.submit(new UpdateRequest("index", "message", "id" + i)));
+        }
+
+        // Then
+        for (int i = 0; i < 3; i++) {
+            assertThat(futures.get(i).get(5, TimeUnit.SECONDS)).isEqualTo("id" + i);
+        }
+        assertThat(bulkSizes).containsExactly(3);
+        queue.close();
+    }
+
+    @Test
+    public void requestsAreFlushedWhenFlushIntervalExpires() throws Exception {
+        // Given
+        EsBulkIngestQueue queue = new EsBulkIngestQueue(100, 500, 50, 1000, this::execute);
+
+        // When
+        CompletableFuture<String> future = queue.submit(new UpdateRequest("index", "message", "id"));
+
+        // Then
+        assertThat(future.get(5, TimeUnit.SECONDS)).isEqualTo("id");
+        assertThat(bulkSizes).containsExactly(1);
+        queue.close();
+    }
+
+    @Test
+    public void failuresAreReportedToTheSingleRequest() throws Exception {
+        // Given
+        EsBulkIngestQueue queue = new EsBulkIngestQueue(100, 2, 60000, 1000, this::execute);
+
+        // When
+        CompletableFuture<String> good = queue.submit(new UpdateRequest("index", "message", "good"));
+        CompletableFuture<String> bad = queue.submit(new UpdateRequest("index", "message", "bad"));
+
+        // Then
+        assertThat(good.get(5, TimeUnit.SECONDS)).isEqualTo("good");
+        try {
+            bad.get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(EsDatastoreException.class);
+            assertThat(e.getCause().getMessage()).contains("mapping conflict");
+        }
+        assertThat(bad.isCompletedExceptionally()).isTrue();
+        queue.close();
+    }
+
+    @Test
+    public void failureCauseIsKept() throws Exception {
+        // Given
+        EsBulkIngestQueue queue = new EsBulkIngestQueue(100, 1, 60000, 1000, this::execute);
+
+        // When
+        CompletableFuture<String> conflict = queue.submit(new UpdateRequest("index", "topic", "conflict"));
+
+        // Then
+        try {
+            conflict.get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(EsDatastoreException.class);
+            assertThat(e.getCause().getCause()).isInstanceOf(VersionConflictEngineException.class);
+        }
+        assertThat(conflict.isCompletedExceptionally()).isTrue();
+        queue.close();
+    }
+
+    @Test
+    public void closedQueueRejectsRequests() throws Exception {
+        // Given
+        EsBulkIngestQueue queue = new EsBulkIngestQueue(100, 10, 50, 1000, this::execute);
+        queue.close();
+
+        // When
+        CompletableFuture<String> future = queue.submit(new UpdateRequest("index", "message", "id"));
+
+        // Then
+        assertThat(future.isCompletedExceptionally()).isTrue();
+        assertThat(bulkSizes).isEmpty();
+    }
+
+}
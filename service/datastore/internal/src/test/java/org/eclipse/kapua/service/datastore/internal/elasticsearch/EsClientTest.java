@@ -10,6 +10,7 @@
 package org.eclipse.kapua.service.datastore.internal.elasticsearch;
 
 import org.elasticsearch.client.transport.TransportClient;
+import org.elasticsearch.common.transport.InetSocketTransportAddress;
 import org.junit.Test;
 
 import java.net.UnknownHostException;
@@ -28,4 +29,39 @@ public class EsClientTest {
         assertThat(host).isEqualTo("127.0.0.1");
     }
 
-}
\ No newline at end of file
+    @Test
+    public void nodeShouldDefaultToTransportPort() throws EsDatastoreException, UnknownHostException {
+        // When
+        InetSocketTransportAddress address = EsClient.parseNode("127.0.0.1");
+
+        // Then
+        assertThat(address.getPort()).isEqualTo(9300);
+    }
+
+    @Test
+    public void nodeShouldUseConfiguredPort() throws EsDatastoreException, UnknownHostException {
+        // When
+        InetSocketTransportAddress address = EsClient.parseNode("127.0.0.1:9301");
+
+        // Then
+        assertThat(address.getAddress()).isEqualTo("127.0.0.1");
+        assertThat(address.getPort()).isEqualTo(9301);
+    }
+
+    @Test
+    public void serviceNodeShouldUseTheTransportPort() throws EsDatastoreException, UnknownHostException {
+        // When
+        InetSocketTransportAddress address = EsClient.parseNode(EsClient.getServiceNode("127.0.0.1", "9301"));
+        InetSocketTransportAddress defaultAddress = EsClient.parseNode(EsClient.getServiceNode("127.0.0.1", null));
+
+        // Then
+        assertThat(address.getPort()).isEqualTo(9301);
+        assertThat(defaultAddress.getPort()).isEqualTo(9300);
+    }
+
+    @Test(expected = EsDatastoreException.class)
+    public void nodeWithInvalidPortShouldBeRejected() throws EsDatastoreException, UnknownHostException {
+        EsClient.parseNode("127.0.0.1:port");
+    }
+
+}
@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.eclipse.kapua.commons.util.KapuaDateUtils;
+import org.junit.Test;
+
+public class EsDataRetentionTest {
+
+    private static final String ACCOUNT = "kapua-sys";
+    private static final long   DAY     = TimeUnit.DAYS.toMillis(1);
+
+    private static long date(int year, int month, int day) {
+        Calendar cal = KapuaDateUtils.getKapuaCalendar();
+        cal.clear();
+        cal.set(year, month, day);
+        return cal.getTimeInMillis();
+    }
+
+    @Test
+    public void indexEndFollowsEveryTimestampOfTheIndex() {
+        // Given
+        long start = date(2014, Calendar.JANUARY, 1);
+        long end = date(2018, Calendar.JANUARY, 10);
+
+        for (long timestamp = start; timestamp < end; timestamp += DAY / 2) {
+            // When
+            long indexEnd = EsUtils.getDataIndexEnd(ACCOUNT, EsUtils.getActualIndexName(ACCOUNT, timestamp));
+
+            // Then
+            assertThat(indexEnd).isGreaterThan(timestamp);
+        }
+    }
+
+    @Test
+    public void indexEndIsTheNextWeek() {
+        // Given
+        long timestamp = date(2016, Calendar.JUNE, 15);
+        long nextWeek = KapuaDateUtils.weekByFirstDay(new Date(timestamp)).getTime() + 7 * DAY;
+
+        // When
+        long indexEnd = EsUtils.getDataIndexEnd(ACCOUNT, EsUtils.getActualIndexName(ACCOUNT, timestamp));
+
+        // Then
+        assertThat(indexEnd).isEqualTo(nextWeek);
+    }
+
+    @Test
+    public void otherIndexesHaveNoEnd() {
+        assertThat(EsUtils.getDataIndexEnd(ACCOUNT, "other-2016-01")).isEqualTo(-1);
+        assertThat(EsUtils.getDataIndexEnd(ACCOUNT, "kapua-sys-other-2016-01")).isEqualTo(-1);
+        assertThat(EsUtils.getDataIndexEnd(ACCOUNT, ".kapua-sys")).isEqualTo(-1);
+    }
+
+    @Test
+    public void onlyTheIndexesEntirelyPastTheTimeToLiveExpire() {
+        // Given
+        long now = date(2016, Calendar.JUNE, 15);
+        String[] indexNames = new String[] {
+                EsUtils.getActualIndexName(ACCOUNT, now - 30 * DAY),
+                EsUtils.getActualIndexName(ACCOUNT, now - 14 * DAY),
+                EsUtils.getActualIndexName(ACCOUNT, now - 7 * DAY),
+                EsUtils.getActualIndexName(ACCOUNT, now),
+                "kapua-sys-other-2016-01"
+        };
+
+        // When
+        String[] expired = EsDataRetention.getExpiredIndexNames(ACCOUNT, indexNames, now - 10 * DAY);
+
+        // Then
+        assertThat(expired).containsExactly(indexNames[0], indexNames[1]);
+    }
+
+    @Test
+    public void theFirstWeekIndexHoldingTheYearEndExpiresWithIt() {
+        // Given: 2015-12-31 belongs to the first week of 2016, so it is stored in the 2015-01 index
+        long yearEnd = date(2015, Calendar.DECEMBER, 31);
+        String firstWeekIndex = EsUtils.getActualIndexName(ACCOUNT, yearEnd);
+        assertThat(firstWeekIndex).isEqualTo(EsUtils.getActualIndexName(ACCOUNT, date(2015, Calendar.JANUARY, 2)));
+
+        // When
+        String[] expiredInFebruary = EsDataRetention.getExpiredIndexNames(ACCOUNT, new String[] { firstWeekIndex }, date(2015, Calendar.FEBRUARY, 1));
+        String[] expiredNextYear = EsDataRetention.getExpiredIndexNames(ACCOUNT, new String[] { firstWeekIndex }, date(2016, Calendar.JANUARY, 1));
+
+        // Then
+        assertThat(expiredInFebruary).isEmpty();
+        assertThat(expiredNextYear).containsExactly(firstWeekIndex);
+    }
+
+    @Test
+    public void activeEntriesFirstSeenBeforeTheTimeToLiveAreNotOrphaned() {
+        // Given: the entries of device-1/temperature were upserted before the time to live, but the topic still has messages
+        Map<String, Set<String>> liveTopics = Collections.singletonMap("device-1", new HashSet<String>(Arrays.asList("temperature")));
+
+        Map<String, Object> activeTopic = new HashMap<String, Object>();
+        activeTopic.put(EsSchema.TOPIC_ASSET, "device-1");
+        activeTopic.put(EsSchema.TOPIC_SEM_NAME, "temperature");
+        activeTopic.put(EsSchema.TOPIC_TIMESTAMP, new Date(date(2015, Calendar.JANUARY, 1)));
+        Map<String, Object> activeMetric = new HashMap<String, Object>();
+        activeMetric.put(EsSchema.METRIC_ASSET, "device-1");
+        activeMetric.put(EsSchema.METRIC_SEM_NAME, "temperature");
+        Map<String, Object> activeAsset = Collections.singletonMap(EsSchema.ASSET_NAME, "device-1");
+
+        // When / Then
+        assertThat(EsDataRetention.isOrphanedTopic(liveTopics).test(activeTopic)).isFalse();
+        assertThat(EsDataRetention.isOrphanedMetric(liveTopics).test(activeMetric)).isFalse();
+        assertThat(EsDataRetention.isOrphanedAsset(liveTopics).test(activeAsset)).isFalse();
+    }
+
+    @Test
+    public void entriesWithoutMessagesAreOrphaned() {
+        // Given
+        Map<String, Set<String>> liveTopics = Collections.singletonMap("device-1", new HashSet<String>(Arrays.asList("temperature")));
+
+        Map<String, Object> otherTopic = new HashMap<String, Object>();
+        otherTopic.put(EsSchema.TOPIC_ASSET, "device-1");
+        otherTopic.put(EsSchema.TOPIC_SEM_NAME, "humidity");
+        Map<String, Object> otherAssetTopic = new HashMap<String, Object>();
+        otherAssetTopic.put(EsSchema.TOPIC_ASSET, "device-2");
+        otherAssetTopic.put(EsSchema.TOPIC_SEM_NAME, "temperature");
+        Map<String, Object> otherAsset = Collections.singletonMap(EsSchema.ASSET_NAME, "device-2");
+
+        // When / Then
+        assertThat(EsDataRetention.isOrphanedTopic(liveTopics).test(otherTopic)).isTrue();
+        assertThat(EsDataRetention.isOrphanedTopic(liveTopics).test(otherAssetTopic)).isTrue();
+        assertThat(EsDataRetention.isOrphanedAsset(liveTopics).test(otherAsset)).isTrue();
+        assertThat(EsDataRetention.isOrphanedTopic(Collections.emptyMap()).test(otherTopic)).isTrue();
+    }
+
+    @Test
+    public void candidatesAreLookedUpInBoundedBatches() {
+        // Given
+        List<String> assets = new ArrayList<String>();
+        for (int i = 0; i < 250; i++)
+            assets.add("device-" + i);
+
+        // When
+        List<List<String>> batches = EsDataRetention.getBatches(assets, 100);
+
+        // Then
+        assertThat(batches).hasSize(3);
+        assertThat(batches.get(0)).hasSize(100);
+        assertThat(batches.get(1)).hasSize(100);
+        assertThat(batches.get(2)).hasSize(50);
+        assertThat(batches.stream().flatMap(List::stream).collect(Collectors.toList())).isEqualTo(assets);
+        assertThat(EsDataRetention.getBatches(Collections.<String> emptyList(), 100)).isEmpty();
+    }
+
+    @Test
+    public void onlyTheCandidateTopicsOfEachAssetAreQueried() {
+        // Given
+        Map<String, Set<String>> candidateTopics = new HashMap<String, Set<String>>();
+        candidateTopics.put("device-1", new HashSet<String>(Arrays.asList("temperature")));
+        candidateTopics.put("device-2", new HashSet<String>(Arrays.asList("humidity", "pressure")));
+
+        // When
+        String query = EsDataRetention.getCandidateTopicsQuery(candidateTopics).toString();
+
+        // Then
+        assertThat(query).contains("device-1", "device-2", "temperature", "humidity", "pressure")
+                         .contains(EsSchema.MESSAGE_AS_NAME, EsSchema.MESSAGE_SEM_TOPIC)
+                         .doesNotContain("device-3");
+    }
+}
@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Comparator;
+import java.util.List;
+
+import org.eclipse.kapua.service.datastore.internal.model.query.MessageQueryImpl;
+import org.eclipse.kapua.service.datastore.internal.model.query.TermPredicateImpl;
+import org.eclipse.kapua.service.datastore.internal.model.query.TopicMatchPredicateImpl;
+import org.junit.Test;
+
+public class EsMessageCountersTest {
+
+    private final EsMessageCounters counters = new EsMessageCounters(0);
+
+    @Test
+    public void incrementCountsPerTopicAndDataIndex() {
+        // Given
+        counters.increment("account", "account-2016-10", "asset", "sensors/room");
+        counters.increment("account", "account-2016-10", "asset", "sensors/room");
+        counters.increment("account", "account-2016-11", "asset", "sensors/room");
+        counters.increment("account", "account-2016-10", "asset", "sensors/hall");
+
+        // When
+        List<EsMessageCounters.Counter> drained = counters.drain();
+
+        // Then
+        assertThat(drained).hasSize(3);
+        drained.sort(Comparator.comparing(EsMessageCounters.Counter::getDataIndexName).thenComparing(EsMessageCounters.Counter::getSemTopic));
+        assertThat(drained.get(0).getSemTopic()).isEqualTo("sensors/hall");
+        assertThat(drained.get(0).getCount()).isEqualTo(1);
+        assertThat(drained.get(1).getSemTopic()).isEqualTo("sensors/room");
+        assertThat(drained.get(1).getCount()).isEqualTo(2);
+        assertThat(drained.get(2).getDataIndexName()).isEqualTo("account-2016-11");
+        assertThat(drained.get(2).getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void drainReturnsTheCumulativeCountsOfTheUpdatedCounters() {
+        // Given
+        counters.increment("account", "account-2016-10", "asset", "sensors/room");
+        counters.increment("account", "account-2016-10", "asset", "sensors/hall");
+        List<EsMessageCounters.Counter> first = counters.drain();
+
+        // When
+        counters.increment("account", "account-2016-10", "asset", "sensors/room");
+        List<EsMessageCounters.Counter> drained = counters.drain();
+
+        // Then
+        assertThat(first).hasSize(2);
+        assertThat(drained).hasSize(1);
+        assertThat(drained.get(0).getSemTopic()).isEqualTo("sensors/room");
+        assertThat(drained.get(0).getCount()).isEqualTo(2);
+        assertThat(counters.drain()).isEmpty();
+    }
+
+    @Test
+    public void counterDocumentIdsAreStablePerNode() {
+        // Given
+        EsMessageCounters otherNode = new EsMessageCounters(0);
+        counters.increment("account", "account-2016-10", "asset", "sensors/room");
+        otherNode.increment("account", "account-2016-10", "asset", "sensors/room");
+        String firstId = counters.drain().get(0).getId();
+
+        // When
+        counters.increment("account", "account-2016-10", "asset", "sensors/room");
+        counters.increment("account", "account-2016-10", "asset", "sensors/hall");
+        List<EsMessageCounters.Counter> drained = counters.drain();
+        drained.sort(Comparator.comparing(EsMessageCounters.Counter::getSemTopic));
+
+        // Then
+        assertThat(drained.get(1).getId()).isEqualTo(firstId);
+        assertThat(drained.get(0).getId()).isNotEqualTo(firstId);
+        assertThat(otherNode.drain().get(0).getId()).isNotEqualTo(firstId);
+    }
+
+    @Test
+    public void evictedDataIndexesAreNotCountedAnymore() {
+        // Given
+        counters.increment("account", "account-2016-10", "asset", "sensors/room");
+        counters.increment("account", "account-2016-11", "asset", "sensors/room");
+
+        // When
+        counters.evict("account-2016-10");
+
+        // Then
+        List<EsMessageCounters.Counter> drained = counters.drain();
+        assertThat(drained).hasSize(1);
+        assertThat(drained.get(0).getDataIndexName()).isEqualTo("account-2016-11");
+    }
+
+    @Test
+    public void onlyApproximateAccountAndTopicCountsAreCountable() {
+        // Given
+        MessageQueryImpl account = new MessageQueryImpl();
+        MessageQueryImpl topic = new MessageQueryImpl();
+        topic.setPredicate(new TopicMatchPredicateImpl("account/asset/sensors/#"));
+        MessageQueryImpl asset = new MessageQueryImpl();
+        asset.setPredicate(new TermPredicateImpl(EsMessageField.ASSET, "asset"));
+        MessageQueryImpl exact = new MessageQueryImpl();
+
+        // When
+        account.setAcceptApproximateCount(true);
+        topic.setAcceptApproximateCount(true);
+        asset.setAcceptApproximateCount(true);
+
+        // Then
+        assertThat(EsMessageCounters.isCountable(account)).isTrue();
+        assertThat(EsMessageCounters.isCountable(topic)).isTrue();
+        assertThat(EsMessageCounters.isCountable(asset)).isFalse();
+        assertThat(EsMessageCounters.isCountable(exact)).isFalse();
+    }
+}
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.client.Client;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares, against the configured Elasticsearch cluster, the cost per document of the metadata upserts
+ * sent one by one and sent as a single bulk request, for growing numbers of upserts.<br>
+ * The crossover point (the smallest number of upserts for which the bulk request is cheaper) depends on the
+ * cluster and on the network latency, so it is logged rather than asserted.
+ * Requires a running Elasticsearch node, hence ignored by the build.
+ */
+@Ignore
+public class EsMetadataUpdateBenchmark
+{
+
+    private static final Logger s_logger    = LoggerFactory.getLogger(EsMetadataUpdateBenchmark.class);
+
+    private static final int[]  BATCH_SIZES = new int[] { 1, 2, 5, 10, 20, 50, 100, 200, 500 };
+    private static final int    WARMUP      = 3;
+    private static final int    ITERATIONS  = 10;
+
+    private final String        indexName   = "kapua-benchmark-" + UUID.randomUUID().toString();
+
+    @Test
+    public void individualVersusBulkUpserts()
+        throws Exception
+    {
+        Client client = EsClient.getcurrent();
+        client.admin().indices().prepareCreate(indexName).execute().actionGet();
+        try {
+            Integer crossover = null;
+            for (int batchSize : BATCH_SIZES) {
+                for (int i = 0; i < WARMUP; i++) {
+                    individual(client, batchSize);
+                    bulk(client, batchSize);
+                }
+
+                long individualNanos = 0;
+                long bulkNanos = 0;
+                for (int i = 0; i < ITERATIONS; i++) {
+                    individualNanos += individual(client, batchSize);
+                    bulkNanos += bulk(client, batchSize);
+                }
+
+                double individualPerDoc = perDocument(individualNanos, batchSize);
+                double bulkPerDoc = perDocument(bulkNanos, batchSize);
+                s_logger.info(String.format("Batch size %4d: individual %8.3f ms/doc, bulk %8.3f ms/doc", batchSize, individualPerDoc, bulkPerDoc));
+
+                if (crossover == null && bulkPerDoc < individualPerDoc)
+                    crossover = batchSize;
+            }
+            s_logger.info(crossover != null ? String.format("Bulk upserts are cheaper from %d upserts per request", crossover) : "Bulk upserts are never cheaper");
+        }
+        finally {
+            client.admin().indices().prepareDelete(indexName).execute().actionGet();
+        }
+    }
+
+    private long individual(Client client, int batchSize)
+    {
+        long start = System.nanoTime();
+        for (int i = 0; i < batchSize; i++)
+            client.update(upsertRequest(i)).actionGet();
+        return System.nanoTime() - start;
+    }
+
+    private long bulk(Client client, int batchSize)
+    {
+        BulkRequest bulkRequest = new BulkRequest();
+        for (int i = 0; i < batchSize; i++)
+            bulkRequest.add(upsertRequest(i));
+
+        long start = System.nanoTime();
+        client.bulk(bulkRequest).actionGet();
+        return System.nanoTime() - start;
+    }
+
+    private UpdateRequest upsertRequest(int i)
+    {
+        String id = "metric-" + i;
+        Map<String, Object> source = new HashMap<String, Object>();
+        source.put(EsSchema.METRIC_ACCOUNT, "benchmark");
+        source.put(EsSchema.METRIC_SEM_NAME, "benchmark/topic/" + i);
+        source.put(EsSchema.METRIC_MTR_NAME_FULL, "metric" + i);
+
+        return new UpdateRequest(indexName, EsSchema.METRIC_TYPE_NAME, id).doc(source)
+                                                                          .upsert(new IndexRequest(indexName, EsSchema.METRIC_TYPE_NAME, id).source(source));
+    }
+
+    private static double perDocument(long nanos, int batchSize)
+    {
+        return (double) TimeUnit.NANOSECONDS.toMicros(nanos) / 1000 / ITERATIONS / batchSize;
+    }
+}
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.action.update.UpdateResponse;
+import org.junit.Test;
+
+public class EsMetadataUpdateQueueTest {
+
+    private final List<Integer> bulkSizes = new CopyOnWriteArrayList<Integer>();
+
+    private BulkResponse execute(BulkRequest bulkRequest) {
+        bulkSizes.add(bulkRequest.numberOfActions());
+
+        List<ActionRequest> requests = bulkRequest.requests();
+        BulkItemResponse[] items = new BulkItemResponse[requests.size()];
+        for (int i = 0; i < items.length; i++) {
+            UpdateRequest request = (UpdateRequest) requests.get(i);
+            items[i] = new BulkItemResponse(i, "update", new UpdateResponse(request.index(), request.type(), request.id(), 1, true));
+        }
+        return new BulkResponse(items, 1);
+    }
+
+    @Test
+    public void pendingUpsertsOfTheSameDocumentAreDeduplicated() throws Exception {
+        // Given
+        EsMetadataUpdateQueue queue = new EsMetadataUpdateQueue(new EsBulkIngestQueue(100, 500, 200, 1000, this::execute));
+
+        // When
+        CompletableFuture<String> first = queue.submit(new UpdateRequest("index", "topic", "topic-1"));
+        CompletableFuture<String> second = queue.submit(new UpdateRequest("index", "topic", "topic-1"));
+        CompletableFuture<String> other = queue.submit(new UpdateRequest("index", "metric", "topic-1"));
+
+        // Then
+        assertThat(second).isSameAs(first);
+        assertThat(other).isNotSameAs(first);
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("topic-1");
+        assertThat(other.get(5, TimeUnit.SECONDS)).isEqualTo("topic-1");
+        assertThat(bulkSizes).containsExactly(2);
+        queue.close();
+    }
+
+    @Test
+    public void completedUpsertsAreSubmittedAgain() throws Exception {
+        // Given
+        EsMetadataUpdateQueue queue = new EsMetadataUpdateQueue(new EsBulkIngestQueue(100, 1, 50, 1000, this::execute));
+        CompletableFuture<String> first = queue.submit(new UpdateRequest("index", "asset", "asset-1"));
+        first.get(5, TimeUnit.SECONDS);
+
+        // When
+        CompletableFuture<String> second = queue.submit(new UpdateRequest("index", "asset", "asset-1"));
+
+        // Then
+        assertThat(second).isNotSameAs(first);
+        assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo("asset-1");
+        assertThat(bulkSizes).containsExactly(1, 1);
+        assertThat(queue.getPendingCount()).isEqualTo(0);
+        queue.close();
+    }
+
+}
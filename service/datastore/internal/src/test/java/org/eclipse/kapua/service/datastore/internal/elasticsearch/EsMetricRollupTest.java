@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class EsMetricRollupTest {
+
+    private static final long   MINUTE    = TimeUnit.MINUTES.toMillis(1);
+    private static final long   HOUR      = TimeUnit.HOURS.toMillis(1);
+    private static final long[] INTERVALS = new long[] { MINUTE, HOUR };
+
+    private long now;
+
+    private final EsMetricRollup rollup = new EsMetricRollup(0, HOUR, () -> now);
+
+    private static Map<String, Object> metrics(Object temperature) {
+        Map<String, Object> metrics = new HashMap<String, Object>();
+        metrics.put("temperature", temperature);
+        metrics.put("label", "not a number");
+        return metrics;
+    }
+
+    @Test
+    public void parseIntervalsSortsAndIgnoresSubSecondIntervals() {
+        // Given
+        String intervals = "1h, 5m,500ms,5m,,1d";
+
+        // When
+        long[] parsed = EsMetricRollup.parseIntervals(intervals);
+
+        // Then
+        assertThat(parsed).containsExactly(5 * MINUTE, HOUR, TimeUnit.DAYS.toMillis(1));
+        assertThat(EsMetricRollup.parseIntervals("")).isEmpty();
+        assertThat(EsMetricRollup.parseIntervals(null)).isEmpty();
+    }
+
+    @Test
+    public void selectIntervalPicksTheCoarsestDividingInterval() {
+        // Given
+        long[] intervals = new long[] { MINUTE, 5 * MINUTE, 7 * MINUTE, HOUR };
+
+        // When / Then
+        assertThat(EsMetricRollup.selectInterval(intervals, 2 * HOUR)).isEqualTo(HOUR);
+        assertThat(EsMetricRollup.selectInterval(intervals, 15 * MINUTE)).isEqualTo(5 * MINUTE);
+        assertThat(EsMetricRollup.selectInterval(intervals, 14 * MINUTE)).isEqualTo(7 * MINUTE);
+        assertThat(EsMetricRollup.selectInterval(intervals, 90 * 1000L)).isEqualTo(0);
+        assertThat(EsMetricRollup.selectInterval(new long[0], HOUR)).isEqualTo(0);
+    }
+
+    @Test
+    public void addMergesTheValuesOfTheSameInterval() {
+        // Given
+        long start = 10 * HOUR;
+
+        // When
+        rollup.add("account", "asset", "sensors/room", metrics(20.0), start + 1000, INTERVALS);
+        rollup.add("account", "asset", "sensors/room", metrics(10.5), start + 2000, INTERVALS);
+        rollup.add("account", "asset", "sensors/room", metrics(30.0), start + MINUTE + 1000, INTERVALS);
+        List<EsMetricRollup.Bucket> buckets = rollup.drain();
+
+        // Then
+        assertThat(buckets).hasSize(3);
+        buckets.sort(Comparator.comparingLong(EsMetricRollup.Bucket::getInterval).thenComparingLong(EsMetricRollup.Bucket::getTimestamp));
+
+        EsMetricRollup.Bucket first = buckets.get(0);
+        assertThat(first.getInterval()).isEqualTo(MINUTE);
+        assertThat(first.getTimestamp()).isEqualTo(start);
+        assertThat(first.getMetricName()).isEqualTo(EsUtils.normalizeMetricName("temperature"));
+        assertThat(first.getMin()).isEqualTo(10.5);
+        assertThat(first.getMax()).isEqualTo(20);
+        assertThat(first.getSum()).isEqualTo(30.5);
+        assertThat(first.getCount()).isEqualTo(2);
+
+        EsMetricRollup.Bucket second = buckets.get(1);
+        assertThat(second.getTimestamp()).isEqualTo(start + MINUTE);
+        assertThat(second.getCount()).isEqualTo(1);
+
+        EsMetricRollup.Bucket hour = buckets.get(2);
+        assertThat(hour.getInterval()).isEqualTo(HOUR);
+        assertThat(hour.getTimestamp()).isEqualTo(start);
+        assertThat(hour.getMin()).isEqualTo(10.5);
+        assertThat(hour.getMax()).isEqualTo(30);
+        assertThat(hour.getCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void drainReturnsTheCumulativeAggregatesOfTheUpdatedIntervals() {
+        // Given
+        rollup.add("account", "asset", "sensors/room", metrics(1), HOUR, INTERVALS);
+        rollup.add("account", "asset", "sensors/room", metrics(3), HOUR + MINUTE, INTERVALS);
+        rollup.drain();
+
+        // When
+        rollup.add("account", "asset", "sensors/room", metrics(5), HOUR, INTERVALS);
+        List<EsMetricRollup.Bucket> buckets = rollup.drain();
+
+        // Then
+        assertThat(buckets).hasSize(2);
+        buckets.sort(Comparator.comparingLong(EsMetricRollup.Bucket::getInterval));
+        assertThat(buckets.get(0).getCount()).isEqualTo(2);
+        assertThat(buckets.get(0).getSum()).isEqualTo(6);
+        assertThat(buckets.get(1).getCount()).isEqualTo(3);
+        assertThat(buckets.get(1).getMin()).isEqualTo(1);
+        assertThat(buckets.get(1).getMax()).isEqualTo(5);
+        assertThat(rollup.drain()).isEmpty();
+    }
+
+    @Test
+    public void aggregateDocumentIdsAreStablePerNode() {
+        // Given
+        EsMetricRollup otherNode = new EsMetricRollup(0, HOUR, () -> now);
+        rollup.add("account", "asset", "sensors/room", metrics(1), HOUR, new long[] { HOUR });
+        otherNode.add("account", "asset", "sensors/room", metrics(1), HOUR, new long[] { HOUR });
+        String firstId = rollup.drain().get(0).getId();
+
+        // When
+        rollup.add("account", "asset", "sensors/room", metrics(2), HOUR, new long[] { HOUR });
+        rollup.add("account", "asset", "sensors/room", metrics(2), 2 * HOUR, new long[] { HOUR });
+        List<EsMetricRollup.Bucket> buckets = rollup.drain();
+        buckets.sort(Comparator.comparingLong(EsMetricRollup.Bucket::getTimestamp));
+
+        // Then
+        assertThat(buckets.get(0).getId()).isEqualTo(firstId);
+        assertThat(buckets.get(1).getId()).isNotEqualTo(firstId);
+        assertThat(otherNode.drain().get(0).getId()).isNotEqualTo(firstId);
+    }
+
+    @Test
+    public void aggregatesAreEvictedAfterTheLateness() {
+        // Given
+        now = HOUR;
+        rollup.add("account", "asset", "sensors/room", metrics(1), HOUR, new long[] { MINUTE });
+        rollup.drain();
+
+        // When
+        now = HOUR + MINUTE + HOUR + 1;
+        List<EsMetricRollup.Bucket> evicting = rollup.drain();
+        rollup.add("account", "asset", "sensors/room", metrics(2), HOUR, new long[] { MINUTE });
+        rollup.add("account", "asset", "sensors/room", metrics(3), now, new long[] { MINUTE });
+
+        // Then
+        assertThat(evicting).isEmpty();
+        List<EsMetricRollup.Bucket> buckets = rollup.drain();
+        assertThat(buckets).hasSize(1);
+        assertThat(buckets.get(0).getSum()).isEqualTo(3);
+    }
+}
@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettingKey;
+import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettings;
+import org.junit.Test;
+
+public class LocalServicePlanTest {
+
+    private static long[] defaultIntervals() {
+        return EsMetricRollup.parseIntervals(DatastoreSettings.getInstance().getString(DatastoreSettingKey.CONFIG_ROLLUP_INTERVALS, ""));
+    }
+
+    @Test
+    public void accountRollupIntervalsOverrideTheDefaultOnes() {
+        // When
+        LocalServicePlan servicePlan = new LocalServicePlan(Collections.singletonMap(LocalServicePlan.METRICS_ROLLUP_INTERVALS, "1h,5m"));
+
+        // Then
+        assertThat(servicePlan.getMetricsRollupIntervals()).containsExactly(TimeUnit.MINUTES.toMillis(5), TimeUnit.HOURS.toMillis(1));
+    }
+
+    @Test
+    public void malformedRollupIntervalsFallBackToTheDefaultOnes() {
+        // When
+        LocalServicePlan servicePlan = new LocalServicePlan(Collections.singletonMap(LocalServicePlan.METRICS_ROLLUP_INTERVALS, "5m,every hour"));
+
+        // Then
+        assertThat(servicePlan.getMetricsRollupIntervals()).containsExactly(defaultIntervals());
+    }
+
+    @Test
+    public void missingRollupIntervalsUseTheDefaultOnes() {
+        // When
+        LocalServicePlan servicePlan = new LocalServicePlan(null);
+
+        // Then
+        assertThat(servicePlan.getMetricsRollupIntervals()).containsExactly(defaultIntervals());
+    }
+}
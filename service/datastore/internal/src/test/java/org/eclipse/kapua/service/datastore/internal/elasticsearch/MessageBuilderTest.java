@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.eclipse.kapua.commons.util.KapuaDateUtils;
+import org.junit.Test;
+
+public class MessageBuilderTest {
+
+    private static Map<String, Object> metrics() {
+        Map<String, Object> metrics = new HashMap<String, Object>();
+        metrics.put("temperature", Collections.singletonMap("dbl", 21.5));
+        metrics.put("count", Collections.singletonMap("int", 3));
+        metrics.put(EsUtils.normalizeMetricName("room.name"), Collections.singletonMap("str", "kitchen"));
+        return metrics;
+    }
+
+    @Test
+    public void allMetricsAreDecodedWithoutProjection() throws ParseException {
+        // When
+        Map<String, Object> decoded = MessageBuilder.decodeMetrics(metrics(), null);
+
+        // Then
+        assertThat(decoded).hasSize(3)
+                           .containsEntry("temperature", 21.5)
+                           .containsEntry("count", 3)
+                           .containsEntry("room.name", "kitchen");
+    }
+
+    @Test
+    public void onlyProjectedMetricsAreDecoded() throws ParseException {
+        // When
+        Map<String, Object> decoded = MessageBuilder.decodeMetrics(metrics(), new HashSet<String>(Arrays.asList("room.name", "missing")));
+
+        // Then
+        assertThat(decoded).hasSize(1)
+                           .containsEntry("room.name", "kitchen");
+    }
+
+    @Test
+    public void metricsAreConvertedToTheirType() throws ParseException {
+        // Given: the values as read from the JSON source
+        Calendar cal = KapuaDateUtils.getKapuaCalendar();
+        cal.clear();
+        cal.set(2016, Calendar.JUNE, 15, 12, 30, 15);
+        byte[] bytes = new byte[] { 1, 2, 3, (byte) 0xff };
+
+        Map<String, Object> metrics = new HashMap<String, Object>();
+        metrics.put("seen", Collections.singletonMap("dte", "2016-06-15T12:30:15.000Z"));
+        metrics.put("total", Collections.singletonMap("lng", 42));
+        metrics.put("ratio", Collections.singletonMap("flt", 0.5d));
+        metrics.put("raw", Collections.singletonMap("bin", Base64.getEncoder().encodeToString(bytes)));
+
+        // When
+        Map<String, Object> decoded = MessageBuilder.decodeMetrics(metrics, null);
+
+        // Then
+        assertThat(decoded.get("seen")).isEqualTo(new Date(cal.getTimeInMillis()));
+        assertThat(decoded.get("total")).isEqualTo(42L);
+        assertThat(decoded.get("ratio")).isEqualTo(0.5f);
+        assertThat((byte[]) decoded.get("raw")).containsExactly(bytes);
+    }
+}
@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kapua.commons.util.KapuaDateUtils;
+import org.eclipse.kapua.service.datastore.internal.model.query.AndPredicateImpl;
+import org.eclipse.kapua.service.datastore.internal.model.query.MessageQueryImpl;
+import org.eclipse.kapua.service.datastore.internal.model.query.RangePredicateImpl;
+import org.eclipse.kapua.service.datastore.internal.model.query.TermPredicateImpl;
+import org.eclipse.kapua.service.datastore.model.query.MessageFetchStyle;
+import org.junit.Test;
+
+public class MessageQueryConverterTest {
+
+    private static final String ACCOUNT = "kapua-sys";
+
+    private final MessageQueryConverter converter = new MessageQueryConverter();
+
+    private static MessageQueryImpl timestampQuery(Long start, Long end) {
+        AndPredicateImpl predicate = new AndPredicateImpl();
+        predicate.addPredicate(new TermPredicateImpl(EsMessageField.ASSET, "device-1"));
+        predicate.addPredicate(new RangePredicateImpl(EsMessageField.TIMESTAMP, start, end));
+
+        MessageQueryImpl query = new MessageQueryImpl();
+        query.setPredicate(predicate);
+        return query;
+    }
+
+    private static long timestamp(int year, int month, int day, int hour) {
+        Calendar cal = KapuaDateUtils.getKapuaCalendar();
+        cal.clear();
+        cal.set(year, month, day, hour, 0);
+        return cal.getTimeInMillis();
+    }
+
+    @Test
+    public void lastHourTargetsOneIndex() {
+        // Given
+        long end = timestamp(2016, Calendar.JUNE, 15, 12);
+        long start = end - TimeUnit.HOURS.toMillis(1);
+
+        // When
+        String indexNames = converter.getIndexNames(ACCOUNT, timestampQuery(start, end));
+
+        // Then
+        assertThat(indexNames).isEqualTo(EsUtils.getActualIndexName(ACCOUNT, end));
+        assertThat(indexNames).isEqualTo(EsUtils.getActualIndexName(ACCOUNT, start));
+    }
+
+    @Test
+    public void rangeTargetsEveryCoveredWeek() {
+        // Given
+        long start = KapuaDateUtils.weekByFirstDay(new Date(timestamp(2016, Calendar.MAY, 18, 0))).getTime() + TimeUnit.HOURS.toMillis(12);
+        long end = start + TimeUnit.DAYS.toMillis(14);
+
+        // When
+        String indexNames = converter.getIndexNames(ACCOUNT, timestampQuery(start, end));
+
+        // Then
+        assertThat(indexNames.split(",")).containsExactly(EsUtils.getActualIndexName(ACCOUNT, start),
+                                                          EsUtils.getActualIndexName(ACCOUNT, start + TimeUnit.DAYS.toMillis(7)),
+                                                          EsUtils.getActualIndexName(ACCOUNT, end));
+    }
+
+    @Test
+    public void rangeAcrossTheYearEndTargetsTheIndexesOfBothYears() {
+        // Given
+        long start = timestamp(2015, Calendar.DECEMBER, 28, 0);
+        long end = timestamp(2016, Calendar.JANUARY, 4, 0);
+
+        // When
+        String[] indexNames = converter.getIndexNames(ACCOUNT, timestampQuery(start, end)).split(",");
+
+        // Then
+        for (long timestamp = start; timestamp <= end; timestamp += TimeUnit.HOURS.toMillis(1))
+            assertThat(indexNames).contains(EsUtils.getActualIndexName(ACCOUNT, timestamp));
+        assertThat(indexNames).contains(EsUtils.getActualIndexName(ACCOUNT, timestamp(2015, Calendar.DECEMBER, 31, 23)),
+                                        EsUtils.getActualIndexName(ACCOUNT, timestamp(2016, Calendar.JANUARY, 1, 0)));
+        assertThat(indexNames[0]).startsWith(ACCOUNT + "-2015-");
+        assertThat(indexNames[indexNames.length - 1]).startsWith(ACCOUNT + "-2016-");
+    }
+
+    @Test
+    public void unboundedQueriesTargetEveryIndex() {
+        // Given
+        MessageQueryImpl query = new MessageQueryImpl();
+        query.setPredicate(new TermPredicateImpl(EsMessageField.ASSET, "device-1"));
+
+        // When / Then
+        assertThat(converter.getIndexNames(ACCOUNT, query)).isEqualTo(EsUtils.getAnyIndexName(ACCOUNT));
+        assertThat(converter.getIndexNames(ACCOUNT, timestampQuery(timestamp(2016, Calendar.JUNE, 15, 12), null))).isEqualTo(EsUtils.getAnyIndexName(ACCOUNT));
+        assertThat(converter.getIndexNames(ACCOUNT, timestampQuery(0L, timestamp(2016, Calendar.JUNE, 15, 12)))).isEqualTo(EsUtils.getAnyIndexName(ACCOUNT));
+    }
+
+    @Test
+    public void metricProjectionNarrowsTheFetchedSource() {
+        // Given
+        MessageQueryImpl query = timestampQuery(0L, 1L);
+        query.setFetchStyle(MessageFetchStyle.METADATA_HEADERS);
+        query.setMetricProjection(new HashSet<String>(Arrays.asList("temperature", "room.humidity")));
+
+        // When
+        String[] includes = converter.getIncludes(query);
+
+        // Then
+        assertThat(includes).containsOnly(EsSchema.MESSAGE_COLLECTED_ON,
+                                           EsSchema.MESSAGE_POS + ".*",
+                                           EsSchema.MESSAGE_MTR + ".temperature.*",
+                                           EsSchema.MESSAGE_MTR + "." + EsUtils.normalizeMetricName("room.humidity") + ".*");
+        assertThat(converter.getExcludes(query.getFetchStyle())).containsExactly(EsSchema.MESSAGE_BODY);
+    }
+
+    @Test
+    public void noMetricProjectionFetchesTheWholeFetchStyle() {
+        // Given
+        MessageQueryImpl query = timestampQuery(0L, 1L);
+        query.setFetchStyle(MessageFetchStyle.METADATA_HEADERS_PAYLOAD);
+
+        // When / Then
+        assertThat(converter.getIncludes(query)).containsExactly("*");
+
+        query.setFetchStyle(MessageFetchStyle.METADATA);
+        query.setMetricProjection(new HashSet<String>(Arrays.asList("temperature")));
+        assertThat(converter.getIncludes(query)).containsExactly("");
+    }
+}
@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import org.eclipse.kapua.service.datastore.internal.model.query.AndPredicateImpl;
+import org.eclipse.kapua.service.datastore.internal.model.query.MetricAggregationQueryImpl;
+import org.eclipse.kapua.service.datastore.internal.model.query.RangePredicateImpl;
+import org.eclipse.kapua.service.datastore.internal.model.query.TermPredicateImpl;
+import org.eclipse.kapua.service.datastore.internal.model.query.TopicMatchPredicateImpl;
+import org.eclipse.kapua.service.datastore.model.query.SortDirection;
+import org.eclipse.kapua.service.datastore.model.query.StorablePredicate;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.junit.Test;
+
+public class MetricAggregationQueryConverterTest {
+
+    private static final String METRIC_FIELD = EsSchema.MESSAGE_MTR + ".temperature.dbl";
+
+    private static MetricAggregationQueryImpl query() {
+        MetricAggregationQueryImpl query = new MetricAggregationQueryImpl();
+        query.setPredicate(new RangePredicateImpl(EsMessageField.TIMESTAMP, new Date(0), new Date(3600000)));
+        query.setMetricName("temperature");
+        query.setMetricType(Double.class);
+        return query;
+    }
+
+    @Test
+    public void intervalAggregatesPerDateHistogramBucket() throws Exception {
+        // Given
+        MetricAggregationQueryImpl query = query();
+        query.setInterval(60000);
+        query.setPercents(50, 99);
+        query.setSort(SortDirection.ASC);
+
+        // When
+        SearchRequestBuilder builder = new MetricAggregationQueryConverter().toSearchRequestBuilder("index", EsSchema.MESSAGE_TYPE_NAME, METRIC_FIELD, query);
+
+        // Then
+        String source = builder.toString().replaceAll("\\s", "");
+        assertThat(source).contains("\"size\":0");
+        assertThat(source).contains("\"exists\":{\"field\":\"" + METRIC_FIELD + "\"}");
+        assertThat(source).contains("\"range\":{\"" + EsSchema.MESSAGE_TIMESTAMP + "\"");
+        assertThat(source).contains("\"date_histogram\":{\"field\":\"" + EsSchema.MESSAGE_TIMESTAMP + "\",\"interval\":\"1m\"");
+        assertThat(source).contains("\"order\":{\"_key\":\"asc\"}");
+        assertThat(source).contains("\"stats\":{\"field\":\"" + METRIC_FIELD + "\"}");
+        assertThat(source).contains("\"percents\":[50.0,99.0]");
+    }
+
+    @Test
+    public void noIntervalAggregatesAllTheMatchingMessages() throws Exception {
+        // Given
+        MetricAggregationQueryImpl query = query();
+
+        // When
+        SearchRequestBuilder builder = new MetricAggregationQueryConverter().toSearchRequestBuilder("index", EsSchema.MESSAGE_TYPE_NAME, METRIC_FIELD, query);
+
+        // Then
+        String source = builder.toString().replaceAll("\\s", "");
+        assertThat(source).doesNotContain("date_histogram");
+        assertThat(source).doesNotContain("percentiles");
+        assertThat(source).contains("\"stats\":{\"field\":\"" + METRIC_FIELD + "\"}");
+    }
+
+    private static final long HOUR = 3600000;
+
+    private static MetricAggregationQueryImpl topicQuery(String topic, long start, long end) {
+        MetricAggregationQueryImpl query = new MetricAggregationQueryImpl();
+        query.setPredicate(new AndPredicateImpl(Arrays.<StorablePredicate> asList(new TopicMatchPredicateImpl(topic),
+                                                                                  new RangePredicateImpl(EsMessageField.TIMESTAMP, new Date(start), new Date(end)))));
+        query.setMetricName("temperature");
+        query.setMetricType(Double.class);
+        query.setInterval(4 * HOUR);
+        return query;
+    }
+
+    @Test
+    public void singleTopicQueriesOverWholeRollupIntervalsAreServedByTheRollups() {
+        // Given
+        MetricAggregationQueryImpl query = topicQuery("kapua-sys/device-1/heater/data", 2 * HOUR, 10 * HOUR - 1);
+
+        // When
+        KapuaTopic rollupTopic = new MetricAggregationQueryConverter().getRollupTopic("kapua-sys", query, HOUR);
+
+        // Then
+        assertThat(rollupTopic).isNotNull();
+        assertThat(rollupTopic.getAsset()).isEqualTo("device-1");
+        assertThat(rollupTopic.getSemanticTopic()).isEqualTo("heater/data");
+    }
+
+    @Test
+    public void unboundedTimestampRangesAreServedByTheRollups() {
+        // Given
+        MetricAggregationQueryImpl query = topicQuery("kapua-sys/device-1/heater/data", 0, 0);
+        query.setPredicate(new TopicMatchPredicateImpl("kapua-sys/device-1/heater/data"));
+
+        // When / Then
+        assertThat(new MetricAggregationQueryConverter().getRollupTopic("kapua-sys", query, HOUR)).isNotNull();
+    }
+
+    @Test
+    public void otherQueriesAreServedByTheMessages() {
+        MetricAggregationQueryConverter converter = new MetricAggregationQueryConverter();
+
+        // No fitting rollup interval
+        assertThat(converter.getRollupTopic("kapua-sys", topicQuery("kapua-sys/device-1/heater/data", 0, 4 * HOUR - 1), 0)).isNull();
+
+        // Partial rollup intervals
+        assertThat(converter.getRollupTopic("kapua-sys", topicQuery("kapua-sys/device-1/heater/data", HOUR / 2, 4 * HOUR - 1), HOUR)).isNull();
+        assertThat(converter.getRollupTopic("kapua-sys", topicQuery("kapua-sys/device-1/heater/data", 0, 4 * HOUR), HOUR)).isNull();
+
+        // Wildcards and other accounts
+        assertThat(converter.getRollupTopic("kapua-sys", topicQuery("kapua-sys/+/heater/data", 0, 4 * HOUR - 1), HOUR)).isNull();
+        assertThat(converter.getRollupTopic("kapua-sys", topicQuery("kapua-sys/device-1/heater/#", 0, 4 * HOUR - 1), HOUR)).isNull();
+        assertThat(converter.getRollupTopic("kapua-sys", topicQuery("other/device-1/heater/data", 0, 4 * HOUR - 1), HOUR)).isNull();
+
+        // Percentiles
+        MetricAggregationQueryImpl percentilesQuery = topicQuery("kapua-sys/device-1/heater/data", 0, 4 * HOUR - 1);
+        percentilesQuery.setPercents(50);
+        assertThat(converter.getRollupTopic("kapua-sys", percentilesQuery, HOUR)).isNull();
+
+        // No interval
+        MetricAggregationQueryImpl totalQuery = topicQuery("kapua-sys/device-1/heater/data", 0, 4 * HOUR - 1);
+        totalQuery.setInterval(0);
+        assertThat(converter.getRollupTopic("kapua-sys", totalQuery, HOUR)).isNull();
+
+        // Predicates on other fields
+        MetricAggregationQueryImpl termQuery = topicQuery("kapua-sys/device-1/heater/data", 0, 4 * HOUR - 1);
+        termQuery.setPredicate(new AndPredicateImpl(Arrays.<StorablePredicate> asList(termQuery.getPredicate(),
+                                                                                      new TermPredicateImpl(EsMessageField.ASSET, "device-1"))));
+        assertThat(converter.getRollupTopic("kapua-sys", termQuery, HOUR)).isNull();
+
+        // No topic
+        MetricAggregationQueryImpl rangeQuery = query();
+        rangeQuery.setInterval(HOUR);
+        assertThat(converter.getRollupTopic("kapua-sys", rangeQuery, HOUR)).isNull();
+    }
+}
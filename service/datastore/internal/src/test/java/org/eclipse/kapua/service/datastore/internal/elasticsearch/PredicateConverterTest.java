@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+public class PredicateConverterTest {
+
+    private static boolean matches(String filter, String semTopic) {
+        // The converted expressions only use the syntax shared by Lucene and java regular expressions
+        return Pattern.matches(PredicateConverter.toRegexp(filter), semTopic);
+    }
+
+    @Test
+    public void wildcardFiltersAreConvertedToRegularExpressions() {
+        assertThat(PredicateConverter.toRegexp("sensors/+/max")).isEqualTo("sensors/[^/]*/max");
+        assertThat(PredicateConverter.toRegexp("sensors/#")).isEqualTo("sensors(/.*)?");
+        assertThat(PredicateConverter.toRegexp("#")).isEqualTo(".*");
+        assertThat(PredicateConverter.toRegexp("a.b/+")).isEqualTo("a\\.b/[^/]*");
+    }
+
+    @Test
+    public void convertedExpressionsFollowTheMqttRules() {
+        assertThat(matches("sensors/+/max", "sensors/temperature/max")).isTrue();
+        assertThat(matches("sensors/+/max", "sensors/temperature/room/max")).isFalse();
+        assertThat(matches("sensors/#", "sensors")).isTrue();
+        assertThat(matches("sensors/#", "sensors/temperature/max")).isTrue();
+        assertThat(matches("sensors/#", "sensorsx")).isFalse();
+        assertThat(matches("a.b/+", "axb/c")).isFalse();
+    }
+
+    @Test
+    public void withoutKnownTopicsOnlyTheFilterIsMatched() throws Exception {
+        // Given
+        KapuaTopic kapuaTopic = new KapuaTopic("kapua-sys/device-1/sensors/+/max");
+
+        // When
+        String query = PredicateConverter.toWildcardQuery(kapuaTopic, null).toString();
+
+        // Then
+        assertThat(query).contains("regexp", "sensors/[^/]*/max")
+                         .doesNotContain("terms");
+    }
+
+    @Test
+    public void theKnownTopicsReplaceTheFilter() throws Exception {
+        // Given
+        KapuaTopic kapuaTopic = new KapuaTopic("kapua-sys/device-1/sensors/+/max");
+
+        // When
+        String query = PredicateConverter.toWildcardQuery(kapuaTopic, Arrays.asList("device-1/sensors/temperature/max", "device-1/sensors/humidity/max")).toString();
+
+        // Then
+        assertThat(query).contains("terms", "sensors/temperature/max", "sensors/humidity/max")
+                         .doesNotContain("regexp");
+    }
+}
@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.StorableIdHasher.Algorithm;
+import org.elasticsearch.common.Base64;
+import org.junit.Test;
+
+import com.google.common.hash.Hashing;
+
+public class StorableIdHasherTest {
+
+    private static List<String> names() {
+        List<String> names = new ArrayList<String>();
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            names.add(name.toString());
+            name.append((char) ('a' + i % 26));
+        }
+        names.add("kapua-sys/device-1/heater/data");
+        names.add("kapua-sys/device-1/température/°C");
+        names.add("account/asset/温度/😀");
+        names.add("unpaired/\ud83d/surrogate");
+        return names;
+    }
+
+    @Test
+    public void sha256IdsMatchTheStoredIds() {
+        // Given
+        StorableIdHasher hasher = new StorableIdHasher(Algorithm.SHA256);
+
+        for (String name : names()) {
+            // When
+            String id = hasher.hash(name);
+
+            // Then
+            String storedId = Base64.encodeBytes(Hashing.sha256().hashString(name, StandardCharsets.UTF_8).asBytes());
+            assertThat(id).isEqualTo(storedId);
+        }
+    }
+
+    @Test
+    public void murmur3IdsAreStable() {
+        // Given
+        StorableIdHasher hasher = new StorableIdHasher(Algorithm.MURMUR3);
+
+        for (String name : names()) {
+            // When
+            String id = hasher.hash(name);
+
+            // Then
+            byte[] expectedHash = Hashing.murmur3_128().hashString(name, StandardCharsets.UTF_8).asBytes();
+            assertThat(id).isEqualTo(java.util.Base64.getUrlEncoder().withoutPadding().encodeToString(expectedHash));
+            assertThat(id).hasSize(22);
+        }
+    }
+
+    @Test
+    public void idsHaveTheStoredFormat() {
+        // Given
+        StorableIdHasher sha256Hasher = new StorableIdHasher(Algorithm.SHA256);
+        StorableIdHasher murmur3Hasher = new StorableIdHasher(Algorithm.MURMUR3);
+
+        // When
+        String sha256Id = sha256Hasher.hash("kapua-sys/device-1/heater", "data");
+        String murmur3Id = murmur3Hasher.hash("kapua-sys/device-1/heater", "data");
+
+        // Then
+        assertThat(sha256Id).isEqualTo("HZ6d1qJSVpVMP41TvuioQEppMB845nKetwr1KlX/VuM=");
+        assertThat(murmur3Id).hasSize(22).matches("[A-Za-z0-9_-]+");
+    }
+
+    @Test
+    public void childIdsAreTheIdsOfTheFullNames() {
+        for (Algorithm algorithm : Algorithm.values()) {
+            // Given
+            StorableIdHasher hasher = new StorableIdHasher(algorithm);
+
+            // When
+            String id = hasher.hash("kapua-sys/device-1/heater", "temperature");
+
+            // Then
+            assertThat(id).isEqualTo(hasher.hash("kapua-sys/device-1/heater/temperature"));
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch.dao;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.ShardSearchFailure;
+import org.elasticsearch.common.text.Text;
+import org.elasticsearch.search.SearchHitField;
+import org.elasticsearch.search.internal.InternalSearchHit;
+import org.elasticsearch.search.internal.InternalSearchHits;
+import org.elasticsearch.search.internal.InternalSearchResponse;
+import org.junit.Test;
+
+public class EsMessageDAOTest {
+
+    private static SearchResponse page(String scrollId, int firstId, int size, long totalHits) {
+        InternalSearchHit[] hits = new InternalSearchHit[size];
+        for (int i = 0; i < size; i++) {
+            hits[i] = new InternalSearchHit(firstId + i, String.valueOf(firstId + i), new Text("message"), Collections.<String, SearchHitField> emptyMap());
+        }
+        InternalSearchResponse internalResponse = new InternalSearchResponse(new InternalSearchHits(hits, totalHits, 1.0f), null, null, null, false, null);
+        return new SearchResponse(internalResponse, scrollId, 1, 1, 1, new ShardSearchFailure[0]);
+    }
+
+    private static Map<String, SearchResponse> pages(int pageSize, int totalHits) {
+        // Page n is read with the scroll id returned by page n - 1, the page after the last hit is empty
+        Map<String, SearchResponse> pages = new HashMap<>();
+        int pageCount = (totalHits + pageSize - 1) / pageSize;
+        for (int n = 1; n <= pageCount; n++) {
+            pages.put("scroll-" + (n - 1), page("scroll-" + n, n * pageSize, Math.max(0, Math.min(pageSize, totalHits - n * pageSize)), totalHits));
+        }
+        return pages;
+    }
+
+    @Test
+    public void scrollHandlesEveryHitExactlyOnce() throws Exception {
+        // Given
+        Map<String, SearchResponse> pages = pages(5, 23);
+        List<String> readScrollIds = new ArrayList<>();
+        List<String> handledIds = new ArrayList<>();
+
+        // When
+        long count = EsMessageDAO.scroll(page("scroll-0", 0, 5, 23),
+                                         scrollId -> {
+                                             readScrollIds.add(scrollId);
+                                             return pages.get(scrollId);
+                                         },
+                                         searchHit -> handledIds.add(searchHit.getId()));
+
+        // Then
+        List<String> expectedIds = new ArrayList<>();
+        for (int i = 0; i < 23; i++) {
+            expectedIds.add(String.valueOf(i));
+        }
+        assertThat(count).isEqualTo(23);
+        assertThat(handledIds).isEqualTo(expectedIds);
+        assertThat(readScrollIds).containsExactly("scroll-0", "scroll-1", "scroll-2", "scroll-3", "scroll-4");
+    }
+
+    @Test
+    public void scrollStopsWhenTheHandlerDoes() throws Exception {
+        // Given
+        Map<String, SearchResponse> pages = pages(5, 23);
+        List<String> readScrollIds = new ArrayList<>();
+        List<String> handledIds = new ArrayList<>();
+
+        // When
+        long count = EsMessageDAO.scroll(page("scroll-0", 0, 5, 23),
+                                         scrollId -> {
+                                             readScrollIds.add(scrollId);
+                                             return pages.get(scrollId);
+                                         },
+                                         searchHit -> {
+                                             handledIds.add(searchHit.getId());
+                                             return handledIds.size() < 7;
+                                         });
+
+        // Then
+        assertThat(count).isEqualTo(7);
+        assertThat(handledIds).containsExactly("0", "1", "2", "3", "4", "5", "6");
+        assertThat(readScrollIds).containsExactly("scroll-0");
+    }
+
+    @Test
+    public void emptyScrollHandlesNothing() throws Exception {
+        // Given
+        List<String> readScrollIds = new ArrayList<>();
+
+        // When
+        long count = EsMessageDAO.scroll(page("scroll-0", 0, 0, 0),
+                                         scrollId -> {
+                                             readScrollIds.add(scrollId);
+                                             return null;
+                                         },
+                                         searchHit -> true);
+
+        // Then
+        assertThat(count).isEqualTo(0);
+        assertThat(readScrollIds).isEmpty();
+    }
+}
@@ -13,6 +13,8 @@ package org.eclipse.kapua.service.device.call.kura;
 
 import java.util.Date;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.locator.KapuaLocator;
@@ -80,6 +82,78 @@ public class KuraDeviceCallImpl implements DeviceCall<KuraRequestMessage, KuraRe
         return send(requestMessage, timeout);
     }
 
+    @Override
+    @SuppressWarnings({ "unchecked" })
+    public CompletableFuture<KuraResponseMessage> sendAsync(KuraRequestMessage requestMessage, Long timeout)
+        throws KapuaException
+    {
+        TransportFacade transportFacade = null;
+        try {
+            //
+            // Borrow a KapuaClient
+            transportFacade = borrowClient();
+
+            //
+            // Get Kura to transport translator for the request and vice versa
+            Translator translatorKuraTransport = getTranslator(KuraRequestMessage.class, transportFacade.getMessageClass());
+            Translator translatorTransportKura = getTranslator(transportFacade.getMessageClass(), KuraResponseMessage.class);
+
+            prepareRequest(requestMessage, transportFacade, timeout);
+
+            //
+            // Do send
+            CompletableFuture<TransportMessage> transportResponseFuture;
+            try {
+                transportResponseFuture = transportFacade.sendAsync((TransportMessage) translatorKuraTransport.translate(requestMessage), timeout);
+            }
+            catch (KapuaException e) {
+                throw new KuraMqttDeviceCallException(KuraMqttDeviceCallErrorCodes.CLIENT_SEND_ERROR,
+                                                      e,
+                                                      (Object[]) null);
+            }
+
+            //
+            // Return the client and translate the response once received
+            TransportFacade sendingTransportFacade = transportFacade;
+            transportFacade = null;
+            return transportResponseFuture.handle((transportResponseMessage, error) -> {
+                sendingTransportFacade.clean();
+
+                try {
+                    if (error != null) {
+                        Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                        throw new KuraMqttDeviceCallException(KuraMqttDeviceCallErrorCodes.CLIENT_SEND_ERROR,
+                                                              cause,
+                                                              (Object[]) null);
+                    }
+
+                    return transportResponseMessage != null ? (KuraResponseMessage) translatorTransportKura.translate(transportResponseMessage) : null;
+                }
+                catch (KuraMqttDeviceCallException e) {
+                    throw new CompletionException(e);
+                }
+                catch (KapuaException ke) {
+                    throw new CompletionException(new KuraMqttDeviceCallException(KuraMqttDeviceCallErrorCodes.CALL_ERROR,
+                                                                                  ke,
+                                                                                  (Object[]) null));
+                }
+            });
+        }
+        catch (KuraMqttDeviceCallException e) {
+            throw e;
+        }
+        catch (KapuaException ke) {
+            throw new KuraMqttDeviceCallException(KuraMqttDeviceCallErrorCodes.CALL_ERROR,
+                                                  ke,
+                                                  (Object[]) null);
+        }
+        finally {
+            if (transportFacade != null) {
+                transportFacade.clean();
+            }
+        }
+    }
+
     @SuppressWarnings({ "unchecked" })
     private KuraResponseMessage send(KuraRequestMessage requestMessage, Long timeout)
         throws KuraMqttDeviceCallException
@@ -96,30 +170,11 @@ public class KuraDeviceCallImpl implements DeviceCall<KuraRequestMessage, KuraRe
             Translator translatorKuraTransport = getTranslator(KuraRequestMessage.class, transportFacade.getMessageClass());
             Translator translatorTransportKura = getTranslator(transportFacade.getMessageClass(), KuraResponseMessage.class);
 
-            //
-            // Make the request
-            // Add requestId and requesterClientId to both payload and channel if response is expected
-            // Note: Adding to both payload and channel to let the translator choose what to do base on the transport used.
-            KuraRequestChannel requestChannel = requestMessage.getChannel();
-            KuraRequestPayload requestPayload = requestMessage.getPayload();
-            if (timeout != null) {
-                // FIXME: create an utilty class to use the same synchronized random instance to avoid duplicates
-                Random r = new Random();
-                String requestId = String.valueOf(r.nextLong());
-
-                requestChannel.setRequestId(requestId);
-                requestChannel.setRequesterClientId(transportFacade.getClientId());
-
-                requestPayload.setRequestId(requestId);
-                requestPayload.setRequesterClientId(transportFacade.getClientId());
-            }
+            prepareRequest(requestMessage, transportFacade, timeout);
 
             //
             // Do send
             try {
-                // Set current timestamp
-                requestMessage.setTimestamp(new Date());
-
                 // Send
                 TransportMessage transportResponseMessage = transportFacade.sendSync((TransportMessage) translatorKuraTransport.translate(requestMessage), timeout);
 
@@ -156,6 +211,30 @@ public class KuraDeviceCallImpl implements DeviceCall<KuraRequestMessage, KuraRe
     //
     // Private methods
     //
+    private void prepareRequest(KuraRequestMessage requestMessage, TransportFacade transportFacade, Long timeout)
+    {
+        //
+        // Make the request
+        // Add requestId and requesterClientId to both payload and channel if response is expected
+        // Note: Adding to both payload and channel to let the translator choose what to do base on the transport used.
+        KuraRequestChannel requestChannel = requestMessage.getChannel();
+        KuraRequestPayload requestPayload = requestMessage.getPayload();
+        if (timeout != null) {
+            // FIXME: create an utilty class to use the same synchronized random instance to avoid duplicates
+            Random r = new Random();
+            String requestId = String.valueOf(r.nextLong());
+
+            requestChannel.setRequestId(requestId);
+            requestChannel.setRequesterClientId(transportFacade.getClientId());
+
+            requestPayload.setRequestId(requestId);
+            requestPayload.setRequesterClientId(transportFacade.getClientId());
+        }
+
+        // Set current timestamp
+        requestMessage.setTimestamp(new Date());
+    }
+
     private TransportFacade borrowClient()
         throws KuraMqttDeviceCallException
     {
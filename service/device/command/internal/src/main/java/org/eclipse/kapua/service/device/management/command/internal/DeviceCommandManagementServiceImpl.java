@@ -12,6 +12,7 @@
 package org.eclipse.kapua.service.device.management.command.internal;
 
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
 
 import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.commons.util.ArgumentValidator;
@@ -48,10 +49,34 @@ public class DeviceCommandManagementServiceImpl implements DeviceCommandManageme
 
     private static final Domain deviceManagementDomain = new DeviceManagementDomain();
 
-    @SuppressWarnings({ "rawtypes", "unchecked" })
+    @SuppressWarnings({ "rawtypes" })
     @Override
     public DeviceCommandOutput exec(KapuaId scopeId, KapuaId deviceId, DeviceCommandInput commandInput, Long timeout)
             throws KapuaException {
+        CommandRequestMessage commandRequestMessage = newExecRequest(scopeId, deviceId, commandInput);
+
+        //
+        // Do exec
+        DeviceCallExecutor deviceApplicationCall = new DeviceCallExecutor(commandRequestMessage, timeout);
+        CommandResponseMessage responseMessage = (CommandResponseMessage) deviceApplicationCall.send();
+
+        return handleExecResponse(scopeId, deviceId, responseMessage);
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    @Override
+    public CompletableFuture<DeviceCommandOutput> execAsync(KapuaId scopeId, KapuaId deviceId, DeviceCommandInput commandInput, Long timeout)
+            throws KapuaException {
+        CommandRequestMessage commandRequestMessage = newExecRequest(scopeId, deviceId, commandInput);
+
+        //
+        // Do exec
+        DeviceCallExecutor deviceApplicationCall = new DeviceCallExecutor(commandRequestMessage, timeout);
+        return deviceApplicationCall.sendAsync(responseMessage -> handleExecResponse(scopeId, deviceId, (CommandResponseMessage) responseMessage));
+    }
+
+    private CommandRequestMessage newExecRequest(KapuaId scopeId, KapuaId deviceId, DeviceCommandInput commandInput)
+            throws KapuaException {
         //
         // Argument Validation
         ArgumentValidator.notNull(scopeId, "scopeId");
@@ -90,13 +115,14 @@ public class DeviceCommandManagementServiceImpl implements DeviceCommandManageme
         commandRequestMessage.setPayload(commandRequestPayload);
         commandRequestMessage.setChannel(commandRequestChannel);
 
-        //
-        // Do exec
-        DeviceCallExecutor deviceApplicationCall = new DeviceCallExecutor(commandRequestMessage, timeout);
-        CommandResponseMessage responseMessage = (CommandResponseMessage) deviceApplicationCall.send();
+        return commandRequestMessage;
+    }
 
+    private DeviceCommandOutput handleExecResponse(KapuaId scopeId, KapuaId deviceId, CommandResponseMessage responseMessage)
+            throws KapuaException {
         //
         // Create event
+        KapuaLocator locator = KapuaLocator.getInstance();
         DeviceEventService deviceEventService = locator.getService(DeviceEventService.class);
         DeviceEventFactory deviceEventFactory = locator.getFactory(DeviceEventFactory.class);
 
@@ -12,7 +12,12 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.device.management.commons.call;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
 import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.commons.security.KapuaSecurityUtils;
+import org.eclipse.kapua.commons.security.KapuaSession;
 import org.eclipse.kapua.locator.KapuaLocator;
 import org.eclipse.kapua.service.device.call.DeviceCall;
 import org.eclipse.kapua.service.device.call.DeviceCallFactory;
@@ -43,6 +48,31 @@ import org.eclipse.kapua.translator.Translator;
 @SuppressWarnings("rawtypes")
 public class DeviceCallExecutor<C extends KapuaRequestChannel, P extends KapuaRequestPayload, RQ extends KapuaRequestMessage<C, P>, RS extends KapuaResponseMessage>
 {
+
+    /**
+     * Device call response handler.<br>
+     * It converts the response message received from the device into the result of the asynchronous device call.
+     *
+     * @param <RS> response message type
+     * @param <T> result type
+     *
+     * @since 1.0
+     *
+     */
+    public interface ResponseHandler<RS extends KapuaResponseMessage, T>
+    {
+
+        /**
+         * Handle the response message
+         *
+         * @param responseMessage
+         * @return
+         * @throws KapuaException
+         */
+        public T handle(RS responseMessage)
+            throws KapuaException;
+    }
+
     private RQ   requestMessage;
     private Long timeout;
 
@@ -132,4 +162,86 @@ public class DeviceCallExecutor<C extends KapuaRequestChannel, P extends KapuaRe
 
         return (RS) tClientToKapua.translate(responseMessage);
     }
+
+    /**
+     * Performs the device call without blocking the caller while waiting for the device response
+     *
+     * @return the future completed with the response message or exceptionally (with a {@link KapuaException} as cause) if the call fails
+     * @throws KapuaException if the request cannot be sent
+     */
+    public CompletableFuture<RS> sendAsync()
+        throws KapuaException
+    {
+        return sendAsync(responseMessage -> responseMessage);
+    }
+
+    /**
+     * Performs the device call without blocking the caller while waiting for the device response.<br>
+     * Once the response is received, the given handler is called with a copy of the security session of the caller, so it is subject to the same
+     * permission checks of the synchronous call (trusted mode only if the caller was in trusted mode). The future is completed with the handler result.
+     *
+     * @param responseHandler
+     * @return the future completed with the handler result or exceptionally (with a {@link KapuaException} as cause) if the call fails
+     * @throws KapuaException if the request cannot be sent
+     */
+    @SuppressWarnings({ "unchecked" })
+    public <T> CompletableFuture<T> sendAsync(ResponseHandler<RS, T> responseHandler)
+        throws KapuaException
+    {
+        //
+        // Get the correct device call
+        KapuaLocator locator = KapuaLocator.getInstance();
+        DeviceCallFactory kapuaDeviceCallFactory = locator.getFactory(DeviceCallFactory.class);
+        DeviceCall<DeviceRequestMessage, DeviceResponseMessage> deviceCall = kapuaDeviceCallFactory.newDeviceCall();
+        Translator tKapuaToClient = Translator.getTranslatorFor(requestMessage.getRequestClass(),
+                                                                deviceCall.getBaseMessageClass());
+        Translator tClientToKapua = Translator.getTranslatorFor(deviceCall.getBaseMessageClass(),
+                                                                requestMessage.getResponseClass());
+
+        timeout = timeout == null ? DeviceManagementSetting.getInstance().getLong(DeviceManagementSettingKey.REQUEST_TIMEOUT) : timeout;
+
+        DeviceRequestMessage deviceRequestMessage = (DeviceRequestMessage) tKapuaToClient.translate(requestMessage);
+        KapuaSession session = KapuaSecurityUtils.getSession();
+
+        return deviceCall.sendAsync(deviceRequestMessage, timeout)
+                         .thenApply(responseMessage -> {
+                             try {
+                                 RS kapuaResponseMessage = (RS) tClientToKapua.translate(responseMessage);
+                                 return handleAs(session, responseHandler, kapuaResponseMessage);
+                             }
+                             catch (KapuaException e) {
+                                 throw new CompletionException(e);
+                             }
+                         });
+    }
+
+    private static <RS extends KapuaResponseMessage, T> T handleAs(KapuaSession session, ResponseHandler<RS, T> responseHandler, RS responseMessage)
+        throws KapuaException
+    {
+        KapuaSession previousSession = KapuaSecurityUtils.getSession();
+        if (session != null) {
+            KapuaSecurityUtils.setSession(new KapuaSession(session.getAccessToken(), session.getScopeId(), session.getUserId()));
+        }
+        try {
+            // The copy is never trusted, a caller in trusted mode keeps it the same way the synchronous call would
+            if (session != null && session.isTrustedMode()) {
+                return KapuaSecurityUtils.doPriviledge(() -> responseHandler.handle(responseMessage));
+            }
+            return responseHandler.handle(responseMessage);
+        }
+        catch (KapuaException e) {
+            throw e;
+        }
+        catch (Exception e) {
+            throw KapuaException.internalError(e);
+        }
+        finally {
+            if (previousSession != null) {
+                KapuaSecurityUtils.setSession(previousSession);
+            }
+            else {
+                KapuaSecurityUtils.clearSession();
+            }
+        }
+    }
 }
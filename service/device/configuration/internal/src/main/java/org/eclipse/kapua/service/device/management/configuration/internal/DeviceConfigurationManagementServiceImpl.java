@@ -14,6 +14,7 @@ package org.eclipse.kapua.service.device.management.configuration.internal;
 
 import java.io.StringWriter;
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
 
 import javax.xml.bind.JAXBException;
 import javax.xml.stream.FactoryConfigurationError;
@@ -62,10 +63,22 @@ public class DeviceConfigurationManagementServiceImpl implements DeviceConfigura
 
     private static final Domain deviceManagementDomain = new DeviceManagementDomain();
 
-    @SuppressWarnings({ "rawtypes", "unchecked" })
+    @SuppressWarnings({ "rawtypes" })
     @Override
     public DeviceConfiguration get(KapuaId scopeId, KapuaId deviceId, String configurationId, String configurationComponentPid, Long timeout)
             throws KapuaException {
+        ConfigurationRequestMessage configurationRequestMessage = newGetRequest(scopeId, deviceId, configurationId, configurationComponentPid);
+
+        //
+        // Do get
+        DeviceCallExecutor deviceApplicationCall = new DeviceCallExecutor(configurationRequestMessage, timeout);
+        ConfigurationResponseMessage responseMessage = (ConfigurationResponseMessage) deviceApplicationCall.send();
+
+        return handleGetResponse(scopeId, deviceId, responseMessage);
+    }
+
+    private ConfigurationRequestMessage newGetRequest(KapuaId scopeId, KapuaId deviceId, String configurationId, String configurationComponentPid)
+            throws KapuaException {
         //
         // Argument Validation
         ArgumentValidator.notNull(scopeId, "scopeId");
@@ -96,56 +109,24 @@ public class DeviceConfigurationManagementServiceImpl implements DeviceConfigura
         configurationRequestMessage.setPayload(configurationRequestPayload);
         configurationRequestMessage.setChannel(configurationRequestChannel);
 
-        //
-        // Do get
-        DeviceCallExecutor deviceApplicationCall = new DeviceCallExecutor(configurationRequestMessage, timeout);
-        ConfigurationResponseMessage responseMessage = (ConfigurationResponseMessage) deviceApplicationCall.send();
-
-        //
-        // Parse the response
-        ConfigurationResponsePayload responsePayload = responseMessage.getPayload();
-
-        DeviceManagementSetting config = DeviceManagementSetting.getInstance();
-        String charEncoding = config.getString(DeviceManagementSettingKey.CHAR_ENCODING);
-
-        DeviceConfiguration deviceConfiguration = null;
-        if (responsePayload.getBody() != null) {
-            String body = null;
-            try {
-                body = new String(responsePayload.getBody(), charEncoding);
-            } catch (Exception e) {
-                throw new DeviceManagementException(DeviceManagementErrorCodes.RESPONSE_PARSE_EXCEPTION, e, responsePayload.getBody());
-
-            }
-
-            try {
-                deviceConfiguration = XmlUtil.unmarshal(body, DeviceConfigurationImpl.class);
-            } catch (Exception e) {
-                throw new DeviceManagementException(DeviceManagementErrorCodes.RESPONSE_PARSE_EXCEPTION, e, body);
+        return configurationRequestMessage;
+    }
 
-            }
-        }
+    @SuppressWarnings({ "rawtypes" })
+    @Override
+    public void put(KapuaId scopeId, KapuaId deviceId, DeviceComponentConfiguration deviceComponentConfiguration, Long timeout)
+            throws KapuaException {
+        ConfigurationRequestMessage configurationRequestMessage = newPutRequest(scopeId, deviceId, deviceComponentConfiguration);
 
         //
-        // Create event
-        DeviceEventService deviceEventService = locator.getService(DeviceEventService.class);
-        DeviceEventFactory deviceEventFactory = locator.getFactory(DeviceEventFactory.class);
-
-        DeviceEventCreator deviceEventCreator = deviceEventFactory.newCreator(scopeId, deviceId, responseMessage.getReceivedOn(), DeviceConfigurationAppProperties.APP_NAME.getValue());
-        deviceEventCreator.setPosition(responseMessage.getPosition());
-        deviceEventCreator.setSentOn(responseMessage.getSentOn());
-        deviceEventCreator.setAction(KapuaMethod.READ);
-        deviceEventCreator.setResponseCode(responseMessage.getResponseCode());
-        deviceEventCreator.setEventMessage(responseMessage.getPayload().toDisplayString());
-
-        deviceEventService.create(deviceEventCreator);
+        // Do put
+        DeviceCallExecutor deviceApplicationCall = new DeviceCallExecutor(configurationRequestMessage, timeout);
+        ConfigurationResponseMessage responseMessage = (ConfigurationResponseMessage) deviceApplicationCall.send();
 
-        return deviceConfiguration;
+        handlePutResponse(scopeId, deviceId, responseMessage);
     }
 
-    @SuppressWarnings({ "rawtypes", "unchecked" })
-    @Override
-    public void put(KapuaId scopeId, KapuaId deviceId, DeviceComponentConfiguration deviceComponentConfiguration, Long timeout)
+    private ConfigurationRequestMessage newPutRequest(KapuaId scopeId, KapuaId deviceId, DeviceComponentConfiguration deviceComponentConfiguration)
             throws KapuaException {
         //
         // Argument Validation
@@ -197,25 +178,7 @@ public class DeviceConfigurationManagementServiceImpl implements DeviceConfigura
         configurationRequestMessage.setPayload(configurationRequestPayload);
         configurationRequestMessage.setChannel(configurationRequestChannel);
 
-        //
-        // Do put
-        DeviceCallExecutor deviceApplicationCall = new DeviceCallExecutor(configurationRequestMessage, timeout);
-        ConfigurationResponseMessage responseMessage = (ConfigurationResponseMessage) deviceApplicationCall.send();
-
-        //
-        // Create event
-        DeviceEventService deviceEventService = locator.getService(DeviceEventService.class);
-        DeviceEventFactory deviceEventFactory = locator.getFactory(DeviceEventFactory.class);
-
-        DeviceEventCreator deviceEventCreator = deviceEventFactory.newCreator(scopeId, deviceId, responseMessage.getReceivedOn(), DeviceConfigurationAppProperties.APP_NAME.getValue());
-        deviceEventCreator.setPosition(responseMessage.getPosition());
-        deviceEventCreator.setSentOn(responseMessage.getSentOn());
-        deviceEventCreator.setAction(KapuaMethod.WRITE);
-        deviceEventCreator.setResponseCode(responseMessage.getResponseCode());
-        deviceEventCreator.setEventMessage(responseMessage.getPayload().toDisplayString());
-
-        deviceEventService.create(deviceEventCreator);
-
+        return configurationRequestMessage;
     }
 
     @Override
@@ -232,10 +195,22 @@ public class DeviceConfigurationManagementServiceImpl implements DeviceConfigura
         }
     }
 
-    @SuppressWarnings({ "rawtypes", "unchecked" })
+    @SuppressWarnings({ "rawtypes" })
     @Override
     public void put(KapuaId scopeId, KapuaId deviceId, DeviceConfiguration deviceConfiguration, Long timeout)
             throws KapuaException {
+        ConfigurationRequestMessage configurationRequestMessage = newPutRequest(scopeId, deviceId, deviceConfiguration);
+
+        //
+        // Do put
+        DeviceCallExecutor deviceApplicationCall = new DeviceCallExecutor(configurationRequestMessage, timeout);
+        ConfigurationResponseMessage responseMessage = (ConfigurationResponseMessage) deviceApplicationCall.send();
+
+        handlePutResponse(scopeId, deviceId, responseMessage);
+    }
+
+    private ConfigurationRequestMessage newPutRequest(KapuaId scopeId, KapuaId deviceId, DeviceConfiguration deviceConfiguration)
+            throws KapuaException {
         //
         // Argument Validation
         ArgumentValidator.notNull(scopeId, "scopeId");
@@ -278,20 +253,95 @@ public class DeviceConfigurationManagementServiceImpl implements DeviceConfigura
         configurationRequestMessage.setPayload(configurationRequestPayload);
         configurationRequestMessage.setChannel(configurationRequestChannel);
 
+        return configurationRequestMessage;
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    @Override
+    public CompletableFuture<DeviceConfiguration> getAsync(KapuaId scopeId, KapuaId deviceId, String configurationId, String configurationComponentPid, Long timeout)
+            throws KapuaException {
+        ConfigurationRequestMessage configurationRequestMessage = newGetRequest(scopeId, deviceId, configurationId, configurationComponentPid);
+
+        //
+        // Do get
+        DeviceCallExecutor deviceApplicationCall = new DeviceCallExecutor(configurationRequestMessage, timeout);
+        return deviceApplicationCall.sendAsync(responseMessage -> handleGetResponse(scopeId, deviceId, (ConfigurationResponseMessage) responseMessage));
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    @Override
+    public CompletableFuture<Void> putAsync(KapuaId scopeId, KapuaId deviceId, DeviceComponentConfiguration deviceComponentConfiguration, Long timeout)
+            throws KapuaException {
+        ConfigurationRequestMessage configurationRequestMessage = newPutRequest(scopeId, deviceId, deviceComponentConfiguration);
+
         //
         // Do put
         DeviceCallExecutor deviceApplicationCall = new DeviceCallExecutor(configurationRequestMessage, timeout);
-        ConfigurationResponseMessage responseMessage = (ConfigurationResponseMessage) deviceApplicationCall.send();
+        return deviceApplicationCall.sendAsync(responseMessage -> handlePutResponse(scopeId, deviceId, (ConfigurationResponseMessage) responseMessage));
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    @Override
+    public CompletableFuture<Void> putAsync(KapuaId scopeId, KapuaId deviceId, DeviceConfiguration deviceConfiguration, Long timeout)
+            throws KapuaException {
+        ConfigurationRequestMessage configurationRequestMessage = newPutRequest(scopeId, deviceId, deviceConfiguration);
+
+        //
+        // Do put
+        DeviceCallExecutor deviceApplicationCall = new DeviceCallExecutor(configurationRequestMessage, timeout);
+        return deviceApplicationCall.sendAsync(responseMessage -> handlePutResponse(scopeId, deviceId, (ConfigurationResponseMessage) responseMessage));
+    }
 
+    private DeviceConfiguration handleGetResponse(KapuaId scopeId, KapuaId deviceId, ConfigurationResponseMessage responseMessage)
+            throws KapuaException {
+        //
+        // Parse the response
+        ConfigurationResponsePayload responsePayload = responseMessage.getPayload();
+
+        DeviceManagementSetting config = DeviceManagementSetting.getInstance();
+        String charEncoding = config.getString(DeviceManagementSettingKey.CHAR_ENCODING);
+
+        DeviceConfiguration deviceConfiguration = null;
+        if (responsePayload.getBody() != null) {
+            String body = null;
+            try {
+                body = new String(responsePayload.getBody(), charEncoding);
+            } catch (Exception e) {
+                throw new DeviceManagementException(DeviceManagementErrorCodes.RESPONSE_PARSE_EXCEPTION, e, responsePayload.getBody());
+
+            }
+
+            try {
+                deviceConfiguration = XmlUtil.unmarshal(body, DeviceConfigurationImpl.class);
+            } catch (Exception e) {
+                throw new DeviceManagementException(DeviceManagementErrorCodes.RESPONSE_PARSE_EXCEPTION, e, body);
+
+            }
+        }
+
+        createEvent(scopeId, deviceId, KapuaMethod.READ, responseMessage);
+
+        return deviceConfiguration;
+    }
+
+    private Void handlePutResponse(KapuaId scopeId, KapuaId deviceId, ConfigurationResponseMessage responseMessage)
+            throws KapuaException {
+        createEvent(scopeId, deviceId, KapuaMethod.WRITE, responseMessage);
+        return null;
+    }
+
+    private void createEvent(KapuaId scopeId, KapuaId deviceId, KapuaMethod action, ConfigurationResponseMessage responseMessage)
+            throws KapuaException {
         //
         // Create event
+        KapuaLocator locator = KapuaLocator.getInstance();
         DeviceEventService deviceEventService = locator.getService(DeviceEventService.class);
         DeviceEventFactory deviceEventFactory = locator.getFactory(DeviceEventFactory.class);
 
         DeviceEventCreator deviceEventCreator = deviceEventFactory.newCreator(scopeId, deviceId, responseMessage.getReceivedOn(), DeviceConfigurationAppProperties.APP_NAME.getValue());
         deviceEventCreator.setPosition(responseMessage.getPosition());
         deviceEventCreator.setSentOn(responseMessage.getSentOn());
-        deviceEventCreator.setAction(KapuaMethod.WRITE);
+        deviceEventCreator.setAction(action);
         deviceEventCreator.setResponseCode(responseMessage.getResponseCode());
         deviceEventCreator.setEventMessage(responseMessage.getPayload().toDisplayString());
 
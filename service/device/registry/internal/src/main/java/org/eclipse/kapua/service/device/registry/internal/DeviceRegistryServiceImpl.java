@@ -13,6 +13,7 @@ package org.eclipse.kapua.service.device.registry.internal;
 
 import org.eclipse.kapua.KapuaEntityNotFoundException;
 import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.commons.cache.IdentityCache;
 import org.eclipse.kapua.commons.jpa.EntityManagerSession;
 import org.eclipse.kapua.commons.model.query.predicate.AttributePredicate;
 import org.eclipse.kapua.locator.KapuaLocator;
@@ -148,6 +149,8 @@ public class DeviceRegistryServiceImpl implements DeviceRegistryService {
             }
             DeviceDAO.delete(entityManager, deviceId);
         });
+
+        IdentityCache.getInstance().removeDevice(scopeId, deviceId);
     }
 
     @Override
@@ -12,14 +12,24 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.authorization.access.shiro;
 
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.Query;
+
 import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.commons.jpa.EntityManager;
+import org.eclipse.kapua.commons.model.id.KapuaEid;
 import org.eclipse.kapua.commons.service.internal.ServiceDAO;
 import org.eclipse.kapua.model.id.KapuaId;
 import org.eclipse.kapua.model.query.KapuaQuery;
 import org.eclipse.kapua.service.authorization.access.AccessInfo;
 import org.eclipse.kapua.service.authorization.access.AccessInfoCreator;
 import org.eclipse.kapua.service.authorization.access.AccessInfoListResult;
+import org.eclipse.kapua.service.authorization.permission.Actions;
+import org.eclipse.kapua.service.authorization.permission.Permission;
+import org.eclipse.kapua.service.authorization.permission.shiro.PermissionImpl;
 
 /**
  * {@link AccessInfo) DAO
@@ -29,6 +39,22 @@ import org.eclipse.kapua.service.authorization.access.AccessInfoListResult;
  */
 public class AccessInfoDAO extends ServiceDAO {
 
+    /**
+     * Direct permissions and permissions inherited through roles of all the access infos of the user.<br>
+     * Roles granting no permission are returned with a {@code null} permission so the role name is not lost.
+     */
+    private static final String EFFECTIVE_PERMISSIONS_QUERY = "SELECT NULL AS role_name, ap.domain, ap.action, ap.target_scope_id " +
+            "FROM athz_access_info ai " +
+            "JOIN athz_access_permission ap ON ap.access_info_id = ai.id " +
+            "WHERE ai.scope_id = ?1 AND ai.user_id = ?2 " +
+            "UNION ALL " +
+            "SELECT r.name AS role_name, rp.domain, rp.action, rp.target_scope_id " +
+            "FROM athz_access_info ai " +
+            "JOIN athz_access_role ar ON ar.access_info_id = ai.id " +
+            "JOIN athz_role r ON r.id = ar.role_id " +
+            "LEFT JOIN athz_role_permission rp ON rp.role_id = r.id " +
+            "WHERE ai.scope_id = ?1 AND ai.user_id = ?2";
+
     /**
      * Creates and return new {@link AccessInfo)
      * 
@@ -46,6 +72,42 @@ public class AccessInfoDAO extends ServiceDAO {
         return ServiceDAO.create(em, accessInfo);
     }
 
+    /**
+     * Return the effective permissions of the user, loaded with a single query regardless of the number of roles assigned to the user.
+     * 
+     * @param em
+     * @param scopeId
+     *            the user scope id
+     * @param userId
+     *            the user id
+     * @return
+     * @since 1.0.0
+     */
+    public static List<EffectivePermission> findEffectivePermissions(EntityManager em, KapuaId scopeId, KapuaId userId) {
+        Query query = em.createNativeQuery(EFFECTIVE_PERMISSIONS_QUERY);
+        query.setParameter(1, scopeId.getId());
+        query.setParameter(2, userId.getId());
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = query.getResultList();
+
+        List<EffectivePermission> effectivePermissions = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            String roleName = (String) row[0];
+            String domain = (String) row[1];
+
+            Permission permission = null;
+            if (domain != null) {
+                Actions action = row[2] != null ? Actions.valueOf((String) row[2]) : null;
+                KapuaId targetScopeId = row[3] != null ? new KapuaEid(new BigInteger(row[3].toString())) : null;
+                permission = new PermissionImpl(domain, action, targetScopeId);
+            }
+
+            effectivePermissions.add(new EffectivePermission(roleName, permission));
+        }
+        return effectivePermissions;
+    }
+
     /**
      * Find the {@link AccessInfo) by user {@link AccessInfo) identifier
      * 
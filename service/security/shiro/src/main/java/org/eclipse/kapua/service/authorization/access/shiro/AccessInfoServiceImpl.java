@@ -45,6 +45,7 @@ import org.eclipse.kapua.service.authorization.role.RoleService;
 import org.eclipse.kapua.service.authorization.shiro.AuthorizationEntityManagerFactory;
 import org.eclipse.kapua.service.authorization.shiro.KapuaAuthorizationErrorCodes;
 import org.eclipse.kapua.service.authorization.shiro.KapuaAuthorizationException;
+import org.eclipse.kapua.service.authorization.shiro.KapuaAuthorizingRealm;
 
 /**
  * {@link AccessInfoService} implementation based on JPA.
@@ -91,7 +92,7 @@ public class AccessInfoServiceImpl extends AbstractKapuaService implements Acces
             }
         }
 
-        return entityManagerSession.onTransactedInsert(em -> {
+        AccessInfo newAccessInfo = entityManagerSession.onTransactedInsert(em -> {
             AccessInfo accessInfo = AccessInfoDAO.create(em, accessInfoCreator);
 
             if (!accessInfoCreator.getPermissions().isEmpty()) {
@@ -120,6 +121,9 @@ public class AccessInfoServiceImpl extends AbstractKapuaService implements Acces
 
             return accessInfo;
         });
+
+        KapuaAuthorizingRealm.invalidateAuthorizationInfo(newAccessInfo.getScopeId(), newAccessInfo.getUserId());
+        return newAccessInfo;
     }
 
     @Override
@@ -178,8 +182,9 @@ public class AccessInfoServiceImpl extends AbstractKapuaService implements Acces
         PermissionFactory permissionFactory = locator.getFactory(PermissionFactory.class);
         authorizationService.checkPermission(permissionFactory.newPermission(accessInfoDomain, Actions.write, scopeId));
 
-        entityManagerSession.onTransactedAction(em -> {
-            if (AccessInfoDAO.find(em, accessInfoId) == null) {
+        AccessInfo deletedAccessInfo = entityManagerSession.onTransactedResult(em -> {
+            AccessInfo accessInfo = AccessInfoDAO.find(em, accessInfoId);
+            if (accessInfo == null) {
                 throw new KapuaEntityNotFoundException(AccessPermission.TYPE, accessInfoId);
             }
 
@@ -199,6 +204,9 @@ public class AccessInfoServiceImpl extends AbstractKapuaService implements Acces
 
             // Finally, delete role
             AccessInfoDAO.delete(em, accessInfoId);
+            return accessInfo;
         });
+
+        KapuaAuthorizingRealm.invalidateAuthorizationInfo(deletedAccessInfo.getScopeId(), deletedAccessInfo.getUserId());
     }
 }
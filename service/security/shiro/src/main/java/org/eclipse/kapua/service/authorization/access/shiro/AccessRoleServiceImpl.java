@@ -22,6 +22,7 @@ import org.eclipse.kapua.locator.KapuaProvider;
 import org.eclipse.kapua.model.id.KapuaId;
 import org.eclipse.kapua.model.query.KapuaQuery;
 import org.eclipse.kapua.service.authorization.AuthorizationService;
+import org.eclipse.kapua.service.authorization.access.AccessInfo;
 import org.eclipse.kapua.service.authorization.access.AccessRole;
 import org.eclipse.kapua.service.authorization.access.AccessRoleCreator;
 import org.eclipse.kapua.service.authorization.access.AccessRoleListResult;
@@ -31,6 +32,7 @@ import org.eclipse.kapua.service.authorization.domain.Domain;
 import org.eclipse.kapua.service.authorization.permission.Actions;
 import org.eclipse.kapua.service.authorization.permission.PermissionFactory;
 import org.eclipse.kapua.service.authorization.shiro.AuthorizationEntityManagerFactory;
+import org.eclipse.kapua.service.authorization.shiro.KapuaAuthorizingRealm;
 
 /**
  * {@link AccessRole} service implementation.
@@ -60,7 +62,10 @@ public class AccessRoleServiceImpl extends AbstractKapuaService implements Acces
         AuthorizationService authorizationService = locator.getService(AuthorizationService.class);
         PermissionFactory permissionFactory = locator.getFactory(PermissionFactory.class);
         authorizationService.checkPermission(permissionFactory.newPermission(accessInfoDomain, Actions.write, accessRoleCreator.getScopeId()));
-        return entityManagerSession.onTransactedInsert(em -> AccessRoleDAO.create(em, accessRoleCreator));
+        AccessRole accessRole = entityManagerSession.onTransactedInsert(em -> AccessRoleDAO.create(em, accessRoleCreator));
+
+        invalidateAuthorizationInfo(accessRole.getAccessInfoId());
+        return accessRole;
     }
 
     @Override
@@ -74,13 +79,31 @@ public class AccessRoleServiceImpl extends AbstractKapuaService implements Acces
         PermissionFactory permissionFactory = locator.getFactory(PermissionFactory.class);
         authorizationService.checkPermission(permissionFactory.newPermission(accessInfoDomain, Actions.delete, scopeId));
 
-        entityManagerSession.onTransactedAction(em -> {
-            if (AccessRoleDAO.find(em, accessRoleId) == null) {
+        AccessRole deletedAccessRole = entityManagerSession.onTransactedResult(em -> {
+            AccessRole accessRole = AccessRoleDAO.find(em, accessRoleId);
+            if (accessRole == null) {
                 throw new KapuaEntityNotFoundException(AccessRole.TYPE, accessRoleId);
             }
 
             AccessRoleDAO.delete(em, accessRoleId);
+            return accessRole;
         });
+
+        invalidateAuthorizationInfo(deletedAccessRole.getAccessInfoId());
+    }
+
+    /**
+     * Evict the cached authorization info of the user owning the access info
+     * 
+     * @param accessInfoId
+     * @throws KapuaException
+     */
+    private void invalidateAuthorizationInfo(KapuaId accessInfoId)
+            throws KapuaException {
+        AccessInfo accessInfo = entityManagerSession.onResult(em -> AccessInfoDAO.find(em, accessInfoId));
+        if (accessInfo != null) {
+            KapuaAuthorizingRealm.invalidateAuthorizationInfo(accessInfo.getScopeId(), accessInfo.getUserId());
+        }
     }
 
     @Override
@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.authorization.access.shiro;
+
+import org.eclipse.kapua.service.authorization.permission.Permission;
+
+/**
+ * Permission granted to a user, either directly through an access permission or inherited through an access role.
+ * 
+ * @since 1.0.0
+ *
+ */
+public class EffectivePermission {
+
+    private String roleName;
+    private Permission permission;
+
+    /**
+     * Constructor
+     * 
+     * @param roleName
+     *            the name of the role granting the permission or {@code null} if the permission is granted directly.
+     * @param permission
+     *            the granted permission or {@code null} if the role grants no permission.
+     * @since 1.0.0
+     */
+    public EffectivePermission(String roleName, Permission permission) {
+        this.roleName = roleName;
+        this.permission = permission;
+    }
+
+    /**
+     * Return the name of the role granting the permission
+     * 
+     * @return the role name or {@code null} if the permission is granted directly.
+     * @since 1.0.0
+     */
+    public String getRoleName() {
+        return roleName;
+    }
+
+    /**
+     * Return the granted permission
+     * 
+     * @return the permission or {@code null} if the role grants no permission.
+     * @since 1.0.0
+     */
+    public Permission getPermission() {
+        return permission;
+    }
+}
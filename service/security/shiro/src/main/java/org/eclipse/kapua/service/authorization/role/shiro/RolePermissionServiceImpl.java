@@ -31,6 +31,7 @@ import org.eclipse.kapua.service.authorization.role.RolePermissionListResult;
 import org.eclipse.kapua.service.authorization.role.RolePermissionQuery;
 import org.eclipse.kapua.service.authorization.role.RolePermissionService;
 import org.eclipse.kapua.service.authorization.shiro.AuthorizationEntityManagerFactory;
+import org.eclipse.kapua.service.authorization.shiro.KapuaAuthorizingRealm;
 
 /**
  * {@link RolePermission} service implementation.
@@ -60,7 +61,11 @@ public class RolePermissionServiceImpl extends AbstractKapuaService implements R
         AuthorizationService authorizationService = locator.getService(AuthorizationService.class);
         PermissionFactory permissionFactory = locator.getFactory(PermissionFactory.class);
         authorizationService.checkPermission(permissionFactory.newPermission(roleDomain, Actions.write, rolePermissionCreator.getScopeId()));
-        return entityManagerSession.onTransactedInsert(em -> RolePermissionDAO.create(em, rolePermissionCreator));
+        RolePermission rolePermission = entityManagerSession.onTransactedInsert(em -> RolePermissionDAO.create(em, rolePermissionCreator));
+
+        // Any user holding the role is affected
+        KapuaAuthorizingRealm.invalidateAuthorizationInfo();
+        return rolePermission;
     }
 
     @Override
@@ -81,6 +86,9 @@ public class RolePermissionServiceImpl extends AbstractKapuaService implements R
 
             RolePermissionDAO.delete(em, rolePermissionId);
         });
+
+        // Any user holding the role is affected
+        KapuaAuthorizingRealm.invalidateAuthorizationInfo();
     }
 
     @Override
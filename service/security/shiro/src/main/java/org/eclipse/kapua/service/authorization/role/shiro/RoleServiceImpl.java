@@ -35,6 +35,7 @@ import org.eclipse.kapua.service.authorization.role.RolePermissionListResult;
 import org.eclipse.kapua.service.authorization.role.RolePermissionService;
 import org.eclipse.kapua.service.authorization.role.RoleService;
 import org.eclipse.kapua.service.authorization.shiro.AuthorizationEntityManagerFactory;
+import org.eclipse.kapua.service.authorization.shiro.KapuaAuthorizingRealm;
 
 /**
  * Role service implementation.
@@ -95,7 +96,7 @@ public class RoleServiceImpl extends AbstractKapuaService implements RoleService
         AuthorizationService authorizationService = locator.getService(AuthorizationService.class);
         PermissionFactory permissionFactory = locator.getFactory(PermissionFactory.class);
         authorizationService.checkPermission(permissionFactory.newPermission(roleDomain, Actions.write, role.getScopeId()));
-        return entityManagerSession.onTransactedInsert(em -> {
+        Role updatedRole = entityManagerSession.onTransactedInsert(em -> {
 
             Role currentRole = RoleDAO.find(em, role.getId());
             if (currentRole == null) {
@@ -104,6 +105,10 @@ public class RoleServiceImpl extends AbstractKapuaService implements RoleService
 
             return RoleDAO.update(em, role);
         });
+
+        // Role names are part of the cached authorization info of any user holding the role
+        KapuaAuthorizingRealm.invalidateAuthorizationInfo();
+        return updatedRole;
     }
 
     @Override
@@ -127,6 +132,9 @@ public class RoleServiceImpl extends AbstractKapuaService implements RoleService
 
             RoleDAO.delete(em, roleId);
         });
+
+        // Any user holding the role is affected
+        KapuaAuthorizingRealm.invalidateAuthorizationInfo();
     }
 
     @Override
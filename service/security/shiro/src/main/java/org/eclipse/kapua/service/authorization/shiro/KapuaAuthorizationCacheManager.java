@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.authorization.shiro;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.shiro.cache.AbstractCacheManager;
+import org.apache.shiro.cache.Cache;
+import org.apache.shiro.cache.CacheException;
+import org.eclipse.kapua.commons.cache.LocalCache;
+import org.eclipse.kapua.service.authorization.shiro.setting.KapuaAuthorizationSetting;
+import org.eclipse.kapua.service.authorization.shiro.setting.KapuaAuthorizationSettingKeys;
+
+/**
+ * Shiro cache manager creating bounded caches whose entries expire after a ttl.<br>
+ * The local invalidation only reaches the caches of the node making the change, so the ttl bounds the time the other nodes
+ * (i.e. the broker for the changes made from the console) keep using the stale authorization info.
+ *
+ * @since 1.0
+ */
+public class KapuaAuthorizationCacheManager extends AbstractCacheManager {
+
+    private final int sizeMax;
+    private final int expireAfter;
+
+    /**
+     * Constructor reading the cache size and ttl from the {@link KapuaAuthorizationSetting}
+     */
+    public KapuaAuthorizationCacheManager() {
+        this(KapuaAuthorizationSetting.getInstance().getInt(KapuaAuthorizationSettingKeys.AUTHORIZATION_CACHE_SIZE_MAXIMUM, 10000),
+                KapuaAuthorizationSetting.getInstance().getInt(KapuaAuthorizationSettingKeys.AUTHORIZATION_CACHE_EXPIRE_AFTER, 60));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param sizeMax
+     *            maximum number of entries of each cache
+     * @param expireAfter
+     *            maximum age (seconds) of a cached entry
+     */
+    public KapuaAuthorizationCacheManager(int sizeMax, int expireAfter) {
+        this.sizeMax = sizeMax;
+        this.expireAfter = expireAfter;
+    }
+
+    @Override
+    protected Cache<Object, Object> createCache(String name) throws CacheException {
+        return new ExpiringCache<Object, Object>(new LocalCache<Object, Object>(sizeMax, expireAfter, null));
+    }
+
+    /**
+     * Shiro cache view of a {@link LocalCache}
+     */
+    private static class ExpiringCache<K, V> implements Cache<K, V> {
+
+        private final LocalCache<K, V> cache;
+
+        private ExpiringCache(LocalCache<K, V> cache) {
+            this.cache = cache;
+        }
+
+        @Override
+        public V get(K key) throws CacheException {
+            return cache.get(key);
+        }
+
+        @Override
+        public V put(K key, V value) throws CacheException {
+            V previous = cache.get(key);
+            cache.put(key, value);
+            return previous;
+        }
+
+        @Override
+        public V remove(K key) throws CacheException {
+            V previous = cache.get(key);
+            cache.remove(key);
+            return previous;
+        }
+
+        @Override
+        public void clear() throws CacheException {
+            for (K key : cache.getAllKeys()) {
+                cache.remove(key);
+            }
+        }
+
+        @Override
+        public int size() {
+            return cache.getAllKeys().size();
+        }
+
+        @Override
+        public Set<K> keys() {
+            return new HashSet<K>(cache.getAllKeys());
+        }
+
+        @Override
+        public Collection<V> values() {
+            List<V> values = new ArrayList<V>();
+            for (K key : cache.getAllKeys()) {
+                V value = cache.get(key);
+                if (value != null) {
+                    values.add(value);
+                }
+            }
+            return values;
+        }
+    }
+}
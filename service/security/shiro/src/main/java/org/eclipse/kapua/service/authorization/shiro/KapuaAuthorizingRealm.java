@@ -12,39 +12,33 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.authorization.shiro;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.shiro.SecurityUtils;
 import org.apache.shiro.ShiroException;
+import org.apache.shiro.UnavailableSecurityManagerException;
 import org.apache.shiro.authc.AuthenticationException;
 import org.apache.shiro.authc.AuthenticationInfo;
 import org.apache.shiro.authc.AuthenticationToken;
 import org.apache.shiro.authc.UnknownAccountException;
 import org.apache.shiro.authz.AuthorizationInfo;
 import org.apache.shiro.authz.SimpleAuthorizationInfo;
+import org.apache.shiro.cache.Cache;
+import org.apache.shiro.mgt.RealmSecurityManager;
+import org.apache.shiro.mgt.SecurityManager;
 import org.apache.shiro.realm.AuthorizingRealm;
+import org.apache.shiro.realm.Realm;
 import org.apache.shiro.subject.PrincipalCollection;
 import org.eclipse.kapua.KapuaException;
-import org.eclipse.kapua.commons.model.query.predicate.AttributePredicate;
+import org.eclipse.kapua.commons.jpa.EntityManagerSession;
 import org.eclipse.kapua.commons.security.KapuaSecurityUtils;
 import org.eclipse.kapua.locator.KapuaLocator;
 import org.eclipse.kapua.model.id.KapuaId;
-import org.eclipse.kapua.model.query.KapuaListResult;
-import org.eclipse.kapua.model.query.predicate.KapuaPredicate;
-import org.eclipse.kapua.service.authorization.access.AccessInfo;
-import org.eclipse.kapua.service.authorization.access.AccessInfoFactory;
-import org.eclipse.kapua.service.authorization.access.AccessInfoQuery;
-import org.eclipse.kapua.service.authorization.access.AccessInfoService;
-import org.eclipse.kapua.service.authorization.access.AccessPermission;
-import org.eclipse.kapua.service.authorization.access.AccessPermissionListResult;
-import org.eclipse.kapua.service.authorization.access.AccessPermissionService;
-import org.eclipse.kapua.service.authorization.access.AccessRole;
-import org.eclipse.kapua.service.authorization.access.AccessRoleListResult;
-import org.eclipse.kapua.service.authorization.access.AccessRoleService;
-import org.eclipse.kapua.service.authorization.access.shiro.AccessInfoPredicates;
+import org.eclipse.kapua.service.authorization.access.shiro.AccessInfoDAO;
+import org.eclipse.kapua.service.authorization.access.shiro.EffectivePermission;
 import org.eclipse.kapua.service.authorization.permission.Permission;
-import org.eclipse.kapua.service.authorization.role.Role;
-import org.eclipse.kapua.service.authorization.role.RolePermission;
-import org.eclipse.kapua.service.authorization.role.RolePermissionListResult;
-import org.eclipse.kapua.service.authorization.role.RolePermissionService;
-import org.eclipse.kapua.service.authorization.role.RoleService;
 import org.eclipse.kapua.service.user.User;
 import org.eclipse.kapua.service.user.UserService;
 import org.slf4j.Logger;
@@ -61,6 +55,88 @@ public class KapuaAuthorizingRealm extends AuthorizingRealm {
 
     public KapuaAuthorizingRealm() throws KapuaException {
         setName(REALM_NAME);
+
+        //
+        // Authorization info are cached in memory, up to the configured ttl, unless a different cache manager is set on the security manager
+        setAuthorizationCachingEnabled(true);
+        setCacheManager(new KapuaAuthorizationCacheManager());
+    }
+
+    /**
+     * Evict the cached authorization info of the user.<br>
+     * To be called when the access info, access permissions or access roles of the user change.<br>
+     * Only the caches of this node are evicted, the other nodes see the change once their entries expire.
+     * 
+     * @param scopeId
+     *            the user scope id
+     * @param userId
+     *            the user id
+     */
+    public static void invalidateAuthorizationInfo(KapuaId scopeId, KapuaId userId) {
+        Object authorizationCacheKey = getAuthorizationCacheKey(scopeId, userId);
+        for (KapuaAuthorizingRealm realm : getKapuaAuthorizingRealms()) {
+            Cache<Object, AuthorizationInfo> authorizationCache = realm.getAuthorizationCache();
+            if (authorizationCache != null) {
+                authorizationCache.remove(authorizationCacheKey);
+            }
+        }
+    }
+
+    /**
+     * Evict all the cached authorization info.<br>
+     * To be called when a change (i.e. of role permissions) can affect more than a single user.
+     */
+    public static void invalidateAuthorizationInfo() {
+        for (KapuaAuthorizingRealm realm : getKapuaAuthorizingRealms()) {
+            Cache<Object, AuthorizationInfo> authorizationCache = realm.getAuthorizationCache();
+            if (authorizationCache != null) {
+                authorizationCache.clear();
+            }
+        }
+    }
+
+    private static List<KapuaAuthorizingRealm> getKapuaAuthorizingRealms() {
+        List<KapuaAuthorizingRealm> kapuaRealms = new ArrayList<>();
+
+        SecurityManager securityManager;
+        try {
+            securityManager = SecurityUtils.getSecurityManager();
+        } catch (UnavailableSecurityManagerException e) {
+            // No security manager, so nothing cached yet
+            return kapuaRealms;
+        }
+
+        if (securityManager instanceof RealmSecurityManager) {
+            Collection<Realm> realms = ((RealmSecurityManager) securityManager).getRealms();
+            if (realms != null) {
+                for (Realm realm : realms) {
+                    if (realm instanceof KapuaAuthorizingRealm) {
+                        kapuaRealms.add((KapuaAuthorizingRealm) realm);
+                    }
+                }
+            }
+        }
+        return kapuaRealms;
+    }
+
+    private static Object getAuthorizationCacheKey(KapuaId scopeId, KapuaId userId) {
+        return new StringBuilder().append(scopeId != null ? scopeId.getId() : null)
+                .append('/')
+                .append(userId != null ? userId.getId() : null)
+                .toString();
+    }
+
+    /**
+     * Authorization info are cached by user scope id and user id
+     */
+    @Override
+    protected Object getAuthorizationCacheKey(PrincipalCollection principals) {
+        Object principal = principals.getPrimaryPrincipal();
+        if (principal instanceof User) {
+            User user = (User) principal;
+            return getAuthorizationCacheKey(user.getScopeId(), user.getId());
+        }
+        return super.getAuthorizationCacheKey(principals);
     }
 
     /**
@@ -78,8 +154,6 @@ public class KapuaAuthorizingRealm extends AuthorizingRealm {
         KapuaLocator locator = KapuaLocator.getInstance();
 
         UserService userService = locator.getService(UserService.class);
-        AccessInfoService accessInfoService = locator.getService(AccessInfoService.class);
-        AccessInfoFactory accessInfoFactory = locator.getFactory(AccessInfoFactory.class);
 
         //
         // Get the associated user by name
@@ -99,92 +173,28 @@ public class KapuaAuthorizingRealm extends AuthorizingRealm {
         }
 
         //
-        // Get user access infos
-        AccessInfoQuery accessInfoQuery = accessInfoFactory.newQuery(user.getScopeId());
-        KapuaPredicate predicate = new AttributePredicate<KapuaId>(AccessInfoPredicates.USER_ID, user.getId());
-        accessInfoQuery.setPredicate(predicate);
-
-        final KapuaListResult<AccessInfo> accessInfos;
+        // Get user permissions, both direct and inherited through roles
+        final List<EffectivePermission> effectivePermissions;
         try {
-            accessInfos = KapuaSecurityUtils.doPriviledge(() -> accessInfoService.query(accessInfoQuery));
-        } catch (AuthenticationException e) {
-            throw e;
+            EntityManagerSession entityManagerSession = new EntityManagerSession(AuthorizationEntityManagerFactory.getInstance());
+            effectivePermissions = entityManagerSession.onResult(em -> AccessInfoDAO.findEffectivePermissions(em, user.getScopeId(), user.getId()));
         } catch (Exception e) {
-            throw new ShiroException("Error while find access info!", e);
-        }
-
-        //
-        // Check existence
-        if (accessInfos == null) {
-            throw new UnknownAccountException();
+            throw new ShiroException("Error while find user permissions!", e);
         }
 
         //
         // Create SimpleAuthorizationInfo with principals permissions
         SimpleAuthorizationInfo info = new SimpleAuthorizationInfo();
+        for (EffectivePermission effectivePermission : effectivePermissions) {
+            if (effectivePermission.getRoleName() != null) {
+                info.addRole(effectivePermission.getRoleName());
+            }
 
-        // Get user roles set and related permissions
-        for (AccessInfo accessInfo : accessInfos.getItems()) {
-
-            // Access Permissions
-            AccessPermissionService accessPermissionService = locator.getService(AccessPermissionService.class);
-            AccessPermissionListResult accessPermissions;
-            try {
-                accessPermissions = KapuaSecurityUtils.doPriviledge(() -> accessPermissionService.findByAccessInfoId(accessInfo.getScopeId(), accessInfo.getId()));
-            } catch (AuthenticationException e) {
-                throw e;
-            } catch (Exception e) {
-                throw new ShiroException("Error while find access permissions!", e);
-        }
-
-            for (AccessPermission accessPermission : accessPermissions.getItems()) {
-                Permission p = accessPermission.getPermission();
+            Permission p = effectivePermission.getPermission();
+            if (p != null) {
                 info.addStringPermission(p.toString());
                 logger.trace("User: {} has permission: {}", username, p);
             }
-
-            // Access Role Id
-            AccessRoleService accessRoleService = locator.getService(AccessRoleService.class);
-            AccessRoleListResult accessRoles;
-            try {
-                accessRoles = KapuaSecurityUtils.doPriviledge(() -> accessRoleService.findByAccessInfoId(accessInfo.getScopeId(), accessInfo.getId()));
-            } catch (AuthenticationException e) {
-                throw e;
-            } catch (Exception e) {
-                throw new ShiroException("Error while find access role ids!", e);
-			}
-
-            RoleService roleService = locator.getService(RoleService.class);
-            RolePermissionService rolePermissionService = locator.getService(RolePermissionService.class);
-            for (AccessRole accessRole : accessRoles.getItems()) {
-
-                KapuaId roleId = accessRole.getRoleId();
-
-                Role role;
-                try {
-                    role = KapuaSecurityUtils.doPriviledge(() -> roleService.find(accessRole.getScopeId(), roleId));
-                } catch (AuthenticationException e) {
-                    throw e;
-                } catch (Exception e) {
-                    throw new ShiroException("Error while find access role ids!", e);
-                }
-
-                info.addRole(role.getName());
-                final RolePermissionListResult rolePermissions;
-                try {
-                    rolePermissions = KapuaSecurityUtils.doPriviledge(() -> rolePermissionService.findByRoleId(role.getScopeId(), role.getId()));
-                } catch (Exception e) {
-                    throw new ShiroException("Error while find role permission!", e);
-                }
-
-                for (RolePermission rolePermission : rolePermissions.getItems()) {
-
-                    Permission p = rolePermission.getPermission();
-            info.addStringPermission(p.toString());
-                    logger.trace("Role: {} has permission: {}", role, p);
-        }
-            }
-
         }
 
         //
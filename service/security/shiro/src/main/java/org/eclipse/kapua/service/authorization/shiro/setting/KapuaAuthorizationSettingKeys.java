@@ -22,7 +22,16 @@ import org.eclipse.kapua.commons.setting.SettingKey;
  */
 public enum KapuaAuthorizationSettingKeys implements SettingKey
 {
-    AUTHORIZATION_KEY("authorization.key");
+    AUTHORIZATION_KEY("authorization.key"),
+
+    /**
+     * Authorization info cache maximum size
+     */
+    AUTHORIZATION_CACHE_SIZE_MAXIMUM("authorization.cache.size.maximum"),
+    /**
+     * Authorization info cache entries ttl (seconds)
+     */
+    AUTHORIZATION_CACHE_EXPIRE_AFTER("authorization.cache.expire.after");
 
     private String key;
 
@@ -14,9 +14,11 @@ package org.eclipse.kapua.service.authorization.shiro;
 
 import java.math.BigInteger;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.commons.jpa.EntityManagerSession;
 import org.eclipse.kapua.commons.model.id.KapuaEid;
 import org.eclipse.kapua.commons.security.KapuaSecurityUtils;
 import org.eclipse.kapua.locator.KapuaLocator;
@@ -29,6 +31,8 @@ import org.eclipse.kapua.service.authorization.access.AccessPermissionListResult
 import org.eclipse.kapua.service.authorization.access.AccessPermissionService;
 import org.eclipse.kapua.service.authorization.access.AccessRoleListResult;
 import org.eclipse.kapua.service.authorization.access.AccessRoleService;
+import org.eclipse.kapua.service.authorization.access.shiro.AccessInfoDAO;
+import org.eclipse.kapua.service.authorization.access.shiro.EffectivePermission;
 import org.eclipse.kapua.service.authorization.domain.Domain;
 import org.eclipse.kapua.service.authorization.permission.Actions;
 import org.eclipse.kapua.service.authorization.permission.Permission;
@@ -193,6 +197,83 @@ public class AccessInfoServiceTest extends KapuaTest {
         });
     }
 
+    @Test
+    public void testFindEffectivePermissions()
+            throws Exception {
+
+        KapuaSecurityUtils.doPriviledge(() -> {
+            KapuaLocator locator = KapuaLocator.getInstance();
+
+            // Create mock user
+            UserService userService = locator.getService(UserService.class);
+            UserFactory userFactory = locator.getFactory(UserFactory.class);
+            UserCreator userCreator = userFactory.newCreator(scope, "test-user-" + System.currentTimeMillis());
+            User user = userService.create(userCreator);
+
+            // Create permissions
+            PermissionFactory permissionFactory = locator.getFactory(PermissionFactory.class);
+            Permission directPermission = permissionFactory.newPermission(testDomain, Actions.read, scope);
+            Permission rolePermission = permissionFactory.newPermission(testDomain, Actions.write, null);
+            Set<Permission> directPermissions = new HashSet<>();
+            directPermissions.add(directPermission);
+            Set<Permission> rolePermissions = new HashSet<>();
+            rolePermissions.add(rolePermission);
+
+            // Create roles, one of them without permissions
+            RoleService roleService = locator.getService(RoleService.class);
+            RoleFactory roleFactory = locator.getFactory(RoleFactory.class);
+            RoleCreator roleCreator = roleFactory.newCreator(scope);
+            roleCreator.setName("testRole-" + System.currentTimeMillis());
+            roleCreator.setPermissions(rolePermissions);
+            Role role = roleService.create(roleCreator);
+
+            RoleCreator emptyRoleCreator = roleFactory.newCreator(scope);
+            emptyRoleCreator.setName("testEmptyRole-" + System.currentTimeMillis());
+            emptyRoleCreator.setPermissions(new HashSet<>());
+            Role emptyRole = roleService.create(emptyRoleCreator);
+
+            Set<KapuaId> roleIds = new HashSet<>();
+            roleIds.add(role.getId());
+            roleIds.add(emptyRole.getId());
+
+            // Create access info
+            AccessInfoService accessInfoService = locator.getService(AccessInfoService.class);
+            AccessInfoFactory accessInfoFactory = locator.getFactory(AccessInfoFactory.class);
+            AccessInfoCreator accessInfoCreator = accessInfoFactory.newCreator(scope);
+            accessInfoCreator.setUserId(user.getId());
+            accessInfoCreator.setPermissions(directPermissions);
+            accessInfoCreator.setRoleIds(roleIds);
+            accessInfoService.create(accessInfoCreator);
+
+            //
+            // Verify
+            EntityManagerSession entityManagerSession = new EntityManagerSession(AuthorizationEntityManagerFactory.getInstance());
+            List<EffectivePermission> effectivePermissions = entityManagerSession.onResult(em -> AccessInfoDAO.findEffectivePermissions(em, scope, user.getId()));
+
+            assertNotNull(effectivePermissions);
+            assertEquals(3, effectivePermissions.size());
+
+            Set<String> roleNames = new HashSet<>();
+            Set<String> permissions = new HashSet<>();
+            for (EffectivePermission effectivePermission : effectivePermissions) {
+                if (effectivePermission.getRoleName() != null) {
+                    roleNames.add(effectivePermission.getRoleName());
+                }
+                if (effectivePermission.getPermission() != null) {
+                    permissions.add(effectivePermission.getPermission().toString());
+                }
+            }
+
+            assertTrue(roleNames.contains(role.getName()));
+            assertTrue(roleNames.contains(emptyRole.getName()));
+            assertEquals(2, permissions.size());
+            assertTrue(permissions.contains(directPermission.toString()));
+            assertTrue(permissions.contains(rolePermission.toString()));
+
+            return null;
+        });
+    }
+
     @Test
     public void testFind()
             throws Exception {
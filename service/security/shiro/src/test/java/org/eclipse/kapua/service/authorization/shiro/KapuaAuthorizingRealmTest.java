@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.authorization.shiro;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Proxy;
+import java.math.BigInteger;
+
+import org.apache.shiro.SecurityUtils;
+import org.apache.shiro.UnavailableSecurityManagerException;
+import org.apache.shiro.authz.AuthorizationInfo;
+import org.apache.shiro.authz.SimpleAuthorizationInfo;
+import org.apache.shiro.cache.Cache;
+import org.apache.shiro.mgt.DefaultSecurityManager;
+import org.apache.shiro.mgt.SecurityManager;
+import org.apache.shiro.subject.PrincipalCollection;
+import org.apache.shiro.subject.SimplePrincipalCollection;
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.user.User;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class KapuaAuthorizingRealmTest {
+
+    private static final KapuaId SCOPE_ID      = new KapuaEid(BigInteger.ONE);
+    private static final KapuaId USER_ID       = new KapuaEid(BigInteger.valueOf(2));
+    private static final KapuaId OTHER_USER_ID = new KapuaEid(BigInteger.valueOf(3));
+
+    private SecurityManager previousSecurityManager;
+    private KapuaAuthorizingRealm realm;
+
+    @Before
+    public void setUp() throws Exception {
+        try {
+            previousSecurityManager = SecurityUtils.getSecurityManager();
+        } catch (UnavailableSecurityManagerException e) {
+            previousSecurityManager = null;
+        }
+
+        realm = new KapuaAuthorizingRealm();
+        realm.init();
+        SecurityUtils.setSecurityManager(new DefaultSecurityManager(realm));
+    }
+
+    @After
+    public void tearDown() {
+        SecurityUtils.setSecurityManager(previousSecurityManager);
+    }
+
+    private static PrincipalCollection principals(KapuaId scopeId, KapuaId userId) {
+        User user = (User) Proxy.newProxyInstance(User.class.getClassLoader(), new Class<?>[] { User.class }, (proxy, method, args) -> {
+            switch (method.getName()) {
+            case "getScopeId":
+                return scopeId;
+            case "getId":
+                return userId;
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            default:
+                return null;
+            }
+        });
+        return new SimplePrincipalCollection(user, KapuaAuthorizingRealm.REALM_NAME);
+    }
+
+    private Cache<Object, AuthorizationInfo> cache(KapuaId userId) {
+        Cache<Object, AuthorizationInfo> authorizationCache = realm.getAuthorizationCache();
+        authorizationCache.put(realm.getAuthorizationCacheKey(principals(SCOPE_ID, userId)), new SimpleAuthorizationInfo());
+        return authorizationCache;
+    }
+
+    @Test
+    public void testCacheKeyIsTheUserScopeAndId() {
+        Object key = realm.getAuthorizationCacheKey(principals(SCOPE_ID, USER_ID));
+
+        assertEquals(key, realm.getAuthorizationCacheKey(principals(new KapuaEid(BigInteger.ONE), new KapuaEid(BigInteger.valueOf(2)))));
+        assertNotEquals(key, realm.getAuthorizationCacheKey(principals(SCOPE_ID, OTHER_USER_ID)));
+        assertNotEquals(key, realm.getAuthorizationCacheKey(principals(USER_ID, SCOPE_ID)));
+    }
+
+    @Test
+    public void testInvalidateEvictsOnlyTheUser() {
+        cache(USER_ID);
+        Cache<Object, AuthorizationInfo> authorizationCache = cache(OTHER_USER_ID);
+
+        KapuaAuthorizingRealm.invalidateAuthorizationInfo(SCOPE_ID, USER_ID);
+
+        assertNull(authorizationCache.get(realm.getAuthorizationCacheKey(principals(SCOPE_ID, USER_ID))));
+        assertNotNull(authorizationCache.get(realm.getAuthorizationCacheKey(principals(SCOPE_ID, OTHER_USER_ID))));
+    }
+
+    @Test
+    public void testInvalidateAllEvictsEveryUser() {
+        cache(USER_ID);
+        Cache<Object, AuthorizationInfo> authorizationCache = cache(OTHER_USER_ID);
+
+        KapuaAuthorizingRealm.invalidateAuthorizationInfo();
+
+        assertEquals(0, authorizationCache.size());
+    }
+
+    @Test
+    public void testCachedEntriesExpire() throws Exception {
+        assertTrue(realm.getCacheManager() instanceof KapuaAuthorizationCacheManager);
+
+        Cache<Object, Object> expiringCache = new KapuaAuthorizationCacheManager(10, 1).getCache("authorization");
+        expiringCache.put("key", new SimpleAuthorizationInfo());
+        assertNotNull(expiringCache.get("key"));
+        assertEquals(1, expiringCache.size());
+
+        Thread.sleep(1100);
+
+        assertNull(expiringCache.get("key"));
+    }
+}
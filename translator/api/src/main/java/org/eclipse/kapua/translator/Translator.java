@@ -12,9 +12,6 @@
  *******************************************************************************/
 package org.eclipse.kapua.translator;
 
-import java.util.Iterator;
-import java.util.ServiceLoader;
-
 import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.KapuaRuntimeErrorCodes;
 import org.eclipse.kapua.KapuaRuntimeException;
@@ -44,10 +41,9 @@ public abstract class Translator<FROM_M extends Message, TO_M extends Message>
 	
 	public static final Logger logger = LoggerFactory.getLogger(Translator.class);
 	
-    static ServiceLoader<?> translators = ServiceLoader.load(Translator.class);
-
     /**
-     * Return a translator for the given messages classes. This method lookup for the Translator through {@link java.util.ServiceLoader}
+     * Return a translator for the given messages classes. This method lookup for the Translator through {@link java.util.ServiceLoader}.<br>
+     * The translator resolved for a messages classes pair is cached by the {@link TranslatorRegistry}, so this method doesn't need to be synchronized.
      * 
      * @param fromMessageClass message from type
      * @param toMessageClass message to type
@@ -55,29 +51,18 @@ public abstract class Translator<FROM_M extends Message, TO_M extends Message>
      * @throws KapuaException
      */
     @SuppressWarnings("unchecked")
-    public static synchronized <FROM_M extends Message, TO_M extends Message, T extends Translator<FROM_M, TO_M>> T getTranslatorFor(Class<FROM_M> fromMessageClass,
-                                                                                                                        Class<TO_M> toMessageClass)
+    public static <FROM_M extends Message, TO_M extends Message, T extends Translator<FROM_M, TO_M>> T getTranslatorFor(Class<FROM_M> fromMessageClass,
+                                                                                                           Class<TO_M> toMessageClass)
         throws KapuaException
     {
-        T translator = null;
-
-        Iterator<T> translatorIterator = (Iterator<T>) translators.iterator();
-        while (translatorIterator.hasNext()) {
-            T t = translatorIterator.next();
-
-            if ((fromMessageClass.isAssignableFrom(t.getClassFrom())) &&
-                toMessageClass.isAssignableFrom(t.getClassTo())) {
-                translator = t;
-                break;
-            }
-        }
+        T translator = (T) TranslatorRegistry.getInstance().find(fromMessageClass, toMessageClass);
 
         if (translator == null) {
         	logger.error("Cannot find translator from - to: {} - {}", new Object[]{fromMessageClass.getName(), toMessageClass.getName()});
             throw new KapuaRuntimeException(KapuaRuntimeErrorCodes.TRANSLATOR_NOT_FOUND,
                                             null,
                                             new Object[] {
-                                                           translators,
+                                                           TranslatorRegistry.getInstance().getTranslators(),
                                                            fromMessageClass.getName(),
                                                            toMessageClass.getName(),
                                             });
@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.translator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Translator registry.<br>
+ * The available translators are loaded once through {@link java.util.ServiceLoader} and the translator resolved for a (from, to) message classes pair
+ * is kept in a concurrent lookup table, so after the first resolution the lookup is lock free.
+ *
+ * @since 1.0
+ *
+ */
+@SuppressWarnings("rawtypes")
+class TranslatorRegistry
+{
+
+    private static final TranslatorRegistry instance = new TranslatorRegistry();
+
+    private final List<Translator>                     translators;
+    private final ConcurrentMap<ClassPair, Translator> translatorsByClassPair = new ConcurrentHashMap<>();
+
+    private TranslatorRegistry()
+    {
+        List<Translator> loadedTranslators = new ArrayList<>();
+        for (Translator translator : ServiceLoader.load(Translator.class)) {
+            loadedTranslators.add(translator);
+        }
+        translators = Collections.unmodifiableList(loadedTranslators);
+    }
+
+    /**
+     * Get the registry instance
+     *
+     * @return
+     */
+    static TranslatorRegistry getInstance()
+    {
+        return instance;
+    }
+
+    /**
+     * Return the translator for the given message classes or null if no available translator matches them.<br>
+     * The first matching translator, in {@link java.util.ServiceLoader} order, is returned.
+     *
+     * @param fromMessageClass message from type
+     * @param toMessageClass message to type
+     * @return
+     */
+    Translator find(Class<?> fromMessageClass, Class<?> toMessageClass)
+    {
+        ClassPair classPair = new ClassPair(fromMessageClass, toMessageClass);
+        Translator translator = translatorsByClassPair.get(classPair);
+        if (translator == null) {
+            translator = lookup(fromMessageClass, toMessageClass);
+            if (translator != null) {
+                Translator previous = translatorsByClassPair.putIfAbsent(classPair, translator);
+                if (previous != null) {
+                    translator = previous;
+                }
+            }
+        }
+        return translator;
+    }
+
+    /**
+     * Return the available translators
+     *
+     * @return
+     */
+    List<Translator> getTranslators()
+    {
+        return translators;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Translator lookup(Class<?> fromMessageClass, Class<?> toMessageClass)
+    {
+        for (Translator translator : translators) {
+            if (fromMessageClass.isAssignableFrom(translator.getClassFrom()) &&
+                toMessageClass.isAssignableFrom(translator.getClassTo())) {
+                return translator;
+            }
+        }
+        return null;
+    }
+
+    private static final class ClassPair
+    {
+
+        private final Class<?> fromMessageClass;
+        private final Class<?> toMessageClass;
+
+        private ClassPair(Class<?> fromMessageClass, Class<?> toMessageClass)
+        {
+            this.fromMessageClass = fromMessageClass;
+            this.toMessageClass = toMessageClass;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * fromMessageClass.hashCode() + toMessageClass.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ClassPair)) {
+                return false;
+            }
+            ClassPair other = (ClassPair) obj;
+            return fromMessageClass == other.fromMessageClass && toMessageClass == other.toMessageClass;
+        }
+    }
+}
@@ -17,12 +17,10 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import org.eclipse.kapua.KapuaEntityNotFoundException;
 import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.commons.util.xml.XmlUtil;
 import org.eclipse.kapua.locator.KapuaLocator;
-import org.eclipse.kapua.service.account.Account;
-import org.eclipse.kapua.service.account.AccountService;
+import org.eclipse.kapua.model.id.KapuaId;
 import org.eclipse.kapua.service.device.call.kura.app.BundleMetrics;
 import org.eclipse.kapua.service.device.call.kura.app.ResponseMetrics;
 import org.eclipse.kapua.service.device.call.kura.model.bundle.KuraBundle;
@@ -71,13 +69,7 @@ public class TranslatorAppBundleKuraKapua extends Translator<KuraResponseMessage
             throws KapuaException {
         //
         // Kura channel
-        KapuaLocator locator = KapuaLocator.getInstance();
-        AccountService accountService = locator.getService(AccountService.class);
-        Account account = accountService.findByName(kuraMessage.getChannel().getScope());
-
-        if (account == null) {
-            throw new KapuaEntityNotFoundException(Account.TYPE, kuraMessage.getChannel().getScope());
-        }
+        KapuaId scopeId = TranslatorKuraKapuaUtils.findAccountId(kuraMessage.getChannel().getScope());
 
         BundleResponseChannel bundleResponseChannel = translate(kuraMessage.getChannel());
 
@@ -88,7 +80,7 @@ public class TranslatorAppBundleKuraKapua extends Translator<KuraResponseMessage
         //
         // Kura Message
         BundleResponseMessage kapuaMessage = new BundleResponseMessage();
-        kapuaMessage.setScopeId(account.getId());
+        kapuaMessage.setScopeId(scopeId);
         kapuaMessage.setChannel(bundleResponseChannel);
         kapuaMessage.setPayload(responsePayload);
         kapuaMessage.setCapturedOn(kuraMessage.getPayload().getTimestamp());
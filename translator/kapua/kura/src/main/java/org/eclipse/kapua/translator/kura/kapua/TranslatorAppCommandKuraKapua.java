@@ -15,11 +15,8 @@ package org.eclipse.kapua.translator.kura.kapua;
 import java.util.HashMap;
 import java.util.Map;
 
-import org.eclipse.kapua.KapuaEntityNotFoundException;
 import org.eclipse.kapua.KapuaException;
-import org.eclipse.kapua.locator.KapuaLocator;
-import org.eclipse.kapua.service.account.Account;
-import org.eclipse.kapua.service.account.AccountService;
+import org.eclipse.kapua.model.id.KapuaId;
 import org.eclipse.kapua.service.device.call.kura.app.CommandMetrics;
 import org.eclipse.kapua.service.device.call.kura.app.ResponseMetrics;
 import org.eclipse.kapua.service.device.call.message.app.response.kura.KuraResponseChannel;
@@ -67,13 +64,7 @@ public class TranslatorAppCommandKuraKapua extends Translator<KuraResponseMessag
             throws KapuaException {
         //
         // Kura channel
-        KapuaLocator locator = KapuaLocator.getInstance();
-        AccountService accountService = locator.getService(AccountService.class);
-        Account account = accountService.findByName(kuraMessage.getChannel().getScope());
-
-        if (account == null) {
-            throw new KapuaEntityNotFoundException(Account.TYPE, kuraMessage.getChannel().getScope());
-        }
+        KapuaId scopeId = TranslatorKuraKapuaUtils.findAccountId(kuraMessage.getChannel().getScope());
 
         CommandResponseChannel commandResponseChannel = translate(kuraMessage.getChannel());
 
@@ -84,7 +75,7 @@ public class TranslatorAppCommandKuraKapua extends Translator<KuraResponseMessag
         //
         // Kura Message
         CommandResponseMessage kapuaMessage = new CommandResponseMessage();
-        kapuaMessage.setScopeId(account.getId());
+        kapuaMessage.setScopeId(scopeId);
         kapuaMessage.setChannel(commandResponseChannel);
         kapuaMessage.setPayload(responsePayload);
         kapuaMessage.setCapturedOn(kuraMessage.getPayload().getTimestamp());
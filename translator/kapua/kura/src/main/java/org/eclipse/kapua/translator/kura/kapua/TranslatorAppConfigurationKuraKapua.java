@@ -19,7 +19,6 @@ import java.util.Map.Entry;
 
 import javax.xml.namespace.QName;
 
-import org.eclipse.kapua.KapuaEntityNotFoundException;
 import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.commons.configuration.metatype.Password;
 import org.eclipse.kapua.commons.configuration.metatype.TadImpl;
@@ -27,13 +26,11 @@ import org.eclipse.kapua.commons.configuration.metatype.TiconImpl;
 import org.eclipse.kapua.commons.configuration.metatype.TocdImpl;
 import org.eclipse.kapua.commons.configuration.metatype.ToptionImpl;
 import org.eclipse.kapua.commons.util.xml.XmlUtil;
-import org.eclipse.kapua.locator.KapuaLocator;
 import org.eclipse.kapua.model.config.metatype.KapuaTad;
 import org.eclipse.kapua.model.config.metatype.KapuaTicon;
 import org.eclipse.kapua.model.config.metatype.KapuaTocd;
 import org.eclipse.kapua.model.config.metatype.KapuaToption;
-import org.eclipse.kapua.service.account.Account;
-import org.eclipse.kapua.service.account.AccountService;
+import org.eclipse.kapua.model.id.KapuaId;
 import org.eclipse.kapua.service.device.call.kura.app.ConfigurationMetrics;
 import org.eclipse.kapua.service.device.call.kura.app.ResponseMetrics;
 import org.eclipse.kapua.service.device.call.kura.model.configuration.KuraDeviceComponentConfiguration;
@@ -82,13 +79,7 @@ public class TranslatorAppConfigurationKuraKapua extends Translator<KuraResponse
             throws KapuaException {
         //
         // Kura channel
-        KapuaLocator locator = KapuaLocator.getInstance();
-        AccountService accountService = locator.getService(AccountService.class);
-        Account account = accountService.findByName(kuraMessage.getChannel().getScope());
-
-        if (account == null) {
-            throw new KapuaEntityNotFoundException(Account.TYPE, kuraMessage.getChannel().getScope());
-        }
+        KapuaId scopeId = TranslatorKuraKapuaUtils.findAccountId(kuraMessage.getChannel().getScope());
 
         ConfigurationResponseChannel commandResponseChannel = translate(kuraMessage.getChannel());
 
@@ -99,7 +90,7 @@ public class TranslatorAppConfigurationKuraKapua extends Translator<KuraResponse
         //
         // Kura Message
         ConfigurationResponseMessage kapuaMessage = new ConfigurationResponseMessage();
-        kapuaMessage.setScopeId(account.getId());
+        kapuaMessage.setScopeId(scopeId);
         kapuaMessage.setChannel(commandResponseChannel);
         kapuaMessage.setPayload(responsePayload);
         kapuaMessage.setCapturedOn(kuraMessage.getPayload().getTimestamp());
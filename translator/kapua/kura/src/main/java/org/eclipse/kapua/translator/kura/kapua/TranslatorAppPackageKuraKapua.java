@@ -17,13 +17,11 @@ import java.math.BigInteger;
 import java.util.HashMap;
 import java.util.Map;
 
-import org.eclipse.kapua.KapuaEntityNotFoundException;
 import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.commons.model.id.KapuaEid;
 import org.eclipse.kapua.commons.util.xml.XmlUtil;
 import org.eclipse.kapua.locator.KapuaLocator;
-import org.eclipse.kapua.service.account.Account;
-import org.eclipse.kapua.service.account.AccountService;
+import org.eclipse.kapua.model.id.KapuaId;
 import org.eclipse.kapua.service.device.call.kura.app.PackageMetrics;
 import org.eclipse.kapua.service.device.call.kura.app.ResponseMetrics;
 import org.eclipse.kapua.service.device.call.kura.model.deploy.KuraBundleInfo;
@@ -77,13 +75,7 @@ public class TranslatorAppPackageKuraKapua extends Translator<KuraResponseMessag
             throws KapuaException {
         //
         // Kura channel
-        KapuaLocator locator = KapuaLocator.getInstance();
-        AccountService accountService = locator.getService(AccountService.class);
-        Account account = accountService.findByName(kuraMessage.getChannel().getScope());
-
-        if (account == null) {
-            throw new KapuaEntityNotFoundException(Account.TYPE, kuraMessage.getChannel().getScope());
-        }
+        KapuaId scopeId = TranslatorKuraKapuaUtils.findAccountId(kuraMessage.getChannel().getScope());
 
         PackageResponseChannel responseChannel = translate(kuraMessage.getChannel());
 
@@ -94,7 +86,7 @@ public class TranslatorAppPackageKuraKapua extends Translator<KuraResponseMessag
         //
         // Kura Message
         PackageResponseMessage kapuaMessage = new PackageResponseMessage();
-        kapuaMessage.setScopeId(account.getId());
+        kapuaMessage.setScopeId(scopeId);
         kapuaMessage.setChannel(responseChannel);
         kapuaMessage.setPayload(responsePayload);
         kapuaMessage.setCapturedOn(kuraMessage.getPayload().getTimestamp());
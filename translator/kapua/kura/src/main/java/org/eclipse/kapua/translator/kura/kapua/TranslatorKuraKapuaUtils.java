@@ -12,15 +12,24 @@
  *******************************************************************************/
 package org.eclipse.kapua.translator.kura.kapua;
 
+import org.eclipse.kapua.KapuaEntityNotFoundException;
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.commons.cache.IdentityCache;
 import org.eclipse.kapua.locator.KapuaLocator;
 import org.eclipse.kapua.message.KapuaMessageFactory;
 import org.eclipse.kapua.message.KapuaPosition;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.account.Account;
+import org.eclipse.kapua.service.account.AccountService;
 import org.eclipse.kapua.service.device.call.message.DevicePosition;
 import org.eclipse.kapua.service.device.management.response.KapuaResponseCode;
+import org.eclipse.kapua.service.device.registry.Device;
+import org.eclipse.kapua.service.device.registry.DeviceRegistryService;
 
 /**
  * Messages translator utilities.<br>
- * It provides helpful methods for translate position and response code.
+ * It provides helpful methods for translate position and response code and for resolving the account and device identities
+ * (through the shared {@link IdentityCache}).
  * 
  * @since 1.0
  *
@@ -28,6 +37,60 @@ import org.eclipse.kapua.service.device.management.response.KapuaResponseCode;
 public class TranslatorKuraKapuaUtils
 {
 
+    /**
+     * Return the id of the account with the given name.<br>
+     * The id is looked up in the {@link IdentityCache} and loaded through the {@link AccountService} on cache miss.
+     * 
+     * @param accountName
+     * @return
+     * @throws KapuaEntityNotFoundException if the account doesn't exist
+     * @throws KapuaException
+     */
+    public static KapuaId findAccountId(String accountName)
+        throws KapuaException
+    {
+        IdentityCache identityCache = IdentityCache.getInstance();
+        KapuaId accountId = identityCache.getAccountId(accountName);
+        if (accountId == null) {
+            AccountService accountService = KapuaLocator.getInstance().getService(AccountService.class);
+            Account account = accountService.findByName(accountName);
+
+            if (account == null) {
+                throw new KapuaEntityNotFoundException(Account.TYPE, accountName);
+            }
+
+            accountId = account.getId();
+            identityCache.putAccountId(accountName, accountId);
+        }
+        return accountId;
+    }
+
+    /**
+     * Return the id of the device with the given client id in the given scope or null if the device doesn't exist (yet).<br>
+     * The id is looked up in the {@link IdentityCache} and loaded through the {@link DeviceRegistryService} on cache miss.
+     * 
+     * @param scopeId
+     * @param clientId
+     * @return
+     * @throws KapuaException
+     */
+    public static KapuaId findDeviceId(KapuaId scopeId, String clientId)
+        throws KapuaException
+    {
+        IdentityCache identityCache = IdentityCache.getInstance();
+        KapuaId deviceId = identityCache.getDeviceId(scopeId, clientId);
+        if (deviceId == null) {
+            DeviceRegistryService deviceRegistryService = KapuaLocator.getInstance().getService(DeviceRegistryService.class);
+            Device device = deviceRegistryService.findByClientId(scopeId, clientId);
+
+            if (device != null) {
+                deviceId = device.getId();
+                identityCache.putDeviceId(scopeId, clientId, deviceId);
+            }
+        }
+        return deviceId;
+    }
+
     /**
      * Translate {@link DevicePosition} to {@link KapuaPosition}
      * 
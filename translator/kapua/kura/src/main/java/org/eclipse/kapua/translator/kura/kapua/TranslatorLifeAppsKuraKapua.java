@@ -14,20 +14,17 @@ package org.eclipse.kapua.translator.kura.kapua;
 
 import org.eclipse.kapua.KapuaEntityNotFoundException;
 import org.eclipse.kapua.KapuaException;
-import org.eclipse.kapua.locator.KapuaLocator;
 import org.eclipse.kapua.message.device.lifecycle.KapuaAppsChannel;
 import org.eclipse.kapua.message.device.lifecycle.KapuaAppsMessage;
 import org.eclipse.kapua.message.device.lifecycle.KapuaAppsPayload;
 import org.eclipse.kapua.message.internal.device.lifecycle.KapuaAppsChannelImpl;
 import org.eclipse.kapua.message.internal.device.lifecycle.KapuaAppsMessageImpl;
 import org.eclipse.kapua.message.internal.device.lifecycle.KapuaAppsPayloadImpl;
-import org.eclipse.kapua.service.account.Account;
-import org.eclipse.kapua.service.account.AccountService;
+import org.eclipse.kapua.model.id.KapuaId;
 import org.eclipse.kapua.service.device.call.message.kura.lifecycle.KuraAppsChannel;
 import org.eclipse.kapua.service.device.call.message.kura.lifecycle.KuraAppsMessage;
 import org.eclipse.kapua.service.device.call.message.kura.lifecycle.KuraAppsPayload;
 import org.eclipse.kapua.service.device.registry.Device;
-import org.eclipse.kapua.service.device.registry.DeviceRegistryService;
 import org.eclipse.kapua.translator.Translator;
 
 /**
@@ -45,22 +42,15 @@ public class TranslatorLifeAppsKuraKapua extends Translator<KuraAppsMessage, Kap
         kapuaAppsMessage.setChannel(translate(kuraAppsMessage.getChannel()));
         kapuaAppsMessage.setPayload(translate(kuraAppsMessage.getPayload()));
 
-        KapuaLocator locator = KapuaLocator.getInstance();
-        AccountService accountService = locator.getService(AccountService.class);
-        Account account = accountService.findByName(kuraAppsMessage.getChannel().getScope());
+        KapuaId scopeId = TranslatorKuraKapuaUtils.findAccountId(kuraAppsMessage.getChannel().getScope());
 
-        if (account == null) {
-            throw new KapuaEntityNotFoundException(Account.TYPE, kuraAppsMessage.getChannel().getScope());
-        }
-
-        DeviceRegistryService deviceRegistryService = locator.getService(DeviceRegistryService.class);
-        Device device = deviceRegistryService.findByClientId(account.getId(), kuraAppsMessage.getChannel().getClientId());
-        if (device == null) {
+        KapuaId deviceId = TranslatorKuraKapuaUtils.findDeviceId(scopeId, kuraAppsMessage.getChannel().getClientId());
+        if (deviceId == null) {
             throw new KapuaEntityNotFoundException(Device.class.toString(), kuraAppsMessage.getChannel().getClientId());
         }
 
-        kapuaAppsMessage.setDeviceId(device.getId());
-        kapuaAppsMessage.setScopeId(account.getId());
+        kapuaAppsMessage.setDeviceId(deviceId);
+        kapuaAppsMessage.setScopeId(scopeId);
         kapuaAppsMessage.setCapturedOn(kuraAppsMessage.getPayload().getTimestamp());
         kapuaAppsMessage.setSentOn(kuraAppsMessage.getPayload().getTimestamp());
         kapuaAppsMessage.setReceivedOn(kuraAppsMessage.getTimestamp());
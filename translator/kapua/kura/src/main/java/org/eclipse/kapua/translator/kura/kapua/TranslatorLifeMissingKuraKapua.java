@@ -14,20 +14,17 @@ package org.eclipse.kapua.translator.kura.kapua;
 
 import org.eclipse.kapua.KapuaEntityNotFoundException;
 import org.eclipse.kapua.KapuaException;
-import org.eclipse.kapua.locator.KapuaLocator;
 import org.eclipse.kapua.message.device.lifecycle.KapuaMissingChannel;
 import org.eclipse.kapua.message.device.lifecycle.KapuaMissingMessage;
 import org.eclipse.kapua.message.device.lifecycle.KapuaMissingPayload;
 import org.eclipse.kapua.message.internal.device.lifecycle.KapuaMissingChannelImpl;
 import org.eclipse.kapua.message.internal.device.lifecycle.KapuaMissingMessageImpl;
 import org.eclipse.kapua.message.internal.device.lifecycle.KapuaMissingPayloadImpl;
-import org.eclipse.kapua.service.account.Account;
-import org.eclipse.kapua.service.account.AccountService;
+import org.eclipse.kapua.model.id.KapuaId;
 import org.eclipse.kapua.service.device.call.message.kura.lifecycle.KuraMissingChannel;
 import org.eclipse.kapua.service.device.call.message.kura.lifecycle.KuraMissingMessage;
 import org.eclipse.kapua.service.device.call.message.kura.lifecycle.KuraMissingPayload;
 import org.eclipse.kapua.service.device.registry.Device;
-import org.eclipse.kapua.service.device.registry.DeviceRegistryService;
 import org.eclipse.kapua.translator.Translator;
 
 /**
@@ -45,23 +42,16 @@ public class TranslatorLifeMissingKuraKapua extends Translator<KuraMissingMessag
         kapuaMissingMessage.setChannel(translate(kuraMissingMessage.getChannel()));
         kapuaMissingMessage.setPayload(translate(kuraMissingMessage.getPayload()));
 
-        KapuaLocator locator = KapuaLocator.getInstance();
-        AccountService accountService = locator.getService(AccountService.class);
-        Account account = accountService.findByName(kuraMissingMessage.getChannel().getScope());
+        KapuaId scopeId = TranslatorKuraKapuaUtils.findAccountId(kuraMissingMessage.getChannel().getScope());
 
-        if (account == null) {
-            throw new KapuaEntityNotFoundException(Account.TYPE, kuraMissingMessage.getChannel().getScope());
-        }
-
-        DeviceRegistryService deviceRegistryService = locator.getService(DeviceRegistryService.class);
-        Device device = deviceRegistryService.findByClientId(account.getId(), kuraMissingMessage.getChannel().getClientId());
+        KapuaId deviceId = TranslatorKuraKapuaUtils.findDeviceId(scopeId, kuraMissingMessage.getChannel().getClientId());
 
-        if (device == null) {
+        if (deviceId == null) {
             throw new KapuaEntityNotFoundException(Device.class.toString(), kuraMissingMessage.getChannel().getClientId());
         }
 
-        kapuaMissingMessage.setDeviceId(device.getId());
-        kapuaMissingMessage.setScopeId(account.getId());
+        kapuaMissingMessage.setDeviceId(deviceId);
+        kapuaMissingMessage.setScopeId(scopeId);
         kapuaMissingMessage.setCapturedOn(kuraMissingMessage.getPayload().getTimestamp());
         kapuaMissingMessage.setSentOn(kuraMissingMessage.getPayload().getTimestamp());
         kapuaMissingMessage.setReceivedOn(kuraMissingMessage.getTimestamp());
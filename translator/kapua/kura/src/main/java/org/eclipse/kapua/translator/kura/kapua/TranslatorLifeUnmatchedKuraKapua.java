@@ -12,17 +12,14 @@
  *******************************************************************************/
 package org.eclipse.kapua.translator.kura.kapua;
 
-import org.eclipse.kapua.KapuaEntityNotFoundException;
 import org.eclipse.kapua.KapuaException;
-import org.eclipse.kapua.locator.KapuaLocator;
 import org.eclipse.kapua.message.device.lifecycle.KapuaUnmatchedChannel;
 import org.eclipse.kapua.message.device.lifecycle.KapuaUnmatchedMessage;
 import org.eclipse.kapua.message.device.lifecycle.KapuaUnmatchedPayload;
 import org.eclipse.kapua.message.internal.device.lifecycle.KapuaUnmatchedChannelImpl;
 import org.eclipse.kapua.message.internal.device.lifecycle.KapuaUnmatchedMessageImpl;
 import org.eclipse.kapua.message.internal.device.lifecycle.KapuaUnmatchedPayloadImpl;
-import org.eclipse.kapua.service.account.Account;
-import org.eclipse.kapua.service.account.AccountService;
+import org.eclipse.kapua.model.id.KapuaId;
 import org.eclipse.kapua.service.device.call.message.kura.lifecycle.KuraUnmatchedChannel;
 import org.eclipse.kapua.service.device.call.message.kura.lifecycle.KuraUnmatchedMessage;
 import org.eclipse.kapua.service.device.call.message.kura.lifecycle.KuraUnmatchedPayload;
@@ -43,16 +40,10 @@ public class TranslatorLifeUnmatchedKuraKapua extends Translator<KuraUnmatchedMe
         kapuaUnmatchedMessage.setChannel(translate(kuraUnmatchedMessage.getChannel()));
         kapuaUnmatchedMessage.setPayload(translate(kuraUnmatchedMessage.getPayload()));
 
-        KapuaLocator locator = KapuaLocator.getInstance();
-        AccountService accountService = locator.getService(AccountService.class);
-        Account account = accountService.findByName(kuraUnmatchedMessage.getChannel().getScope());
-
-        if (account == null) {
-            throw new KapuaEntityNotFoundException(Account.TYPE, kuraUnmatchedMessage.getChannel().getScope());
-        }
+        KapuaId scopeId = TranslatorKuraKapuaUtils.findAccountId(kuraUnmatchedMessage.getChannel().getScope());
 
         // no device information since may it uses an mqtt connection pooling with devices not registered in the device tables
-        kapuaUnmatchedMessage.setScopeId(account.getId());
+        kapuaUnmatchedMessage.setScopeId(scopeId);
         kapuaUnmatchedMessage.setCapturedOn(kuraUnmatchedMessage.getPayload().getTimestamp());
         kapuaUnmatchedMessage.setSentOn(kuraUnmatchedMessage.getPayload().getTimestamp());
         kapuaUnmatchedMessage.setReceivedOn(kuraUnmatchedMessage.getTimestamp());
@@ -12,6 +12,8 @@
  *******************************************************************************/
 package org.eclipse.kapua.transport;
 
+import java.util.concurrent.CompletableFuture;
+
 import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.transport.message.TransportChannel;
 import org.eclipse.kapua.transport.message.TransportMessage;
@@ -69,6 +71,29 @@ public interface TransportFacade<C extends TransportChannel, P extends Transport
     public void sendAsync(MQ message)
             throws KapuaException;
 
+    /**
+     * Send a request message to a device without blocking the caller while waiting for the response.
+     * <p>
+     * The returned future is completed with the response to the request message or exceptionally with a {@link KapuaException}
+     * if the response doesn't arrive within the timeout. If the timeout is {@code null} the request is fired without waiting for the response
+     * and the future is completed with {@code null}.
+     * </p>
+     * <p>
+     * {@link #clean()} must be called once the returned future is completed.
+     * </p>
+     * 
+     * @param message
+     *            The request message to send.
+     * @param timeout
+     *            The timeout for the operation.
+     * @return The future completed with the response to the request message.
+     * @throws KapuaException
+     *             If the request cannot be sent.
+     * @since 1.0.0
+     */
+    public CompletableFuture<MS> sendAsync(MQ message, Long timeout)
+            throws KapuaException;
+
     //
     // Utilities
     //
@@ -44,6 +44,19 @@ public class MqttClient {
      */
     private List<MqttTopic> subscribedTopics = new ArrayList<>();
 
+    /**
+     * The callback dispatching the received responses to the pending requests.
+     */
+    private MqttResponseCorrelator responseCorrelator = new MqttResponseCorrelator();
+
+    /**
+     * The topic filter subscribed to receive all the responses addressed to this client.
+     * <p>
+     * This subscription is kept while the client is connected and it is not removed by {@link MqttClient#clean()}.
+     * </p>
+     */
+    private MqttTopic responseTopicFilter;
+
     //
     // Connection management
     //
@@ -69,6 +82,7 @@ public class MqttClient {
             pahoMqttClient = new org.eclipse.paho.client.mqttv3.MqttClient(options.getEndpointURI().toString(),
                     options.getClientId(),
                     new MemoryPersistence());
+            pahoMqttClient.setCallback(responseCorrelator);
 
             MqttConnectOptions pahoConnectOptions = new MqttConnectOptions();
             pahoConnectOptions.setUserName(options.getUsername());
@@ -101,6 +115,7 @@ public class MqttClient {
             throws KapuaException {
         try {
             unsubscribeAll();
+            responseTopicFilter = null;
 
             if (getPahoClient() != null) {
                 getPahoClient().disconnect();
@@ -132,6 +147,7 @@ public class MqttClient {
 
                 getPahoClient().close();
                 pahoMqttClient = null;
+                responseTopicFilter = null;
             }
         } catch (MqttException e) {
             throw new MqttClientException(MqttClientErrorCodes.CLIENT_TERMINATE_ERROR,
@@ -209,6 +225,34 @@ public class MqttClient {
         }
     }
 
+    /**
+     * Subscribes this client to the given {@link MqttTopic} filter to receive all the responses addressed to it.
+     * <p>
+     * The subscription is made only once, subsequent invocations with the same filter do nothing.
+     * </p>
+     * 
+     * @param mqttTopicFilter
+     *            The {@link MqttTopic} filter to subscribe to.
+     * @throws KapuaException
+     *             When subscribe fails.
+     * @since 1.0.0
+     */
+    public synchronized void subscribeResponses(MqttTopic mqttTopicFilter)
+            throws KapuaException {
+        if (responseTopicFilter != null && responseTopicFilter.getTopic().equals(mqttTopicFilter.getTopic())) {
+            return;
+        }
+
+        try {
+            getPahoClient().subscribe(mqttTopicFilter.getTopic());
+            responseTopicFilter = mqttTopicFilter;
+        } catch (MqttException | KapuaException e) {
+            throw new MqttClientException(MqttClientErrorCodes.CLIENT_SUBSCRIBE_ERROR,
+                    e,
+                    new Object[] { mqttTopicFilter.getTopic() });
+        }
+    }
+
     /**
      * Unsubscribes this client from the given {@link MqttTopic}.
      * 
@@ -269,8 +313,22 @@ public class MqttClient {
 
     }
 
+    /**
+     * Gets the {@link MqttResponseCorrelator} of this client.
+     * 
+     * @return The {@link MqttResponseCorrelator} of this client.
+     * @since 1.0.0
+     */
+    public MqttResponseCorrelator getResponseCorrelator() {
+        return responseCorrelator;
+    }
+
     /**
      * Cleans this client from any callback set and unsubscribes from all {@link MqttTopic} subscribed.
+     * <p>
+     * The {@link MqttResponseCorrelator} is restored as callback and the response topic filter subscription is kept,
+     * so the requests still pending on the correlator receive their response even after the client has been returned to the pool.
+     * </p>
      * 
      * @throws KapuaException
      *             When any of the clean operations fails.
@@ -278,7 +336,7 @@ public class MqttClient {
     public void clean()
             throws KapuaException {
         try {
-            getPahoClient().setCallback(null);
+            getPahoClient().setCallback(responseCorrelator);
             unsubscribeAll();
         } catch (KapuaException e) {
             terminateClient();
@@ -12,10 +12,15 @@
  *******************************************************************************/
 package org.eclipse.kapua.transport.mqtt;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.text.MessageFormat;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.kapua.KapuaErrorCodes;
 import org.eclipse.kapua.KapuaException;
@@ -24,6 +29,8 @@ import org.eclipse.kapua.transport.message.mqtt.MqttMessage;
 import org.eclipse.kapua.transport.message.mqtt.MqttPayload;
 import org.eclipse.kapua.transport.message.mqtt.MqttTopic;
 import org.eclipse.kapua.transport.mqtt.pooling.MqttClientPool;
+import org.eclipse.kapua.transport.mqtt.setting.MqttClientSetting;
+import org.eclipse.kapua.transport.mqtt.setting.MqttClientSettingKeys;
 
 /**
  * Implementation of {@link TransportFacade} API for MQTT transport facade.
@@ -32,6 +39,40 @@ import org.eclipse.kapua.transport.mqtt.pooling.MqttClientPool;
  */
 public class MqttFacade implements TransportFacade<MqttTopic, MqttPayload, MqttMessage, MqttMessage> {
 
+    /**
+     * MQTT single level wildcard.
+     * 
+     * @since 1.0.0
+     */
+    private static final String SINGLE_LEVEL_WILDCARD = "+";
+
+    /**
+     * MQTT multi level wildcard.
+     * 
+     * @since 1.0.0
+     */
+    private static final String MULTI_LEVEL_WILDCARD = "#";
+
+    /**
+     * Threads completing the futures returned by {@link #sendAsync(MqttMessage, Long)},
+     * so the continuations of the callers never run on the MQTT client callback thread.
+     * 
+     * @since 1.0.0
+     */
+    private static final ExecutorService RESPONSE_DISPATCHER = Executors.newFixedThreadPool(
+            MqttClientSetting.getInstance().getInt(MqttClientSettingKeys.TRANSPORT_RESPONSE_DISPATCHER_THREADS, 8),
+            new ThreadFactory() {
+
+                private final AtomicInteger threadCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, MqttFacade.class.getSimpleName() + "-ResponseDispatcher-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
     /**
      * The client to use to make requests.
      * 
@@ -40,11 +81,11 @@ public class MqttFacade implements TransportFacade<MqttTopic, MqttPayload, MqttM
     private MqttClient borrowedClient;
 
     /**
-     * The client callback for this set of requests.
+     * Whether the response of the last request is received through the response topic filter subscription of the borrowed client.
      * 
      * @since 1.0.0
      */
-    private MqttClientCallback mqttClientCallback;
+    private boolean responseOnTopicFilter;
 
     /**
      * Initialize a transport facade to be used to send requests to devices.
@@ -78,12 +119,27 @@ public class MqttFacade implements TransportFacade<MqttTopic, MqttPayload, MqttM
     @Override
     public MqttMessage sendSync(MqttMessage mqttMessage, Long timeout)
             throws KapuaException {
-        List<MqttMessage> responses = new ArrayList<>();
+        MqttMessage response = null;
 
-        sendInternal(mqttMessage, responses, timeout);
+        CompletableFuture<MqttMessage> responseFuture = sendInternal(mqttMessage, timeout);
+        try {
+            response = responseFuture.get();
+        } catch (ExecutionException e) {
+            if (!(e.getCause() instanceof TimeoutException)) {
+                throw new MqttClientException(MqttClientErrorCodes.SEND_ERROR,
+                        new MqttClientException(MqttClientErrorCodes.CLIENT_CALLBACK_ERROR, e.getCause(), (Object[]) null),
+                        mqttMessage.getRequestTopic().getTopic());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            responseFuture.cancel(false);
+            throw new MqttClientException(MqttClientErrorCodes.SEND_ERROR,
+                    new MqttClientException(MqttClientErrorCodes.CLIENT_CALLBACK_ERROR, e, (Object[]) null),
+                    mqttMessage.getRequestTopic().getTopic());
+        }
 
         if (timeout != null) {
-            if (responses.isEmpty()) {
+            if (response == null) {
                 throw new MqttClientException(MqttClientErrorCodes.CLIENT_TIMEOUT_EXCEPTION,
                         null,
                         new Object[] {
@@ -92,46 +148,94 @@ public class MqttFacade implements TransportFacade<MqttTopic, MqttPayload, MqttM
 
             }
 
-            return responses.get(0);
+            return response;
         } else {
             return null;
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * When the response is received through the response topic filter subscription of the borrowed client,
+     * the client is returned to the pool as soon as the request is published, so it can be used by other requests
+     * while this one is waiting for its response.
+     * The returned future is completed by the response dispatcher threads (see {@link MqttClientSettingKeys#TRANSPORT_RESPONSE_DISPATCHER_THREADS}).
+     * </p>
+     * 
+     * @since 1.0.0
+     */
+    @Override
+    public CompletableFuture<MqttMessage> sendAsync(MqttMessage mqttMessage, Long timeout)
+            throws KapuaException {
+        CompletableFuture<MqttMessage> responseFuture = sendInternal(mqttMessage, timeout);
+        if (responseOnTopicFilter) {
+            clean();
+        }
+
+        return responseFuture.handleAsync((response, error) -> {
+            if (error == null) {
+                if (timeout != null && response == null) {
+                    throw new CompletionException(new MqttClientException(MqttClientErrorCodes.CLIENT_TIMEOUT_EXCEPTION,
+                            null,
+                            new Object[] { mqttMessage.getRequestTopic() }));
+                }
+                return response;
+            }
+
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+            if (cause instanceof TimeoutException) {
+                throw new CompletionException(new MqttClientException(MqttClientErrorCodes.CLIENT_TIMEOUT_EXCEPTION,
+                        null,
+                        new Object[] { mqttMessage.getRequestTopic() }));
+            }
+            throw new CompletionException(new MqttClientException(MqttClientErrorCodes.SEND_ERROR,
+                    new MqttClientException(MqttClientErrorCodes.CLIENT_CALLBACK_ERROR, cause, (Object[]) null),
+                    mqttMessage.getRequestTopic().getTopic()));
+        }, RESPONSE_DISPATCHER);
+    }
+
     /**
      * Actual implementation of the send operations.
      * <p>
      * According to the parameters given, it will make a sync or async request.
      * </p>
+     * <p>
+     * Responses are received through the {@link MqttResponseCorrelator} of the borrowed client. When the response topic matches
+     * the response topic filter of the client (see {@link MqttClientSettingKeys#TRANSPORT_RESPONSE_TOPIC_FILTER}) no subscription
+     * is made for the single request since the client is already subscribed to all its responses.
+     * </p>
      * 
      * @param mqttMessage
      *            The request to send.
-     * @param responses
-     *            The container in which load responses received from the device
      * @param timeout
      *            The timeout of waiting the response from the device.
      *            If {@code null} request will be fired without waiting for the response.
      *            If mqttMessage has no response message set, timeout will be ignore even if set.
+     * @return The future completed with the response, or completed with {@code null} if no response is waited.
+     *         If the response doesn't arrive within the timeout the future is completed exceptionally with a {@link TimeoutException}.
      * @throws KapuaException
      *             FIXME [javadoc] document exception
      * @see {@link MqttMessage#getResponseTopic()}
      * @since 1.0.0.
      */
-    private void sendInternal(MqttMessage mqttMessage, List<MqttMessage> responses, Long timeout)
+    private CompletableFuture<MqttMessage> sendInternal(MqttMessage mqttMessage, Long timeout)
             throws KapuaException {
         try {
             //
-            // Subscribe if necessary
-            if (mqttMessage.getResponseTopic() != null) {
+            // Subscribe and register the request if necessary
+            CompletableFuture<MqttMessage> response = null;
+            if (mqttMessage.getResponseTopic() != null &&
+                    timeout != null) {
                 try {
-                    mqttClientCallback = new MqttClientCallback(responses);
-                    borrowedClient.setCallback(mqttClientCallback);
-                    borrowedClient.subscribe(mqttMessage.getResponseTopic());
+                    responseOnTopicFilter = subscribeResponse(mqttMessage.getResponseTopic());
                 } catch (KapuaException e) {
                     throw new MqttClientException(MqttClientErrorCodes.CLIENT_SUBSCRIBE_ERROR,
                             e,
                             new Object[] { mqttMessage.getResponseTopic().getTopic() });
                 }
+
+                response = borrowedClient.getResponseCorrelator().register(mqttMessage.getResponseTopic(), timeout);
             }
 
             //
@@ -139,47 +243,16 @@ public class MqttFacade implements TransportFacade<MqttTopic, MqttPayload, MqttM
             try {
                 borrowedClient.publish(mqttMessage);
             } catch (KapuaException e) {
+                if (response != null) {
+                    response.cancel(false);
+                }
                 throw new MqttClientException(MqttClientErrorCodes.CLIENT_PUBLISH_ERROR,
                         e,
                         new Object[] { mqttMessage.getRequestTopic().getTopic(),
                                 mqttMessage.getPayload().getBody() });
             }
 
-            //
-            // Wait if required
-            if (mqttMessage.getResponseTopic() != null &&
-                    timeout != null) {
-                Timer timeoutTimer = new Timer(new StringBuilder().append(MqttFacade.class.getSimpleName())
-                        .append("-TimeoutTimer-")
-                        .append(borrowedClient.getClientId())
-                        .toString(),
-                        true);
-
-                timeoutTimer.schedule(new TimerTask() {
-
-                    @Override
-                    public void run() {
-                        if (mqttMessage.getResponseTopic() != null) {
-                            synchronized (mqttClientCallback) {
-                                mqttClientCallback.notifyAll();
-                            }
-                        }
-                    }
-                }, timeout);
-
-                try {
-                    synchronized (mqttClientCallback) {
-                        mqttClientCallback.wait();
-                    }
-                } catch (InterruptedException e) {
-                    Thread.interrupted();
-                    throw new MqttClientException(MqttClientErrorCodes.CLIENT_CALLBACK_ERROR,
-                            e,
-                            (Object[]) null);
-                } finally {
-                    timeoutTimer.cancel();
-                }
-            }
+            return response != null ? response : CompletableFuture.completedFuture(null);
         } catch (Exception e) {
             throw new MqttClientException(MqttClientErrorCodes.SEND_ERROR,
                     e,
@@ -187,6 +260,59 @@ public class MqttFacade implements TransportFacade<MqttTopic, MqttPayload, MqttM
         }
     }
 
+    /**
+     * Makes the borrowed client able to receive the response on the given {@link MqttTopic}.
+     * <p>
+     * If the response topic matches the response topic filter of the client, the filter is subscribed (only once for the pooled client),
+     * otherwise the response topic itself is subscribed and it will be unsubscribed when the client is returned to the pool.
+     * </p>
+     * 
+     * @param responseTopic
+     *            The topic on which the response is expected.
+     * @return {@code true} if the response will be received through the response topic filter subscription, {@code false} otherwise.
+     * @throws KapuaException
+     *             When subscribe fails.
+     * @since 1.0.0
+     */
+    private boolean subscribeResponse(MqttTopic responseTopic)
+            throws KapuaException {
+        String responseTopicFilter = MqttClientSetting.getInstance().getString(MqttClientSettingKeys.TRANSPORT_RESPONSE_TOPIC_FILTER, null);
+        if (responseTopicFilter != null && !responseTopicFilter.isEmpty()) {
+            MqttTopic mqttTopicFilter = new MqttTopic(MessageFormat.format(responseTopicFilter, borrowedClient.getClientId()));
+            if (matches(mqttTopicFilter.getSplittedTopic(), responseTopic.getSplittedTopic())) {
+                borrowedClient.subscribeResponses(mqttTopicFilter);
+                return true;
+            }
+        }
+
+        borrowedClient.subscribe(responseTopic);
+        return false;
+    }
+
+    /**
+     * Checks if the given topic matches the given topic filter, according to the MQTT single level ({@code +})
+     * and multi level ({@code #}) wildcards.
+     * 
+     * @param filterTokens
+     *            The topic filter levels.
+     * @param topicTokens
+     *            The topic levels.
+     * @return {@code true} if the topic matches the filter, {@code false} otherwise.
+     * @since 1.0.0
+     */
+    static boolean matches(String[] filterTokens, String[] topicTokens) {
+        for (int i = 0; i < filterTokens.length; i++) {
+            if (MULTI_LEVEL_WILDCARD.equals(filterTokens[i])) {
+                return true;
+            }
+            if (i >= topicTokens.length ||
+                    (!SINGLE_LEVEL_WILDCARD.equals(filterTokens[i]) && !filterTokens[i].equals(topicTokens[i]))) {
+                return false;
+            }
+        }
+        return filterTokens.length == topicTokens.length;
+    }
+
     @Override
     public String getClientId() {
         return borrowedClient.getClientId();
@@ -201,7 +327,9 @@ public class MqttFacade implements TransportFacade<MqttTopic, MqttPayload, MqttM
     public void clean() {
         //
         // Return the client form the pool
-        MqttClientPool.getInstance().returnObject(borrowedClient);
-        borrowedClient = null;
+        if (borrowedClient != null) {
+            MqttClientPool.getInstance().returnObject(borrowedClient);
+            borrowedClient = null;
+        }
     }
 }
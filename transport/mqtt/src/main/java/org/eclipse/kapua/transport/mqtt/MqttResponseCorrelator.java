@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.transport.mqtt;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.eclipse.kapua.transport.message.mqtt.MqttMessage;
+import org.eclipse.kapua.transport.message.mqtt.MqttPayload;
+import org.eclipse.kapua.transport.message.mqtt.MqttTopic;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Long-lived {@link MqttCallback} of a {@link MqttClient} which dispatches the received responses to the pending requests.
+ * <p>
+ * Each pending request is registered with its response topic, which is unique for every request since it contains the request id.
+ * The response is dispatched by looking up the topic of the received message, so a single subscription can serve all the requests
+ * sent by the client.
+ * Timeouts of all the pending requests, of all the clients, are handled by a single shared scheduler.
+ * </p>
+ *
+ * @since 1.0.0
+ */
+public class MqttResponseCorrelator implements MqttCallback {
+
+    private static final Logger logger = LoggerFactory.getLogger(MqttResponseCorrelator.class);
+
+    /**
+     * Scheduler shared by all correlators to expire pending requests.
+     *
+     * @since 1.0.0
+     */
+    private static final ScheduledThreadPoolExecutor TIMEOUT_SCHEDULER;
+
+    static {
+        TIMEOUT_SCHEDULER = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, MqttResponseCorrelator.class.getSimpleName() + "-TimeoutScheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        TIMEOUT_SCHEDULER.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Pending requests by response topic.
+     *
+     * @since 1.0.0
+     */
+    private final Map<String, CompletableFuture<MqttMessage>> pendingResponses = new ConcurrentHashMap<>();
+
+    /**
+     * Registers a pending request waiting for a response on the given {@link MqttTopic}.
+     * <p>
+     * The request must be registered before publishing it, so a fast response cannot be missed.
+     * If no response arrives within the given timeout, the returned future is completed exceptionally with a {@link TimeoutException}.
+     * </p>
+     *
+     * @param responseTopic
+     *            The topic on which the response is expected.
+     * @param timeout
+     *            The timeout (milliseconds) of waiting the response.
+     * @return The future completed with the response message.
+     * @since 1.0.0
+     */
+    public CompletableFuture<MqttMessage> register(MqttTopic responseTopic, long timeout) {
+        String topic = responseTopic.getTopic();
+        CompletableFuture<MqttMessage> response = new CompletableFuture<>();
+        pendingResponses.put(topic, response);
+
+        ScheduledFuture<?> timeoutTask = TIMEOUT_SCHEDULER.schedule(() -> response.completeExceptionally(new TimeoutException(topic)),
+                timeout,
+                TimeUnit.MILLISECONDS);
+
+        response.whenComplete((message, error) -> {
+            pendingResponses.remove(topic, response);
+            timeoutTask.cancel(false);
+        });
+
+        return response;
+    }
+
+    /**
+     * Implements the API signature {@link MqttCallback#messageArrived(String, org.eclipse.paho.client.mqttv3.MqttMessage)}.
+     * <p>
+     * The {@link org.eclipse.paho.client.mqttv3.MqttMessage} arrived is converted into a {@link MqttMessage}
+     * and completes the request pending on its topic, if any.
+     * </p>
+     *
+     * @since 1.0.0
+     */
+    @Override
+    public void messageArrived(String stringTopic, org.eclipse.paho.client.mqttv3.MqttMessage message)
+            throws Exception {
+        CompletableFuture<MqttMessage> response = pendingResponses.get(stringTopic);
+        if (response == null) {
+            logger.debug("Discarding response with no pending request on topic: {}", stringTopic);
+            return;
+        }
+
+        MqttMessage mqttMessage = new MqttMessage(new MqttTopic(stringTopic),
+                new Date(),
+                new MqttPayload(message.getPayload()));
+
+        response.complete(mqttMessage);
+    }
+
+    /**
+     * Implements the API signature {@link MqttCallback#deliveryComplete(IMqttDeliveryToken)} with an empty method
+     *
+     * @since 1.0.0
+     */
+    @Override
+    public void deliveryComplete(IMqttDeliveryToken token) {
+    }
+
+    /**
+     * Implements the API signature {@link MqttCallback#connectionLost(Throwable)}.
+     * <p>
+     * All the pending requests are completed exceptionally with a {@link MqttClientException}.
+     * </p>
+     *
+     * @since 1.0.0
+     */
+    @Override
+    public void connectionLost(Throwable cause) {
+        logger.warn("Connection lost with {} pending requests", pendingResponses.size(), cause);
+
+        MqttClientException connectionLost = new MqttClientException(MqttClientErrorCodes.CLIENT_CONNECTION_LOST, cause, (Object[]) null);
+        for (CompletableFuture<MqttMessage> response : pendingResponses.values()) {
+            response.completeExceptionally(connectionLost);
+        }
+    }
+}
@@ -55,6 +55,21 @@ public enum MqttClientSettingKeys implements SettingKey {
      * @since 1.0.0
      */
     SEND_TIMEOUT_MAX("send.timeout.max"),
+
+    /**
+     * The topic filter each pooled client subscribes once to receive all the responses addressed to it.
+     * {0} is replaced with the client id. Responses not matching it are subscribed one by one.
+     * 
+     * @since 1.0.0
+     */
+    TRANSPORT_RESPONSE_TOPIC_FILTER("transport.response.topic.filter"),
+
+    /**
+     * Number of threads completing the asynchronous requests.
+     * 
+     * @since 1.0.0
+     */
+    TRANSPORT_RESPONSE_DISPATCHER_THREADS("transport.response.dispatcher.threads"),
     ;
 
     /**
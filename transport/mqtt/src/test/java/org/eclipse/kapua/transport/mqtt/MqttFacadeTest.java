@@ -0,0 +1,49 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.transport.mqtt;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class MqttFacadeTest {
+
+    private static boolean matches(String filter, String topic) {
+        return MqttFacade.matches(filter.split("/"), topic.split("/"));
+    }
+
+    @Test
+    public void testExactTopicMatches() {
+        assertTrue(matches("$EDC/account/client-1/CMD-V1/REPLY/1234", "$EDC/account/client-1/CMD-V1/REPLY/1234"));
+        assertFalse(matches("$EDC/account/client-1/CMD-V1/REPLY/1234", "$EDC/account/client-1/CMD-V1/REPLY/5678"));
+    }
+
+    @Test
+    public void testSingleLevelWildcardMatchesOneLevel() {
+        String filter = "$EDC/+/client-1/+/REPLY/+";
+
+        assertTrue(matches(filter, "$EDC/account/client-1/CMD-V1/REPLY/1234"));
+        assertFalse(matches(filter, "$EDC/account/client-2/CMD-V1/REPLY/1234"));
+        assertFalse(matches(filter, "$EDC/account/client-1/CMD-V1/REPLY"));
+        assertFalse(matches(filter, "$EDC/account/client-1/CMD-V1/REPLY/1234/extra"));
+    }
+
+    @Test
+    public void testMultiLevelWildcardMatchesTheRemainingLevels() {
+        String filter = "$EDC/account/client-1/#";
+
+        assertTrue(matches(filter, "$EDC/account/client-1/CMD-V1/REPLY/1234"));
+        assertTrue(matches(filter, "$EDC/account/client-1/CONF-V1"));
+        assertFalse(matches(filter, "$EDC/account/client-2/CMD-V1/REPLY/1234"));
+    }
+}
@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.transport.mqtt;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.eclipse.kapua.transport.message.mqtt.MqttMessage;
+import org.eclipse.kapua.transport.message.mqtt.MqttTopic;
+import org.junit.Test;
+
+public class MqttResponseCorrelatorTest {
+
+    private static final String RESPONSE_TOPIC       = "$EDC/account/client-1/CMD-V1/REPLY/1234";
+    private static final String OTHER_RESPONSE_TOPIC = "$EDC/account/client-1/CMD-V1/REPLY/5678";
+
+    private final MqttResponseCorrelator correlator = new MqttResponseCorrelator();
+
+    private static org.eclipse.paho.client.mqttv3.MqttMessage pahoMessage(String body) {
+        return new org.eclipse.paho.client.mqttv3.MqttMessage(body.getBytes());
+    }
+
+    @Test
+    public void testResponseCompletesTheRequestPendingOnItsTopic() throws Exception {
+        CompletableFuture<MqttMessage> response = correlator.register(new MqttTopic(RESPONSE_TOPIC), 60000);
+        CompletableFuture<MqttMessage> otherResponse = correlator.register(new MqttTopic(OTHER_RESPONSE_TOPIC), 60000);
+
+        correlator.messageArrived(RESPONSE_TOPIC, pahoMessage("response"));
+
+        MqttMessage message = response.get(1, TimeUnit.SECONDS);
+        assertEquals(RESPONSE_TOPIC, message.getRequestTopic().getTopic());
+        assertEquals("response", new String(message.getPayload().getBody()));
+        assertFalse(otherResponse.isDone());
+    }
+
+    @Test
+    public void testResponseWithNoPendingRequestIsDiscarded() throws Exception {
+        CompletableFuture<MqttMessage> response = correlator.register(new MqttTopic(RESPONSE_TOPIC), 60000);
+        correlator.messageArrived(RESPONSE_TOPIC, pahoMessage("response"));
+
+        // A duplicate response and a response nobody waits for
+        correlator.messageArrived(RESPONSE_TOPIC, pahoMessage("duplicate"));
+        correlator.messageArrived(OTHER_RESPONSE_TOPIC, pahoMessage("unexpected"));
+
+        assertEquals("response", new String(response.get(1, TimeUnit.SECONDS).getPayload().getBody()));
+    }
+
+    @Test
+    public void testRequestTimesOutWithoutResponse() throws Exception {
+        CompletableFuture<MqttMessage> response = correlator.register(new MqttTopic(RESPONSE_TOPIC), 50);
+
+        try {
+            response.get(5, TimeUnit.SECONDS);
+            fail("The request should time out");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+
+        // A late response is ignored
+        correlator.messageArrived(RESPONSE_TOPIC, pahoMessage("late"));
+        assertTrue(response.isCompletedExceptionally());
+    }
+
+    @Test
+    public void testConnectionLostFailsThePendingRequests() throws Exception {
+        CompletableFuture<MqttMessage> response = correlator.register(new MqttTopic(RESPONSE_TOPIC), 60000);
+        CompletableFuture<MqttMessage> otherResponse = correlator.register(new MqttTopic(OTHER_RESPONSE_TOPIC), 60000);
+
+        correlator.connectionLost(new Exception("connection reset"));
+
+        for (CompletableFuture<MqttMessage> pending : new CompletableFuture[] { response, otherResponse }) {
+            try {
+                pending.get(1, TimeUnit.SECONDS);
+                fail("The request should fail");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof MqttClientException);
+            }
+        }
+    }
+}